@@ -0,0 +1,102 @@
+package com.github.starnowski.jamolingo.benchmarks;
+
+import com.github.starnowski.jamolingo.core.context.DefaultEdmMongoContextFacade;
+import com.github.starnowski.jamolingo.core.context.EntityPropertiesMongoPathContext;
+import com.github.starnowski.jamolingo.core.context.EntityPropertiesMongoPathContextBuilder;
+import com.github.starnowski.jamolingo.core.mapping.CircularReferenceMapping;
+import com.github.starnowski.jamolingo.core.mapping.CircularStrategy;
+import com.github.starnowski.jamolingo.core.mapping.EntityMapping;
+import com.github.starnowski.jamolingo.core.mapping.ODataMongoMapping;
+import com.github.starnowski.jamolingo.core.mapping.ODataMongoMappingFactory;
+import com.github.starnowski.jamolingo.core.mapping.PropertyMapping;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.olingo.commons.api.edm.Edm;
+import org.apache.olingo.commons.api.edm.provider.CsdlEdmProvider;
+import org.apache.olingo.commons.core.edm.EdmProviderImpl;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.uri.UriInfo;
+import org.apache.olingo.server.core.MetadataParser;
+import org.apache.olingo.server.core.uri.parser.Parser;
+
+/** EDM models and mappings shared by the benchmarks. */
+final class BenchmarkFixtures {
+
+  static final String FILTER_EDM = "edm/edm6_filter_main.xml";
+  static final String FILTER_ENTITY_SET = "examples2";
+  static final String TREE_EDM = "edm/edm_tree.xml";
+  static final String TREE_ENTITY_SET = "treeType1s";
+
+  private BenchmarkFixtures() {}
+
+  static Edm loadEdm(String resource) {
+    try (InputStream inputStream =
+            BenchmarkFixtures.class.getClassLoader().getResourceAsStream(resource);
+        Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8)) {
+      CsdlEdmProvider provider = new MetadataParser().buildEdmProvider(reader);
+      return new EdmProviderImpl(provider);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (Exception e) {
+      throw new IllegalStateException("Unable to load EDM " + resource, e);
+    }
+  }
+
+  static UriInfo parseUri(Edm edm, String entitySet, String query) {
+    try {
+      return new Parser(edm, OData.newInstance()).parseUri(entitySet, query, null, null);
+    } catch (Exception e) {
+      throw new IllegalStateException("Unable to parse query " + query, e);
+    }
+  }
+
+  static DefaultEdmMongoContextFacade filterEdmMongoContextFacade(Edm edm) {
+    ODataMongoMapping mapping = new ODataMongoMappingFactory().build(edm, "MyService");
+    EntityPropertiesMongoPathContext context =
+        new EntityPropertiesMongoPathContextBuilder().build(mapping.getEntities().get("Example2"));
+    return DefaultEdmMongoContextFacade.builder()
+        .withEntityPropertiesMongoPathContext(context)
+        .build();
+  }
+
+  /**
+   * Mapping of the "Item" entity with the "Addresses/BackUpAddresses" property that references its
+   * own complex type, plus the given number of additional plain properties that make the mapping
+   * wide.
+   */
+  static EntityMapping circularReferenceEntityMapping(int additionalProperties) {
+    Map<String, PropertyMapping> addressProperties = new LinkedHashMap<>();
+    addressProperties.put(
+        "BackUpAddresses",
+        new PropertyMapping()
+            .withCircularReferenceMapping(
+                CircularReferenceMapping.builder()
+                    .withAnchorEdmPath("Addresses")
+                    .withStrategy(CircularStrategy.EMBED_LIMITED)
+                    .build()));
+    addressProperties.put("Street", new PropertyMapping());
+    addressProperties.put("City", new PropertyMapping());
+    addressProperties.put("ZipCode", new PropertyMapping());
+    Map<String, PropertyMapping> properties = new LinkedHashMap<>();
+    properties.put("plainString", new PropertyMapping());
+    properties.put("Name", new PropertyMapping());
+    properties.put("Addresses", new PropertyMapping().withProperties(addressProperties));
+    for (int i = 0; i < additionalProperties; i++) {
+      properties.put(
+          "group" + i,
+          new PropertyMapping()
+              .withProperties(
+                  Map.of(
+                      "first", new PropertyMapping(),
+                      "second", new PropertyMapping(),
+                      "third", new PropertyMapping())));
+    }
+    return new EntityMapping().withTable("Item").withProperties(properties);
+  }
+}
@@ -0,0 +1,61 @@
+package com.github.starnowski.jamolingo.benchmarks;
+
+import com.github.starnowski.jamolingo.core.context.DefaultEdmPathContextSearch;
+import com.github.starnowski.jamolingo.core.context.EdmPathContextSearch;
+import com.github.starnowski.jamolingo.core.context.EntityPropertiesMongoPathContext;
+import com.github.starnowski.jamolingo.core.context.EntityPropertiesMongoPathContextBuilder;
+import com.github.starnowski.jamolingo.core.context.MongoPathResolution;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the resolution of the MongoDB path for the EDM path, including paths that go through
+ * circular references, for mappings of different width.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntityPropertiesMongoPathContextBenchmark {
+
+  @Param({
+    "Name",
+    "Addresses/City",
+    "Addresses/BackUpAddresses/City",
+    "Addresses/BackUpAddresses/BackUpAddresses/BackUpAddresses/ZipCode",
+    "Addresses/BackUpAddresses/BackUpAddresses/BackUpAddresses/BackUpAddresses/BackUpAddresses"
+        + "/BackUpAddresses/Street"
+  })
+  public String edmPath;
+
+  @Param({"0", "1000"})
+  public int additionalProperties;
+
+  private EntityPropertiesMongoPathContext context;
+  private EdmPathContextSearch edmPathContextSearch;
+
+  @Setup
+  public void setup() {
+    context =
+        new EntityPropertiesMongoPathContextBuilder()
+            .build(BenchmarkFixtures.circularReferenceEntityMapping(additionalProperties));
+    edmPathContextSearch = new DefaultEdmPathContextSearch(100, 10, 100);
+  }
+
+  @Benchmark
+  public MongoPathResolution resolveMongoPathForEDMPath() {
+    return context.resolveMongoPathForEDMPath(edmPath, edmPathContextSearch);
+  }
+}
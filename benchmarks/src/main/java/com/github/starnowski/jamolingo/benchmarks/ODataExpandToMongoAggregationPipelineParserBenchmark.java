@@ -0,0 +1,72 @@
+package com.github.starnowski.jamolingo.benchmarks;
+
+import com.github.starnowski.jamolingo.core.operators.expand.ExpandOperatorResult;
+import com.github.starnowski.jamolingo.core.operators.expand.ExpandParserContext;
+import com.github.starnowski.jamolingo.core.operators.expand.ODataExpandToMongoAggregationPipelineParser;
+import com.github.starnowski.jamolingo.core.operators.expand.ODataExpandToMongoAggregationPipelineParser.DefaultExpandParserContext;
+import java.util.concurrent.TimeUnit;
+import org.apache.olingo.commons.api.edm.Edm;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the translation of an already parsed $expand option into the aggregation stages, for
+ * both the $graphLookup and the multi-level $lookup strategy. Run it with the "-prof gc" option to
+ * compare the allocation rate per translation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ODataExpandToMongoAggregationPipelineParserBenchmark {
+
+  @Param({
+    "category",
+    "category,children,treeType2s",
+    "children($levels=2)",
+    "children($levels=5)",
+    "children($levels=max)",
+    "children($levels=3;$filter=index in (2, 3, 4))",
+    "treeType2s($levels=5;$filter=index in (1, 2))",
+    "children($levels=max;$skip=1;$top=2;$orderby=index asc;$select=index)"
+  })
+  public String expand;
+
+  @Param({"false", "true"})
+  public boolean useLookupForLevelGreaterThanOne;
+
+  private ODataExpandToMongoAggregationPipelineParser parser;
+  private ExpandOption expandOption;
+  private ExpandParserContext context;
+
+  @Setup
+  public void setup() {
+    Edm edm = BenchmarkFixtures.loadEdm(BenchmarkFixtures.TREE_EDM);
+    expandOption =
+        BenchmarkFixtures.parseUri(edm, BenchmarkFixtures.TREE_ENTITY_SET, "$expand=" + expand)
+            .getExpandOption();
+    context =
+        DefaultExpandParserContext.builder()
+            .withUseLookupForLevelGreaterThanOne(useLookupForLevelGreaterThanOne)
+            .withMaxLevel(5)
+            .build();
+    parser = new ODataExpandToMongoAggregationPipelineParser();
+  }
+
+  @Benchmark
+  public ExpandOperatorResult parse() throws Exception {
+    return parser.parse(expandOption, context);
+  }
+}
@@ -0,0 +1,73 @@
+package com.github.starnowski.jamolingo.benchmarks;
+
+import com.github.starnowski.jamolingo.core.context.DefaultEdmMongoContextFacade;
+import com.github.starnowski.jamolingo.core.operators.filter.FilterOperatorResult;
+import com.github.starnowski.jamolingo.core.operators.filter.ODataFilterToMongoMatchParser;
+import java.util.concurrent.TimeUnit;
+import org.apache.olingo.commons.api.edm.Edm;
+import org.apache.olingo.server.api.uri.queryoption.FilterOption;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the translation of an already parsed $filter option into the $match stage. The Olingo
+ * parsing is done once in the setup, so only the jamolingo translation is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ODataFilterToMongoMatchParserBenchmark {
+
+  @Param({
+    // simple comparisons
+    "plainString eq 'abc'",
+    "genericInteger gt 5 and plainString ne 'abc'",
+    "smallInteger in (1, 2, 3, 4, 5)",
+    // deep boolean tree
+    "(genericInteger gt 5 and plainString ne 'abc') or (smallInteger lt 3 and isActive eq true)"
+        + " or (doubleValue ge 2.5 and (plainString eq 'x' or plainString eq 'y'"
+        + " or plainString eq 'z')) or (bigInteger le 100 and not (floatValue eq 1.5))",
+    // string functions
+    "startswith(plainString,'abc') and contains(nestedObject/index,'x')",
+    // any/all lambdas
+    "tags/any(t:t eq 'a' or t eq 'b')",
+    "complexList/any(c:c/someNumber gt 5 and c/someString eq 'a')",
+    "complexList/all(c:c/nestedComplexArray/all(n:n/stringVal eq 'val1' or n/stringVal eq 'test1')"
+        + " and c/someNumber ge 20)",
+    // lambdas that require $expr
+    "tags/any(t:length(t) gt 3)",
+    "numericArray/all(n:n add 2 gt round(n))"
+  })
+  public String filter;
+
+  private ODataFilterToMongoMatchParser parser;
+  private FilterOption filterOption;
+  private DefaultEdmMongoContextFacade edmMongoContextFacade;
+
+  @Setup
+  public void setup() {
+    Edm edm = BenchmarkFixtures.loadEdm(BenchmarkFixtures.FILTER_EDM);
+    filterOption =
+        BenchmarkFixtures.parseUri(edm, BenchmarkFixtures.FILTER_ENTITY_SET, "$filter=" + filter)
+            .getFilterOption();
+    edmMongoContextFacade = BenchmarkFixtures.filterEdmMongoContextFacade(edm);
+    parser = new ODataFilterToMongoMatchParser();
+  }
+
+  @Benchmark
+  public FilterOperatorResult parse() throws Exception {
+    return parser.parse(filterOption, edmMongoContextFacade);
+  }
+}
@@ -0,0 +1,56 @@
+package com.github.starnowski.jamolingo.benchmarks;
+
+import com.github.starnowski.jamolingo.core.context.DefaultEdmMongoContextFacade;
+import com.github.starnowski.jamolingo.core.operators.select.OdataSelectToMongoProjectParser;
+import com.github.starnowski.jamolingo.core.operators.select.SelectOperatorResult;
+import java.util.concurrent.TimeUnit;
+import org.apache.olingo.commons.api.edm.Edm;
+import org.apache.olingo.server.api.uri.queryoption.SelectOption;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures the translation of an already parsed $select option into the $project stage. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OdataSelectToMongoProjectParserBenchmark {
+
+  @Param({
+    "plainString",
+    "plainString,genericInteger,isActive,birthDate,timestamp",
+    "nestedObject/index,nestedObject/tokens,complexList/someString,complexList/someNumber",
+    "*"
+  })
+  public String select;
+
+  private OdataSelectToMongoProjectParser parser;
+  private SelectOption selectOption;
+  private DefaultEdmMongoContextFacade edmMongoContextFacade;
+
+  @Setup
+  public void setup() {
+    Edm edm = BenchmarkFixtures.loadEdm(BenchmarkFixtures.FILTER_EDM);
+    selectOption =
+        BenchmarkFixtures.parseUri(edm, BenchmarkFixtures.FILTER_ENTITY_SET, "$select=" + select)
+            .getSelectOption();
+    edmMongoContextFacade = BenchmarkFixtures.filterEdmMongoContextFacade(edm);
+    parser = new OdataSelectToMongoProjectParser();
+  }
+
+  @Benchmark
+  public SelectOperatorResult parse() {
+    return parser.parse(selectOption, edmMongoContextFacade);
+  }
+}
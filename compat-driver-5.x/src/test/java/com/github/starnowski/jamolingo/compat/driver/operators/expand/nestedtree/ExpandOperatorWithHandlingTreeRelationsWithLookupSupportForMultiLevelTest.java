@@ -1605,6 +1605,57 @@ public class ExpandOperatorWithHandlingTreeRelationsWithLookupSupportForMultiLev
         jsonCompareMode);
   }
 
+  @ParameterizedTest(name = "{2} - {0} - {1}")
+  @MethodSource("provideData")
+  public void
+      shouldReturnExpectedDocumentsForExpandOperatorWithGraphLookUpStrategyAndTreeBuiltOnServer(
+          KeyValue<String, String> rootMongoCollection,
+          Set<Integer> ids,
+          String expandPart,
+          String expectedJson,
+          JSONCompareMode jsonCompareMode)
+          throws UriValidationException,
+              UriParserException,
+              XMLStreamException,
+              ExpressionVisitException,
+              ODataApplicationException,
+              JSONException {
+    // GIVEN
+    MongoDatabase database = mongoClient.getDatabase(TEST_DATABASE);
+    MongoCollection<Document> collection = database.getCollection(rootMongoCollection.getKey());
+    Edm edm = loadEmdProvider("edm/tree_types.xml");
+    UriInfo uriInfo =
+        new Parser(edm, OData.newInstance())
+            .parseUri(rootMongoCollection.getValue(), expandPart, null, null);
+    ODataExpandToMongoAggregationPipelineParser tested =
+        new ODataExpandToMongoAggregationPipelineParser();
+
+    // WHEN
+    ExpandOperatorResult result =
+        tested.parse(
+            uriInfo.getExpandOption(),
+            ODataExpandToMongoAggregationPipelineParser.DefaultExpandParserContext.builder()
+                .withUseLookupForLevelGreaterThanOne(false)
+                .withBuildGraphLookUpTreeOnServer(true)
+                .build());
+    List<Bson> pipeline = new ArrayList<>();
+    pipeline.add(new Document("$match", new Document("_id", new Document("$in", ids))));
+    pipeline.addAll(result.getStageObjects());
+    pipeline.add(new Document("$sort", new Document("index", 1)));
+    System.out.println(wrapBsonList(pipeline).toJson());
+    List<Document> results = collection.aggregate(pipeline).into(new ArrayList<>());
+    String currentResult = wrapDocumentsList(results).toJson();
+    System.out.println(currentResult);
+
+    // THEN
+    JSONAssert.assertEquals(
+        """
+            {"value": %s }
+            """.formatted(expectedJson),
+        currentResult,
+        jsonCompareMode);
+  }
+
   private Document wrapBsonList(List<Bson> docs) {
     return new Document("value", docs);
   }
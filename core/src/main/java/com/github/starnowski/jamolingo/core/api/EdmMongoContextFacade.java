@@ -1,7 +1,11 @@
 package com.github.starnowski.jamolingo.core.api;
 
 import com.github.starnowski.jamolingo.core.context.MongoPathResolution;
+import java.util.List;
+import java.util.stream.Collectors;
 import org.apache.olingo.server.api.uri.UriInfoResource;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceProperty;
 
 /** Facade for resolving Mongo paths from EDM paths. */
 public interface EdmMongoContextFacade extends EdmPropertyMongoPathResolver {
@@ -14,6 +18,21 @@ public interface EdmMongoContextFacade extends EdmPropertyMongoPathResolver {
    */
   MongoPathResolution resolveMongoPathForEDMPath(UriInfoResource uriInfoResource);
 
+  /**
+   * Resolves the Mongo path for the given EDM path represented by the list of the property URI
+   * resource parts. The default implementation joins the property names with "/" and delegates to
+   * {@link #resolveMongoPathForEDMPath(String)}.
+   *
+   * @param uriResourceParts the property URI resource parts representing the EDM path
+   * @return the resolved Mongo path resolution
+   */
+  default MongoPathResolution resolveMongoPathForEDMPath(List<UriResource> uriResourceParts) {
+    return resolveMongoPathForEDMPath(
+        uriResourceParts.stream()
+            .map(p -> ((UriResourceProperty) p).getProperty().getName())
+            .collect(Collectors.joining("/")));
+  }
+
   /**
    * Returns the root Mongo path to prefix to all resolved paths.
    *
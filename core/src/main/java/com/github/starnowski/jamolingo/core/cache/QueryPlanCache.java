@@ -0,0 +1,267 @@
+package com.github.starnowski.jamolingo.core.cache;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe cache that maps the {@link QueryPlanCacheKey} to the already translated query plan.
+ * The cache is bounded by the maximum number of entries (the least recently used entry is evicted
+ * first) and optionally by the time to live of an entry. The cache counts hits, misses and
+ * evictions.
+ *
+ * <p>The cached value is shared between all callers, so it should be immutable. The loader is
+ * invoked outside of the cache lock, so in case of concurrent misses for the same key the plan can
+ * be translated more than once and the last translated value is stored.
+ *
+ * @param <V> type of the cached query plan
+ */
+public final class QueryPlanCache<V> {
+
+  /** Default maximum number of entries. */
+  public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+
+  private final int maximumSize;
+  private final Duration expireAfterWrite;
+  private final Clock clock;
+  private final LinkedHashMap<QueryPlanCacheKey, CacheEntry<V>> entries;
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+
+  private QueryPlanCache(int maximumSize, Duration expireAfterWrite, Clock clock) {
+    this.maximumSize = maximumSize;
+    this.expireAfterWrite = expireAfterWrite;
+    this.clock = clock;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  public static <V> Builder<V> builder() {
+    return new Builder<>();
+  }
+
+  /**
+   * Returns the cached query plan for the key.
+   *
+   * @param key the key
+   * @return the cached query plan or null if there is no valid entry for the key
+   */
+  public V getIfPresent(QueryPlanCacheKey key) {
+    synchronized (entries) {
+      CacheEntry<V> entry = entries.get(key);
+      if (entry != null && isExpired(entry, clock.millis())) {
+        entries.remove(key);
+        evictionCount.increment();
+        entry = null;
+      }
+      if (entry == null) {
+        missCount.increment();
+        return null;
+      }
+      hitCount.increment();
+      return entry.value;
+    }
+  }
+
+  /**
+   * Returns the cached query plan for the key or translates it with the loader and stores it in the
+   * cache.
+   *
+   * @param key the key
+   * @param loader the loader that translates the query plan
+   * @return the query plan
+   * @param <E> type of exception thrown by the loader
+   * @throws E if the loader fails, in such case nothing is stored in the cache
+   */
+  public <E extends Exception> V get(QueryPlanCacheKey key, QueryPlanLoader<V, E> loader) throws E {
+    V value = getIfPresent(key);
+    if (value != null) {
+      return value;
+    }
+    value = loader.load(key);
+    if (value != null) {
+      put(key, value);
+    }
+    return value;
+  }
+
+  /**
+   * Stores the query plan in the cache.
+   *
+   * @param key the key
+   * @param value the query plan
+   */
+  public void put(QueryPlanCacheKey key, V value) {
+    if (key == null || value == null) {
+      throw new IllegalArgumentException("The key and the value can not be null");
+    }
+    long now = clock.millis();
+    synchronized (entries) {
+      entries.put(key, new CacheEntry<>(value, now));
+      Iterator<Map.Entry<QueryPlanCacheKey, CacheEntry<V>>> iterator =
+          entries.entrySet().iterator();
+      while (entries.size() > maximumSize && iterator.hasNext()) {
+        iterator.next();
+        iterator.remove();
+        evictionCount.increment();
+      }
+    }
+  }
+
+  /**
+   * Removes the entry for the key.
+   *
+   * @param key the key
+   */
+  public void invalidate(QueryPlanCacheKey key) {
+    synchronized (entries) {
+      entries.remove(key);
+    }
+  }
+
+  /** Removes all entries. */
+  public void invalidateAll() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+
+  /**
+   * Returns the number of entries stored in the cache, including expired entries that were not yet
+   * removed.
+   *
+   * @return the number of entries
+   */
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  public long getMissCount() {
+    return missCount.sum();
+  }
+
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  public Duration getExpireAfterWrite() {
+    return expireAfterWrite;
+  }
+
+  private boolean isExpired(CacheEntry<V> entry, long now) {
+    return expireAfterWrite != null && now - entry.createdAt >= expireAfterWrite.toMillis();
+  }
+
+  @Override
+  public String toString() {
+    return "QueryPlanCache{"
+        + "maximumSize="
+        + maximumSize
+        + ", expireAfterWrite="
+        + expireAfterWrite
+        + ", size="
+        + size()
+        + ", hitCount="
+        + getHitCount()
+        + ", missCount="
+        + getMissCount()
+        + ", evictionCount="
+        + getEvictionCount()
+        + '}';
+  }
+
+  /**
+   * Function that translates the query plan for the key.
+   *
+   * @param <V> type of the query plan
+   * @param <E> type of exception thrown by the function
+   */
+  @FunctionalInterface
+  public interface QueryPlanLoader<V, E extends Exception> {
+
+    /**
+     * Translates the query plan.
+     *
+     * @param key the key
+     * @return the query plan
+     * @throws E if the translation fails
+     */
+    V load(QueryPlanCacheKey key) throws E;
+  }
+
+  private static final class CacheEntry<V> {
+    private final V value;
+    private final long createdAt;
+
+    private CacheEntry(V value, long createdAt) {
+      this.value = value;
+      this.createdAt = createdAt;
+    }
+  }
+
+  public static class Builder<V> {
+    private int maximumSize = DEFAULT_MAXIMUM_SIZE;
+    private Duration expireAfterWrite;
+    private Clock clock = Clock.systemUTC();
+
+    /**
+     * Sets the maximum number of entries.
+     *
+     * @param maximumSize the maximum number of entries, must be greater than zero
+     * @return the builder
+     */
+    public Builder<V> withMaximumSize(int maximumSize) {
+      this.maximumSize = maximumSize;
+      return this;
+    }
+
+    /**
+     * Sets the time to live of an entry. By default entries do not expire.
+     *
+     * @param expireAfterWrite the time to live, null means that entries do not expire
+     * @return the builder
+     */
+    public Builder<V> withExpireAfterWrite(Duration expireAfterWrite) {
+      this.expireAfterWrite = expireAfterWrite;
+      return this;
+    }
+
+    /**
+     * Sets the clock used to check the time to live of entries.
+     *
+     * @param clock the clock
+     * @return the builder
+     */
+    public Builder<V> withClock(Clock clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    public QueryPlanCache<V> build() {
+      if (maximumSize <= 0) {
+        throw new IllegalArgumentException("The maximum size has to be greater than zero");
+      }
+      if (expireAfterWrite != null
+          && (expireAfterWrite.isNegative() || expireAfterWrite.isZero())) {
+        throw new IllegalArgumentException("The expire after write duration has to be positive");
+      }
+      if (clock == null) {
+        throw new IllegalArgumentException("The clock can not be null");
+      }
+      return new QueryPlanCache<>(maximumSize, expireAfterWrite, clock);
+    }
+  }
+}
@@ -0,0 +1,152 @@
+package com.github.starnowski.jamolingo.core.cache;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Immutable key of the {@link QueryPlanCache}. The key consists of the entity set name and the
+ * canonical form of the query string. The canonical form is created by splitting the query string
+ * into options, decoding the percent-encoded characters, trimming option names and sorting the
+ * options by name. The relative order of options with the same name is preserved, so the same
+ * options passed in a different order or with a different encoding, for example {@code %24filter}
+ * and {@code $filter}, produce the same key.
+ */
+public final class QueryPlanCacheKey {
+
+  private static final Comparator<String[]> OPTION_NAME_COMPARATOR =
+      Comparator.comparing(option -> option[0]);
+
+  /** Characters that stay percent-encoded because decoding them would change the query. */
+  private static final String RESERVED_CHARACTERS = "&=%+";
+
+  private final String entitySet;
+  private final String normalizedQuery;
+
+  private QueryPlanCacheKey(String entitySet, String normalizedQuery) {
+    this.entitySet = entitySet;
+    this.normalizedQuery = normalizedQuery;
+  }
+
+  /**
+   * Creates a new key for the given entity set and query string.
+   *
+   * @param entitySet the entity set name
+   * @param query the query string, with or without the leading question mark, can be null
+   * @return the key
+   */
+  public static QueryPlanCacheKey of(String entitySet, String query) {
+    if (entitySet == null) {
+      throw new IllegalArgumentException("The entity set can not be null");
+    }
+    return new QueryPlanCacheKey(entitySet, normalizeQuery(query));
+  }
+
+  /**
+   * Returns the canonical form of the query string.
+   *
+   * @param query the query string, with or without the leading question mark, can be null
+   * @return the canonical form of the query string
+   */
+  public static String normalizeQuery(String query) {
+    if (query == null) {
+      return "";
+    }
+    String value = query.startsWith("?") ? query.substring(1) : query;
+    List<String[]> options = new ArrayList<>();
+    for (String segment : value.split("&")) {
+      if (segment.isBlank()) {
+        continue;
+      }
+      int separatorIndex = segment.indexOf('=');
+      if (separatorIndex < 0) {
+        options.add(new String[] {decode(segment).trim(), null});
+      } else {
+        options.add(
+            new String[] {
+              decode(segment.substring(0, separatorIndex)).trim(),
+              decode(segment.substring(separatorIndex + 1))
+            });
+      }
+    }
+    // List.sort is stable, options with the same name keep their original order
+    options.sort(OPTION_NAME_COMPARATOR);
+    StringBuilder sb = new StringBuilder();
+    for (String[] option : options) {
+      if (sb.length() > 0) {
+        sb.append('&');
+      }
+      sb.append(option[0]);
+      if (option[1] != null) {
+        sb.append('=').append(option[1]);
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Decodes the percent-encoded ASCII characters, except the reserved characters. The remaining
+   * escape sequences are written with the upper case hexadecimal digits.
+   */
+  private static String decode(String value) {
+    if (value.indexOf('%') < 0) {
+      return value;
+    }
+    StringBuilder sb = new StringBuilder(value.length());
+    int i = 0;
+    while (i < value.length()) {
+      char c = value.charAt(i);
+      int high = i + 2 < value.length() ? Character.digit(value.charAt(i + 1), 16) : -1;
+      int low = i + 2 < value.length() ? Character.digit(value.charAt(i + 2), 16) : -1;
+      if (c != '%' || high < 0 || low < 0) {
+        sb.append(c);
+        i++;
+        continue;
+      }
+      char decoded = (char) (high * 16 + low);
+      if (decoded < 0x80 && RESERVED_CHARACTERS.indexOf(decoded) < 0) {
+        sb.append(decoded);
+      } else {
+        sb.append('%').append(value.substring(i + 1, i + 3).toUpperCase(Locale.ROOT));
+      }
+      i += 3;
+    }
+    return sb.toString();
+  }
+
+  public String getEntitySet() {
+    return entitySet;
+  }
+
+  public String getNormalizedQuery() {
+    return normalizedQuery;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    QueryPlanCacheKey that = (QueryPlanCacheKey) o;
+    return Objects.equals(entitySet, that.entitySet)
+        && Objects.equals(normalizedQuery, that.normalizedQuery);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(entitySet, normalizedQuery);
+  }
+
+  @Override
+  public String toString() {
+    return "QueryPlanCacheKey{"
+        + "entitySet='"
+        + entitySet
+        + '\''
+        + ", normalizedQuery='"
+        + normalizedQuery
+        + '\''
+        + '}';
+  }
+}
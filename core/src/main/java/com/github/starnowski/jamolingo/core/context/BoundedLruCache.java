@@ -0,0 +1,61 @@
+package com.github.starnowski.jamolingo.core.context;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of the resolved paths. When the cache is full the least recently used entry is
+ * evicted, so the cache keeps the paths that are still in use. The cache can be shared between
+ * threads.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+final class BoundedLruCache<K, V> {
+
+  private final int maximumSize;
+  private final LinkedHashMap<K, V> entries;
+
+  BoundedLruCache(int maximumSize) {
+    this.maximumSize = maximumSize;
+    this.entries =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > BoundedLruCache.this.maximumSize;
+          }
+        };
+  }
+
+  /**
+   * Returns the value remembered for the key and marks it as recently used.
+   *
+   * @param key the key
+   * @return the value or null if the key is not remembered
+   */
+  V get(K key) {
+    synchronized (entries) {
+      return entries.get(key);
+    }
+  }
+
+  /**
+   * Remembers the value for the key, unless a value is already remembered.
+   *
+   * @param key the key
+   * @param value the value
+   * @return the value remembered for the key
+   */
+  V putIfAbsent(K key, V value) {
+    synchronized (entries) {
+      V previous = entries.putIfAbsent(key, value);
+      return previous == null ? value : previous;
+    }
+  }
+
+  int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+}
@@ -0,0 +1,293 @@
+package com.github.starnowski.jamolingo.core.context;
+
+import com.github.starnowski.jamolingo.common.beans.KeyValue;
+import com.github.starnowski.jamolingo.core.api.EdmMongoContextFacade;
+import com.github.starnowski.jamolingo.core.context.EntityPropertiesMongoPathContextBuilder.EntityPropertiesMongoPathResolverContext;
+import com.github.starnowski.jamolingo.core.mapping.EntityMapping;
+import com.github.starnowski.jamolingo.core.mapping.NavigationMapping;
+import com.github.starnowski.jamolingo.core.mapping.ODataMongoMapping;
+import com.github.starnowski.jamolingo.core.mapping.PropertyMapping;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.olingo.commons.api.edm.Edm;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.EdmNavigationProperty;
+import org.apache.olingo.commons.api.edm.EdmReferentialConstraint;
+import org.apache.olingo.commons.api.edm.EdmSchema;
+
+/**
+ * Model of the EDM entity types and their MongoDB mapping compiled once, for example at the
+ * application startup. The model holds for each mapped entity type the {@link
+ * EntityPropertiesMongoPathContext}, the {@link EdmMongoContextFacade}, the name of the MongoDB
+ * collection and the resolved join keys of the navigation properties.
+ *
+ * <p>The model is immutable and can be shared between threads. The code executed for each request
+ * only looks up the compiled values, so it does not have to build the facades or resolve the join
+ * keys again.
+ */
+public final class CompiledEdmMongoModel {
+
+  private final Map<String, EntityPropertiesMongoPathContext> entityPropertiesMongoPathContexts;
+  private final Map<String, EdmMongoContextFacade> edmTypeMapping;
+  private final Map<KeyValue<String, String>, String> edmTablesToMongoDBCollections;
+  private final Map<String, Map<String, NavigationJoinKeys>> navigationJoinKeys;
+
+  private CompiledEdmMongoModel(
+      Map<String, EntityPropertiesMongoPathContext> entityPropertiesMongoPathContexts,
+      Map<String, EdmMongoContextFacade> edmTypeMapping,
+      Map<KeyValue<String, String>, String> edmTablesToMongoDBCollections,
+      Map<String, Map<String, NavigationJoinKeys>> navigationJoinKeys) {
+    this.entityPropertiesMongoPathContexts =
+        Collections.unmodifiableMap(entityPropertiesMongoPathContexts);
+    this.edmTypeMapping = Collections.unmodifiableMap(edmTypeMapping);
+    this.edmTablesToMongoDBCollections = Collections.unmodifiableMap(edmTablesToMongoDBCollections);
+    this.navigationJoinKeys = Collections.unmodifiableMap(navigationJoinKeys);
+  }
+
+  /**
+   * Compiles the model for the entity types of the EDM that have the mapping, using the default
+   * resolver context.
+   *
+   * @param edm the EDM
+   * @param oDataMongoMapping the mapping of the EDM entity types
+   * @return the compiled model
+   * @throws IllegalArgumentException if the EDM or the mapping is null, or the mapping contains an
+   *     entity that does not exist in the EDM
+   */
+  public static CompiledEdmMongoModel compile(Edm edm, ODataMongoMapping oDataMongoMapping) {
+    return compile(edm, oDataMongoMapping, new EntityPropertiesMongoPathResolverContext(false));
+  }
+
+  /**
+   * Compiles the model for the entity types of the EDM that have the mapping.
+   *
+   * @param edm the EDM
+   * @param oDataMongoMapping the mapping of the EDM entity types
+   * @param entityPropertiesMongoPathResolverContext the resolver context used to build the {@link
+   *     EntityPropertiesMongoPathContext} of each entity type
+   * @return the compiled model
+   * @throws IllegalArgumentException if the EDM or the mapping is null, or the mapping contains an
+   *     entity that does not exist in the EDM
+   */
+  public static CompiledEdmMongoModel compile(
+      Edm edm,
+      ODataMongoMapping oDataMongoMapping,
+      EntityPropertiesMongoPathResolverContext entityPropertiesMongoPathResolverContext) {
+    if (edm == null) {
+      throw new IllegalArgumentException("The EDM can not be null");
+    }
+    if (oDataMongoMapping == null) {
+      throw new IllegalArgumentException("The ODataMongoMapping can not be null");
+    }
+    Map<String, EntityMapping> entities =
+        oDataMongoMapping.getEntities() == null
+            ? Collections.emptyMap()
+            : oDataMongoMapping.getEntities();
+    EntityPropertiesMongoPathContextBuilder contextBuilder =
+        new EntityPropertiesMongoPathContextBuilder();
+    Map<String, EntityPropertiesMongoPathContext> contexts = new LinkedHashMap<>();
+    Map<String, EdmMongoContextFacade> facades = new LinkedHashMap<>();
+    Map<KeyValue<String, String>, String> collections = new HashMap<>();
+    Map<String, EdmEntityType> entityTypes = new LinkedHashMap<>();
+    Set<String> matchedEntities = new HashSet<>();
+    for (EdmSchema schema : edm.getSchemas()) {
+      for (EdmEntityType entityType : schema.getEntityTypes()) {
+        EntityMapping entityMapping = entities.get(entityType.getName());
+        if (entityMapping == null
+            || (entityMapping.getNamespace() != null
+                && !entityMapping.getNamespace().equals(entityType.getNamespace()))) {
+          continue;
+        }
+        matchedEntities.add(entityType.getName());
+        String fullTypeName = fullTypeName(entityType);
+        EntityPropertiesMongoPathContext context =
+            contextBuilder.build(entityMapping, entityPropertiesMongoPathResolverContext);
+        contexts.put(fullTypeName, context);
+        facades.put(
+            fullTypeName,
+            DefaultEdmMongoContextFacade.builder()
+                .withEntityPropertiesMongoPathContext(context)
+                .build());
+        collections.put(
+            new KeyValue<>(entityType.getNamespace(), entityType.getName()),
+            entityMapping.getTable() == null ? fullTypeName : entityMapping.getTable());
+        entityTypes.put(fullTypeName, entityType);
+      }
+    }
+    for (String entityName : entities.keySet()) {
+      if (!matchedEntities.contains(entityName)) {
+        throw new IllegalArgumentException(
+            String.format(
+                "The entity mapping '%s' does not match any entity type of the EDM", entityName));
+      }
+    }
+    Map<String, Map<String, NavigationJoinKeys>> navigationJoinKeys = new LinkedHashMap<>();
+    for (Map.Entry<String, EdmEntityType> entry : entityTypes.entrySet()) {
+      Map<String, NavigationJoinKeys> joinKeys = new LinkedHashMap<>();
+      EntityMapping entityMapping = entities.get(entry.getValue().getName());
+      for (String navigationPropertyName : entry.getValue().getNavigationPropertyNames()) {
+        NavigationJoinKeys navigationJoin =
+            resolveNavigationJoinKeys(
+                entry.getValue().getNavigationProperty(navigationPropertyName),
+                facades.get(entry.getKey()),
+                facades,
+                collections,
+                entityMapping);
+        if (navigationJoin != null) {
+          joinKeys.put(navigationPropertyName, navigationJoin);
+        }
+      }
+      navigationJoinKeys.put(entry.getKey(), Collections.unmodifiableMap(joinKeys));
+    }
+    return new CompiledEdmMongoModel(contexts, facades, collections, navigationJoinKeys);
+  }
+
+  private static NavigationJoinKeys resolveNavigationJoinKeys(
+      EdmNavigationProperty navigationProperty,
+      EdmMongoContextFacade sourceFacade,
+      Map<String, EdmMongoContextFacade> facades,
+      Map<KeyValue<String, String>, String> collections,
+      EntityMapping entityMapping) {
+    EdmEntityType targetEntityType = navigationProperty.getType();
+    String targetFullTypeName = fullTypeName(targetEntityType);
+    String edmLocalField = null;
+    String edmForeignField = null;
+    List<EdmReferentialConstraint> referentialConstraints =
+        navigationProperty.getReferentialConstraints();
+    if (!referentialConstraints.isEmpty()) {
+      edmLocalField = referentialConstraints.get(0).getPropertyName();
+      edmForeignField = referentialConstraints.get(0).getReferencedPropertyName();
+    } else if (navigationProperty.getPartner() != null
+        && !navigationProperty.getPartner().getReferentialConstraints().isEmpty()) {
+      EdmReferentialConstraint constraint =
+          navigationProperty.getPartner().getReferentialConstraints().get(0);
+      edmLocalField = constraint.getReferencedPropertyName();
+      edmForeignField = constraint.getPropertyName();
+    }
+    String localField = resolveMongoPath(sourceFacade, edmLocalField);
+    String foreignField = resolveMongoPath(facades.get(targetFullTypeName), edmForeignField);
+    String targetCollection =
+        collections.getOrDefault(
+            new KeyValue<>(targetEntityType.getNamespace(), targetEntityType.getName()),
+            targetFullTypeName);
+    PropertyMapping propertyMapping =
+        entityMapping.getProperties() == null
+            ? null
+            : entityMapping.getProperties().get(navigationProperty.getName());
+    NavigationMapping navigationMapping =
+        propertyMapping == null ? null : propertyMapping.getNavigation();
+    if (navigationMapping != null) {
+      localField =
+          navigationMapping.getLocalField() == null
+              ? localField
+              : navigationMapping.getLocalField();
+      foreignField =
+          navigationMapping.getForeignField() == null
+              ? foreignField
+              : navigationMapping.getForeignField();
+    }
+    if (localField == null || foreignField == null) {
+      return null;
+    }
+    return new NavigationJoinKeys(
+        navigationProperty.getName(),
+        targetFullTypeName,
+        targetCollection,
+        localField,
+        foreignField,
+        navigationProperty.isCollection());
+  }
+
+  private static String resolveMongoPath(EdmMongoContextFacade facade, String edmPath) {
+    if (edmPath == null || facade == null) {
+      return edmPath;
+    }
+    return facade.resolveMongoPathForEDMPath(edmPath).getMongoPath();
+  }
+
+  private static String fullTypeName(EdmEntityType entityType) {
+    return entityType.getNamespace() + "." + entityType.getName();
+  }
+
+  /**
+   * Returns the facade of the entity type.
+   *
+   * @param fullTypeName the full name of the EDM entity type, for example "MyService.Category"
+   * @return the facade or null if the entity type has no mapping
+   */
+  public EdmMongoContextFacade getEdmMongoContextFacade(String fullTypeName) {
+    return edmTypeMapping.get(fullTypeName);
+  }
+
+  /**
+   * Returns the context that resolves the properties of the entity type to the Mongo paths.
+   *
+   * @param fullTypeName the full name of the EDM entity type, for example "MyService.Category"
+   * @return the context or null if the entity type has no mapping
+   */
+  public EntityPropertiesMongoPathContext getEntityPropertiesMongoPathContext(String fullTypeName) {
+    return entityPropertiesMongoPathContexts.get(fullTypeName);
+  }
+
+  /**
+   * Returns the name of the MongoDB collection of the entity type.
+   *
+   * @param namespace the namespace of the EDM entity type
+   * @param name the name of the EDM entity type
+   * @return the collection name or null if the entity type has no mapping
+   */
+  public String getCollectionName(String namespace, String name) {
+    return edmTablesToMongoDBCollections.get(new KeyValue<>(namespace, name));
+  }
+
+  /**
+   * Returns the resolved join keys of the navigation property.
+   *
+   * @param fullTypeName the full name of the source EDM entity type
+   * @param navigationPropertyName the name of the navigation property
+   * @return the join keys or null if the entity type has no mapping or the navigation property has
+   *     no referential constraint
+   */
+  public NavigationJoinKeys getNavigationJoinKeys(
+      String fullTypeName, String navigationPropertyName) {
+    Map<String, NavigationJoinKeys> joinKeys = navigationJoinKeys.get(fullTypeName);
+    return joinKeys == null ? null : joinKeys.get(navigationPropertyName);
+  }
+
+  /**
+   * Returns the read-only mapping between the full names of the EDM entity types and their facades,
+   * that can be passed to the {@code ExpandParserContext}.
+   *
+   * @return the read-only map
+   */
+  public Map<String, EdmMongoContextFacade> getEdmTypeMapping() {
+    return edmTypeMapping;
+  }
+
+  /**
+   * Returns the read-only mapping between the EDM entity types, represented by the namespace and
+   * the name, and their MongoDB collections, that can be passed to the {@code ExpandParserContext}.
+   *
+   * @return the read-only map
+   */
+  public Map<KeyValue<String, String>, String> getEdmTablesToMongoDBCollections() {
+    return edmTablesToMongoDBCollections;
+  }
+
+  @Override
+  public String toString() {
+    return "CompiledEdmMongoModel{"
+        + "entityTypes="
+        + edmTypeMapping.keySet()
+        + ", edmTablesToMongoDBCollections="
+        + edmTablesToMongoDBCollections
+        + ", navigationJoinKeys="
+        + navigationJoinKeys
+        + '}';
+  }
+}
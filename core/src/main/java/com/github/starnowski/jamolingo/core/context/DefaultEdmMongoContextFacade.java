@@ -2,17 +2,36 @@ package com.github.starnowski.jamolingo.core.context;
 
 import com.github.starnowski.jamolingo.core.api.EdmMongoContextFacade;
 import com.github.starnowski.jamolingo.core.api.EdmPropertyMongoPathResolver;
-import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.olingo.server.api.uri.UriInfoResource;
+import org.apache.olingo.server.api.uri.UriResource;
 import org.apache.olingo.server.api.uri.UriResourceProperty;
 
-/** Default implementation of {@link EdmMongoContextFacade}. */
+/**
+ * Default implementation of {@link EdmMongoContextFacade}.
+ *
+ * <p>The facade remembers the recently used resolved Mongo paths, including the paths prefixed with
+ * the root Mongo path, so the repeated resolution of the same EDM path returns the same instance
+ * without building any string. When the number of remembered paths reaches the limit, the least
+ * recently used path is evicted.
+ */
 public class DefaultEdmMongoContextFacade
     implements EdmMongoContextFacade, EdmPropertyMongoPathResolver {
 
+  /**
+   * Default maximum number of resolved EDM paths remembered by the facade for each lookup method.
+   */
+  static final int MAX_RESOLVED_EDM_PATHS = 10000;
+
+  private static final DefaultEdmMongoContextFacade WITHOUT_MAPPING =
+      new DefaultEdmMongoContextFacade(null, null, null);
+
   private final EntityPropertiesMongoPathContext entityPropertiesMongoPathContext;
   private final EdmPathContextSearch edmPathContextSearch;
   private final String rootMongoPath;
+  private final BoundedLruCache<String, MongoPathResolution> resolvedEdmPaths;
+  private final BoundedLruCache<List<String>, MongoPathResolution> resolvedSegmentPaths;
 
   /**
    * Constructs a new DefaultEdmMongoContextFacade.
@@ -26,9 +45,23 @@ public class DefaultEdmMongoContextFacade
       EntityPropertiesMongoPathContext entityPropertiesMongoPathContext,
       EdmPathContextSearch edmPathContextSearch,
       String rootMongoPath) {
+    this(
+        entityPropertiesMongoPathContext,
+        edmPathContextSearch,
+        rootMongoPath,
+        MAX_RESOLVED_EDM_PATHS);
+  }
+
+  DefaultEdmMongoContextFacade(
+      EntityPropertiesMongoPathContext entityPropertiesMongoPathContext,
+      EdmPathContextSearch edmPathContextSearch,
+      String rootMongoPath,
+      int maxResolvedEdmPaths) {
     this.entityPropertiesMongoPathContext = entityPropertiesMongoPathContext;
     this.edmPathContextSearch = edmPathContextSearch;
     this.rootMongoPath = rootMongoPath;
+    this.resolvedEdmPaths = new BoundedLruCache<>(maxResolvedEdmPaths);
+    this.resolvedSegmentPaths = new BoundedLruCache<>(maxResolvedEdmPaths);
   }
 
   /**
@@ -40,21 +73,36 @@ public class DefaultEdmMongoContextFacade
     return new DefaultEdmMongoContextFacadeBuilder();
   }
 
+  /**
+   * Returns the shared facade without the entity properties mapping. The facade maps the EDM paths
+   * directly to the Mongo paths, replacing the "/" delimiter with ".". The facade is immutable, so
+   * the same instance is returned for each call.
+   *
+   * @return the facade without mapping
+   */
+  public static DefaultEdmMongoContextFacade withoutMapping() {
+    return WITHOUT_MAPPING;
+  }
+
   @Override
   public MongoPathResolution resolveMongoPathForEDMPath(UriInfoResource uriInfoResource) {
-    MongoPathResolution mongoPathResolution;
-    if (entityPropertiesMongoPathContext == null) {
-      String result = preparePath(uriInfoResource, ".");
-      mongoPathResolution = new InnerMongoPathResolution(result);
-    } else {
-      String edmPath = preparePath(uriInfoResource, "/");
-      mongoPathResolution =
-          edmPathContextSearch == null
-              ? entityPropertiesMongoPathContext.resolveMongoPathForEDMPath(edmPath)
-              : entityPropertiesMongoPathContext.resolveMongoPathForEDMPath(
-                  edmPath, edmPathContextSearch);
+    return resolveMongoPathForEDMPath(uriInfoResource.getUriResourceParts());
+  }
+
+  @Override
+  public MongoPathResolution resolveMongoPathForEDMPath(List<UriResource> uriResourceParts) {
+    List<String> segments = new ArrayList<>(uriResourceParts.size());
+    for (UriResource part : uriResourceParts) {
+      segments.add(segmentName(part));
     }
-    return wrapWithRootMongoPathIfNotNull(mongoPathResolution);
+    MongoPathResolution mongoPathResolution = resolvedSegmentPaths.get(segments);
+    if (mongoPathResolution == null) {
+      mongoPathResolution = resolveMongoPathForEDMPath(String.join("/", segments));
+      if (mongoPathResolution != null) {
+        mongoPathResolution = resolvedSegmentPaths.putIfAbsent(segments, mongoPathResolution);
+      }
+    }
+    return mongoPathResolution;
   }
 
   @Override
@@ -70,14 +118,26 @@ public class DefaultEdmMongoContextFacade
     return mongoPathResolution;
   }
 
-  private static String preparePath(UriInfoResource uriInfoResource, String delimiter) {
-    return uriInfoResource.getUriResourceParts().stream()
-        .map(p -> ((UriResourceProperty) p).getProperty().getName())
-        .collect(Collectors.joining(delimiter));
+  private static String segmentName(UriResource uriResource) {
+    return ((UriResourceProperty) uriResource).getProperty().getName();
   }
 
   @Override
   public MongoPathResolution resolveMongoPathForEDMPath(String edmPath) {
+    if (edmPath == null) {
+      return resolveMongoPathForNotRememberedEDMPath(null);
+    }
+    MongoPathResolution mongoPathResolution = resolvedEdmPaths.get(edmPath);
+    if (mongoPathResolution == null) {
+      mongoPathResolution = resolveMongoPathForNotRememberedEDMPath(edmPath);
+      if (mongoPathResolution != null) {
+        mongoPathResolution = resolvedEdmPaths.putIfAbsent(edmPath, mongoPathResolution);
+      }
+    }
+    return mongoPathResolution;
+  }
+
+  private MongoPathResolution resolveMongoPathForNotRememberedEDMPath(String edmPath) {
     MongoPathResolution mongoPathResolution;
     if (entityPropertiesMongoPathContext == null) {
       mongoPathResolution = new InnerMongoPathResolution(edmPath.replace("/", "."));
@@ -108,16 +168,18 @@ public class DefaultEdmMongoContextFacade
   private static final class RootMongoPathDecorator implements MongoPathResolution {
     private final String rootMongoPath;
     private final MongoPathResolution originalMongoPathResolution;
+    private final String mongoPath;
 
     public RootMongoPathDecorator(
         String rootMongoPath, MongoPathResolution originalMongoPathResolution) {
       this.rootMongoPath = rootMongoPath;
       this.originalMongoPathResolution = originalMongoPathResolution;
+      this.mongoPath = rootMongoPath + "." + originalMongoPathResolution.getMongoPath();
     }
 
     @Override
     public String getMongoPath() {
-      return rootMongoPath + "." + originalMongoPathResolution.getMongoPath();
+      return mongoPath;
     }
   }
 
@@ -1,9 +1,8 @@
 package com.github.starnowski.jamolingo.core.context;
 
-import static com.github.starnowski.jamolingo.core.utils.Constants.ODATA_PATH_SEPARATOR_CHARACTER;
-
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 
@@ -16,18 +15,49 @@ public class DefaultEntityPropertiesMongoPathContext implements EntityProperties
   private static final String MONGO_EXCEEDED_CIRCULAR_REFERENCE_DEPTH_EXCEPTION_MESSAGE_PATTERN =
       "Circular edm path '%s' exceeded max depth %s in main edm path '%s'";
 
+  /**
+   * Default maximum number of resolved circular reference paths remembered by the context. When the
+   * limit is reached, the least recently used path is evicted.
+   */
+  static final int MAX_RESOLVED_CIRCULAR_PATHS = 10000;
+
+  private static final EdmPathContextSearch DEFAULT_EDM_PATH_CONTEXT_SEARCH =
+      DefaultEdmPathContextSearch.builder().build();
+
   /**
    * Constructs a new DefaultEntityPropertiesMongoPathContext.
    *
    * @param edmToMongoPath a map of EDM paths to Mongo paths
    */
   public DefaultEntityPropertiesMongoPathContext(Map<String, MongoPathEntry> edmToMongoPath) {
+    this(new LinkedHashMap<>(edmToMongoPath), null);
+  }
+
+  DefaultEntityPropertiesMongoPathContext(
+      Map<String, MongoPathEntry> edmToMongoPath, EdmPathPrefixIndex edmPathPrefixIndex) {
+    this(edmToMongoPath, edmPathPrefixIndex, MAX_RESOLVED_CIRCULAR_PATHS);
+  }
+
+  DefaultEntityPropertiesMongoPathContext(
+      Map<String, MongoPathEntry> edmToMongoPath,
+      EdmPathPrefixIndex edmPathPrefixIndex,
+      int maxResolvedCircularPaths) {
+    this.resolvedCircularPaths = new BoundedLruCache<>(maxResolvedCircularPaths);
     this.edmToMongoPath = Collections.unmodifiableMap(edmToMongoPath);
+    Map<String, DefaultMongoPathResolution> resolutions = new HashMap<>();
+    edmToMongoPath.forEach(
+        (edmPath, entry) ->
+            resolutions.put(edmPath, new DefaultMongoPathResolution(entry.getMongoPath())));
+    this.mappedPathResolutions = resolutions;
+    this.edmPathPrefixIndex =
+        edmPathPrefixIndex == null
+            ? EdmPathPrefixIndex.of(edmToMongoPath.keySet())
+            : edmPathPrefixIndex;
   }
 
   @Override
   public MongoPathResolution resolveMongoPathForEDMPath(String edmPath) {
-    return resolveMongoPathForEDMPath(edmPath, DefaultEdmPathContextSearch.builder().build());
+    return resolveMongoPathForEDMPath(edmPath, DEFAULT_EDM_PATH_CONTEXT_SEARCH);
   }
 
   @Override
@@ -36,9 +66,16 @@ public class DefaultEntityPropertiesMongoPathContext implements EntityProperties
     if (edmPath == null) {
       return null;
     }
-    MongoPathEntry entry = this.edmToMongoPath.get(edmPath);
-    if (entry == null) {
-      String result = null;
+    DefaultMongoPathResolution mappedPathResolution = this.mappedPathResolutions.get(edmPath);
+    if (mappedPathResolution == null) {
+      ResolvedCircularPathKey resolvedCircularPathKey =
+          new ResolvedCircularPathKey(edmPath, edmPathContextSearch);
+      DefaultMongoPathResolution resolvedCircularPath =
+          resolvedCircularPaths.get(resolvedCircularPathKey);
+      if (resolvedCircularPath != null) {
+        return resolvedCircularPath;
+      }
+      String result;
       try {
         result =
             tryToResolveCircularReferencesMongoPath(
@@ -66,18 +103,17 @@ public class DefaultEntityPropertiesMongoPathContext implements EntityProperties
         throw new EntityPropertiesMongoPathContext.InvalidEDMPathException(
             "No '%s' EDM path found".formatted(edmPath));
       }
-      return new DefaultMongoPathResolution(result);
+      return resolvedCircularPaths.putIfAbsent(
+          resolvedCircularPathKey, new DefaultMongoPathResolution(result));
+    } else if (edmPathContextSearch.getMongoPathMaxDepth() != null
+        && mappedPathResolution.depth > edmPathContextSearch.getMongoPathMaxDepth()) {
+      throw new EntityPropertiesMongoPathContext.MongoPathMaxDepthException(
+          MONGO_PATH_MAX_DEPTH_EXCEPTION_MESSAGE_PATTERN.formatted(
+              mappedPathResolution.getMongoPath(),
+              edmPath,
+              edmPathContextSearch.getMongoPathMaxDepth()));
     } else {
-      String mongoPath = entry.getMongoPath();
-      if (edmPathContextSearch.getMongoPathMaxDepth() == null) {
-        return new DefaultMongoPathResolution(mongoPath);
-      } else if (mongoPath.split("\\.").length > edmPathContextSearch.getMongoPathMaxDepth()) {
-        throw new EntityPropertiesMongoPathContext.MongoPathMaxDepthException(
-            MONGO_PATH_MAX_DEPTH_EXCEPTION_MESSAGE_PATTERN.formatted(
-                mongoPath, edmPath, edmPathContextSearch.getMongoPathMaxDepth()));
-      } else {
-        return new DefaultMongoPathResolution(mongoPath);
-      }
+      return mappedPathResolution;
     }
   }
 
@@ -87,31 +123,10 @@ public class DefaultEntityPropertiesMongoPathContext implements EntityProperties
           InternalMaxCircularLimitPerEdmPathException,
           InternalInvalidAnchorPathException,
           InternalExceededTotalCircularReferenceLimitException {
-    String longestMatchingEDMPath =
-        edmToMongoPath.keySet().stream()
-            .filter(edmPath::startsWith)
-            .max(
-                (s1, s2) -> {
-                  if (s1.length() > s2.length()) {
-                    return 1;
-                  } else if (s1.length() < s2.length()) {
-                    return -1;
-                  }
-                  return 0;
-                })
-            .orElse(null);
+    String longestMatchingEDMPath = edmPathPrefixIndex.findLongestParentPath(edmPath);
     if (longestMatchingEDMPath == null) {
       return null;
     }
-    if (!edmPath
-        .substring(longestMatchingEDMPath.length())
-        .startsWith(ODATA_PATH_SEPARATOR_CHARACTER)) {
-      /*
-       * Although the chosen edm part is a prefix for edmPath, the other part does not start with '/' character
-       * which means that chosen part does not match because it is not correct parent.
-       */
-      return null;
-    }
     // resolve type
     // get type mongoPath
     MongoPathEntry baseEDMProperty = this.edmToMongoPath.get(longestMatchingEDMPath);
@@ -183,12 +198,59 @@ public class DefaultEntityPropertiesMongoPathContext implements EntityProperties
 
   private final Map<String, MongoPathEntry> edmToMongoPath;
 
+  private final EdmPathPrefixIndex edmPathPrefixIndex;
+
+  /** Resolutions of the mapped EDM paths, created once so that the lookup does not allocate. */
+  private final Map<String, DefaultMongoPathResolution> mappedPathResolutions;
+
+  private final BoundedLruCache<ResolvedCircularPathKey, DefaultMongoPathResolution>
+      resolvedCircularPaths;
+
+  /**
+   * Key of the resolved circular reference path. The result of the resolution depends only on the
+   * EDM path and on the limits of the search, so the search is represented by its limits.
+   */
+  private static final class ResolvedCircularPathKey {
+
+    private final String edmPath;
+    private final Integer mongoPathMaxDepth;
+    private final Integer maxCircularLimitPerEdmPath;
+    private final Integer maxCircularLimitForAllEdmPaths;
+
+    private ResolvedCircularPathKey(String edmPath, EdmPathContextSearch edmPathContextSearch) {
+      this.edmPath = edmPath;
+      this.mongoPathMaxDepth = edmPathContextSearch.getMongoPathMaxDepth();
+      this.maxCircularLimitPerEdmPath = edmPathContextSearch.getMaxCircularLimitPerEdmPath();
+      this.maxCircularLimitForAllEdmPaths =
+          edmPathContextSearch.getMaxCircularLimitForAllEdmPaths();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      ResolvedCircularPathKey that = (ResolvedCircularPathKey) o;
+      return Objects.equals(edmPath, that.edmPath)
+          && Objects.equals(mongoPathMaxDepth, that.mongoPathMaxDepth)
+          && Objects.equals(maxCircularLimitPerEdmPath, that.maxCircularLimitPerEdmPath)
+          && Objects.equals(maxCircularLimitForAllEdmPaths, that.maxCircularLimitForAllEdmPaths);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(
+          edmPath, mongoPathMaxDepth, maxCircularLimitPerEdmPath, maxCircularLimitForAllEdmPaths);
+    }
+  }
+
   private static class DefaultMongoPathResolution implements MongoPathResolution {
 
     private final String mongoPath;
+    private final int depth;
 
     private DefaultMongoPathResolution(String mongoPath) {
       this.mongoPath = mongoPath;
+      this.depth = mongoPath == null ? 0 : mongoPath.split("\\.").length;
     }
 
     @Override
@@ -0,0 +1,80 @@
+package com.github.starnowski.jamolingo.core.context;
+
+import static com.github.starnowski.jamolingo.core.utils.Constants.ODATA_PATH_SEPARATOR_CHARACTER;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Segment trie of the EDM paths. The index is built once for the set of EDM paths and resolves the
+ * longest EDM path that is a parent of the given path in time proportional to the length of the
+ * path, independently of the number of indexed paths.
+ */
+final class EdmPathPrefixIndex {
+
+  private final Node root = new Node();
+
+  private EdmPathPrefixIndex() {}
+
+  /**
+   * Builds the index for the EDM paths.
+   *
+   * @param edmPaths the EDM paths
+   * @return the index
+   */
+  static EdmPathPrefixIndex of(Collection<String> edmPaths) {
+    EdmPathPrefixIndex index = new EdmPathPrefixIndex();
+    for (String edmPath : edmPaths) {
+      index.add(edmPath);
+    }
+    return index;
+  }
+
+  private void add(String edmPath) {
+    Node current = root;
+    int start = 0;
+    while (true) {
+      int end = edmPath.indexOf(ODATA_PATH_SEPARATOR_CHARACTER, start);
+      String segment = end < 0 ? edmPath.substring(start) : edmPath.substring(start, end);
+      current = current.children.computeIfAbsent(segment, key -> new Node());
+      if (end < 0) {
+        current.edmPath = edmPath;
+        return;
+      }
+      start = end + ODATA_PATH_SEPARATOR_CHARACTER.length();
+    }
+  }
+
+  /**
+   * Returns the longest indexed EDM path that is a parent of the given path. The returned path is
+   * always followed by the separator in the given path, so the path itself is never returned.
+   *
+   * @param edmPath the EDM path
+   * @return the longest indexed parent path or null if there is no such path
+   */
+  String findLongestParentPath(String edmPath) {
+    Node current = root;
+    String result = null;
+    int start = 0;
+    while (true) {
+      int end = edmPath.indexOf(ODATA_PATH_SEPARATOR_CHARACTER, start);
+      if (end < 0) {
+        return result;
+      }
+      current = current.children.get(edmPath.substring(start, end));
+      if (current == null) {
+        return result;
+      }
+      if (current.edmPath != null) {
+        result = current.edmPath;
+      }
+      start = end + ODATA_PATH_SEPARATOR_CHARACTER.length();
+    }
+  }
+
+  private static final class Node {
+    private final Map<String, Node> children = new HashMap<>();
+    private String edmPath;
+  }
+}
@@ -57,7 +57,8 @@ public class EntityPropertiesMongoPathContextBuilder {
       // ExpandAsterisk = true (all fields defined in EDM)
     }
     validateCircularReferences(out);
-    return new DefaultEntityPropertiesMongoPathContext(out.edmToMongoPath);
+    return new DefaultEntityPropertiesMongoPathContext(
+        out.edmToMongoPath, EdmPathPrefixIndex.of(out.edmToMongoPath.keySet()));
   }
 
   private void validateCircularReferences(EntityPropertiesMongoPathContextOutPut out) {
@@ -0,0 +1,143 @@
+package com.github.starnowski.jamolingo.core.context;
+
+import java.util.Objects;
+
+/**
+ * Resolved join keys of the EDM navigation property. The keys are the Mongo paths of the properties
+ * used in the referential constraint of the navigation property or of its partner.
+ */
+public final class NavigationJoinKeys {
+
+  private final String navigationPropertyName;
+  private final String targetEntityTypeName;
+  private final String targetCollection;
+  private final String localField;
+  private final String foreignField;
+  private final boolean collection;
+
+  /**
+   * Constructs a new NavigationJoinKeys.
+   *
+   * @param navigationPropertyName the name of the navigation property
+   * @param targetEntityTypeName the full name of the target EDM entity type
+   * @param targetCollection the name of the target MongoDB collection
+   * @param localField the Mongo path of the join property in the source entity
+   * @param foreignField the Mongo path of the join property in the target entity
+   * @param collection true if the navigation property is a collection
+   */
+  public NavigationJoinKeys(
+      String navigationPropertyName,
+      String targetEntityTypeName,
+      String targetCollection,
+      String localField,
+      String foreignField,
+      boolean collection) {
+    this.navigationPropertyName = navigationPropertyName;
+    this.targetEntityTypeName = targetEntityTypeName;
+    this.targetCollection = targetCollection;
+    this.localField = localField;
+    this.foreignField = foreignField;
+    this.collection = collection;
+  }
+
+  /**
+   * Returns the name of the navigation property.
+   *
+   * @return the navigation property name
+   */
+  public String getNavigationPropertyName() {
+    return navigationPropertyName;
+  }
+
+  /**
+   * Returns the full name of the target EDM entity type, for example "MyService.Category".
+   *
+   * @return the target entity type name
+   */
+  public String getTargetEntityTypeName() {
+    return targetEntityTypeName;
+  }
+
+  /**
+   * Returns the name of the target MongoDB collection.
+   *
+   * @return the target collection name
+   */
+  public String getTargetCollection() {
+    return targetCollection;
+  }
+
+  /**
+   * Returns the Mongo path of the join property in the source entity.
+   *
+   * @return the local field
+   */
+  public String getLocalField() {
+    return localField;
+  }
+
+  /**
+   * Returns the Mongo path of the join property in the target entity.
+   *
+   * @return the foreign field
+   */
+  public String getForeignField() {
+    return foreignField;
+  }
+
+  /**
+   * Returns true if the navigation property is a collection.
+   *
+   * @return true for the collection navigation property
+   */
+  public boolean isCollection() {
+    return collection;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    NavigationJoinKeys that = (NavigationJoinKeys) o;
+    return collection == that.collection
+        && Objects.equals(navigationPropertyName, that.navigationPropertyName)
+        && Objects.equals(targetEntityTypeName, that.targetEntityTypeName)
+        && Objects.equals(targetCollection, that.targetCollection)
+        && Objects.equals(localField, that.localField)
+        && Objects.equals(foreignField, that.foreignField);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(
+        navigationPropertyName,
+        targetEntityTypeName,
+        targetCollection,
+        localField,
+        foreignField,
+        collection);
+  }
+
+  @Override
+  public String toString() {
+    return "NavigationJoinKeys{"
+        + "navigationPropertyName='"
+        + navigationPropertyName
+        + '\''
+        + ", targetEntityTypeName='"
+        + targetEntityTypeName
+        + '\''
+        + ", targetCollection='"
+        + targetCollection
+        + '\''
+        + ", localField='"
+        + localField
+        + '\''
+        + ", foreignField='"
+        + foreignField
+        + '\''
+        + ", collection="
+        + collection
+        + '}';
+  }
+}
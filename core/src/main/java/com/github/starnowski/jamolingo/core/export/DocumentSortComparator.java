@@ -0,0 +1,148 @@
+package com.github.starnowski.jamolingo.core.export;
+
+import com.github.starnowski.jamolingo.core.operators.orderby.SortProperty;
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+
+/**
+ * Compares the documents by the sort properties in the order of the MongoDB $sort stage for the
+ * scalar values: null and missing values, numbers, strings, ObjectId, booleans and dates. The
+ * strings are compared by the UTF-16 code units, which matches the simple binary collation for the
+ * characters of the Basic Multilingual Plane.
+ */
+final class DocumentSortComparator implements Comparator<Document> {
+
+  private final List<SortProperty> sortProperties;
+
+  DocumentSortComparator(List<SortProperty> sortProperties) {
+    this.sortProperties = List.copyOf(sortProperties);
+  }
+
+  @Override
+  public int compare(Document first, Document second) {
+    for (SortProperty property : sortProperties) {
+      int result =
+          compareValues(
+              readValue(first, property.getPropertyName()),
+              readValue(second, property.getPropertyName()));
+      if (result != 0) {
+        return property.isDescending() ? -result : result;
+      }
+    }
+    return 0;
+  }
+
+  static int compareValues(Object first, Object second) {
+    int firstRank = rank(first);
+    int secondRank = rank(second);
+    if (firstRank != secondRank) {
+      return Integer.compare(firstRank, secondRank);
+    }
+    if (first == null) {
+      return 0;
+    }
+    if (first instanceof Number) {
+      // NaN is lower than the other numbers
+      boolean firstNaN = isNaN((Number) first);
+      boolean secondNaN = isNaN((Number) second);
+      if (firstNaN || secondNaN) {
+        return Boolean.compare(secondNaN, firstNaN);
+      }
+      // The infinities can not be converted to BigDecimal
+      int firstInfinity = infinitySign((Number) first);
+      int secondInfinity = infinitySign((Number) second);
+      if (firstInfinity != 0 || secondInfinity != 0) {
+        return Integer.compare(firstInfinity, secondInfinity);
+      }
+      return toBigDecimal((Number) first).compareTo(toBigDecimal((Number) second));
+    }
+    if (first instanceof Comparable && first.getClass().equals(second.getClass())) {
+      @SuppressWarnings("unchecked")
+      Comparable<Object> comparable = (Comparable<Object>) first;
+      return comparable.compareTo(second);
+    }
+    return first.toString().compareTo(second.toString());
+  }
+
+  static Object readValue(Document document, String path) {
+    Object current = document;
+    for (String part : path.split("\\.")) {
+      if (!(current instanceof Document)) {
+        return null;
+      }
+      current = ((Document) current).get(part);
+    }
+    return current;
+  }
+
+  private static int rank(Object value) {
+    if (value == null) {
+      return 0;
+    }
+    if (value instanceof Number) {
+      return 1;
+    }
+    if (value instanceof String) {
+      return 2;
+    }
+    if (value instanceof Document) {
+      return 3;
+    }
+    if (value instanceof List) {
+      return 4;
+    }
+    if (value instanceof ObjectId) {
+      return 6;
+    }
+    if (value instanceof Boolean) {
+      return 7;
+    }
+    if (value instanceof Date) {
+      return 8;
+    }
+    return 5;
+  }
+
+  private static boolean isNaN(Number number) {
+    if (number instanceof Decimal128) {
+      return ((Decimal128) number).isNaN();
+    }
+    return (number instanceof Double || number instanceof Float)
+        && Double.isNaN(number.doubleValue());
+  }
+
+  private static int infinitySign(Number number) {
+    if (number instanceof Decimal128) {
+      Decimal128 decimal = (Decimal128) number;
+      return decimal.isInfinite() ? (decimal.isNegative() ? -1 : 1) : 0;
+    }
+    if ((number instanceof Double || number instanceof Float)
+        && Double.isInfinite(number.doubleValue())) {
+      return number.doubleValue() < 0 ? -1 : 1;
+    }
+    return 0;
+  }
+
+  private static BigDecimal toBigDecimal(Number number) {
+    if (number instanceof Decimal128) {
+      try {
+        return ((Decimal128) number).bigDecimalValue();
+      } catch (ArithmeticException e) {
+        // The negative zero can not be converted to BigDecimal
+        return BigDecimal.ZERO;
+      }
+    }
+    if (number instanceof BigDecimal) {
+      return (BigDecimal) number;
+    }
+    if (number instanceof Double || number instanceof Float) {
+      return BigDecimal.valueOf(number.doubleValue());
+    }
+    return BigDecimal.valueOf(number.longValue());
+  }
+}
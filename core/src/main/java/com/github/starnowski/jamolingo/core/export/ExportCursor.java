@@ -0,0 +1,339 @@
+package com.github.starnowski.jamolingo.core.export;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+/**
+ * Iterator returned by the {@link PartitionedExportExecutor} with the documents of all partitions.
+ * Closing the cursor before all documents are read cancels the reading of the partitions and closes
+ * their cursors. When reading one of the partitions fails, the other partitions are cancelled and
+ * the {@link ExportException} is thrown by the {@link #hasNext()} or {@link #next()} method.
+ *
+ * <p>The task of a partition reads the documents until the queue of the partition is full and then
+ * ends without waiting. The task is submitted again when the cursor takes a document from the
+ * queue, so the tasks never block the threads of the executor service and the ordered merge, which
+ * waits for the first document of each partition, can not deadlock when the executor service has
+ * fewer threads than partitions.
+ *
+ * <p>The cursor is not thread safe, the same as the MongoCursor.
+ */
+public final class ExportCursor implements Iterator<Document>, AutoCloseable {
+
+  private static final Object END = new Object();
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+  private final List<BlockingQueue<Object>> queues;
+  private final Comparator<Document> comparator;
+  private final List<PartitionReader> readers = new ArrayList<>();
+  private final ExecutorService ownedExecutorService;
+  private final PriorityQueue<Head> heads;
+  private int remainingPartitions;
+  private Document nextDocument;
+  private boolean started;
+  private boolean closed;
+
+  private ExportCursor(
+      List<BlockingQueue<Object>> queues,
+      Comparator<Document> comparator,
+      ExecutorService ownedExecutorService,
+      int partitionCount) {
+    this.queues = queues;
+    this.comparator = comparator;
+    this.ownedExecutorService = ownedExecutorService;
+    this.remainingPartitions = partitionCount;
+    this.heads =
+        comparator == null
+            ? null
+            : new PriorityQueue<>(
+                Comparator.<Head, Document>comparing(head -> head.document, comparator)
+                    .thenComparingInt(head -> head.partition));
+  }
+
+  static ExportCursor start(
+      List<List<Bson>> pipelines,
+      PartitionedExportExecutor.PipelineExecutor pipelineExecutor,
+      Comparator<Document> comparator,
+      ExecutorService executorService,
+      int queueCapacity) {
+    if (pipelineExecutor == null) {
+      throw new IllegalArgumentException("The pipeline executor can not be null");
+    }
+    ExecutorService ownedExecutorService =
+        executorService == null
+            ? Executors.newFixedThreadPool(pipelines.size(), ExportCursor::newThread)
+            : null;
+    List<BlockingQueue<Object>> queues = new ArrayList<>();
+    if (comparator == null) {
+      // The partitions share one queue with the capacity of all partitions, the documents are
+      // returned in the order of reading
+      BlockingQueue<Object> queue =
+          new ArrayBlockingQueue<>(
+              (int) Math.min(Integer.MAX_VALUE, (long) queueCapacity * pipelines.size()));
+      for (int i = 0; i < pipelines.size(); i++) {
+        queues.add(queue);
+      }
+    } else {
+      for (int i = 0; i < pipelines.size(); i++) {
+        queues.add(new ArrayBlockingQueue<>(queueCapacity));
+      }
+    }
+    ExportCursor cursor =
+        new ExportCursor(queues, comparator, ownedExecutorService, pipelines.size());
+    ExecutorService executor = executorService == null ? ownedExecutorService : executorService;
+    for (int i = 0; i < pipelines.size(); i++) {
+      cursor.readers.add(
+          new PartitionReader(pipelines.get(i), pipelineExecutor, queues.get(i), executor));
+    }
+    for (PartitionReader reader : cursor.readers) {
+      reader.submit();
+    }
+    return cursor;
+  }
+
+  private static Thread newThread(Runnable runnable) {
+    Thread thread = new Thread(runnable, "jamolingo-export-" + THREAD_COUNTER.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (nextDocument == null && !closed) {
+      nextDocument = comparator == null ? takeUnordered() : takeOrdered();
+    }
+    return nextDocument != null;
+  }
+
+  @Override
+  public Document next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Document document = nextDocument;
+    nextDocument = null;
+    return document;
+  }
+
+  private Document takeUnordered() {
+    BlockingQueue<Object> queue = queues.get(0);
+    while (remainingPartitions > 0) {
+      Object element = take(queue);
+      // One document was taken, so one of the partitions that wait for the space can be resumed
+      for (PartitionReader reader : readers) {
+        if (reader.resume()) {
+          break;
+        }
+      }
+      if (element == END) {
+        remainingPartitions--;
+      } else {
+        return (Document) element;
+      }
+    }
+    close();
+    return null;
+  }
+
+  private Document takeOrdered() {
+    if (!started) {
+      // The first document of each partition
+      started = true;
+      for (int i = 0; i < queues.size(); i++) {
+        offerHead(i);
+      }
+    }
+    Head head = heads.poll();
+    if (head == null) {
+      close();
+      return null;
+    }
+    offerHead(head.partition);
+    return head.document;
+  }
+
+  private void offerHead(int partition) {
+    Object element = take(queues.get(partition));
+    readers.get(partition).resume();
+    if (element == END) {
+      remainingPartitions--;
+    } else {
+      heads.add(new Head((Document) element, partition));
+    }
+  }
+
+  private Object take(BlockingQueue<Object> queue) {
+    Object element;
+    try {
+      element = queue.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      close();
+      throw new ExportException("The export was interrupted", e);
+    }
+    if (element instanceof Failure failure) {
+      close();
+      throw new ExportException("Failed to read the partition of the export", failure.cause);
+    }
+    return element;
+  }
+
+  /** Cancels the reading of the partitions that were not read yet. */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    nextDocument = null;
+    for (PartitionReader reader : readers) {
+      reader.cancel();
+    }
+    if (ownedExecutorService != null) {
+      ownedExecutorService.shutdownNow();
+    }
+  }
+
+  /**
+   * Reads the documents of one partition into its queue. The reader is run by one task at a time,
+   * it is parked when the queue is full and resumed by the cursor when the queue has space again.
+   */
+  private static final class PartitionReader implements Runnable {
+    private final List<Bson> pipeline;
+    private final PartitionedExportExecutor.PipelineExecutor pipelineExecutor;
+    private final BlockingQueue<Object> queue;
+    private final ExecutorService executor;
+    private final AtomicBoolean parked = new AtomicBoolean();
+    private Iterator<Document> documents;
+    private Object pending;
+    private boolean closedDocuments;
+    private volatile Future<?> future;
+    private volatile boolean running;
+    private volatile boolean cancelled;
+
+    private PartitionReader(
+        List<Bson> pipeline,
+        PartitionedExportExecutor.PipelineExecutor pipelineExecutor,
+        BlockingQueue<Object> queue,
+        ExecutorService executor) {
+      this.pipeline = pipeline;
+      this.pipelineExecutor = pipelineExecutor;
+      this.queue = queue;
+      this.executor = executor;
+    }
+
+    private void submit() {
+      future = executor.submit(this);
+    }
+
+    private boolean resume() {
+      if (!cancelled && parked.compareAndSet(true, false)) {
+        submit();
+        return true;
+      }
+      return false;
+    }
+
+    private void cancel() {
+      cancelled = true;
+      Future<?> current = future;
+      if (current != null) {
+        current.cancel(true);
+      }
+      if (!running) {
+        // The reader is parked or was not started, so its task does not close the cursor
+        closeDocuments();
+      }
+    }
+
+    @Override
+    public void run() {
+      running = true;
+      try {
+        while (!cancelled) {
+          if (pending == null) {
+            pending = readNext();
+          }
+          if (!queue.offer(pending)) {
+            // The cursor resumes the reader after it takes the document from the queue, unless
+            // the document was taken before the reader was parked
+            parked.set(true);
+            if (queue.remainingCapacity() == 0 || !parked.compareAndSet(true, false)) {
+              return;
+            }
+            continue;
+          }
+          if (!(pending instanceof Document)) {
+            return;
+          }
+          pending = null;
+        }
+      } finally {
+        running = false;
+        if (cancelled) {
+          closeDocuments();
+        }
+      }
+    }
+
+    private Object readNext() {
+      try {
+        if (documents == null) {
+          documents = pipelineExecutor.execute(pipeline);
+        }
+        if (documents.hasNext()) {
+          return documents.next();
+        }
+        closeDocuments();
+        return END;
+      } catch (Throwable e) {
+        closeDocuments();
+        return new Failure(e);
+      }
+    }
+
+    private synchronized void closeDocuments() {
+      if (closedDocuments) {
+        return;
+      }
+      closedDocuments = true;
+      if (documents instanceof AutoCloseable closeable) {
+        try {
+          closeable.close();
+        } catch (Exception e) {
+          // The partition was read or cancelled, there is nothing more to do with the cursor
+        }
+      }
+    }
+  }
+
+  private static final class Head {
+    private final Document document;
+    private final int partition;
+
+    private Head(Document document, int partition) {
+      this.document = document;
+      this.partition = partition;
+    }
+  }
+
+  private static final class Failure {
+    private final Throwable cause;
+
+    private Failure(Throwable cause) {
+      this.cause = cause;
+    }
+  }
+}
@@ -0,0 +1,9 @@
+package com.github.starnowski.jamolingo.core.export;
+
+/** Exception thrown when reading one of the partitions of the export fails. */
+public class ExportException extends RuntimeException {
+
+  public ExportException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
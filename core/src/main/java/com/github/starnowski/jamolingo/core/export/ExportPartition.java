@@ -0,0 +1,116 @@
+package com.github.starnowski.jamolingo.core.export;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+/**
+ * Range of the partition key values read by one cursor of the {@link PartitionedExportExecutor}.
+ * The range includes the lower bound and excludes the upper bound, the null bound means that the
+ * range is not bounded on that side. The partition without the lower bound is the complement of the
+ * values greater than or equal to its upper bound, so it also matches the documents with the
+ * missing or null key and with the key of a different BSON type than the upper bound, which the
+ * range conditions of the other partitions do not match.
+ */
+public final class ExportPartition {
+
+  private final String keyPath;
+  private final Object lowerBound;
+  private final Object upperBound;
+
+  /**
+   * Creates a new ExportPartition.
+   *
+   * @param keyPath the MongoDB path of the partition key
+   * @param lowerBound the inclusive lower bound or null if there is no lower bound
+   * @param upperBound the exclusive upper bound or null if there is no upper bound
+   */
+  public ExportPartition(String keyPath, Object lowerBound, Object upperBound) {
+    if (keyPath == null) {
+      throw new IllegalArgumentException("The key path can not be null");
+    }
+    this.keyPath = keyPath;
+    this.lowerBound = lowerBound;
+    this.upperBound = upperBound;
+  }
+
+  public String getKeyPath() {
+    return keyPath;
+  }
+
+  public Object getLowerBound() {
+    return lowerBound;
+  }
+
+  public Object getUpperBound() {
+    return upperBound;
+  }
+
+  /**
+   * Returns the $match stage that selects the documents of the partition. The stage of the
+   * partition without bounds matches all documents.
+   *
+   * @return the $match stage
+   */
+  public Bson getMatchStage() {
+    Document range = new Document();
+    if (lowerBound != null) {
+      range.append("$gte", lowerBound);
+      if (upperBound != null) {
+        range.append("$lt", upperBound);
+      }
+    } else if (upperBound != null) {
+      // The $lt operator would not match the missing key and the values of the other types
+      range.append("$not", new Document("$gte", upperBound));
+    }
+    return new Document("$match", range.isEmpty() ? new Document() : new Document(keyPath, range));
+  }
+
+  /**
+   * Returns the pipeline that reads the partition, the $match stage of the partition followed by
+   * the stages of the passed pipeline. The $match stage is the first stage, so it can use the index
+   * of the partition key and the server coalesces it with the $match stage of the $filter option.
+   *
+   * @param pipeline the translated pipeline
+   * @return the pipeline of the partition
+   */
+  public List<Bson> toPipeline(List<? extends Bson> pipeline) {
+    List<Bson> result = new ArrayList<>();
+    result.add(getMatchStage());
+    if (pipeline != null) {
+      result.addAll(pipeline);
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    ExportPartition that = (ExportPartition) o;
+    return Objects.equals(keyPath, that.keyPath)
+        && Objects.equals(lowerBound, that.lowerBound)
+        && Objects.equals(upperBound, that.upperBound);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(keyPath, lowerBound, upperBound);
+  }
+
+  @Override
+  public String toString() {
+    return "ExportPartition{"
+        + "keyPath='"
+        + keyPath
+        + '\''
+        + ", lowerBound="
+        + lowerBound
+        + ", upperBound="
+        + upperBound
+        + '}';
+  }
+}
@@ -0,0 +1,151 @@
+package com.github.starnowski.jamolingo.core.export;
+
+import com.github.starnowski.jamolingo.core.context.EntityPropertiesMongoPathContext;
+import com.github.starnowski.jamolingo.core.context.MongoPathEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+/**
+ * Splits the values of the partition key into ranges of similar size for the {@link
+ * PartitionedExportExecutor}. The boundaries are chosen from the random sample of the key values
+ * returned by the pipeline created with {@link #sampleBoundariesPipeline(String, int)}, so the
+ * partitions are balanced only approximately. The boundaries have the BSON type of most of the
+ * sampled values, because the range conditions match only the values of the same type. The
+ * documents with the missing key or with the value of a different type are read by the first
+ * partition, so the partition key should be indexed, present in every document, have scalar values
+ * and have values of one type for the partitions to be balanced.
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * String keyPath = partitioner.resolveKeyPath(entityPropertiesMongoPathContext);
+ * List<Document> sample =
+ *     collection.aggregate(partitioner.sampleBoundariesPipeline(keyPath, 1000)).into(new ArrayList<>());
+ * List<ExportPartition> partitions = partitioner.partition(keyPath, sample, 8);
+ * }</pre>
+ */
+public class ExportPartitioner {
+
+  /** The default partition key. */
+  public static final String DEFAULT_KEY_PATH = "_id";
+
+  /** The property of the documents returned by the sample pipeline that holds the key value. */
+  public static final String SAMPLE_VALUE_PROPERTY = "value";
+
+  /**
+   * Returns the MongoDB path of the entity key when the key consists of one property, otherwise the
+   * "_id" path.
+   *
+   * @param context the context of the entity, can be null
+   * @return the path of the partition key
+   */
+  public String resolveKeyPath(EntityPropertiesMongoPathContext context) {
+    if (context == null || context.getEdmToMongoPath() == null) {
+      return DEFAULT_KEY_PATH;
+    }
+    String keyPath = null;
+    for (MongoPathEntry entry : context.getEdmToMongoPath().values()) {
+      if (!entry.isKey()) {
+        continue;
+      }
+      if (keyPath != null && !keyPath.equals(entry.getMongoPath())) {
+        // Compound key
+        return DEFAULT_KEY_PATH;
+      }
+      keyPath = entry.getMongoPath();
+    }
+    return keyPath == null ? DEFAULT_KEY_PATH : keyPath;
+  }
+
+  /**
+   * Returns the pipeline that reads the sorted random sample of the partition key values.
+   *
+   * @param keyPath the path of the partition key
+   * @param sampleSize the number of sampled documents, must be greater than zero
+   * @return the pipeline
+   */
+  public List<Bson> sampleBoundariesPipeline(String keyPath, int sampleSize) {
+    if (keyPath == null) {
+      throw new IllegalArgumentException("The key path can not be null");
+    }
+    if (sampleSize <= 0) {
+      throw new IllegalArgumentException("The sample size must be greater than zero");
+    }
+    return List.of(
+        new Document("$sample", new Document("size", sampleSize)),
+        new Document(
+            "$project", new Document("_id", 0).append(SAMPLE_VALUE_PROPERTY, "$" + keyPath)),
+        new Document("$sort", new Document(SAMPLE_VALUE_PROPERTY, 1)));
+  }
+
+  /**
+   * Creates the partitions from the sample of the partition key values. The number of partitions
+   * can be lower than requested when the sample contains less distinct values. The partitions cover
+   * all documents, the first partition has no lower bound and the last partition has no upper
+   * bound.
+   *
+   * @param keyPath the path of the partition key
+   * @param sample the documents returned by the sample pipeline
+   * @param partitionCount the requested number of partitions, must be greater than zero
+   * @return the partitions ordered by the key values
+   */
+  public List<ExportPartition> partition(
+      String keyPath, List<Document> sample, int partitionCount) {
+    if (keyPath == null) {
+      throw new IllegalArgumentException("The key path can not be null");
+    }
+    if (partitionCount <= 0) {
+      throw new IllegalArgumentException("The partition count must be greater than zero");
+    }
+    List<Object> values = new ArrayList<>();
+    if (sample != null) {
+      for (Document document : sample) {
+        Object value = document.get(SAMPLE_VALUE_PROPERTY);
+        if (value != null) {
+          values.add(value);
+        }
+      }
+    }
+    values.sort(DocumentSortComparator::compareValues);
+    values = valuesOfMostFrequentType(values);
+    List<Object> boundaries = new ArrayList<>();
+    for (int i = 1; i < partitionCount && !values.isEmpty(); i++) {
+      Object boundary = values.get((int) ((long) i * values.size() / partitionCount));
+      // The boundaries are distinct and greater than the lowest value, so no partition is empty
+      Object previous =
+          boundaries.isEmpty() ? values.get(0) : boundaries.get(boundaries.size() - 1);
+      if (DocumentSortComparator.compareValues(previous, boundary) < 0) {
+        boundaries.add(boundary);
+      }
+    }
+    List<ExportPartition> partitions = new ArrayList<>();
+    Object lowerBound = null;
+    for (Object boundary : boundaries) {
+      partitions.add(new ExportPartition(keyPath, lowerBound, boundary));
+      lowerBound = boundary;
+    }
+    partitions.add(new ExportPartition(keyPath, lowerBound, null));
+    return Collections.unmodifiableList(partitions);
+  }
+
+  private static List<Object> valuesOfMostFrequentType(List<Object> values) {
+    Map<Class<?>, List<Object>> valuesByType = new LinkedHashMap<>();
+    for (Object value : values) {
+      // All numbers are compared with each other regardless of their BSON type
+      Class<?> type = value instanceof Number ? Number.class : value.getClass();
+      valuesByType.computeIfAbsent(type, t -> new ArrayList<>()).add(value);
+    }
+    List<Object> result = Collections.emptyList();
+    for (List<Object> typeValues : valuesByType.values()) {
+      if (typeValues.size() > result.size()) {
+        result = typeValues;
+      }
+    }
+    return result;
+  }
+}
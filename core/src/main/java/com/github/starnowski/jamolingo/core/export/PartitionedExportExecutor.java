@@ -0,0 +1,200 @@
+package com.github.starnowski.jamolingo.core.export;
+
+import com.github.starnowski.jamolingo.core.operators.orderby.SortProperty;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+/**
+ * Executes the translated pipeline of the export, for example the $filter option without the $top
+ * option, on each {@link ExportPartition} in parallel and returns one {@link ExportCursor} with the
+ * documents of all partitions. The documents are returned in the order in which they are read from
+ * the partitions, or merged by the sort properties when each partition returns the documents sorted
+ * by them. Each partition is read by the task of the executor service into the bounded queue, so
+ * the reading pauses when the consumer is slower than the cursors. The task ends when the queue is
+ * full and is submitted again when the consumer takes a document, so the executor service may have
+ * fewer threads than partitions, also for the ordered export. The unordered export reads all
+ * partitions into one queue with the capacity of the queue of one partition multiplied by the
+ * number of partitions, so both exports buffer the same number of documents.
+ *
+ * <p>The executor service can be passed with the builder, for example {@code
+ * Executors.newVirtualThreadPerTaskExecutor()} on Java 21, and it is not shut down by the cursor.
+ * Otherwise, the cursor creates the thread pool with one thread per partition and shuts it down
+ * when the cursor is closed.
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * try (ExportCursor cursor =
+ *     executor.executeUnordered(
+ *         partitions, pipeline, partitionPipeline -> collection.aggregate(partitionPipeline).cursor())) {
+ *   cursor.forEachRemaining(writer::write);
+ * }
+ * }</pre>
+ */
+public final class PartitionedExportExecutor {
+
+  /** Default capacity of the queue of documents read from one partition. */
+  public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+  private final ExecutorService executorService;
+  private final int queueCapacity;
+
+  private PartitionedExportExecutor(ExecutorService executorService, int queueCapacity) {
+    this.executorService = executorService;
+    this.queueCapacity = queueCapacity;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Reads the partitions in parallel and returns the documents in the order in which they are read.
+   *
+   * @param partitions the partitions
+   * @param pipeline the translated pipeline
+   * @param pipelineExecutor the function that executes the pipeline of one partition
+   * @return the cursor with the documents of all partitions
+   */
+  public ExportCursor executeUnordered(
+      List<ExportPartition> partitions,
+      List<? extends Bson> pipeline,
+      PipelineExecutor pipelineExecutor) {
+    return ExportCursor.start(
+        partitionPipelines(partitions, pipeline),
+        pipelineExecutor,
+        null,
+        executorService,
+        queueCapacity);
+  }
+
+  /**
+   * Reads the partitions in parallel and merges the documents by the sort properties. The pipeline
+   * has to sort the documents of each partition by the same sort properties, for example with the
+   * stage of the $orderby option.
+   *
+   * @param partitions the partitions
+   * @param pipeline the translated pipeline that sorts the documents
+   * @param sortProperties the sort properties of the pipeline, for example returned by {@link
+   *     com.github.starnowski.jamolingo.core.operators.orderby.OrderByOperatorResult#getSortProperties()}
+   * @param pipelineExecutor the function that executes the pipeline of one partition
+   * @return the cursor with the sorted documents of all partitions
+   */
+  public ExportCursor executeOrdered(
+      List<ExportPartition> partitions,
+      List<? extends Bson> pipeline,
+      List<SortProperty> sortProperties,
+      PipelineExecutor pipelineExecutor) {
+    if (sortProperties == null || sortProperties.isEmpty()) {
+      throw new IllegalArgumentException("The sort properties can not be empty");
+    }
+    return ExportCursor.start(
+        partitionPipelines(partitions, pipeline),
+        pipelineExecutor,
+        new DocumentSortComparator(sortProperties),
+        executorService,
+        queueCapacity);
+  }
+
+  private static List<List<Bson>> partitionPipelines(
+      List<ExportPartition> partitions, List<? extends Bson> pipeline) {
+    if (partitions == null || partitions.isEmpty()) {
+      throw new IllegalArgumentException("The partitions can not be empty");
+    }
+    List<List<Bson>> pipelines = new ArrayList<>();
+    for (ExportPartition partition : partitions) {
+      pipelines.add(partition.toPipeline(pipeline));
+    }
+    return Collections.unmodifiableList(pipelines);
+  }
+
+  public ExecutorService getExecutorService() {
+    return executorService;
+  }
+
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    PartitionedExportExecutor that = (PartitionedExportExecutor) o;
+    return queueCapacity == that.queueCapacity
+        && Objects.equals(executorService, that.executorService);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(executorService, queueCapacity);
+  }
+
+  @Override
+  public String toString() {
+    return "PartitionedExportExecutor{"
+        + "executorService="
+        + executorService
+        + ", queueCapacity="
+        + queueCapacity
+        + '}';
+  }
+
+  /** Function that executes the pipeline of one partition. */
+  @FunctionalInterface
+  public interface PipelineExecutor {
+
+    /**
+     * Executes the pipeline.
+     *
+     * @param pipeline the pipeline of the partition
+     * @return the iterator of the documents, for example the MongoCursor, when it implements {@link
+     *     AutoCloseable} it is closed after the partition is read or the export is cancelled
+     * @throws Exception if the execution fails
+     */
+    Iterator<Document> execute(List<Bson> pipeline) throws Exception;
+  }
+
+  public static class Builder {
+    private ExecutorService executorService;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    /**
+     * Sets the executor service that reads the partitions. By default each cursor creates its own
+     * thread pool. The tasks never wait for the consumer, so the executor service may have any
+     * number of threads.
+     *
+     * @param executorService the executor service
+     * @return the builder
+     */
+    public Builder withExecutorService(ExecutorService executorService) {
+      this.executorService = executorService;
+      return this;
+    }
+
+    /**
+     * Sets the capacity of the queue of documents read from one partition. The queue shared by the
+     * partitions of the unordered export has the capacity multiplied by the number of partitions.
+     *
+     * @param queueCapacity the capacity, must be greater than zero
+     * @return the builder
+     */
+    public Builder withQueueCapacity(int queueCapacity) {
+      this.queueCapacity = queueCapacity;
+      return this;
+    }
+
+    public PartitionedExportExecutor build() {
+      if (queueCapacity <= 0) {
+        throw new IllegalArgumentException("The queue capacity must be greater than zero");
+      }
+      return new PartitionedExportExecutor(executorService, queueCapacity);
+    }
+  }
+}
@@ -0,0 +1,343 @@
+package com.github.starnowski.jamolingo.core.index;
+
+import com.github.starnowski.jamolingo.core.operators.OlingoOperatorResult;
+import com.github.starnowski.jamolingo.core.operators.filter.FilterOperatorResult;
+import com.github.starnowski.jamolingo.core.operators.orderby.OrderByOperatorResult;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+/**
+ * Planner that selects the compound index for the $match and $sort stages generated by the {@link
+ * com.github.starnowski.jamolingo.core.operators.filter.ODataFilterToMongoMatchParser} and the
+ * {@link com.github.starnowski.jamolingo.core.operators.orderby.OdataOrderByToMongoSortParser}.
+ *
+ * <p>The index serves the query best when its keys follow the Equality-Sort-Range rule: first the
+ * fields compared with the equality predicates, then the sort keys and at the end the fields
+ * compared with the range predicates. The planner compares the indexes by the number of the leading
+ * equality fields, by whether the sort is served by the index, by the number of the range fields
+ * that follow and at the end by the number of the index keys. The predicates of the $match stage
+ * are reordered in the same way, first the equality, then the range and at the end the other
+ * predicates, each group in the order of the selected index keys. The order of the sort keys
+ * defines the order of the results so it is never changed.
+ *
+ * <p>The hidden indexes are ignored, because the server does not use them. The sparse, partial and
+ * collated indexes can be selected, but they are never returned as the hint, because the hinted
+ * query could skip the documents that are not in such index.
+ *
+ * <p>The "$in" operator is treated as the equality predicate when there is no sort and as the range
+ * predicate otherwise, because the index returns the values from the different "$in" branches in
+ * the order of those values and not in the order of the sort keys.
+ */
+public class EsrIndexPlanner {
+
+  private static final Set<String> RANGE_OPERATORS =
+      Set.of("$gt", "$gte", "$lt", "$lte", "$ne", "$nin", "$regex", "$options");
+
+  private final List<IndexDefinition> indexes;
+
+  /**
+   * Creates a new EsrIndexPlanner.
+   *
+   * @param indexes the indexes of the collection, the earlier index is selected when two indexes
+   *     serve the query equally well
+   * @throws IllegalArgumentException if the indexes list is null or contains null
+   */
+  public EsrIndexPlanner(List<IndexDefinition> indexes) {
+    if (indexes == null || indexes.contains(null)) {
+      throw new IllegalArgumentException("The indexes can not be null");
+    }
+    this.indexes = List.copyOf(indexes);
+  }
+
+  /**
+   * Returns the indexes of the collection.
+   *
+   * @return the read-only list of indexes
+   */
+  public List<IndexDefinition> getIndexes() {
+    return indexes;
+  }
+
+  /**
+   * Plans the query for the results of the $filter and the $orderby parsers.
+   *
+   * @param filterOperatorResult the result of the $filter parser, can be null
+   * @param orderByOperatorResult the result of the $orderby parser, can be null
+   * @return the plan
+   */
+  public IndexPlan plan(
+      FilterOperatorResult filterOperatorResult, OrderByOperatorResult orderByOperatorResult) {
+    Document matchStage = findStage(filterOperatorResult, "$match");
+    Document sortStage = findStage(orderByOperatorResult, "$sort");
+    Map<String, Integer> sort =
+        sortStage == null ? Collections.emptyMap() : toSortKeys(sortStage.get("$sort"));
+    List<Predicate> predicates = new ArrayList<>();
+    if (matchStage != null) {
+      collectPredicates(matchStage.get("$match"), !sort.isEmpty(), predicates);
+    }
+    Set<String> equalityFields = fields(predicates, PredicateType.EQUALITY);
+    Set<String> rangeFields = fields(predicates, PredicateType.RANGE);
+
+    IndexScore best = null;
+    int bestCount = 0;
+    for (IndexDefinition index : indexes) {
+      if (index.isHidden()) {
+        continue;
+      }
+      IndexScore score = score(index, equalityFields, rangeFields, sort);
+      if (!score.usable) {
+        continue;
+      }
+      int comparison = best == null ? -1 : IndexScore.COMPARATOR.compare(score, best);
+      if (comparison < 0) {
+        best = score;
+        bestCount = 1;
+      } else if (comparison == 0) {
+        bestCount++;
+      }
+    }
+    IndexDefinition selected = best == null ? null : best.index;
+    List<Predicate> ordered = orderPredicates(predicates, selected);
+    return new IndexPlan(
+        selected,
+        bestCount == 1 && selected.isHintable() ? selected.toKeyPattern() : null,
+        best == null ? sort.isEmpty() : best.sortCovered,
+        matchStage == null ? null : toMatchStage(matchStage, ordered),
+        sortStage,
+        orderedFields(ordered, PredicateType.EQUALITY),
+        orderedFields(ordered, PredicateType.RANGE));
+  }
+
+  private static IndexScore score(
+      IndexDefinition index,
+      Set<String> equalityFields,
+      Set<String> rangeFields,
+      Map<String, Integer> sort) {
+    List<String> keys = new ArrayList<>(index.getKeys().keySet());
+    int position = 0;
+    int equalityCount = 0;
+    while (position < keys.size() && equalityFields.contains(keys.get(position))) {
+      equalityCount++;
+      position++;
+    }
+    List<String> sortFields = new ArrayList<>();
+    for (String field : sort.keySet()) {
+      if (!equalityFields.contains(field)) {
+        sortFields.add(field);
+      }
+    }
+    boolean sortCovered = true;
+    boolean sortServed = false;
+    if (!sortFields.isEmpty()) {
+      int sortPosition = position;
+      Boolean reversed = null;
+      for (String field : sortFields) {
+        while (sortPosition < keys.size() && equalityFields.contains(keys.get(sortPosition))) {
+          sortPosition++;
+        }
+        if (sortPosition >= keys.size() || !keys.get(sortPosition).equals(field)) {
+          sortCovered = false;
+          break;
+        }
+        boolean keyReversed = !index.getKeys().get(field).equals(sort.get(field));
+        if (reversed != null && reversed != keyReversed) {
+          sortCovered = false;
+          break;
+        }
+        reversed = keyReversed;
+        sortPosition++;
+      }
+      if (sortCovered) {
+        sortServed = true;
+        position = sortPosition;
+      }
+    }
+    int rangeCount = 0;
+    while (position < keys.size()
+        && (rangeFields.contains(keys.get(position))
+            || equalityFields.contains(keys.get(position)))) {
+      if (rangeFields.contains(keys.get(position))) {
+        rangeCount++;
+      }
+      position++;
+    }
+    return new IndexScore(
+        index,
+        equalityCount,
+        sortCovered,
+        rangeCount,
+        equalityCount > 0 || rangeCount > 0 || sortServed);
+  }
+
+  private static List<Predicate> orderPredicates(
+      List<Predicate> predicates, IndexDefinition index) {
+    List<String> keys =
+        index == null ? Collections.emptyList() : new ArrayList<>(index.getKeys().keySet());
+    List<Predicate> ordered = new ArrayList<>(predicates);
+    // List.sort is stable, the predicates of the same type and key position keep their order
+    ordered.sort(
+        Comparator.comparingInt((Predicate predicate) -> predicate.type.ordinal())
+            .thenComparingInt(
+                predicate -> {
+                  int position = predicate.field == null ? -1 : keys.indexOf(predicate.field);
+                  return position < 0 ? keys.size() : position;
+                }));
+    return ordered;
+  }
+
+  private static Document toMatchStage(Document original, List<Predicate> ordered) {
+    if (ordered.isEmpty()) {
+      return original;
+    }
+    if (ordered.size() == 1) {
+      return new Document("$match", ordered.get(0).clause);
+    }
+    List<Object> clauses = new ArrayList<>();
+    for (Predicate predicate : ordered) {
+      clauses.add(predicate.clause);
+    }
+    return new Document("$match", new Document("$and", clauses));
+  }
+
+  private static void collectPredicates(Object node, boolean sorted, List<Predicate> predicates) {
+    if (!(node instanceof Document)) {
+      if (node != null) {
+        predicates.add(new Predicate(null, PredicateType.OTHER, node));
+      }
+      return;
+    }
+    Document document = (Document) node;
+    if (document.size() == 1 && document.get("$and") instanceof List) {
+      for (Object child : (List<?>) document.get("$and")) {
+        collectPredicates(child, sorted, predicates);
+      }
+      return;
+    }
+    if (document.keySet().stream().anyMatch(key -> key.startsWith("$"))) {
+      predicates.add(new Predicate(null, PredicateType.OTHER, document));
+      return;
+    }
+    for (Map.Entry<String, Object> entry : document.entrySet()) {
+      predicates.add(
+          new Predicate(
+              entry.getKey(),
+              classify(entry.getValue(), sorted),
+              new Document(entry.getKey(), entry.getValue())));
+    }
+  }
+
+  private static PredicateType classify(Object value, boolean sorted) {
+    if (value instanceof Pattern) {
+      return PredicateType.RANGE;
+    }
+    if (value instanceof Bson && !(value instanceof Document)) {
+      return PredicateType.OTHER;
+    }
+    if (!(value instanceof Document)) {
+      return PredicateType.EQUALITY;
+    }
+    Set<String> operators = ((Document) value).keySet();
+    if (operators.stream().noneMatch(key -> key.startsWith("$"))) {
+      return PredicateType.EQUALITY;
+    }
+    if (operators.equals(Set.of("$eq"))) {
+      return PredicateType.EQUALITY;
+    }
+    if (operators.equals(Set.of("$in"))) {
+      return sorted ? PredicateType.RANGE : PredicateType.EQUALITY;
+    }
+    return RANGE_OPERATORS.containsAll(operators) ? PredicateType.RANGE : PredicateType.OTHER;
+  }
+
+  private static Set<String> fields(List<Predicate> predicates, PredicateType type) {
+    Set<String> fields = new LinkedHashSet<>();
+    for (Predicate predicate : predicates) {
+      if (predicate.type == type) {
+        fields.add(predicate.field);
+      }
+    }
+    return fields;
+  }
+
+  private static List<String> orderedFields(List<Predicate> predicates, PredicateType type) {
+    return new ArrayList<>(fields(predicates, type));
+  }
+
+  private static Map<String, Integer> toSortKeys(Object sort) {
+    Map<String, Integer> keys = new LinkedHashMap<>();
+    if (sort instanceof Document) {
+      for (Map.Entry<String, Object> entry : ((Document) sort).entrySet()) {
+        if (entry.getValue() instanceof Number) {
+          keys.put(entry.getKey(), ((Number) entry.getValue()).intValue() < 0 ? -1 : 1);
+        }
+      }
+    }
+    return keys;
+  }
+
+  private static Document findStage(OlingoOperatorResult result, String stageName) {
+    if (result == null || result.getStageObjects() == null) {
+      return null;
+    }
+    for (Bson stage : result.getStageObjects()) {
+      if (stage instanceof Document && ((Document) stage).containsKey(stageName)) {
+        return (Document) stage;
+      }
+    }
+    return null;
+  }
+
+  private enum PredicateType {
+    EQUALITY,
+    RANGE,
+    OTHER
+  }
+
+  private static final class Predicate {
+    private final String field;
+    private final PredicateType type;
+    private final Object clause;
+
+    private Predicate(String field, PredicateType type, Object clause) {
+      this.field = field;
+      this.type = type;
+      this.clause = clause;
+    }
+  }
+
+  private static final class IndexScore {
+    private static final Comparator<IndexScore> COMPARATOR =
+        Comparator.comparingInt((IndexScore score) -> -score.equalityCount)
+            .thenComparing(score -> !score.sortCovered)
+            .thenComparingInt(score -> -score.rangeCount)
+            .thenComparingInt(score -> score.index.getKeys().size());
+
+    private final IndexDefinition index;
+    private final int equalityCount;
+    private final boolean sortCovered;
+    private final int rangeCount;
+    private final boolean usable;
+
+    private IndexScore(
+        IndexDefinition index,
+        int equalityCount,
+        boolean sortCovered,
+        int rangeCount,
+        boolean usable) {
+      this.index = index;
+      this.equalityCount = equalityCount;
+      this.sortCovered = sortCovered;
+      this.rangeCount = rangeCount;
+      this.usable = usable;
+    }
+  }
+}
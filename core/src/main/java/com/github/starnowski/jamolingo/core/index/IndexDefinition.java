@@ -0,0 +1,278 @@
+package com.github.starnowski.jamolingo.core.index;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+/**
+ * Immutable definition of the MongoDB index used by the {@link EsrIndexPlanner}. The definition
+ * consists of the index name, the ordered index keys with their directions and the options that
+ * decide if the index can be passed as the hint of the query.
+ */
+public final class IndexDefinition {
+
+  private final String name;
+  private final Map<String, Integer> keys;
+  private final boolean sparse;
+  private final Document partialFilterExpression;
+  private final boolean hidden;
+  private final Document collation;
+
+  /**
+   * Creates a new IndexDefinition.
+   *
+   * @param name the index name
+   * @param keys the index keys in the order of the index, the value 1 means the ascending and -1
+   *     the descending order
+   * @throws IllegalArgumentException if the keys are empty or any key has a direction other than 1
+   *     or -1
+   */
+  public IndexDefinition(String name, Map<String, Integer> keys) {
+    this(name, keys, false, null, false, null);
+  }
+
+  private IndexDefinition(
+      String name,
+      Map<String, Integer> keys,
+      boolean sparse,
+      Document partialFilterExpression,
+      boolean hidden,
+      Document collation) {
+    if (keys == null || keys.isEmpty()) {
+      throw new IllegalArgumentException("The index keys can not be empty");
+    }
+    Map<String, Integer> copy = new LinkedHashMap<>();
+    for (Map.Entry<String, Integer> entry : keys.entrySet()) {
+      if (entry.getValue() == null || (entry.getValue() != 1 && entry.getValue() != -1)) {
+        throw new IllegalArgumentException(
+            "The index key '"
+                + entry.getKey()
+                + "' has not supported direction "
+                + entry.getValue());
+      }
+      copy.put(entry.getKey(), entry.getValue());
+    }
+    this.name = name;
+    this.keys = Collections.unmodifiableMap(copy);
+    this.sparse = sparse;
+    this.partialFilterExpression =
+        partialFilterExpression == null ? null : new Document(partialFilterExpression);
+    this.hidden = hidden;
+    this.collation = collation == null ? null : new Document(collation);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Creates the definition from the document returned by the "listIndexes" command, for example
+   * {@code {"name": "a_1_b_-1", "key": {"a": 1, "b": -1}}}. Text, hashed, geospatial and wildcard
+   * indexes can not serve the equality, sort and range predicates in the same way as the regular
+   * index, so for those indexes the method returns null. The "sparse", "partialFilterExpression",
+   * "hidden" and "collation" options of the index are copied to the definition.
+   *
+   * @param indexDocument the index document
+   * @return the index definition or null if the index is not the regular ascending or descending
+   *     index
+   */
+  public static IndexDefinition fromIndexDocument(Document indexDocument) {
+    if (indexDocument == null || !(indexDocument.get("key") instanceof Document)) {
+      throw new IllegalArgumentException("The index document has to contain the 'key' document");
+    }
+    Document key = (Document) indexDocument.get("key");
+    Map<String, Integer> keys = new LinkedHashMap<>();
+    for (Map.Entry<String, Object> entry : key.entrySet()) {
+      if (!(entry.getValue() instanceof Number) || entry.getKey().contains("$**")) {
+        return null;
+      }
+      double direction = ((Number) entry.getValue()).doubleValue();
+      if (direction != 1 && direction != -1) {
+        return null;
+      }
+      keys.put(entry.getKey(), (int) direction);
+    }
+    return builder()
+        .withName(indexDocument.getString("name"))
+        .withKeys(keys)
+        .withSparse(Boolean.TRUE.equals(indexDocument.get("sparse")))
+        .withPartialFilterExpression(indexDocument.get("partialFilterExpression", Document.class))
+        .withHidden(Boolean.TRUE.equals(indexDocument.get("hidden")))
+        .withCollation(indexDocument.get("collation", Document.class))
+        .build();
+  }
+
+  /**
+   * Returns the index name.
+   *
+   * @return the index name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the read-only map of the index keys in the order of the index.
+   *
+   * @return the index keys
+   */
+  public Map<String, Integer> getKeys() {
+    return keys;
+  }
+
+  public boolean isSparse() {
+    return sparse;
+  }
+
+  /**
+   * Returns the copy of the filter of the partial index.
+   *
+   * @return the partial filter expression or null if the index is not partial
+   */
+  public Document getPartialFilterExpression() {
+    return partialFilterExpression == null ? null : new Document(partialFilterExpression);
+  }
+
+  public boolean isHidden() {
+    return hidden;
+  }
+
+  /**
+   * Returns the copy of the collation of the index.
+   *
+   * @return the collation or null if the index uses the collation of the collection
+   */
+  public Document getCollation() {
+    return collation == null ? null : new Document(collation);
+  }
+
+  /**
+   * Returns true if the index can be passed as the hint of any query. The sparse and the partial
+   * index does not contain all documents, so the hinted query could silently skip the matching
+   * documents. The hidden index can not be hinted, the server rejects such query. The index with
+   * its own collation compares the strings differently than the query with the default collation.
+   *
+   * @return true if the index can be hinted
+   */
+  public boolean isHintable() {
+    return !sparse && partialFilterExpression == null && !hidden && collation == null;
+  }
+
+  /**
+   * Returns the index key pattern that can be passed as the hint of the query.
+   *
+   * @return the key pattern
+   */
+  public Bson toKeyPattern() {
+    return new Document(keys);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    IndexDefinition that = (IndexDefinition) o;
+    return sparse == that.sparse
+        && hidden == that.hidden
+        && Objects.equals(name, that.name)
+        && Objects.equals(keys, that.keys)
+        && Objects.equals(partialFilterExpression, that.partialFilterExpression)
+        && Objects.equals(collation, that.collation);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(name, keys, sparse, partialFilterExpression, hidden, collation);
+  }
+
+  @Override
+  public String toString() {
+    return "IndexDefinition{"
+        + "name='"
+        + name
+        + '\''
+        + ", keys="
+        + keys
+        + ", sparse="
+        + sparse
+        + ", partialFilterExpression="
+        + partialFilterExpression
+        + ", hidden="
+        + hidden
+        + ", collation="
+        + collation
+        + '}';
+  }
+
+  public static class Builder {
+    private String name;
+    private Map<String, Integer> keys;
+    private boolean sparse;
+    private Document partialFilterExpression;
+    private boolean hidden;
+    private Document collation;
+
+    public Builder withName(String name) {
+      this.name = name;
+      return this;
+    }
+
+    /**
+     * Sets the index keys.
+     *
+     * @param keys the index keys in the order of the index, the value 1 means the ascending and -1
+     *     the descending order
+     * @return the builder
+     */
+    public Builder withKeys(Map<String, Integer> keys) {
+      this.keys = keys;
+      return this;
+    }
+
+    public Builder withSparse(boolean sparse) {
+      this.sparse = sparse;
+      return this;
+    }
+
+    /**
+     * Sets the filter of the partial index.
+     *
+     * @param partialFilterExpression the filter or null if the index is not partial
+     * @return the builder
+     */
+    public Builder withPartialFilterExpression(Document partialFilterExpression) {
+      this.partialFilterExpression = partialFilterExpression;
+      return this;
+    }
+
+    public Builder withHidden(boolean hidden) {
+      this.hidden = hidden;
+      return this;
+    }
+
+    /**
+     * Sets the collation of the index.
+     *
+     * @param collation the collation or null if the index uses the collation of the collection
+     * @return the builder
+     */
+    public Builder withCollation(Document collation) {
+      this.collation = collation;
+      return this;
+    }
+
+    /**
+     * Creates the index definition.
+     *
+     * @return the index definition
+     * @throws IllegalArgumentException if the keys are empty or any key has a direction other than
+     *     1 or -1
+     */
+    public IndexDefinition build() {
+      return new IndexDefinition(name, keys, sparse, partialFilterExpression, hidden, collation);
+    }
+  }
+}
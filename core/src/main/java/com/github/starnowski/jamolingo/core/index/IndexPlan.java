@@ -0,0 +1,165 @@
+package com.github.starnowski.jamolingo.core.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import org.bson.conversions.Bson;
+
+/**
+ * Result of the {@link EsrIndexPlanner}. The plan contains the $match and $sort stages with the
+ * predicates in the Equality-Sort-Range order of the selected index, the selected index and the
+ * hint.
+ */
+public final class IndexPlan {
+
+  private final IndexDefinition index;
+  private final Bson hint;
+  private final boolean sortCoveredByIndex;
+  private final Bson matchStage;
+  private final Bson sortStage;
+  private final List<String> equalityFields;
+  private final List<String> rangeFields;
+
+  IndexPlan(
+      IndexDefinition index,
+      Bson hint,
+      boolean sortCoveredByIndex,
+      Bson matchStage,
+      Bson sortStage,
+      List<String> equalityFields,
+      List<String> rangeFields) {
+    this.index = index;
+    this.hint = hint;
+    this.sortCoveredByIndex = sortCoveredByIndex;
+    this.matchStage = matchStage;
+    this.sortStage = sortStage;
+    this.equalityFields = Collections.unmodifiableList(new ArrayList<>(equalityFields));
+    this.rangeFields = Collections.unmodifiableList(new ArrayList<>(rangeFields));
+  }
+
+  /**
+   * Returns the index that serves the query best or null if no index can serve the query.
+   *
+   * @return the selected index
+   */
+  public IndexDefinition getIndex() {
+    return index;
+  }
+
+  /**
+   * Returns the key pattern of the selected index that should be passed as the hint of the query.
+   * The hint is returned only when exactly one index serves the query best and the index can be
+   * hinted, see {@link IndexDefinition#isHintable()}, otherwise the choice is left to the MongoDB
+   * query planner.
+   *
+   * @return the hint or null
+   */
+  public Bson getHint() {
+    return hint;
+  }
+
+  /**
+   * Returns true if the sort is served by the selected index and the query does not need the
+   * blocking, in-memory sort. Returns true also when there is no sort.
+   *
+   * @return true if the sort is served by the index
+   */
+  public boolean isSortCoveredByIndex() {
+    return sortCoveredByIndex;
+  }
+
+  /**
+   * Returns the $match stage with the equality predicates first, followed by the range and the
+   * other predicates, or null if there is no filter.
+   *
+   * @return the $match stage
+   */
+  public Bson getMatchStage() {
+    return matchStage;
+  }
+
+  /**
+   * Returns the $sort stage or null if there is no sort. The order of the sort keys defines the
+   * order of the results so it is never changed.
+   *
+   * @return the $sort stage
+   */
+  public Bson getSortStage() {
+    return sortStage;
+  }
+
+  /**
+   * Returns the $match and $sort stages of the plan.
+   *
+   * @return the stages
+   */
+  public List<Bson> getStageObjects() {
+    List<Bson> stages = new ArrayList<>();
+    if (matchStage != null) {
+      stages.add(matchStage);
+    }
+    if (sortStage != null) {
+      stages.add(sortStage);
+    }
+    return stages;
+  }
+
+  /**
+   * Returns the fields compared with the equality predicates, in the order of the $match stage.
+   *
+   * @return the equality fields
+   */
+  public List<String> getEqualityFields() {
+    return equalityFields;
+  }
+
+  /**
+   * Returns the fields compared with the range predicates, in the order of the $match stage.
+   *
+   * @return the range fields
+   */
+  public List<String> getRangeFields() {
+    return rangeFields;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    IndexPlan indexPlan = (IndexPlan) o;
+    return sortCoveredByIndex == indexPlan.sortCoveredByIndex
+        && Objects.equals(index, indexPlan.index)
+        && Objects.equals(hint, indexPlan.hint)
+        && Objects.equals(matchStage, indexPlan.matchStage)
+        && Objects.equals(sortStage, indexPlan.sortStage)
+        && Objects.equals(equalityFields, indexPlan.equalityFields)
+        && Objects.equals(rangeFields, indexPlan.rangeFields);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(
+        index, hint, sortCoveredByIndex, matchStage, sortStage, equalityFields, rangeFields);
+  }
+
+  @Override
+  public String toString() {
+    return "IndexPlan{"
+        + "index="
+        + index
+        + ", hint="
+        + hint
+        + ", sortCoveredByIndex="
+        + sortCoveredByIndex
+        + ", matchStage="
+        + matchStage
+        + ", sortStage="
+        + sortStage
+        + ", equalityFields="
+        + equalityFields
+        + ", rangeFields="
+        + rangeFields
+        + '}';
+  }
+}
@@ -0,0 +1,202 @@
+package com.github.starnowski.jamolingo.core.operators.count;
+
+import com.github.starnowski.jamolingo.core.cache.QueryPlanCache;
+import com.github.starnowski.jamolingo.core.cache.QueryPlanCacheKey;
+import com.github.starnowski.jamolingo.core.operators.filter.FilterOperatorResult;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import org.bson.BsonDocument;
+import org.bson.UuidRepresentation;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+
+/**
+ * Short-lived cache of the count values. The entry is keyed by the collection name, the generated
+ * $match stages and the counting strategy of the {@link CountOperatorResult}, so the $filter
+ * options that differ only in formatting, for example whitespaces or the order of the query
+ * options, share the same entry. The cached count can be outdated by at most the time to live of
+ * the entry, which should be short.
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * CountValue count =
+ *     countCache.get(
+ *         "orders",
+ *         filterResult,
+ *         countResult,
+ *         () -> countResult.isEstimatedCount()
+ *             ? collection.estimatedDocumentCount()
+ *             : readCount(collection.aggregate(pipeline)));
+ * }</pre>
+ */
+public final class CountCache {
+
+  /** Default time to live of the entry. */
+  public static final Duration DEFAULT_EXPIRE_AFTER_WRITE = Duration.ofSeconds(30);
+
+  private static final CodecRegistry KEY_CODEC_REGISTRY =
+      CodecRegistries.withUuidRepresentation(
+          Bson.DEFAULT_CODEC_REGISTRY, UuidRepresentation.STANDARD);
+
+  private final QueryPlanCache<CountValue> cache;
+
+  private CountCache(QueryPlanCache<CountValue> cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * Returns the builder of the cache.
+   *
+   * @return the builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns the cached count value or counts the documents with the loader and stores the value.
+   *
+   * @param collectionName the name of the counted collection
+   * @param filterResult the result of the $filter parsing, can be null if there is no filter
+   * @param countResult the result of the $count parsing that defines the counting strategy
+   * @param loader the loader that counts the documents
+   * @param <E> type of the exception thrown by the loader
+   * @return the count value
+   * @throws E if the loader fails
+   */
+  public <E extends Exception> CountValue get(
+      String collectionName,
+      FilterOperatorResult filterResult,
+      CountOperatorResult countResult,
+      CountLoader<E> loader)
+      throws E {
+    return cache.get(
+        key(collectionName, filterResult, countResult),
+        key -> countResult.toCountValue(loader.count()));
+  }
+
+  /** Removes all entries, for example after the documents were bulk modified. */
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  /**
+   * Returns the underlying cache, for example to read the hit and miss counters.
+   *
+   * @return the cache
+   */
+  public QueryPlanCache<CountValue> getCache() {
+    return cache;
+  }
+
+  /**
+   * Creates the key of the count value.
+   *
+   * @param collectionName the name of the counted collection
+   * @param filterResult the result of the $filter parsing, can be null if there is no filter
+   * @param countResult the result of the $count parsing that defines the counting strategy
+   * @return the key
+   */
+  public static QueryPlanCacheKey key(
+      String collectionName, FilterOperatorResult filterResult, CountOperatorResult countResult) {
+    StringBuilder filter = new StringBuilder("[");
+    List<Bson> stages = filterResult == null ? null : filterResult.getStageObjects();
+    if (stages != null) {
+      for (Bson stage : stages) {
+        if (filter.length() > 1) {
+          filter.append(',');
+        }
+        // The stages can contain UUID values of the Edm.Guid literals
+        filter.append(stage.toBsonDocument(BsonDocument.class, KEY_CODEC_REGISTRY).toJson());
+      }
+    }
+    filter.append(']');
+    // The encoded value does not contain the '&' and '=' characters used by the key normalization
+    return QueryPlanCacheKey.of(
+        collectionName,
+        "$filter="
+            + URLEncoder.encode(filter.toString(), StandardCharsets.UTF_8)
+            + "&estimated="
+            + countResult.isEstimatedCount()
+            + "&maximumCount="
+            + countResult.getMaximumCount());
+  }
+
+  /**
+   * Counts the documents.
+   *
+   * @param <E> type of the exception thrown by the loader
+   */
+  @FunctionalInterface
+  public interface CountLoader<E extends Exception> {
+
+    /**
+     * Counts the documents with the stages of the {@link CountOperatorResult} or reads the
+     * estimated count when {@link CountOperatorResult#isEstimatedCount()} is true.
+     *
+     * @return the number of counted documents
+     * @throws E if counting fails
+     */
+    long count() throws E;
+  }
+
+  /** Builder of the {@link CountCache}. */
+  public static class Builder {
+    private int maximumSize = QueryPlanCache.DEFAULT_MAXIMUM_SIZE;
+    private Duration expireAfterWrite = DEFAULT_EXPIRE_AFTER_WRITE;
+    private Clock clock = Clock.systemUTC();
+
+    /**
+     * Sets the maximum number of cached count values.
+     *
+     * @param maximumSize the maximum number of entries, must be greater than zero
+     * @return the builder
+     */
+    public Builder withMaximumSize(int maximumSize) {
+      this.maximumSize = maximumSize;
+      return this;
+    }
+
+    /**
+     * Sets the time after which the count value is counted again.
+     *
+     * @param expireAfterWrite the time to live of the entry, must be positive
+     * @return the builder
+     */
+    public Builder withExpireAfterWrite(Duration expireAfterWrite) {
+      this.expireAfterWrite = expireAfterWrite;
+      return this;
+    }
+
+    /**
+     * Sets the clock used to check the time to live of the entries.
+     *
+     * @param clock the clock
+     * @return the builder
+     */
+    public Builder withClock(Clock clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    /**
+     * Creates the cache.
+     *
+     * @return the cache
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    public CountCache build() {
+      return new CountCache(
+          QueryPlanCache.<CountValue>builder()
+              .withMaximumSize(maximumSize)
+              .withExpireAfterWrite(expireAfterWrite)
+              .withClock(clock)
+              .build());
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package com.github.starnowski.jamolingo.core.operators.count;
+
+import java.util.List;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+/**
+ * Represents the result of processing an OData $count system query option together with the stages
+ * that return the page of documents. When the $count option is present and true the stages are
+ * combined into one $facet stage, so the documents matched by the preceding stages, for example
+ * $match, are read once for both the page and the count. The leading $sort stages of the page are
+ * placed before the $facet stage only when the sort is covered by an index. Otherwise the stage
+ * objects are the page stages.
+ */
+public interface CountFacetOperatorResult extends CountOperatorResult {
+
+  /**
+   * Returns the name of the $facet field that contains the page of documents.
+   *
+   * @return the data field name
+   */
+  String getDataFieldName();
+
+  /**
+   * Returns the stages that return the page of documents, for example $sort, $skip, $limit,
+   * $project and $lookup.
+   *
+   * @return the page stages
+   */
+  List<Bson> getDataStages();
+
+  /**
+   * Unpacks the documents returned by the aggregation pipeline into the page of documents and the
+   * total count.
+   *
+   * @param aggregationResults the documents returned by the aggregation pipeline
+   * @return the page with the count, the count is null when the $count option is not present
+   */
+  CountFacetPage unpack(List<Document> aggregationResults);
+}
@@ -0,0 +1,64 @@
+package com.github.starnowski.jamolingo.core.operators.count;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import org.bson.Document;
+
+/**
+ * Page of documents unpacked from the result of the $facet stage created by {@link
+ * CountFacetOperatorResult}, together with the total count of the matching documents.
+ */
+public final class CountFacetPage {
+
+  private final List<Document> value;
+  private final Long count;
+
+  /**
+   * Creates a new CountFacetPage.
+   *
+   * @param value the documents of the page
+   * @param count the total count of the matching documents or null if the count was not requested
+   */
+  public CountFacetPage(List<Document> value, Long count) {
+    this.value = value == null ? Collections.emptyList() : Collections.unmodifiableList(value);
+    this.count = count;
+  }
+
+  /**
+   * Returns the documents of the page, returned as the "value" of the OData response.
+   *
+   * @return the read-only list of documents
+   */
+  public List<Document> getValue() {
+    return value;
+  }
+
+  /**
+   * Returns the total count of the matching documents, returned as the "@odata.count" annotation of
+   * the OData response.
+   *
+   * @return the total count or null if the count was not requested
+   */
+  public Long getCount() {
+    return count;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    CountFacetPage that = (CountFacetPage) o;
+    return Objects.equals(value, that.value) && Objects.equals(count, that.count);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(value, count);
+  }
+
+  @Override
+  public String toString() {
+    return "CountFacetPage{" + "value=" + value + ", count=" + count + '}';
+  }
+}
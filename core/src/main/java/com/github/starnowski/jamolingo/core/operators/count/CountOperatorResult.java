@@ -18,4 +18,35 @@ public interface CountOperatorResult extends OlingoOperatorResult {
    * @return true if $count is present and true, false otherwise
    */
   boolean isCountOptionPresent();
+
+  /**
+   * Returns true if the count should be read from the collection metadata, for example with the
+   * "estimatedDocumentCount" method of the driver. In that case the stage objects are empty.
+   *
+   * @return true if the estimated count is used
+   */
+  default boolean isEstimatedCount() {
+    return false;
+  }
+
+  /**
+   * Returns the maximum number of documents counted by the stage objects or null if all matching
+   * documents are counted.
+   *
+   * @return the maximum count or null
+   */
+  default Long getMaximumCount() {
+    return null;
+  }
+
+  /**
+   * Converts the number of documents counted with this result into the count value, capped at the
+   * maximum count.
+   *
+   * @param countedDocuments the number of counted documents
+   * @return the count value
+   */
+  default CountValue toCountValue(long countedDocuments) {
+    return CountValue.of(countedDocuments, getMaximumCount(), isEstimatedCount());
+  }
 }
@@ -0,0 +1,131 @@
+package com.github.starnowski.jamolingo.core.operators.count;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Value of the OData $count, read with the strategy defined by the {@link CountOperatorResult}. The
+ * value can be capped at the maximum count or estimated from the collection metadata. The
+ * "@odata.count" annotation has to be an integer, so the capped and estimated values are reported
+ * with the additional instance annotations returned by {@link #toAnnotations()}.
+ */
+public final class CountValue {
+
+  /** Name of the OData count annotation. */
+  public static final String ODATA_COUNT_ANNOTATION = "@odata.count";
+
+  /**
+   * Name of the annotation set to true when more documents match the query than the reported count.
+   */
+  public static final String COUNT_CAPPED_ANNOTATION = "@jamolingo.countCapped";
+
+  /**
+   * Name of the annotation set to true when the count is estimated from the collection metadata.
+   */
+  public static final String COUNT_ESTIMATED_ANNOTATION = "@jamolingo.countEstimated";
+
+  private final long count;
+  private final boolean capped;
+  private final boolean estimated;
+
+  /**
+   * Creates a new CountValue.
+   *
+   * @param count the reported count
+   * @param capped true if more documents match the query than the reported count
+   * @param estimated true if the count is estimated from the collection metadata
+   */
+  public CountValue(long count, boolean capped, boolean estimated) {
+    this.count = count;
+    this.capped = capped;
+    this.estimated = estimated;
+  }
+
+  /**
+   * Creates the value from the number of counted documents. When the number is greater than the
+   * maximum count the value is capped at the maximum count.
+   *
+   * @param countedDocuments the number of counted documents
+   * @param maximumCount the maximum count or null if all matching documents were counted
+   * @param estimated true if the number is estimated from the collection metadata
+   * @return the count value
+   */
+  public static CountValue of(long countedDocuments, Long maximumCount, boolean estimated) {
+    if (maximumCount != null && countedDocuments > maximumCount) {
+      return new CountValue(maximumCount, true, estimated);
+    }
+    return new CountValue(countedDocuments, false, estimated);
+  }
+
+  /**
+   * Returns the reported count.
+   *
+   * @return the count
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Returns true if more documents match the query than the reported count.
+   *
+   * @return true if the count is capped
+   */
+  public boolean isCapped() {
+    return capped;
+  }
+
+  /**
+   * Returns true if the count is estimated from the collection metadata.
+   *
+   * @return true if the count is estimated
+   */
+  public boolean isEstimated() {
+    return estimated;
+  }
+
+  /**
+   * Returns the instance annotations of the OData response: "@odata.count" and, when applicable,
+   * {@link #COUNT_CAPPED_ANNOTATION} and {@link #COUNT_ESTIMATED_ANNOTATION}.
+   *
+   * @return the read-only map of annotations in the order of the response properties
+   */
+  public Map<String, Object> toAnnotations() {
+    Map<String, Object> annotations = new LinkedHashMap<>();
+    annotations.put(ODATA_COUNT_ANNOTATION, count);
+    if (capped) {
+      annotations.put(COUNT_CAPPED_ANNOTATION, true);
+    }
+    if (estimated) {
+      annotations.put(COUNT_ESTIMATED_ANNOTATION, true);
+    }
+    return Collections.unmodifiableMap(annotations);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    CountValue that = (CountValue) o;
+    return count == that.count && capped == that.capped && estimated == that.estimated;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(count, capped, estimated);
+  }
+
+  @Override
+  public String toString() {
+    return "CountValue{"
+        + "count="
+        + count
+        + ", capped="
+        + capped
+        + ", estimated="
+        + estimated
+        + '}';
+  }
+}
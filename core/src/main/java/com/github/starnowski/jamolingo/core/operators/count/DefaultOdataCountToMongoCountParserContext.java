@@ -0,0 +1,145 @@
+package com.github.starnowski.jamolingo.core.operators.count;
+
+import java.util.Objects;
+
+/**
+ * Default immutable implementation of the {@link OdataCountToMongoCountParserContext}. By default
+ * the count field is named "count", the documents are always counted and the count is not capped.
+ */
+public class DefaultOdataCountToMongoCountParserContext
+    implements OdataCountToMongoCountParserContext {
+
+  private final String countFieldName;
+  private final boolean estimatedCountForUnfilteredQuery;
+  private final Long maximumCount;
+
+  /**
+   * Creates the context.
+   *
+   * @param countFieldName the name of the count field
+   * @param estimatedCountForUnfilteredQuery true if the count of the query without the $filter
+   *     option should be read from the collection metadata
+   * @param maximumCount the maximum number of counted documents, null means that all matching
+   *     documents are counted
+   * @throws IllegalArgumentException if the count field name is null or the maximum count is
+   *     negative
+   */
+  public DefaultOdataCountToMongoCountParserContext(
+      String countFieldName, boolean estimatedCountForUnfilteredQuery, Long maximumCount) {
+    if (countFieldName == null) {
+      throw new IllegalArgumentException("The count field name can not be null");
+    }
+    if (maximumCount != null && maximumCount < 0) {
+      throw new IllegalArgumentException("The maximum count can not be negative");
+    }
+    this.countFieldName = countFieldName;
+    this.estimatedCountForUnfilteredQuery = estimatedCountForUnfilteredQuery;
+    this.maximumCount = maximumCount;
+  }
+
+  @Override
+  public String getCountFieldName() {
+    return countFieldName;
+  }
+
+  @Override
+  public boolean isEstimatedCountForUnfilteredQuery() {
+    return estimatedCountForUnfilteredQuery;
+  }
+
+  @Override
+  public Long getMaximumCount() {
+    return maximumCount;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    DefaultOdataCountToMongoCountParserContext that =
+        (DefaultOdataCountToMongoCountParserContext) o;
+    return estimatedCountForUnfilteredQuery == that.estimatedCountForUnfilteredQuery
+        && Objects.equals(countFieldName, that.countFieldName)
+        && Objects.equals(maximumCount, that.maximumCount);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(countFieldName, estimatedCountForUnfilteredQuery, maximumCount);
+  }
+
+  @Override
+  public String toString() {
+    return "DefaultOdataCountToMongoCountParserContext{"
+        + "countFieldName='"
+        + countFieldName
+        + '\''
+        + ", estimatedCountForUnfilteredQuery="
+        + estimatedCountForUnfilteredQuery
+        + ", maximumCount="
+        + maximumCount
+        + '}';
+  }
+
+  /**
+   * Returns the builder of the context.
+   *
+   * @return the builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Builder of the {@link DefaultOdataCountToMongoCountParserContext}. */
+  public static class Builder {
+    private String countFieldName = "count";
+    private boolean estimatedCountForUnfilteredQuery;
+    private Long maximumCount;
+
+    /**
+     * Sets the name of the count field, "count" by default.
+     *
+     * @param countFieldName the count field name
+     * @return the builder
+     */
+    public Builder withCountFieldName(String countFieldName) {
+      this.countFieldName = countFieldName;
+      return this;
+    }
+
+    /**
+     * Sets if the count of the query without the $filter option should be read from the collection
+     * metadata instead of counting the documents.
+     *
+     * @param estimatedCountForUnfilteredQuery true if the estimated count should be used
+     * @return the builder
+     */
+    public Builder withEstimatedCountForUnfilteredQuery(boolean estimatedCountForUnfilteredQuery) {
+      this.estimatedCountForUnfilteredQuery = estimatedCountForUnfilteredQuery;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of counted documents.
+     *
+     * @param maximumCount the maximum count, null means that all matching documents are counted
+     * @return the builder
+     */
+    public Builder withMaximumCount(Long maximumCount) {
+      this.maximumCount = maximumCount;
+      return this;
+    }
+
+    /**
+     * Creates the context.
+     *
+     * @return the context
+     * @throws IllegalArgumentException if the count field name is null or the maximum count is
+     *     negative
+     */
+    public DefaultOdataCountToMongoCountParserContext build() {
+      return new DefaultOdataCountToMongoCountParserContext(
+          countFieldName, estimatedCountForUnfilteredQuery, maximumCount);
+    }
+  }
+}
@@ -1,5 +1,7 @@
 package com.github.starnowski.jamolingo.core.operators.count;
 
+import com.github.starnowski.jamolingo.core.operators.filter.FilterOperatorResult;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import org.apache.olingo.server.api.uri.queryoption.CountOption;
@@ -13,6 +15,7 @@ import org.bson.conversions.Bson;
 public class OdataCountToMongoCountParser {
 
   private static final String DEFAULT_COUNT_FIELD_NAME = "count";
+  private static final String DEFAULT_DATA_FIELD_NAME = "data";
 
   /**
    * Parses the given CountOption with the default count field name "count".
@@ -38,14 +41,217 @@ public class OdataCountToMongoCountParser {
     return new DefaultCountOperatorResult(countFieldName, true);
   }
 
+  /**
+   * Parses the given CountOption with the counting strategy defined by the context. When the
+   * estimated count is enabled and the filter result has no stages, the result has no stages and
+   * the count should be read from the collection metadata. When the maximum count is set, the
+   * $limit stage that passes at most the maximum count plus one documents is added before the
+   * $count stage, so the count stops early and the capped count can be recognized by {@link
+   * CountOperatorResult#toCountValue(long)}.
+   *
+   * @param countOption the OData count option to parse
+   * @param filterResult the result of the $filter parsing, can be null if there is no filter
+   * @param context the context that defines the counting strategy
+   * @return the result of the parsing containing the MongoDB count stages
+   */
+  public CountOperatorResult parse(
+      CountOption countOption,
+      FilterOperatorResult filterResult,
+      OdataCountToMongoCountParserContext context) {
+    String countFieldName = context.getCountFieldName();
+    if (countOption == null || !countOption.getValue()) {
+      return new DefaultCountOperatorResult(countFieldName, false);
+    }
+    boolean filtered =
+        filterResult != null
+            && filterResult.getStageObjects() != null
+            && !filterResult.getStageObjects().isEmpty();
+    if (!filtered && context.isEstimatedCountForUnfilteredQuery()) {
+      return new DefaultCountOperatorResult(countFieldName, true, true, null);
+    }
+    return new DefaultCountOperatorResult(countFieldName, true, false, context.getMaximumCount());
+  }
+
+  /**
+   * Parses the given CountOption and combines the count with the page stages into one $facet stage,
+   * with the default data field name "data" and the default count field name "count".
+   *
+   * @param countOption the OData count option to parse
+   * @param dataStages the stages that return the page of documents, for example $sort, $skip,
+   *     $limit, $project and $lookup
+   * @return the result of the parsing containing the $facet stage or the page stages when the count
+   *     is not requested
+   */
+  public CountFacetOperatorResult parseWithFacet(CountOption countOption, List<Bson> dataStages) {
+    return parseWithFacet(
+        countOption, dataStages, DEFAULT_DATA_FIELD_NAME, DEFAULT_COUNT_FIELD_NAME);
+  }
+
+  /**
+   * Parses the given CountOption and combines the count with the page stages into one $facet stage
+   * with the provided field names. The $sort stages stay in the data sub-pipeline, where MongoDB
+   * coalesces them with the following $limit stage into a top-k sort. The pipeline that ends with
+   * the $facet stage returns one document, so the page together with the count has to fit within
+   * the BSON document size limit.
+   *
+   * @param countOption the OData count option to parse
+   * @param dataStages the stages that return the page of documents, for example $sort, $skip,
+   *     $limit, $project and $lookup
+   * @param dataFieldName the name of the $facet field that contains the page of documents
+   * @param countFieldName the name of the $facet field and of the count field
+   * @return the result of the parsing containing the $facet stage or the page stages when the count
+   *     is not requested
+   * @throws IllegalArgumentException if the data field name is equal to the count field name
+   */
+  public CountFacetOperatorResult parseWithFacet(
+      CountOption countOption, List<Bson> dataStages, String dataFieldName, String countFieldName) {
+    return parseWithFacet(countOption, dataStages, dataFieldName, countFieldName, false);
+  }
+
+  /**
+   * Parses the given CountOption and combines the count with the page stages into one $facet stage
+   * with the provided field names. When the sort is covered by an index, for example as reported by
+   * {@link com.github.starnowski.jamolingo.core.index.IndexPlan#isSortCoveredByIndex()}, the
+   * leading $sort stages of the page are placed before the $facet stage, because the $facet
+   * sub-pipelines can not use indexes. Otherwise the $sort stages stay in the data sub-pipeline, so
+   * an unindexed sort is coalesced with the $limit stage instead of sorting all matched documents.
+   *
+   * @param countOption the OData count option to parse
+   * @param dataStages the stages that return the page of documents, for example $sort, $skip,
+   *     $limit, $project and $lookup
+   * @param dataFieldName the name of the $facet field that contains the page of documents
+   * @param countFieldName the name of the $facet field and of the count field
+   * @param sortCoveredByIndex true if the leading $sort stages can use an index
+   * @return the result of the parsing containing the $facet stage or the page stages when the count
+   *     is not requested
+   * @throws IllegalArgumentException if the data field name is equal to the count field name
+   */
+  public CountFacetOperatorResult parseWithFacet(
+      CountOption countOption,
+      List<Bson> dataStages,
+      String dataFieldName,
+      String countFieldName,
+      boolean sortCoveredByIndex) {
+    if (dataFieldName == null || dataFieldName.equals(countFieldName)) {
+      throw new IllegalArgumentException(
+          "The data field name can not be null or equal to the count field name");
+    }
+    return new DefaultCountFacetOperatorResult(
+        countFieldName,
+        countOption != null && countOption.getValue(),
+        dataFieldName,
+        dataStages == null ? Collections.emptyList() : dataStages,
+        sortCoveredByIndex);
+  }
+
+  private static class DefaultCountFacetOperatorResult extends DefaultCountOperatorResult
+      implements CountFacetOperatorResult {
+
+    private final String dataFieldName;
+    private final List<Bson> dataStages;
+    private final boolean sortCoveredByIndex;
+
+    private DefaultCountFacetOperatorResult(
+        String countFieldName,
+        boolean present,
+        String dataFieldName,
+        List<Bson> dataStages,
+        boolean sortCoveredByIndex) {
+      super(countFieldName, present);
+      this.dataFieldName = dataFieldName;
+      this.dataStages = Collections.unmodifiableList(new ArrayList<>(dataStages));
+      this.sortCoveredByIndex = sortCoveredByIndex;
+    }
+
+    @Override
+    public String getDataFieldName() {
+      return dataFieldName;
+    }
+
+    @Override
+    public List<Bson> getDataStages() {
+      return dataStages;
+    }
+
+    @Override
+    public List<Bson> getStageObjects() {
+      if (!isCountOptionPresent()) {
+        return dataStages;
+      }
+      // The indexed $sort stages are executed before the $facet stage, where they can use indexes.
+      // The other $sort stages stay in the $facet with the $limit stage, to keep the top-k sort.
+      int sortStages = 0;
+      while (sortCoveredByIndex
+          && sortStages < dataStages.size()
+          && isSortStage(dataStages.get(sortStages))) {
+        sortStages++;
+      }
+      List<Bson> stages = new ArrayList<>(dataStages.subList(0, sortStages));
+      List<Bson> facetDataStages = dataStages.subList(sortStages, dataStages.size());
+      if (facetDataStages.isEmpty()) {
+        // The $facet sub-pipeline can not be empty
+        facetDataStages = Collections.singletonList(new Document("$skip", 0));
+      }
+      stages.add(
+          new Document(
+              "$facet",
+              new Document(dataFieldName, facetDataStages)
+                  .append(getCountFieldName(), super.getStageObjects())));
+      return Collections.unmodifiableList(stages);
+    }
+
+    private static boolean isSortStage(Bson stage) {
+      return stage instanceof Document
+          ? ((Document) stage).containsKey("$sort")
+          : stage.toBsonDocument().containsKey("$sort");
+    }
+
+    @Override
+    public List<String> getWrittenMongoDocumentProperties() {
+      return isCountOptionPresent() ? List.of(dataFieldName, getCountFieldName()) : List.of();
+    }
+
+    @Override
+    public List<String> getAddedMongoDocumentProperties() {
+      return getWrittenMongoDocumentProperties();
+    }
+
+    @Override
+    public CountFacetPage unpack(List<Document> aggregationResults) {
+      if (!isCountOptionPresent()) {
+        return new CountFacetPage(aggregationResults, null);
+      }
+      if (aggregationResults == null || aggregationResults.isEmpty()) {
+        return new CountFacetPage(Collections.emptyList(), 0L);
+      }
+      Document facet = aggregationResults.get(0);
+      List<Document> value = facet.getList(dataFieldName, Document.class);
+      List<Document> count = facet.getList(getCountFieldName(), Document.class);
+      return new CountFacetPage(
+          value,
+          count == null || count.isEmpty()
+              ? 0L
+              : ((Number) count.get(0).get(getCountFieldName())).longValue());
+    }
+  }
+
   private static class DefaultCountOperatorResult implements CountOperatorResult {
 
     private final String countFieldName;
     private final boolean present;
+    private final boolean estimated;
+    private final Long maximumCount;
 
     private DefaultCountOperatorResult(String countFieldName, boolean present) {
+      this(countFieldName, present, false, null);
+    }
+
+    private DefaultCountOperatorResult(
+        String countFieldName, boolean present, boolean estimated, Long maximumCount) {
       this.countFieldName = countFieldName;
       this.present = present;
+      this.estimated = estimated;
+      this.maximumCount = maximumCount;
     }
 
     @Override
@@ -58,11 +264,26 @@ public class OdataCountToMongoCountParser {
       return present;
     }
 
+    @Override
+    public boolean isEstimatedCount() {
+      return estimated;
+    }
+
+    @Override
+    public Long getMaximumCount() {
+      return maximumCount;
+    }
+
     @Override
     public List<Bson> getStageObjects() {
-      if (!present) {
+      if (!present || estimated) {
         return Collections.emptyList();
       }
+      if (maximumCount != null) {
+        // One more document than the maximum tells that the count is capped
+        return List.of(
+            new Document("$limit", maximumCount + 1), new Document("$count", countFieldName));
+      }
       return Collections.singletonList(new Document("$count", countFieldName));
     }
 
@@ -73,12 +294,16 @@ public class OdataCountToMongoCountParser {
 
     @Override
     public List<String> getWrittenMongoDocumentProperties() {
-      return present ? Collections.singletonList(countFieldName) : Collections.emptyList();
+      return present && !estimated
+          ? Collections.singletonList(countFieldName)
+          : Collections.emptyList();
     }
 
     @Override
     public List<String> getAddedMongoDocumentProperties() {
-      return present ? Collections.singletonList(countFieldName) : Collections.emptyList();
+      return present && !estimated
+          ? Collections.singletonList(countFieldName)
+          : Collections.emptyList();
     }
 
     @Override
@@ -91,7 +316,7 @@ public class OdataCountToMongoCountParser {
 
     @Override
     public boolean isDocumentShapeRedefined() {
-      return present;
+      return present && !estimated;
     }
   }
 }
@@ -0,0 +1,32 @@
+package com.github.starnowski.jamolingo.core.operators.count;
+
+/** Context for the {@link OdataCountToMongoCountParser} that defines the counting strategy. */
+public interface OdataCountToMongoCountParserContext {
+
+  /**
+   * Returns the name of the count field.
+   *
+   * @return the count field name
+   */
+  String getCountFieldName();
+
+  /**
+   * Returns true if the count of the query without the $filter option should be read from the
+   * collection metadata, for example with the "estimatedDocumentCount" method of the driver,
+   * instead of counting the documents. The estimated count does not read any documents, but it can
+   * be inaccurate, for example after an unclean shutdown or for orphaned documents in a sharded
+   * cluster.
+   *
+   * @return true if the estimated count is used for the query without the filter
+   */
+  boolean isEstimatedCountForUnfilteredQuery();
+
+  /**
+   * Returns the maximum number of documents that are counted. When more documents match the query
+   * the count is reported as the maximum count and flagged as capped. The null value means that all
+   * matching documents are counted.
+   *
+   * @return the maximum count or null
+   */
+  Long getMaximumCount();
+}
@@ -0,0 +1,336 @@
+package com.github.starnowski.jamolingo.core.operators.expand;
+
+import java.util.Arrays;
+import java.util.List;
+import org.bson.Document;
+
+/**
+ * Builders of the aggregation stages and expressions used by the {@link
+ * ODataExpandToMongoAggregationPipelineParser}. The stages are constructed directly as BSON
+ * documents, without formatting and parsing the JSON text, so the translation of the $expand option
+ * does not depend on the JSON parser and does not allocate the intermediate text.
+ *
+ * <p>The expression arguments can be any value supported by the {@link Document}, like the field
+ * path string, the nested document or the list.
+ */
+final class AggregationStages {
+
+  private AggregationStages() {}
+
+  /**
+   * Creates the $group stage.
+   *
+   * @param id the expression for the _id field
+   * @param accumulators the accumulator fields
+   * @return the $group stage
+   */
+  static Document group(Object id, Document accumulators) {
+    Document group = new Document("_id", id);
+    group.putAll(accumulators);
+    return new Document("$group", group);
+  }
+
+  /**
+   * Creates the $set stage for the single field.
+   *
+   * @param field the field name
+   * @param expression the expression of the field value
+   * @return the $set stage
+   */
+  static Document set(String field, Object expression) {
+    return new Document("$set", new Document(field, expression));
+  }
+
+  /**
+   * Creates the $addFields stage for the single field.
+   *
+   * @param field the field name
+   * @param expression the expression of the field value
+   * @return the $addFields stage
+   */
+  static Document addFields(String field, Object expression) {
+    return new Document("$addFields", new Document(field, expression));
+  }
+
+  /**
+   * Creates the $replaceRoot stage.
+   *
+   * @param newRoot the expression of the new root document
+   * @return the $replaceRoot stage
+   */
+  static Document replaceRoot(Object newRoot) {
+    return new Document("$replaceRoot", new Document("newRoot", newRoot));
+  }
+
+  /**
+   * Returns the field path expression for the field name, for example "$field".
+   *
+   * @param field the field name
+   * @return the field path expression
+   */
+  static String fieldPath(String field) {
+    return "$" + field;
+  }
+
+  /**
+   * Returns the variable expression for the variable name and the optional field path, for example
+   * "$$item.field".
+   *
+   * @param variable the variable name
+   * @param field the field path, can be null
+   * @return the variable expression
+   */
+  static String variable(String variable, String field) {
+    return field == null ? "$$" + variable : "$$" + variable + "." + field;
+  }
+
+  /**
+   * Creates the $map expression.
+   *
+   * @param input the input array expression
+   * @param as the name of the variable for the array element
+   * @param in the expression applied to each element
+   * @return the $map expression
+   */
+  static Document map(Object input, String as, Object in) {
+    return new Document("$map", new Document("input", input).append("as", as).append("in", in));
+  }
+
+  /**
+   * Creates the $reduce expression.
+   *
+   * @param input the input array expression
+   * @param initialValue the initial value of the accumulator
+   * @param in the expression applied to each element
+   * @return the $reduce expression
+   */
+  static Document reduce(Object input, Object initialValue, Object in) {
+    return new Document(
+        "$reduce",
+        new Document("input", input).append("initialValue", initialValue).append("in", in));
+  }
+
+  /**
+   * Creates the $let expression.
+   *
+   * @param vars the variables
+   * @param in the expression that uses the variables
+   * @return the $let expression
+   */
+  static Document let(Document vars, Object in) {
+    return new Document("$let", new Document("vars", vars).append("in", in));
+  }
+
+  /**
+   * Creates the $cond expression in the array form.
+   *
+   * @param condition the condition expression
+   * @param then the expression returned when the condition is true
+   * @param otherwise the expression returned when the condition is false
+   * @return the $cond expression
+   */
+  static Document cond(Object condition, Object then, Object otherwise) {
+    return new Document("$cond", Arrays.asList(condition, then, otherwise));
+  }
+
+  /**
+   * Creates the $cond expression in the document form, with the "if", "then" and "else" fields.
+   *
+   * @param condition the condition expression
+   * @param then the expression returned when the condition is true
+   * @param otherwise the expression returned when the condition is false
+   * @return the $cond expression
+   */
+  static Document condDocument(Object condition, Object then, Object otherwise) {
+    return new Document(
+        "$cond", new Document("if", condition).append("then", then).append("else", otherwise));
+  }
+
+  /**
+   * Creates the $eq expression.
+   *
+   * @param left the left operand
+   * @param right the right operand
+   * @return the $eq expression
+   */
+  static Document eq(Object left, Object right) {
+    return new Document("$eq", Arrays.asList(left, right));
+  }
+
+  /**
+   * Creates the $ne expression.
+   *
+   * @param left the left operand
+   * @param right the right operand
+   * @return the $ne expression
+   */
+  static Document ne(Object left, Object right) {
+    return new Document("$ne", Arrays.asList(left, right));
+  }
+
+  /**
+   * Creates the $lt expression.
+   *
+   * @param left the left operand
+   * @param right the right operand
+   * @return the $lt expression
+   */
+  static Document lt(Object left, Object right) {
+    return new Document("$lt", Arrays.asList(left, right));
+  }
+
+  /**
+   * Creates the $and expression.
+   *
+   * @param expressions the expressions
+   * @return the $and expression
+   */
+  static Document and(Object... expressions) {
+    return new Document("$and", Arrays.asList(expressions));
+  }
+
+  /**
+   * Creates the $filter expression.
+   *
+   * @param input the input array expression
+   * @param as the name of the variable for the array element
+   * @param cond the condition that the element has to match
+   * @return the $filter expression
+   */
+  static Document filter(Object input, String as, Object cond) {
+    return new Document(
+        "$filter", new Document("input", input).append("as", as).append("cond", cond));
+  }
+
+  /**
+   * Creates the $arrayElemAt expression. The expression returns the missing value when the index is
+   * out of the array bounds.
+   *
+   * @param array the array expression
+   * @param index the index of the element
+   * @return the $arrayElemAt expression
+   */
+  static Document arrayElemAt(Object array, int index) {
+    return new Document("$arrayElemAt", Arrays.asList(array, index));
+  }
+
+  /**
+   * Returns the expression of the document without the given top level field. The expression uses
+   * only the $objectToArray, $filter and $arrayToObject operators, so it does not require the
+   * $unsetField operator.
+   *
+   * @param object the document expression
+   * @param field the name of the removed field
+   * @return the expression of the document without the field
+   */
+  static Document withoutField(Object object, String field) {
+    return new Document(
+        "$arrayToObject",
+        filter(objectToArray(object), "field", ne(variable("field", "k"), field)));
+  }
+
+  /**
+   * Creates the $ifNull expression.
+   *
+   * @param expression the expression
+   * @param replacement the value returned when the expression is null or missing
+   * @return the $ifNull expression
+   */
+  static Document ifNull(Object expression, Object replacement) {
+    return new Document("$ifNull", Arrays.asList(expression, replacement));
+  }
+
+  /**
+   * Creates the $size expression.
+   *
+   * @param array the array expression
+   * @return the $size expression
+   */
+  static Document size(Object array) {
+    return new Document("$size", array);
+  }
+
+  /**
+   * Creates the $objectToArray expression.
+   *
+   * @param object the document expression
+   * @return the $objectToArray expression
+   */
+  static Document objectToArray(Object object) {
+    return new Document("$objectToArray", object);
+  }
+
+  /**
+   * Creates the $indexOfArray expression.
+   *
+   * @param array the array expression
+   * @param search the expression of the searched value
+   * @return the $indexOfArray expression
+   */
+  static Document indexOfArray(Object array, Object search) {
+    return new Document("$indexOfArray", Arrays.asList(array, search));
+  }
+
+  /**
+   * Creates the $concatArrays expression.
+   *
+   * @param arrays the array expressions
+   * @return the $concatArrays expression
+   */
+  static Document concatArrays(Object... arrays) {
+    return new Document("$concatArrays", Arrays.asList(arrays));
+  }
+
+  /**
+   * Creates the $add expression.
+   *
+   * @param expressions the number expressions
+   * @return the $add expression
+   */
+  static Document add(Object... expressions) {
+    return new Document("$add", Arrays.asList(expressions));
+  }
+
+  /**
+   * Creates the $mergeObjects expression.
+   *
+   * @param objects the document expressions
+   * @return the $mergeObjects expression
+   */
+  static Document mergeObjects(Object... objects) {
+    return new Document("$mergeObjects", Arrays.asList(objects));
+  }
+
+  /**
+   * Creates the $sortArray expression.
+   *
+   * @param input the input array expression
+   * @param sortBy the sort specification
+   * @return the $sortArray expression
+   */
+  static Document sortArray(Object input, Document sortBy) {
+    return new Document("$sortArray", new Document("input", input).append("sortBy", sortBy));
+  }
+
+  /**
+   * Creates the $slice expression with the position and the number of elements.
+   *
+   * @param array the array expression
+   * @param position the position expression
+   * @param n the expression of the number of elements
+   * @return the $slice expression
+   */
+  static Document slice(Object array, Object position, Object n) {
+    return new Document("$slice", Arrays.asList(array, position, n));
+  }
+
+  /**
+   * Returns the single element array expression, for example ["$$this"].
+   *
+   * @param element the element expression
+   * @return the array expression
+   */
+  static List<Object> array(Object element) {
+    return Arrays.asList(element);
+  }
+}
@@ -0,0 +1,748 @@
+package com.github.starnowski.jamolingo.core.operators.expand;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.UnaryOperator;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.Decimal128;
+
+/**
+ * Fetches the related documents of the expand elements with the {@link FetchType#BATCHED} fetch
+ * type and joins them with the page of documents in the application. The distinct join keys of the
+ * whole page are collected and the related documents of each navigation property are fetched with a
+ * single $in query, so the number of queries does not depend on the size of the page. The nested
+ * expand elements with the batched fetch type are fetched the same way, with one query per nested
+ * navigation property.
+ *
+ * <p>The $skip and $top options of the expanded collection are applied to the related documents of
+ * each parent document in the application, after the related documents were sorted by the query.
+ * The parent documents without the join key are not joined with any related documents.
+ *
+ * <p>The hierarchy of the expand element with the {@link FetchType#BATCHED_LEVELS} fetch type is
+ * fetched level by level, with one $in query per level for the whole page of documents. The keys
+ * that were already queried are not queried again, so the cycles in the hierarchy do not repeat the
+ * queries, and the walk stops at the requested level. The fetched documents are assembled into the
+ * tree of each parent document by the {@link GraphLookUpToLookUpStrategyResultsTransformer}, the
+ * same way as the results of the $graphLookup stage.
+ *
+ * <p>The related documents of the expand element with the {@link FetchType#CACHED} fetch type are
+ * found in the {@link NavigationTargetCache}, when the executor was created with the cache, and the
+ * database is queried only when the cached collection is loaded. Without the cache, or when the
+ * collection is too large to be cached, they are fetched with the $in query like for the {@link
+ * FetchType#BATCHED} fetch type.
+ *
+ * <p>The executor created with the executor service fetches the sibling navigation properties
+ * concurrently, so the time of the expand depends on the slowest branch instead of the sum of all
+ * queries.
+ */
+public class BatchedExpandExecutor {
+
+  /** Default maximum number of queries executed at the same time for one page of documents. */
+  public static final int DEFAULT_MAX_CONCURRENCY = 4;
+
+  private final ExecutorService executorService;
+  private final int maxConcurrency;
+  private final NavigationTargetCache navigationTargetCache;
+
+  /** Creates the executor that fetches the navigation properties one by one. */
+  public BatchedExpandExecutor() {
+    this(null, DEFAULT_MAX_CONCURRENCY, null);
+  }
+
+  private BatchedExpandExecutor(
+      ExecutorService executorService,
+      int maxConcurrency,
+      NavigationTargetCache navigationTargetCache) {
+    this.executorService = executorService;
+    this.maxConcurrency = maxConcurrency;
+    this.navigationTargetCache = navigationTargetCache;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Executes the aggregation pipeline that fetches the related documents. */
+  @FunctionalInterface
+  public interface BatchLoader {
+
+    /**
+     * Executes the aggregation pipeline against the collection of the related documents.
+     *
+     * @param collection the name of the collection
+     * @param pipeline the aggregation pipeline that starts with the $in match stage, or the empty
+     *     pipeline when the {@link NavigationTargetCache} loads the whole collection
+     * @return the iterator of the related documents, when it implements {@link AutoCloseable} it is
+     *     closed after all documents are read
+     * @throws Exception if the query fails
+     */
+    Iterator<Document> load(String collection, List<Bson> pipeline) throws Exception;
+  }
+
+  /**
+   * Joins the related documents of the expand elements with the {@link FetchType#BATCHED}, {@link
+   * FetchType#BATCHED_LEVELS} and {@link FetchType#CACHED} fetch types with the passed documents.
+   * The documents are modified in place. The expand elements with other fetch types are skipped
+   * because their related documents are returned by the aggregation stages.
+   *
+   * <p>When the executor service is set, the sibling navigation properties are fetched
+   * concurrently, with at most {@link #getMaxConcurrency()} queries at the same time. The nested
+   * navigation properties and the documents are processed only by the calling thread. When one of
+   * the queries fails or the calling thread is interrupted, the remaining queries of the call are
+   * cancelled.
+   *
+   * @param documents the page of documents
+   * @param expandOperatorResult the result of the $expand translation
+   * @param batchLoader the loader that executes the queries, it has to be thread safe when the
+   *     executor service is set
+   * @return the passed documents
+   * @throws ExpandException if the related documents could not be fetched
+   */
+  public List<Document> expand(
+      List<Document> documents,
+      ExpandOperatorResult expandOperatorResult,
+      BatchLoader batchLoader) {
+    if (batchLoader == null) {
+      throw new IllegalArgumentException("The batch loader can not be null");
+    }
+    if (documents == null
+        || documents.isEmpty()
+        || expandOperatorResult == null
+        || expandOperatorResult.getExpandElements() == null) {
+      return documents;
+    }
+    expand(
+        documents,
+        expandOperatorResult.getExpandElements(),
+        new Execution(batchLoader, new Semaphore(maxConcurrency)));
+    return documents;
+  }
+
+  public ExecutorService getExecutorService() {
+    return executorService;
+  }
+
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  public NavigationTargetCache getNavigationTargetCache() {
+    return navigationTargetCache;
+  }
+
+  private void expand(
+      List<Document> documents, Map<String, ExpandElement> expandElements, Execution execution) {
+    if (documents.isEmpty()) {
+      return;
+    }
+    List<ExpandElement> batchedElements = new ArrayList<>();
+    for (ExpandElement expandElement : expandElements.values()) {
+      if (FetchType.BATCHED.equals(expandElement.getFetchType())
+          || FetchType.BATCHED_LEVELS.equals(expandElement.getFetchType())
+          || FetchType.CACHED.equals(expandElement.getFetchType())) {
+        batchedElements.add(expandElement);
+      }
+    }
+    if (executorService == null || batchedElements.size() < 2) {
+      for (ExpandElement expandElement : batchedElements) {
+        List<Document> related = fetch(documents, expandElement, execution);
+        join(documents, expandElement, expandAndIndex(related, expandElement, execution));
+      }
+      return;
+    }
+    // Only the queries of the sibling navigation properties are executed by the executor service.
+    // The nested navigation properties are expanded by the calling thread, so the tasks never wait
+    // for other tasks and the executor service with the bounded number of threads can not deadlock
+    CompletionService<List<Document>> completionService =
+        new ExecutorCompletionService<>(executorService);
+    List<Future<List<Document>>> futures = new ArrayList<>();
+    for (ExpandElement expandElement : batchedElements) {
+      futures.add(completionService.submit(() -> fetch(documents, expandElement, execution)));
+    }
+    // The results are awaited in the order of completion, so the first failure cancels the others
+    List<List<Document>> results = new ArrayList<>(Collections.nCopies(futures.size(), null));
+    for (int i = 0; i < futures.size(); i++) {
+      int index = awaitNext(completionService, futures, batchedElements);
+      results.set(index, await(futures, index, batchedElements.get(index)));
+    }
+    for (int i = 0; i < batchedElements.size(); i++) {
+      ExpandElement expandElement = batchedElements.get(i);
+      join(documents, expandElement, expandAndIndex(results.get(i), expandElement, execution));
+    }
+  }
+
+  private static int awaitNext(
+      CompletionService<List<Document>> completionService,
+      List<Future<List<Document>>> futures,
+      List<ExpandElement> expandElements) {
+    try {
+      return futures.indexOf(completionService.take());
+    } catch (InterruptedException e) {
+      int index = 0;
+      while (index < futures.size() - 1 && futures.get(index).isDone()) {
+        index++;
+      }
+      cancel(futures);
+      Thread.currentThread().interrupt();
+      throw interrupted(expandElements.get(index), e);
+    }
+  }
+
+  private static List<Document> await(
+      List<Future<List<Document>>> futures, int index, ExpandElement expandElement) {
+    try {
+      return futures.get(index).get();
+    } catch (InterruptedException e) {
+      cancel(futures);
+      Thread.currentThread().interrupt();
+      throw interrupted(expandElement, e);
+    } catch (ExecutionException e) {
+      cancel(futures);
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new ExpandException(
+          expandElement.getEdmPath(),
+          "Failed to fetch the related documents of the navigation property "
+              + expandElement.getEdmPath(),
+          cause);
+    }
+  }
+
+  private static ExpandException interrupted(ExpandElement expandElement, InterruptedException e) {
+    return new ExpandException(
+        expandElement.getEdmPath(),
+        "Interrupted while fetching the related documents of the navigation property "
+            + expandElement.getEdmPath(),
+        e);
+  }
+
+  private static void cancel(List<Future<List<Document>>> futures) {
+    for (Future<List<Document>> future : futures) {
+      future.cancel(true);
+    }
+  }
+
+  /**
+   * Fetches the related documents of the expand element without their nested navigation properties.
+   * The passed documents are not modified, so the method can be executed concurrently for the
+   * sibling expand elements.
+   */
+  private List<Document> fetch(
+      List<Document> documents, ExpandElement expandElement, Execution execution) {
+    if (FetchType.BATCHED_LEVELS.equals(expandElement.getFetchType())) {
+      return fetchLevels(documents, expandElement, execution);
+    }
+    BatchedJoinInfo batchedJoinInfo = batchedJoinInfo(expandElement);
+
+    // 1. Collect the distinct join keys of the page
+    Map<Object, Object> keys = new LinkedHashMap<>();
+    for (Document document : documents) {
+      for (Object value : readValues(document, expandElement.getLocalKeyProperty())) {
+        keys.putIfAbsent(normalizeKey(value), value);
+      }
+    }
+
+    // 2. Fetch the related documents
+    List<Document> related = null;
+    if (keys.isEmpty()) {
+      related = new ArrayList<>();
+    } else if (FetchType.CACHED.equals(expandElement.getFetchType())
+        && navigationTargetCache != null) {
+      related = findCached(expandElement, batchedJoinInfo, keys.keySet(), execution);
+    }
+    if (related == null) {
+      related = load(expandElement, batchedJoinInfo, new ArrayList<>(keys.values()), execution);
+    }
+    return related;
+  }
+
+  /**
+   * Expands the nested navigation properties of the related documents and indexes the related
+   * documents by the join key, the order of the query is preserved. The join keys of the hierarchy
+   * are removed after the tree is built, the other join keys are removed here.
+   */
+  private FetchResult expandAndIndex(
+      List<Document> related, ExpandElement expandElement, Execution execution) {
+    expand(related, expandElement.getExpandElements(), execution);
+    Map<Object, List<Integer>> indexesByKey = new HashMap<>();
+    for (int i = 0; i < related.size(); i++) {
+      for (Object value : readValues(related.get(i), expandElement.getForeignKeyProperty())) {
+        indexesByKey.computeIfAbsent(normalizeKey(value), k -> new ArrayList<>()).add(i);
+      }
+    }
+    if (!FetchType.BATCHED_LEVELS.equals(expandElement.getFetchType())) {
+      for (Document document : related) {
+        for (String removedProperty : batchedJoinInfo(expandElement).getRemovedProperties()) {
+          removeValue(document, removedProperty);
+        }
+      }
+    }
+    return new FetchResult(related, indexesByKey);
+  }
+
+  /**
+   * Fetches the hierarchy of the expand element level by level. The $skip and $top options are
+   * applied to the children of each parent, so the documents that were cut off are not the parents
+   * of the next level.
+   */
+  private List<Document> fetchLevels(
+      List<Document> documents, ExpandElement expandElement, Execution execution) {
+    BatchedJoinInfo batchedJoinInfo = batchedJoinInfo(expandElement);
+    Map<Object, Object> keys = new LinkedHashMap<>();
+    for (Document document : documents) {
+      for (Object value : readValues(document, expandElement.getLocalKeyProperty())) {
+        keys.putIfAbsent(normalizeKey(value), value);
+      }
+    }
+    Set<Object> visitedKeys = new HashSet<>();
+    List<Document> related = new ArrayList<>();
+    for (int level = 0; level < levels(expandElement) && !keys.isEmpty(); level++) {
+      visitedKeys.addAll(keys.keySet());
+      List<Document> levelDocuments =
+          load(expandElement, batchedJoinInfo, new ArrayList<>(keys.values()), execution);
+      Map<Object, Integer> childrenCounts = new HashMap<>();
+      Map<Object, Object> nextKeys = new LinkedHashMap<>();
+      for (Document document : levelDocuments) {
+        List<Object> parentKeys = readValues(document, expandElement.getForeignKeyProperty());
+        Object parentKey = parentKeys.isEmpty() ? null : normalizeKey(parentKeys.get(0));
+        int position = childrenCounts.merge(parentKey, 1, Integer::sum) - 1;
+        if ((batchedJoinInfo.getSkip() != null && position < batchedJoinInfo.getSkip())
+            || (batchedJoinInfo.getTop() != null
+                && position
+                    >= (batchedJoinInfo.getSkip() == null ? 0 : batchedJoinInfo.getSkip())
+                        + batchedJoinInfo.getTop())) {
+          continue;
+        }
+        related.add(document);
+        for (Object value : readValues(document, expandElement.getLocalKeyProperty())) {
+          Object key = normalizeKey(value);
+          if (!visitedKeys.contains(key)) {
+            nextKeys.putIfAbsent(key, value);
+          }
+        }
+      }
+      keys = nextKeys;
+    }
+    return related;
+  }
+
+  /**
+   * Joins the hierarchy of the expand element with the documents. For each document the flat array
+   * of the reachable documents with their depth is prepared, like the result of the $graphLookup
+   * stage, and transformed into the tree.
+   */
+  private void joinLevels(
+      List<Document> documents, ExpandElement expandElement, FetchResult result) {
+    BatchedJoinInfo batchedJoinInfo = batchedJoinInfo(expandElement);
+    String depthVariable = expandElement.getDepthVariableName();
+    UnaryOperator<Document> treeTransformer =
+        new GraphLookUpToLookUpStrategyResultsTransformer()
+            .treeTransformer(
+                ExpandElement.builder()
+                    .withExpandElement(expandElement)
+                    .withFetchType(FetchType.GRAPHLOOKUP)
+                    .withLevel(levels(expandElement))
+                    .withExpandElements(null)
+                    .withBatchedJoinInfo(null)
+                    .build());
+    for (Document document : documents) {
+      List<Document> nodes = new ArrayList<>();
+      Set<Object> visitedKeys = new HashSet<>();
+      List<Object> keys = new ArrayList<>();
+      for (Object value : readValues(document, expandElement.getLocalKeyProperty())) {
+        keys.add(normalizeKey(value));
+      }
+      for (int depth = 0; depth < levels(expandElement) && !keys.isEmpty(); depth++) {
+        List<Object> nextKeys = new ArrayList<>();
+        for (Object key : keys) {
+          if (!visitedKeys.add(key)) {
+            continue;
+          }
+          for (Integer index : result.indexesByKey.getOrDefault(key, Collections.emptyList())) {
+            // Each document has its own copy of the node, because the node is moved into the tree
+            Document node = (Document) deepCopy(result.related.get(index));
+            if (depthVariable != null) {
+              node.put(depthVariable, depth);
+            }
+            nodes.add(node);
+            for (Object value : readValues(node, expandElement.getLocalKeyProperty())) {
+              nextKeys.add(normalizeKey(value));
+            }
+          }
+        }
+        keys = nextKeys;
+      }
+      document.put(expandElement.getMongoPath(), nodes);
+      treeTransformer.apply(document);
+      removeTreeProperties(
+          document.get(expandElement.getMongoPath()),
+          expandElement.getMongoPath(),
+          batchedJoinInfo.getRemovedProperties());
+    }
+  }
+
+  private static int levels(ExpandElement expandElement) {
+    return expandElement.getLevel() == null ? 1 : expandElement.getLevel();
+  }
+
+  private static void removeTreeProperties(
+      Object value, String mongoPath, Set<String> removedProperties) {
+    if (value instanceof List) {
+      for (Object element : (List<?>) value) {
+        removeTreeProperties(element, mongoPath, removedProperties);
+      }
+    } else if (value instanceof Document) {
+      Document node = (Document) value;
+      removeTreeProperties(node.get(mongoPath), mongoPath, removedProperties);
+      for (String removedProperty : removedProperties) {
+        removeValue(node, removedProperty);
+      }
+    }
+  }
+
+  private void join(List<Document> documents, ExpandElement expandElement, FetchResult result) {
+    if (FetchType.BATCHED_LEVELS.equals(expandElement.getFetchType())) {
+      joinLevels(documents, expandElement, result);
+      return;
+    }
+    BatchedJoinInfo batchedJoinInfo = batchedJoinInfo(expandElement);
+    List<Document> related = result.related;
+    boolean[] joined = new boolean[related.size()];
+    boolean collection = !Boolean.FALSE.equals(expandElement.getCollection());
+    for (Document document : documents) {
+      TreeSet<Integer> indexes = new TreeSet<>();
+      for (Object value : readValues(document, expandElement.getLocalKeyProperty())) {
+        indexes.addAll(
+            result.indexesByKey.getOrDefault(normalizeKey(value), Collections.emptyList()));
+      }
+      List<Document> value = new ArrayList<>();
+      int skipped = 0;
+      for (Integer index : indexes) {
+        if (batchedJoinInfo.getSkip() != null && skipped++ < batchedJoinInfo.getSkip()) {
+          continue;
+        }
+        if (batchedJoinInfo.getTop() != null && value.size() >= batchedJoinInfo.getTop()) {
+          break;
+        }
+        // The related document joined with many documents is copied with its nested documents
+        value.add(joined[index] ? (Document) deepCopy(related.get(index)) : related.get(index));
+        joined[index] = true;
+      }
+      if (collection) {
+        document.put(expandElement.getMongoPath(), value);
+      } else if (!value.isEmpty()) {
+        document.put(expandElement.getMongoPath(), value.get(0));
+      } else {
+        document.remove(expandElement.getMongoPath());
+      }
+    }
+  }
+
+  private static BatchedJoinInfo batchedJoinInfo(ExpandElement expandElement) {
+    return expandElement.getBatchedJoinInfo() == null
+        ? BatchedJoinInfo.builder().build()
+        : expandElement.getBatchedJoinInfo();
+  }
+
+  /**
+   * Finds the related documents in the cache and copies the selected properties. Returns null when
+   * the collection is not cached because it is too large.
+   */
+  private List<Document> findCached(
+      ExpandElement expandElement,
+      BatchedJoinInfo batchedJoinInfo,
+      Set<Object> keys,
+      Execution execution) {
+    List<Document> cached;
+    try {
+      cached =
+          navigationTargetCache.find(
+              expandElement.getForeignCollection(),
+              expandElement.getForeignKeyProperty(),
+              keys,
+              execution.batchLoader);
+    } catch (ExpandException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new ExpandException(
+          expandElement.getEdmPath(),
+          "Failed to load the cached documents of the navigation property "
+              + expandElement.getEdmPath(),
+          e);
+    }
+    if (cached == null || batchedJoinInfo.getSelectedProperties().isEmpty()) {
+      return cached;
+    }
+    List<Document> related = new ArrayList<>();
+    for (Document document : cached) {
+      Document projected = new Document();
+      for (String property : batchedJoinInfo.getSelectedProperties()) {
+        if (document.containsKey(property)) {
+          projected.put(property, document.get(property));
+        }
+      }
+      related.add(projected);
+    }
+    return related;
+  }
+
+  private List<Document> load(
+      ExpandElement expandElement,
+      BatchedJoinInfo batchedJoinInfo,
+      List<Object> keys,
+      Execution execution) {
+    List<Bson> pipeline = new ArrayList<>();
+    pipeline.add(
+        new Document(
+            "$match",
+            new Document(expandElement.getForeignKeyProperty(), new Document("$in", keys))));
+    pipeline.addAll(batchedJoinInfo.getPipeline());
+    List<Document> related = new ArrayList<>();
+    Iterator<Document> iterator = null;
+    boolean acquired = false;
+    try {
+      execution.permits.acquire();
+      acquired = true;
+      iterator = execution.batchLoader.load(expandElement.getForeignCollection(), pipeline);
+      while (iterator != null && iterator.hasNext()) {
+        related.add(iterator.next());
+      }
+    } catch (ExpandException e) {
+      throw e;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ExpandException(
+          expandElement.getEdmPath(),
+          "Interrupted while fetching the related documents of the navigation property "
+              + expandElement.getEdmPath(),
+          e);
+    } catch (Exception e) {
+      throw new ExpandException(
+          expandElement.getEdmPath(),
+          "Failed to fetch the related documents of the navigation property "
+              + expandElement.getEdmPath(),
+          e);
+    } finally {
+      if (iterator instanceof AutoCloseable) {
+        try {
+          ((AutoCloseable) iterator).close();
+        } catch (Exception ignored) {
+          // The documents were already read
+        }
+      }
+      if (acquired) {
+        execution.permits.release();
+      }
+    }
+    return related;
+  }
+
+  /**
+   * Reads the values of the property, the arrays on the path are flattened the same way as by the
+   * $lookup stage. The null values are skipped.
+   */
+  static List<Object> readValues(Document document, String path) {
+    List<Object> values = new ArrayList<>();
+    readValues(document, path.split("\\."), 0, values);
+    return values;
+  }
+
+  private static void readValues(Object current, String[] parts, int index, List<Object> values) {
+    if (current == null) {
+      return;
+    }
+    if (current instanceof List) {
+      for (Object element : (List<?>) current) {
+        readValues(element, parts, index, values);
+      }
+      return;
+    }
+    if (index == parts.length) {
+      values.add(current);
+      return;
+    }
+    if (current instanceof Document) {
+      readValues(((Document) current).get(parts[index]), parts, index + 1, values);
+    }
+  }
+
+  private static void removeValue(Document document, String path) {
+    int separator = path.indexOf('.');
+    if (separator < 0) {
+      document.remove(path);
+      return;
+    }
+    Object child = document.get(path.substring(0, separator));
+    if (child instanceof Document) {
+      removeValue((Document) child, path.substring(separator + 1));
+    }
+  }
+
+  /**
+   * Returns the copy of the value, the documents and the lists are copied with their elements, so
+   * the copy can be modified without modifying the value.
+   */
+  static Object deepCopy(Object value) {
+    if (value instanceof Document) {
+      Document copy = new Document();
+      for (Map.Entry<String, Object> property : ((Document) value).entrySet()) {
+        copy.put(property.getKey(), deepCopy(property.getValue()));
+      }
+      return copy;
+    }
+    if (value instanceof List) {
+      List<Object> copy = new ArrayList<>();
+      for (Object element : (List<?>) value) {
+        copy.add(deepCopy(element));
+      }
+      return copy;
+    }
+    return value;
+  }
+
+  /**
+   * Returns the key that is equal for the numbers of different types, because the $in operator
+   * matches the numeric values regardless of their BSON type.
+   */
+  static Object normalizeKey(Object value) {
+    if (value instanceof Decimal128) {
+      Decimal128 decimal = (Decimal128) value;
+      return decimal.isNaN() || decimal.isInfinite()
+          ? decimal
+          : decimal.bigDecimalValue().stripTrailingZeros();
+    }
+    if (value instanceof Double || value instanceof Float) {
+      double doubleValue = ((Number) value).doubleValue();
+      return Double.isNaN(doubleValue) || Double.isInfinite(doubleValue)
+          ? doubleValue
+          : BigDecimal.valueOf(doubleValue).stripTrailingZeros();
+    }
+    if (value instanceof Number) {
+      return new BigDecimal(value.toString()).stripTrailingZeros();
+    }
+    return value;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    BatchedExpandExecutor that = (BatchedExpandExecutor) o;
+    return maxConcurrency == that.maxConcurrency
+        && Objects.equals(executorService, that.executorService)
+        && Objects.equals(navigationTargetCache, that.navigationTargetCache);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(executorService, maxConcurrency, navigationTargetCache);
+  }
+
+  @Override
+  public String toString() {
+    return "BatchedExpandExecutor{"
+        + "executorService="
+        + executorService
+        + ", maxConcurrency="
+        + maxConcurrency
+        + ", navigationTargetCache="
+        + navigationTargetCache
+        + '}';
+  }
+
+  /** State shared by the queries of one {@link #expand} call. */
+  private static final class Execution {
+    private final BatchLoader batchLoader;
+    private final Semaphore permits;
+
+    private Execution(BatchLoader batchLoader, Semaphore permits) {
+      this.batchLoader = batchLoader;
+      this.permits = permits;
+    }
+  }
+
+  /** The fetched related documents of one expand element indexed by the join key. */
+  private static final class FetchResult {
+    private final List<Document> related;
+    private final Map<Object, List<Integer>> indexesByKey;
+
+    private FetchResult(List<Document> related, Map<Object, List<Integer>> indexesByKey) {
+      this.related = related;
+      this.indexesByKey = indexesByKey;
+    }
+  }
+
+  public static class Builder {
+    private ExecutorService executorService;
+    private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+    private NavigationTargetCache navigationTargetCache;
+
+    /**
+     * Sets the executor service that fetches the sibling navigation properties concurrently, for
+     * example {@code Executors.newVirtualThreadPerTaskExecutor()} on Java 21. The tasks only
+     * execute the queries and never wait for other tasks, so the executor service can have any
+     * number of threads. By default, the navigation properties are fetched one by one by the
+     * calling thread.
+     *
+     * @param executorService the executor service
+     * @return the builder
+     */
+    public Builder withExecutorService(ExecutorService executorService) {
+      this.executorService = executorService;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of queries executed at the same time for one page of documents.
+     *
+     * @param maxConcurrency the maximum number of queries, must be greater than zero
+     * @return the builder
+     */
+    public Builder withMaxConcurrency(int maxConcurrency) {
+      this.maxConcurrency = maxConcurrency;
+      return this;
+    }
+
+    /**
+     * Sets the cache of the collections with the reference data. The related documents of the
+     * expand elements with the {@link FetchType#CACHED} fetch type are found in the cache. By
+     * default, they are fetched with the $in query.
+     *
+     * @param navigationTargetCache the cache, it can be shared by many executors
+     * @return the builder
+     */
+    public Builder withNavigationTargetCache(NavigationTargetCache navigationTargetCache) {
+      this.navigationTargetCache = navigationTargetCache;
+      return this;
+    }
+
+    public BatchedExpandExecutor build() {
+      if (maxConcurrency <= 0) {
+        throw new IllegalArgumentException("The maximum concurrency must be greater than zero");
+      }
+      return new BatchedExpandExecutor(executorService, maxConcurrency, navigationTargetCache);
+    }
+  }
+}
@@ -0,0 +1,183 @@
+package com.github.starnowski.jamolingo.core.operators.expand;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import org.bson.conversions.Bson;
+
+/**
+ * Describes how the {@link BatchedExpandExecutor} fetches and joins the related documents of the
+ * expand element with the {@link FetchType#BATCHED}, {@link FetchType#BATCHED_LEVELS} or {@link
+ * FetchType#CACHED} fetch type.
+ */
+public class BatchedJoinInfo {
+
+  private final List<Bson> pipeline;
+  private final Integer skip;
+  private final Integer top;
+  private final Set<String> removedProperties;
+  private final Set<String> selectedProperties;
+
+  /**
+   * Creates a new BatchedJoinInfo.
+   *
+   * @param pipeline the stages executed after the $in match stage, translated from the $filter,
+   *     $orderby, $select and nested $expand options
+   * @param skip the number of related documents skipped for each parent document or null
+   * @param top the maximum number of related documents returned for each parent document or null
+   * @param removedProperties the properties required by the join that were not selected and have to
+   *     be removed from the related documents after the join
+   */
+  public BatchedJoinInfo(
+      List<Bson> pipeline, Integer skip, Integer top, Set<String> removedProperties) {
+    this(pipeline, skip, top, removedProperties, null);
+  }
+
+  /**
+   * Creates a new BatchedJoinInfo.
+   *
+   * @param pipeline the stages executed after the $in match stage, translated from the $filter,
+   *     $orderby, $select and nested $expand options
+   * @param skip the number of related documents skipped for each parent document or null
+   * @param top the maximum number of related documents returned for each parent document or null
+   * @param removedProperties the properties required by the join that were not selected and have to
+   *     be removed from the related documents after the join
+   * @param selectedProperties the top level properties copied from the documents of the {@link
+   *     NavigationTargetCache}, including the join key, or empty when all properties are copied
+   */
+  public BatchedJoinInfo(
+      List<Bson> pipeline,
+      Integer skip,
+      Integer top,
+      Set<String> removedProperties,
+      Set<String> selectedProperties) {
+    this.pipeline =
+        pipeline == null
+            ? Collections.emptyList()
+            : Collections.unmodifiableList(new ArrayList<>(pipeline));
+    this.skip = skip;
+    this.top = top;
+    this.removedProperties =
+        removedProperties == null
+            ? Collections.emptySet()
+            : Collections.unmodifiableSet(new LinkedHashSet<>(removedProperties));
+    this.selectedProperties =
+        selectedProperties == null
+            ? Collections.emptySet()
+            : Collections.unmodifiableSet(new LinkedHashSet<>(selectedProperties));
+  }
+
+  public List<Bson> getPipeline() {
+    return pipeline;
+  }
+
+  public Integer getSkip() {
+    return skip;
+  }
+
+  public Integer getTop() {
+    return top;
+  }
+
+  public Set<String> getRemovedProperties() {
+    return removedProperties;
+  }
+
+  public Set<String> getSelectedProperties() {
+    return selectedProperties;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    BatchedJoinInfo that = (BatchedJoinInfo) o;
+    return Objects.equals(pipeline, that.pipeline)
+        && Objects.equals(skip, that.skip)
+        && Objects.equals(top, that.top)
+        && Objects.equals(removedProperties, that.removedProperties)
+        && Objects.equals(selectedProperties, that.selectedProperties);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(pipeline, skip, top, removedProperties, selectedProperties);
+  }
+
+  @Override
+  public String toString() {
+    return "BatchedJoinInfo{"
+        + "pipeline="
+        + pipeline
+        + ", skip="
+        + skip
+        + ", top="
+        + top
+        + ", removedProperties="
+        + removedProperties
+        + ", selectedProperties="
+        + selectedProperties
+        + '}';
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder {
+    private List<Bson> pipeline = new ArrayList<>();
+    private Integer skip;
+    private Integer top;
+    private Set<String> removedProperties = new LinkedHashSet<>();
+    private Set<String> selectedProperties = new LinkedHashSet<>();
+
+    public Builder withBatchedJoinInfo(BatchedJoinInfo batchedJoinInfo) {
+      if (batchedJoinInfo != null) {
+        this.pipeline = new ArrayList<>(batchedJoinInfo.pipeline);
+        this.skip = batchedJoinInfo.skip;
+        this.top = batchedJoinInfo.top;
+        this.removedProperties = new LinkedHashSet<>(batchedJoinInfo.removedProperties);
+        this.selectedProperties = new LinkedHashSet<>(batchedJoinInfo.selectedProperties);
+      }
+      return this;
+    }
+
+    public Builder withPipeline(List<Bson> pipeline) {
+      this.pipeline = pipeline != null ? new ArrayList<>(pipeline) : new ArrayList<>();
+      return this;
+    }
+
+    public Builder withSkip(Integer skip) {
+      this.skip = skip;
+      return this;
+    }
+
+    public Builder withTop(Integer top) {
+      this.top = top;
+      return this;
+    }
+
+    public Builder withRemovedProperties(Set<String> removedProperties) {
+      this.removedProperties =
+          removedProperties != null
+              ? new LinkedHashSet<>(removedProperties)
+              : new LinkedHashSet<>();
+      return this;
+    }
+
+    public Builder withSelectedProperties(Set<String> selectedProperties) {
+      this.selectedProperties =
+          selectedProperties != null
+              ? new LinkedHashSet<>(selectedProperties)
+              : new LinkedHashSet<>();
+      return this;
+    }
+
+    public BatchedJoinInfo build() {
+      return new BatchedJoinInfo(pipeline, skip, top, removedProperties, selectedProperties);
+    }
+  }
+}
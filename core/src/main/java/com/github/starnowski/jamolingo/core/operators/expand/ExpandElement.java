@@ -19,6 +19,7 @@ public class ExpandElement {
   private final Boolean collection;
   private final String depthVariableName;
   private final GraphLookUpCleanUpInfo graphLookUpCleanUpInfo;
+  private final BatchedJoinInfo batchedJoinInfo;
 
   public ExpandElement(
       String edmPath,
@@ -34,6 +35,38 @@ public class ExpandElement {
       Boolean collection,
       String depthVariableName,
       GraphLookUpCleanUpInfo graphLookUpCleanUpInfo) {
+    this(
+        edmPath,
+        mongoPath,
+        fetchType,
+        level,
+        maxLevelRequest,
+        expandElements,
+        localKeyProperty,
+        foreignKeyProperty,
+        foreignCollection,
+        edmEntityFullName,
+        collection,
+        depthVariableName,
+        graphLookUpCleanUpInfo,
+        null);
+  }
+
+  private ExpandElement(
+      String edmPath,
+      String mongoPath,
+      FetchType fetchType,
+      Integer level,
+      Boolean maxLevelRequest,
+      Map<String, ExpandElement> expandElements,
+      String localKeyProperty,
+      String foreignKeyProperty,
+      String foreignCollection,
+      String edmEntityFullName,
+      Boolean collection,
+      String depthVariableName,
+      GraphLookUpCleanUpInfo graphLookUpCleanUpInfo,
+      BatchedJoinInfo batchedJoinInfo) {
     this.edmPath = edmPath;
     this.mongoPath = mongoPath;
     this.fetchType = fetchType;
@@ -50,6 +83,7 @@ public class ExpandElement {
     this.collection = collection;
     this.depthVariableName = depthVariableName;
     this.graphLookUpCleanUpInfo = graphLookUpCleanUpInfo;
+    this.batchedJoinInfo = batchedJoinInfo;
   }
 
   public String getEdmPath() {
@@ -104,6 +138,10 @@ public class ExpandElement {
     return graphLookUpCleanUpInfo;
   }
 
+  public BatchedJoinInfo getBatchedJoinInfo() {
+    return batchedJoinInfo;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
@@ -121,7 +159,8 @@ public class ExpandElement {
         && Objects.equals(edmEntityFullName, that.edmEntityFullName)
         && Objects.equals(collection, that.collection)
         && Objects.equals(depthVariableName, that.depthVariableName)
-        && Objects.equals(graphLookUpCleanUpInfo, that.graphLookUpCleanUpInfo);
+        && Objects.equals(graphLookUpCleanUpInfo, that.graphLookUpCleanUpInfo)
+        && Objects.equals(batchedJoinInfo, that.batchedJoinInfo);
   }
 
   @Override
@@ -139,7 +178,8 @@ public class ExpandElement {
         edmEntityFullName,
         collection,
         depthVariableName,
-        graphLookUpCleanUpInfo);
+        graphLookUpCleanUpInfo,
+        batchedJoinInfo);
   }
 
   @Override
@@ -178,6 +218,8 @@ public class ExpandElement {
         + '\''
         + ", graphLookUpCleanUpInfo="
         + graphLookUpCleanUpInfo
+        + ", batchedJoinInfo="
+        + batchedJoinInfo
         + '}';
   }
 
@@ -199,6 +241,7 @@ public class ExpandElement {
     private Boolean collection;
     private String depthVariableName;
     private GraphLookUpCleanUpInfo graphLookUpCleanUpInfo;
+    private BatchedJoinInfo batchedJoinInfo;
 
     public Builder withExpandElement(ExpandElement expandElement) {
       this.edmPath = expandElement.edmPath;
@@ -214,6 +257,7 @@ public class ExpandElement {
       this.collection = expandElement.collection;
       this.depthVariableName = expandElement.depthVariableName;
       this.graphLookUpCleanUpInfo = expandElement.graphLookUpCleanUpInfo;
+      this.batchedJoinInfo = expandElement.batchedJoinInfo;
       return this;
     }
 
@@ -288,6 +332,11 @@ public class ExpandElement {
       return this;
     }
 
+    public Builder withBatchedJoinInfo(BatchedJoinInfo batchedJoinInfo) {
+      this.batchedJoinInfo = batchedJoinInfo;
+      return this;
+    }
+
     public ExpandElement build() {
       return new ExpandElement(
           edmPath,
@@ -302,7 +351,8 @@ public class ExpandElement {
           edmEntityFullName,
           collection,
           depthVariableName,
-          graphLookUpCleanUpInfo);
+          graphLookUpCleanUpInfo,
+          batchedJoinInfo);
     }
   }
 }
@@ -9,6 +9,11 @@ public class ExpandException extends RuntimeException {
     this.edmPath = edmPath;
   }
 
+  public ExpandException(String edmPath, String message, Throwable cause) {
+    super(message, cause);
+    this.edmPath = edmPath;
+  }
+
   public String getEdmPath() {
     return edmPath;
   }
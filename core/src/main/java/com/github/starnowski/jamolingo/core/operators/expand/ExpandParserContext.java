@@ -2,7 +2,10 @@ package com.github.starnowski.jamolingo.core.operators.expand;
 
 import com.github.starnowski.jamolingo.common.beans.KeyValue;
 import com.github.starnowski.jamolingo.core.api.EdmMongoContextFacade;
+import com.github.starnowski.jamolingo.core.context.NavigationJoinKeys;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 
 /** Context for parsing OData $expand system query option. */
 public interface ExpandParserContext {
@@ -51,6 +54,77 @@ public interface ExpandParserContext {
     return false;
   }
 
+  /**
+   * Determines if the nested tree of the documents found by the $graphLookup stage should be
+   * assembled by the aggregation stages in the database. In that case the results do not have to be
+   * transformed by the {@link GraphLookUpToLookUpStrategyResultsTransformer}. By default, returns
+   * false and the $graphLookup stage returns the flat array of documents.
+   *
+   * @return true if the tree should be built in the database, false otherwise
+   */
+  default boolean isBuildGraphLookUpTreeOnServer() {
+    return false;
+  }
+
+  /**
+   * Determines if the related documents should be fetched by the {@link BatchedExpandExecutor}
+   * instead of the $lookup stage. In that case the parser does not return stages for the expanded
+   * navigation properties. Their expand elements have the {@link FetchType#BATCHED} fetch type and
+   * the executor fetches the related documents of the whole page with one $in query per navigation
+   * property. The $expand with $levels greater than 1 is still translated to the aggregation
+   * stages, unless {@link #isUseBatchedLevelsExpand()} returns true. By default, returns false.
+   *
+   * @return true if the related documents should be fetched with batched $in queries, false
+   *     otherwise
+   */
+  default boolean isUseBatchedClientSideJoin() {
+    return false;
+  }
+
+  /**
+   * Determines if the $expand with $levels greater than 1 should be fetched by the {@link
+   * BatchedExpandExecutor} instead of the $graphLookup stage, when the batched join is used. The
+   * executor walks the hierarchy level by level with one $in query per level, so it is not limited
+   * by the memory limit of the $graphLookup stage. Their expand elements have the {@link
+   * FetchType#BATCHED_LEVELS} fetch type. Has no effect when {@link #isUseBatchedClientSideJoin()}
+   * returns false. By default, returns false.
+   *
+   * @return true if the $expand with $levels greater than 1 should be fetched level by level, false
+   *     otherwise
+   */
+  default boolean isUseBatchedLevelsExpand() {
+    return false;
+  }
+
+  /**
+   * Returns the full names of the EDM entity types, for example "MyService.Currency", with the
+   * small and rarely changed reference data kept in memory by the {@link NavigationTargetCache}.
+   * The $expand of the navigation property to such type is not translated to the $lookup stage when
+   * it has no options other than $select of the top level properties and it is not nested in the
+   * $expand translated to the aggregation stages. Its expand element has the {@link
+   * FetchType#CACHED} fetch type and is joined by the {@link BatchedExpandExecutor}. By default,
+   * returns the empty set.
+   *
+   * @return the full names of the cached entity types
+   */
+  default Set<String> getCachedEntityTypes() {
+    return Collections.emptySet();
+  }
+
+  /**
+   * Determines if the nested $expand of the $graphLookup results should be merged into the array of
+   * the found documents with the $map, $filter and $mergeObjects expressions. The related documents
+   * of all found documents are fetched by a single $lookup stage and no $unwind, $group and
+   * $replaceRoot stages are added, so the pipeline does not hold all root documents in memory. The
+   * nested $expand with $levels greater than 1 is still merged with the $group stage. By default,
+   * returns false.
+   *
+   * @return true if the nested $expand should be merged with the array expressions, false otherwise
+   */
+  default boolean isUseArrayNativeNestedExpandMerge() {
+    return false;
+  }
+
   /**
    * Determines if an exception should be thrown when the requested expand level is higher than the
    * allowed maximal level. By default, returns false.
@@ -80,6 +154,21 @@ public interface ExpandParserContext {
     return null;
   }
 
+  /**
+   * Returns the join keys of the navigation property resolved when the model was compiled, for
+   * example by the {@link com.github.starnowski.jamolingo.core.context.CompiledEdmMongoModel}. When
+   * the join keys are returned, the parser does not resolve the referential constraint of the
+   * navigation property to the Mongo paths for each request. By default, returns null.
+   *
+   * @param sourceFullTypeName the full name of the source EDM entity type
+   * @param navigationPropertyName the name of the navigation property
+   * @return the join keys or null if they should be resolved by the parser
+   */
+  default NavigationJoinKeys getNavigationJoinKeys(
+      String sourceFullTypeName, String navigationPropertyName) {
+    return null;
+  }
+
   /**
    * Returns the root EDM mongo context facade.
    *
@@ -2,5 +2,31 @@ package com.github.starnowski.jamolingo.core.operators.expand;
 
 public enum FetchType {
   LOOKUP,
-  GRAPHLOOKUP
+  GRAPHLOOKUP,
+  /**
+   * The $graphLookup stage followed by the stages that assemble the nested tree of the related
+   * documents in the database, so the results do not have to be transformed by the {@link
+   * GraphLookUpToLookUpStrategyResultsTransformer}.
+   */
+  GRAPHLOOKUP_TREE,
+  /**
+   * The related documents are not fetched by the aggregation stages. They are fetched by the {@link
+   * BatchedExpandExecutor} with one $in query per navigation property for the whole page of
+   * documents and joined in the application.
+   */
+  BATCHED,
+  /**
+   * The hierarchy of the related documents requested with $levels greater than 1 is not fetched by
+   * the $graphLookup stage. The {@link BatchedExpandExecutor} walks it level by level, with one $in
+   * query per level for the whole page of documents, and builds the tree the same way as the {@link
+   * GraphLookUpToLookUpStrategyResultsTransformer}.
+   */
+  BATCHED_LEVELS,
+  /**
+   * The related documents are reference data kept in memory by the {@link NavigationTargetCache}.
+   * They are not fetched by the aggregation stages. The {@link BatchedExpandExecutor} joins them
+   * with the documents from the cache, or fetches them with one $in query per navigation property
+   * when it does not use the cache.
+   */
+  CACHED
 }
@@ -0,0 +1,54 @@
+package com.github.starnowski.jamolingo.core.operators.expand;
+
+import java.util.Iterator;
+import java.util.function.UnaryOperator;
+import org.bson.Document;
+
+/**
+ * Iterator returned by the {@link GraphLookUpToLookUpStrategyResultsTransformer} that transforms
+ * the documents of the source iterator, for example the MongoCursor, one at a time. Only the
+ * current root document with its $graphLookup results is held in the memory, so the first
+ * transformed document is available as soon as the source returns it.
+ *
+ * <p>The iterator is not thread safe, the same as the MongoCursor.
+ */
+public final class GraphLookUpToLookUpStrategyResultsIterator
+    implements Iterator<Document>, AutoCloseable {
+
+  private final Iterator<Document> source;
+  private final UnaryOperator<Document> transformation;
+
+  GraphLookUpToLookUpStrategyResultsIterator(
+      Iterator<Document> source, UnaryOperator<Document> transformation) {
+    this.source = source;
+    this.transformation = transformation;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return source.hasNext();
+  }
+
+  @Override
+  public Document next() {
+    return transformation.apply(source.next());
+  }
+
+  /**
+   * Closes the source iterator if it implements {@link AutoCloseable}, for example the MongoCursor.
+   *
+   * @throws IllegalStateException if closing the source iterator fails with the checked exception
+   */
+  @Override
+  public void close() {
+    if (source instanceof AutoCloseable closeable) {
+      try {
+        closeable.close();
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IllegalStateException("Failed to close the source iterator", e);
+      }
+    }
+  }
+}
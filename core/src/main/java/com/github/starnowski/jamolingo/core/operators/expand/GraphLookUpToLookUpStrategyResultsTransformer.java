@@ -1,9 +1,14 @@
 package com.github.starnowski.jamolingo.core.operators.expand;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
 import org.bson.Document;
 
 public class GraphLookUpToLookUpStrategyResultsTransformer {
@@ -18,144 +23,222 @@ public class GraphLookUpToLookUpStrategyResultsTransformer {
       return documents;
     }
 
+    TreeBuilder treeBuilder = new TreeBuilder(true);
     for (Document document : documents) {
-      for (ExpandElement expandElement : expandOperatorResult.getExpandElements().values()) {
-        transformDocument(document, expandElement);
-      }
+      treeBuilder.transform(document, expandOperatorResult);
     }
     return documents;
   }
 
-  private void transformDocument(Document document, ExpandElement expandElement) {
-    if (document == null) {
-      return;
+  /**
+   * Returns the iterator that transforms the documents lazily, one root document at a time, so the
+   * whole result set does not have to be loaded into the memory. The iterator can wrap the
+   * MongoCursor returned by the driver. The nodes of the $graphLookup results are moved into the
+   * tree instead of being copied, because each document returned by the source iterator is owned
+   * only by the returned iterator.
+   *
+   * @param documents the source iterator, when it implements {@link AutoCloseable} it is closed
+   *     together with the returned iterator
+   * @param expandOperatorResult the result of the $expand translation
+   * @return the iterator of the transformed documents
+   */
+  public GraphLookUpToLookUpStrategyResultsIterator transform(
+      Iterator<Document> documents, ExpandOperatorResult expandOperatorResult) {
+    if (documents == null) {
+      throw new IllegalArgumentException("The documents iterator can not be null");
     }
+    return new GraphLookUpToLookUpStrategyResultsIterator(
+        documents, documentTransformer(expandOperatorResult));
+  }
 
-    String mongoPath = expandElement.getMongoPath();
-    Object value = document.get(mongoPath);
+  /**
+   * Returns the function that transforms one root document at a time, for example the element
+   * emitted by the Reactive Streams publisher. The nodes of the $graphLookup results are moved into
+   * the tree instead of being copied, so the transformed document has to be owned by the caller.
+   * The function reuses its scratch collections and is not thread safe, so a new function should be
+   * created for each stream of documents.
+   *
+   * @param expandOperatorResult the result of the $expand translation
+   * @return the function that transforms the passed document in place and returns it
+   */
+  public UnaryOperator<Document> documentTransformer(ExpandOperatorResult expandOperatorResult) {
+    if (expandOperatorResult == null || expandOperatorResult.getExpandElements() == null) {
+      return document -> document;
+    }
+    TreeBuilder treeBuilder = new TreeBuilder(false);
+    return document -> {
+      treeBuilder.transform(document, expandOperatorResult);
+      return document;
+    };
+  }
 
-    if (value == null) {
-      if (Boolean.TRUE.equals(expandElement.getCollection())) {
-        document.put(mongoPath, new ArrayList<>());
+  /**
+   * Returns the function that builds the tree of the single expand element with the {@link
+   * FetchType#GRAPHLOOKUP} fetch type. It is used by the {@link BatchedExpandExecutor} for the flat
+   * array of the documents fetched level by level. The nodes are moved into the tree.
+   *
+   * @param expandElement the expand element
+   * @return the function that transforms the passed document in place and returns it
+   */
+  UnaryOperator<Document> treeTransformer(ExpandElement expandElement) {
+    TreeBuilder treeBuilder = new TreeBuilder(false);
+    return document -> {
+      treeBuilder.transformDocument(document, expandElement);
+      return document;
+    };
+  }
+
+  /**
+   * Rebuilds the trees of the $graphLookup results. The builder keeps the scratch collections used
+   * to group nodes by the parent identifier, so they are reused for subsequent documents.
+   */
+  private static final class TreeBuilder {
+
+    private final boolean copyNodes;
+    private final Map<Object, List<Document>> childrenByParentId = new HashMap<>();
+    private final Set<Object> visited = new HashSet<>();
+
+    private TreeBuilder(boolean copyNodes) {
+      this.copyNodes = copyNodes;
+    }
+
+    private void transform(Document document, ExpandOperatorResult expandOperatorResult) {
+      for (ExpandElement expandElement : expandOperatorResult.getExpandElements().values()) {
+        transformDocument(document, expandElement);
       }
-      return;
     }
 
-    if (FetchType.GRAPHLOOKUP.equals(expandElement.getFetchType()) && value instanceof List) {
-      List<Document> flatList = (List<Document>) value;
-      if (flatList.isEmpty()) {
-        if (expandElement.getCollection() != null && !expandElement.getCollection()) {
-          document.remove(mongoPath);
-        }
+    private void transformDocument(Document document, ExpandElement expandElement) {
+      if (document == null) {
         return;
       }
 
-      // 1. Recursively transform nested expand elements for all nodes in the flat list
-      for (Document node : flatList) {
-        for (ExpandElement nestedExpandElement : expandElement.getExpandElements().values()) {
-          transformDocument(node, nestedExpandElement);
+      String mongoPath = expandElement.getMongoPath();
+      Object value = document.get(mongoPath);
+
+      if (value == null) {
+        if (Boolean.TRUE.equals(expandElement.getCollection())) {
+          document.put(mongoPath, new ArrayList<>());
         }
+        return;
       }
 
-      // 2. Build the tree for this expand element
-      Object rootId = document.get(expandElement.getLocalKeyProperty());
+      if (FetchType.GRAPHLOOKUP.equals(expandElement.getFetchType()) && value instanceof List) {
+        List<Document> flatList = (List<Document>) value;
+        if (flatList.isEmpty()) {
+          if (expandElement.getCollection() != null && !expandElement.getCollection()) {
+            document.remove(mongoPath);
+          }
+          return;
+        }
 
-      Map<Object, List<Document>> childrenByParentId = new HashMap<>();
-      for (Document node : flatList) {
-        Object parentId = node.get(expandElement.getForeignKeyProperty());
-        if (parentId != null) {
-          childrenByParentId.computeIfAbsent(parentId, k -> new ArrayList<>()).add(node);
+        // 1. Recursively transform nested expand elements for all nodes in the flat list
+        for (Document node : flatList) {
+          for (ExpandElement nestedExpandElement : expandElement.getExpandElements().values()) {
+            transformDocument(node, nestedExpandElement);
+          }
+        }
+
+        // 2. Build the tree for this expand element
+        Object rootId = document.get(expandElement.getLocalKeyProperty());
+
+        childrenByParentId.clear();
+        for (Document node : flatList) {
+          Object parentId = node.get(expandElement.getForeignKeyProperty());
+          if (parentId != null) {
+            childrenByParentId.computeIfAbsent(parentId, k -> new ArrayList<>()).add(node);
+          }
         }
-      }
 
-      List<Document> rootNodesOriginal = childrenByParentId.getOrDefault(rootId, new ArrayList<>());
-      List<Document> rootNodes = new ArrayList<>();
-      java.util.Set<Object> visited = new java.util.HashSet<>();
+        List<Document> rootNodesOriginal =
+            childrenByParentId.getOrDefault(rootId, Collections.emptyList());
+        List<Document> rootNodes = new ArrayList<>();
+        visited.clear();
 
-      buildTree(rootNodesOriginal, childrenByParentId, expandElement, visited, rootNodes);
+        buildTree(rootNodesOriginal, expandElement, rootNodes);
+        childrenByParentId.clear();
 
-      if (expandElement.getCollection() != null && !expandElement.getCollection()) {
-        if (!rootNodes.isEmpty()) {
-          document.put(mongoPath, rootNodes.get(0));
+        if (expandElement.getCollection() != null && !expandElement.getCollection()) {
+          if (!rootNodes.isEmpty()) {
+            document.put(mongoPath, rootNodes.get(0));
+          } else {
+            document.remove(mongoPath);
+          }
         } else {
-          document.remove(mongoPath);
+          document.put(mongoPath, rootNodes);
         }
-      } else {
-        document.put(mongoPath, rootNodes);
-      }
-    } else if (value instanceof List) {
-      List<Document> list = (List<Document>) value;
-      for (Document nestedDoc : list) {
+      } else if (value instanceof List) {
+        List<Document> list = (List<Document>) value;
+        for (Document nestedDoc : list) {
+          for (ExpandElement nestedExpandElement : expandElement.getExpandElements().values()) {
+            transformDocument(nestedDoc, nestedExpandElement);
+          }
+        }
+      } else if (value instanceof Document) {
+        Document nestedDoc = (Document) value;
         for (ExpandElement nestedExpandElement : expandElement.getExpandElements().values()) {
           transformDocument(nestedDoc, nestedExpandElement);
         }
       }
-    } else if (value instanceof Document) {
-      Document nestedDoc = (Document) value;
-      for (ExpandElement nestedExpandElement : expandElement.getExpandElements().values()) {
-        transformDocument(nestedDoc, nestedExpandElement);
-      }
     }
-  }
 
-  private void buildTree(
-      List<Document> currentNodesOriginal,
-      Map<Object, List<Document>> childrenByParentId,
-      ExpandElement expandElement,
-      java.util.Set<Object> visited,
-      List<Document> resultList) {
-    GraphLookUpCleanUpInfo cleanUpInfo = expandElement.getGraphLookUpCleanUpInfo();
-    String mongoPath = expandElement.getMongoPath();
-    String depthVarName = expandElement.getDepthVariableName();
-    Integer maxLevel = expandElement.getLevel();
-
-    for (Document nodeOriginal : currentNodesOriginal) {
-      Object nodeId = nodeOriginal.get(expandElement.getLocalKeyProperty());
-
-      if (nodeId != null && !visited.add(nodeId)) {
-        continue;
-      }
+    private void buildTree(
+        List<Document> currentNodesOriginal,
+        ExpandElement expandElement,
+        List<Document> resultList) {
+      GraphLookUpCleanUpInfo cleanUpInfo = expandElement.getGraphLookUpCleanUpInfo();
+      String mongoPath = expandElement.getMongoPath();
+      String depthVarName = expandElement.getDepthVariableName();
+      Integer maxLevel = expandElement.getLevel();
 
-      Document node = new Document(nodeOriginal);
-      resultList.add(node);
+      for (Document nodeOriginal : currentNodesOriginal) {
+        Object nodeId = nodeOriginal.get(expandElement.getLocalKeyProperty());
 
-      int depth = -1;
-      if (depthVarName != null && node.get(depthVarName) != null) {
-        depth = ((Number) node.get(depthVarName)).intValue();
-      }
+        if (nodeId != null && !visited.add(nodeId)) {
+          continue;
+        }
 
-      boolean isMaxDepth = (maxLevel != null && depth == maxLevel - 1);
+        Document node = copyNodes ? new Document(nodeOriginal) : nodeOriginal;
+        resultList.add(node);
 
-      if (!isMaxDepth) {
-        List<Document> childrenOriginal =
-            childrenByParentId.getOrDefault(nodeId, new ArrayList<>());
-        List<Document> children = new ArrayList<>();
-        buildTree(childrenOriginal, childrenByParentId, expandElement, visited, children);
+        int depth = -1;
+        if (depthVarName != null && node.get(depthVarName) != null) {
+          depth = ((Number) node.get(depthVarName)).intValue();
+        }
 
-        if (expandElement.getCollection() != null && !expandElement.getCollection()) {
-          if (!children.isEmpty()) {
-            node.put(mongoPath, children.get(0));
+        boolean isMaxDepth = (maxLevel != null && depth == maxLevel - 1);
+
+        if (!isMaxDepth) {
+          List<Document> childrenOriginal =
+              childrenByParentId.getOrDefault(nodeId, Collections.emptyList());
+          List<Document> children = new ArrayList<>();
+          buildTree(childrenOriginal, expandElement, children);
+
+          if (expandElement.getCollection() != null && !expandElement.getCollection()) {
+            if (!children.isEmpty()) {
+              node.put(mongoPath, children.get(0));
+            }
+          } else {
+            node.put(mongoPath, children);
           }
-        } else {
-          node.put(mongoPath, children);
         }
-      }
-
-      if (depthVarName != null) {
-        node.remove(depthVarName);
-      }
 
-      if (cleanUpInfo != null) {
-        if (cleanUpInfo.isRemoveLocalKeyProperty()) {
-          node.remove(expandElement.getLocalKeyProperty());
+        if (depthVarName != null) {
+          node.remove(depthVarName);
         }
-        if (cleanUpInfo.isRemoveForeignKeyProperty()) {
-          node.remove(expandElement.getForeignKeyProperty());
+
+        if (cleanUpInfo != null) {
+          if (cleanUpInfo.isRemoveLocalKeyProperty()) {
+            node.remove(expandElement.getLocalKeyProperty());
+          }
+          if (cleanUpInfo.isRemoveForeignKeyProperty()) {
+            node.remove(expandElement.getForeignKeyProperty());
+          }
         }
-      }
 
-      if (nodeId != null) {
-        visited.remove(nodeId);
+        if (nodeId != null) {
+          visited.remove(nodeId);
+        }
       }
     }
   }
@@ -0,0 +1,300 @@
+package com.github.starnowski.jamolingo.core.operators.expand;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.bson.Document;
+
+/**
+ * Thread-safe in-memory cache of the small and rarely changed collections, for example currencies
+ * or countries, that are the targets of the navigation properties. The {@link
+ * BatchedExpandExecutor} joins the expand elements with the {@link FetchType#CACHED} fetch type
+ * with the documents of the cache instead of querying the database for each page of documents.
+ *
+ * <p>The whole collection is loaded with one query when it is requested for the first time and
+ * after its entry expired. The collection with more documents than the maximum number of documents
+ * is not cached, in such case null is returned and the executor fetches the related documents with
+ * the $in query. The entries can be removed when the collection changes, for example by the
+ * listener of the change stream, so the next request loads the current documents.
+ *
+ * <p>The cached documents are shared between all callers and are never returned, the callers
+ * receive their copies. The loader is invoked outside of the cache lock, so in case of concurrent
+ * misses for the same collection it can be loaded more than once and the last loaded documents are
+ * stored. The documents loaded before the collection was invalidated are returned to the caller but
+ * not stored, so the load that started before the change does not overwrite the cache.
+ */
+public final class NavigationTargetCache {
+
+  /** Default maximum number of documents of the cached collection. */
+  public static final int DEFAULT_MAXIMUM_DOCUMENTS = 10000;
+
+  private final int maximumDocuments;
+  private final Duration expireAfterWrite;
+  private final Clock clock;
+  private final Map<String, CollectionEntry> entries = new HashMap<>();
+  // The version of each collection is replaced when the collection is invalidated
+  private final Map<String, Object> versions = new HashMap<>();
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+
+  private NavigationTargetCache(int maximumDocuments, Duration expireAfterWrite, Clock clock) {
+    this.maximumDocuments = maximumDocuments;
+    this.expireAfterWrite = expireAfterWrite;
+    this.clock = clock;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns the copies of the cached documents of the collection with the value of the property
+   * equal to one of the keys. The documents are returned in the order in which they were loaded.
+   * The numeric keys are compared regardless of their BSON type, like by the $in operator.
+   *
+   * @param collection the name of the collection
+   * @param property the property of the related documents, the arrays on the path are flattened
+   * @param keys the keys
+   * @param batchLoader the loader that loads the whole collection with the empty pipeline
+   * @return the copies of the matching documents or null if the collection has more documents than
+   *     the maximum number of documents
+   * @throws Exception if the collection could not be loaded
+   */
+  public List<Document> find(
+      String collection,
+      String property,
+      Collection<?> keys,
+      BatchedExpandExecutor.BatchLoader batchLoader)
+      throws Exception {
+    if (collection == null || property == null || batchLoader == null) {
+      throw new IllegalArgumentException(
+          "The collection, the property and the batch loader can not be null");
+    }
+    CollectionEntry entry = getIfPresent(collection);
+    if (entry == null) {
+      entry = load(collection, batchLoader);
+    }
+    if (entry.documents == null) {
+      return null;
+    }
+    Map<Object, List<Integer>> index = entry.index(property);
+    TreeSet<Integer> indexes = new TreeSet<>();
+    if (keys != null) {
+      for (Object key : keys) {
+        indexes.addAll(
+            index.getOrDefault(BatchedExpandExecutor.normalizeKey(key), Collections.emptyList()));
+      }
+    }
+    List<Document> documents = new ArrayList<>();
+    for (Integer i : indexes) {
+      documents.add((Document) BatchedExpandExecutor.deepCopy(entry.documents.get(i)));
+    }
+    return documents;
+  }
+
+  /**
+   * Removes the cached documents of the collection, the next request loads the collection again.
+   *
+   * @param collection the name of the collection
+   */
+  public void invalidate(String collection) {
+    synchronized (entries) {
+      entries.remove(collection);
+      versions.remove(collection);
+    }
+  }
+
+  /** Removes the cached documents of all collections. */
+  public void invalidateAll() {
+    synchronized (entries) {
+      entries.clear();
+      versions.clear();
+    }
+  }
+
+  /**
+   * Returns the number of cached collections, including expired entries that were not yet removed.
+   *
+   * @return the number of cached collections
+   */
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  public long getMissCount() {
+    return missCount.sum();
+  }
+
+  public int getMaximumDocuments() {
+    return maximumDocuments;
+  }
+
+  public Duration getExpireAfterWrite() {
+    return expireAfterWrite;
+  }
+
+  private CollectionEntry getIfPresent(String collection) {
+    synchronized (entries) {
+      CollectionEntry entry = entries.get(collection);
+      if (entry != null
+          && expireAfterWrite != null
+          && clock.millis() - entry.createdAt >= expireAfterWrite.toMillis()) {
+        entries.remove(collection);
+        entry = null;
+      }
+      if (entry == null) {
+        missCount.increment();
+        return null;
+      }
+      hitCount.increment();
+      return entry;
+    }
+  }
+
+  private CollectionEntry load(String collection, BatchedExpandExecutor.BatchLoader batchLoader)
+      throws Exception {
+    Object version;
+    synchronized (entries) {
+      version = versions.computeIfAbsent(collection, c -> new Object());
+    }
+    long now = clock.millis();
+    List<Document> documents = new ArrayList<>();
+    Iterator<Document> iterator = batchLoader.load(collection, new ArrayList<>());
+    try {
+      while (iterator != null && iterator.hasNext()) {
+        if (documents.size() == maximumDocuments) {
+          // The collection is too large to be kept in memory
+          documents = null;
+          break;
+        }
+        documents.add(iterator.next());
+      }
+    } finally {
+      if (iterator instanceof AutoCloseable) {
+        ((AutoCloseable) iterator).close();
+      }
+    }
+    CollectionEntry entry = new CollectionEntry(documents, now);
+    synchronized (entries) {
+      if (versions.get(collection) == version) {
+        entries.put(collection, entry);
+      }
+    }
+    return entry;
+  }
+
+  @Override
+  public String toString() {
+    return "NavigationTargetCache{"
+        + "maximumDocuments="
+        + maximumDocuments
+        + ", expireAfterWrite="
+        + expireAfterWrite
+        + ", size="
+        + size()
+        + ", hitCount="
+        + getHitCount()
+        + ", missCount="
+        + getMissCount()
+        + '}';
+  }
+
+  /** The loaded documents of one collection with the indexes of the join properties. */
+  private static final class CollectionEntry {
+    private final List<Document> documents;
+    private final long createdAt;
+    private final Map<String, Map<Object, List<Integer>>> indexes = new ConcurrentHashMap<>();
+
+    private CollectionEntry(List<Document> documents, long createdAt) {
+      this.documents = documents;
+      this.createdAt = createdAt;
+    }
+
+    private Map<Object, List<Integer>> index(String property) {
+      return indexes.computeIfAbsent(
+          property,
+          p -> {
+            Map<Object, List<Integer>> index = new HashMap<>();
+            for (int i = 0; i < documents.size(); i++) {
+              for (Object value : BatchedExpandExecutor.readValues(documents.get(i), p)) {
+                index
+                    .computeIfAbsent(
+                        BatchedExpandExecutor.normalizeKey(value), k -> new ArrayList<>())
+                    .add(i);
+              }
+            }
+            return index;
+          });
+    }
+  }
+
+  public static class Builder {
+    private int maximumDocuments = DEFAULT_MAXIMUM_DOCUMENTS;
+    private Duration expireAfterWrite;
+    private Clock clock = Clock.systemUTC();
+
+    /**
+     * Sets the maximum number of documents of the cached collection.
+     *
+     * @param maximumDocuments the maximum number of documents, must be greater than zero
+     * @return the builder
+     */
+    public Builder withMaximumDocuments(int maximumDocuments) {
+      this.maximumDocuments = maximumDocuments;
+      return this;
+    }
+
+    /**
+     * Sets the time after which the collection is loaded again. By default the collections are
+     * cached until they are invalidated.
+     *
+     * @param expireAfterWrite the time to live, null means that the collections do not expire
+     * @return the builder
+     */
+    public Builder withExpireAfterWrite(Duration expireAfterWrite) {
+      this.expireAfterWrite = expireAfterWrite;
+      return this;
+    }
+
+    /**
+     * Sets the clock used to check the time to live of the cached collections.
+     *
+     * @param clock the clock
+     * @return the builder
+     */
+    public Builder withClock(Clock clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    public NavigationTargetCache build() {
+      if (maximumDocuments <= 0) {
+        throw new IllegalArgumentException(
+            "The maximum number of documents has to be greater than zero");
+      }
+      if (expireAfterWrite != null
+          && (expireAfterWrite.isNegative() || expireAfterWrite.isZero())) {
+        throw new IllegalArgumentException("The expire after write duration has to be positive");
+      }
+      if (clock == null) {
+        throw new IllegalArgumentException("The clock can not be null");
+      }
+      return new NavigationTargetCache(maximumDocuments, expireAfterWrite, clock);
+    }
+  }
+}
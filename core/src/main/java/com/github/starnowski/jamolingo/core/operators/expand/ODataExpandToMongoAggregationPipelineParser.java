@@ -1,8 +1,38 @@
 package com.github.starnowski.jamolingo.core.operators.expand;
 
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.add;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.addFields;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.and;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.array;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.arrayElemAt;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.concatArrays;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.cond;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.condDocument;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.eq;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.fieldPath;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.filter;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.group;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.ifNull;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.indexOfArray;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.let;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.lt;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.map;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.mergeObjects;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.objectToArray;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.reduce;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.replaceRoot;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.set;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.size;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.slice;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.sortArray;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.variable;
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.withoutField;
+
 import com.github.starnowski.jamolingo.common.beans.KeyValue;
 import com.github.starnowski.jamolingo.core.api.EdmMongoContextFacade;
+import com.github.starnowski.jamolingo.core.context.CompiledEdmMongoModel;
 import com.github.starnowski.jamolingo.core.context.DefaultEdmMongoContextFacade;
+import com.github.starnowski.jamolingo.core.context.NavigationJoinKeys;
 import com.github.starnowski.jamolingo.core.operators.filter.ODataFilterToMongoMatchParser;
 import com.github.starnowski.jamolingo.core.operators.orderby.DefaultOdataOrderByToMongoSortParserContext;
 import com.github.starnowski.jamolingo.core.operators.orderby.OdataOrderByToMongoSortParser;
@@ -164,54 +194,73 @@ public class ODataExpandToMongoAggregationPipelineParser {
             ? expandParserContext.getEDMTypeMapping().get(targetFullTypeName)
             : null;
 
-    String edmStartWith = null;
-    String edmConnectFrom = null;
-    String edmConnectTo = null;
-
-    List<EdmReferentialConstraint> referentialConstraints = navProp.getReferentialConstraints();
-    if (referentialConstraints.isEmpty() && navProp.getPartner() != null) {
-      referentialConstraints = navProp.getPartner().getReferentialConstraints();
-      if (!referentialConstraints.isEmpty()) {
+    String currentSourceFullTypeName =
+        getCurrentSourceFullTypeName(eOption, parserExpandItemContext);
+    NavigationJoinKeys compiledJoinKeys =
+        expandParserContext.getNavigationJoinKeys(
+            currentSourceFullTypeName == null
+                ? expandParserContext.getRootEdmEntityTypeName()
+                : currentSourceFullTypeName,
+            navProp.getName());
+
+    String mongoStartWith = null;
+    String mongoConnectFrom = null;
+    String mongoConnectTo = null;
+    if (compiledJoinKeys != null) {
+      // The join keys were resolved to the Mongo paths when the model was compiled
+      mongoStartWith = compiledJoinKeys.getLocalField();
+      mongoConnectFrom = compiledJoinKeys.getLocalField();
+      mongoConnectTo = compiledJoinKeys.getForeignField();
+    } else {
+      String edmStartWith = null;
+      String edmConnectFrom = null;
+      String edmConnectTo = null;
+
+      List<EdmReferentialConstraint> referentialConstraints = navProp.getReferentialConstraints();
+      if (referentialConstraints.isEmpty() && navProp.getPartner() != null) {
+        referentialConstraints = navProp.getPartner().getReferentialConstraints();
+        if (!referentialConstraints.isEmpty()) {
+          EdmReferentialConstraint constraint = referentialConstraints.get(0);
+          edmStartWith = constraint.getReferencedPropertyName();
+          edmConnectFrom = constraint.getReferencedPropertyName();
+          edmConnectTo = constraint.getPropertyName();
+        }
+      } else if (!referentialConstraints.isEmpty()) {
         EdmReferentialConstraint constraint = referentialConstraints.get(0);
-        edmStartWith = constraint.getReferencedPropertyName();
-        edmConnectFrom = constraint.getReferencedPropertyName();
-        edmConnectTo = constraint.getPropertyName();
-      }
-    } else if (!referentialConstraints.isEmpty()) {
-      EdmReferentialConstraint constraint = referentialConstraints.get(0);
-      edmStartWith = constraint.getPropertyName();
-      edmConnectFrom = constraint.getPropertyName();
-      edmConnectTo = constraint.getReferencedPropertyName();
-    }
-
-    if (edmConnectFrom != null && edmConnectTo != null) {
-      String currentSourceFullTypeName =
-          getCurrentSourceFullTypeName(eOption, parserExpandItemContext);
-
-      EdmMongoContextFacade sourceResolver =
-          expandParserContext.getEDMTypeMapping() != null && currentSourceFullTypeName != null
-              ? expandParserContext.getEDMTypeMapping().get(currentSourceFullTypeName)
-              : null;
-      if (sourceResolver == null
-          && (currentSourceFullTypeName == null
-              || currentSourceFullTypeName.equals(
-                  expandParserContext.getRootEdmEntityTypeName()))) {
-        sourceResolver = expandParserContext.getRootEdmMongoContextFacade();
+        edmStartWith = constraint.getPropertyName();
+        edmConnectFrom = constraint.getPropertyName();
+        edmConnectTo = constraint.getReferencedPropertyName();
       }
 
-      String mongoStartWith = edmStartWith;
-      String mongoConnectFrom = edmConnectFrom;
-      String mongoConnectTo = edmConnectTo;
+      if (edmConnectFrom != null && edmConnectTo != null) {
+        EdmMongoContextFacade sourceResolver =
+            expandParserContext.getEDMTypeMapping() != null && currentSourceFullTypeName != null
+                ? expandParserContext.getEDMTypeMapping().get(currentSourceFullTypeName)
+                : null;
+        if (sourceResolver == null
+            && (currentSourceFullTypeName == null
+                || currentSourceFullTypeName.equals(
+                    expandParserContext.getRootEdmEntityTypeName()))) {
+          sourceResolver = expandParserContext.getRootEdmMongoContextFacade();
+        }
 
-      if (sourceResolver != null) {
-        mongoStartWith = sourceResolver.resolveMongoPathForEDMPath(edmStartWith).getMongoPath();
-        mongoConnectFrom = sourceResolver.resolveMongoPathForEDMPath(edmConnectFrom).getMongoPath();
-      }
+        mongoStartWith = edmStartWith;
+        mongoConnectFrom = edmConnectFrom;
+        mongoConnectTo = edmConnectTo;
+
+        if (sourceResolver != null) {
+          mongoStartWith = sourceResolver.resolveMongoPathForEDMPath(edmStartWith).getMongoPath();
+          mongoConnectFrom =
+              sourceResolver.resolveMongoPathForEDMPath(edmConnectFrom).getMongoPath();
+        }
 
-      if (targetResolver != null) {
-        mongoConnectTo = targetResolver.resolveMongoPathForEDMPath(edmConnectTo).getMongoPath();
+        if (targetResolver != null) {
+          mongoConnectTo = targetResolver.resolveMongoPathForEDMPath(edmConnectTo).getMongoPath();
+        }
       }
+    }
 
+    if (mongoConnectFrom != null && mongoConnectTo != null) {
       String mongoCollectionName =
           expandParserContext
               .getEDMTablesToMongoDBCollections()
@@ -222,6 +271,49 @@ public class ODataExpandToMongoAggregationPipelineParser {
           mongoCollectionName == null
               ? targetEntityType.getFullQualifiedName().getFullQualifiedNameAsString()
               : mongoCollectionName;
+      boolean levelsGreaterThanOne =
+          eOption.getLevelsOption() != null
+              && (eOption.getLevelsOption().isMax() || eOption.getLevelsOption().getValue() > 1);
+      if (parserExpandItemContext.isBatchedJoinAllowed()
+          && !levelsGreaterThanOne
+          && expandParserContext.getCachedEntityTypes() != null
+          && expandParserContext.getCachedEntityTypes().contains(targetFullTypeName)) {
+        ExpandElement cachedExpandElement =
+            prepareCachedExpandElement(
+                eOption,
+                navProp,
+                targetFullTypeName,
+                targetResolver,
+                mongoStartWith,
+                mongoConnectTo,
+                targetCollection);
+        if (cachedExpandElement != null) {
+          // The related documents are joined from the NavigationTargetCache, no stages are added
+          expandElements.put(navProp.getName(), cachedExpandElement);
+          return List.of();
+        }
+      }
+      if (expandParserContext.isUseBatchedClientSideJoin()
+          && parserExpandItemContext.isBatchedJoinAllowed()
+          && (!levelsGreaterThanOne || expandParserContext.isUseBatchedLevelsExpand())) {
+        // The related documents are fetched by the BatchedExpandExecutor, no stages are added
+        expandElements.put(
+            navProp.getName(),
+            prepareBatchedExpandElement(
+                eOption,
+                expandParserContext,
+                navProp,
+                newAccumulatedLevels,
+                currentLevel,
+                currentPath,
+                targetFullTypeName,
+                targetResolver,
+                mongoStartWith,
+                mongoConnectTo,
+                targetCollection,
+                levelsGreaterThanOne));
+        return List.of();
+      }
       List<Bson> pipeline = new ArrayList<>();
 
       String navPropertyWithRootPrefix =
@@ -239,6 +331,10 @@ public class ODataExpandToMongoAggregationPipelineParser {
         // TODO Add custom behaviour when $level value is larger than max then set the $level value
         // with the max value, required setting in the ExpandParserContext option
         // Adding $graphLookup
+        boolean buildTreeOnServer = expandParserContext.isBuildGraphLookUpTreeOnServer();
+        int maxDepth =
+            translateODataExpandLevelsToGraphLookupMaxDepth(
+                eOption, expandParserContext, navPropertyWithRootPrefix);
         Document graphLookup = new Document();
         Document graphLookupInnerObject =
             new Document()
@@ -246,18 +342,11 @@ public class ODataExpandToMongoAggregationPipelineParser {
                 .append("startWith", "$" + lookupMongoStartWith)
                 .append("connectFromField", mongoConnectFrom)
                 .append("connectToField", mongoConnectTo)
-                .append(
-                    "maxDepth",
-                    translateODataExpandLevelsToGraphLookupMaxDepth(
-                        eOption, expandParserContext, navPropertyWithRootPrefix))
+                .append("maxDepth", maxDepth)
                 .append("as", navPropertyWithRootPrefix);
         String depthVariable = navProp.getName() + ODATA_GRAPHLOOKUP_STAGE_DEPTH_VARIABLE_SUFFIX;
         EdmMongoContextFacade facade =
-            targetResolver == null
-                ? DefaultEdmMongoContextFacade.builder()
-                    .withEntityPropertiesMongoPathContext(null)
-                    .build()
-                : targetResolver;
+            targetResolver == null ? DefaultEdmMongoContextFacade.withoutMapping() : targetResolver;
         if (eOption.getFilterOption() != null) {
           ODataFilterToMongoMatchParser oDataFilterToMongoMatchParser =
               new ODataFilterToMongoMatchParser();
@@ -270,7 +359,9 @@ public class ODataExpandToMongoAggregationPipelineParser {
         graphLookupInnerObject.append("depthField", depthVariable);
         graphLookup.append("$graphLookup", graphLookupInnerObject);
         pipeline.add(graphLookup);
-        boolean removeDepthProperty = !expandParserContext.propagateGraphLookUpJoinKeys();
+        // The tree built in the database does not contain the depth property
+        boolean removeDepthProperty =
+            !expandParserContext.propagateGraphLookUpJoinKeys() && !buildTreeOnServer;
         if (eOption.getFilterOption() != null) {
           pipeline.add(
               prepareReduceStageThatRemovesOrphansFromGraphLookupStage(
@@ -353,7 +444,7 @@ public class ODataExpandToMongoAggregationPipelineParser {
           DefaultOdataSelectToMongoProjectParserContext.Builder
               odataSelectToMongoProjectParserContextBuilder =
                   DefaultOdataSelectToMongoProjectParserContext.builder();
-          if (expandParserContext.propagateGraphLookUpJoinKeys()) {
+          if (expandParserContext.propagateGraphLookUpJoinKeys() && !buildTreeOnServer) {
             odataSelectToMongoProjectParserContextBuilder.appendAdditionalFields(
                 Set.of(mongoConnectFrom, mongoConnectTo));
           }
@@ -368,7 +459,11 @@ public class ODataExpandToMongoAggregationPipelineParser {
           // TODO Create helper component that combine selected fields from the SelectOperatorResult
           // collection
 
-          pipeline.add(prepareArrayWithSelectedProperties(navPropertyWithRootPrefix, selectResult));
+          if (!buildTreeOnServer) {
+            // The selected properties are applied to each node when the tree is built
+            pipeline.add(
+                prepareArrayWithSelectedProperties(navPropertyWithRootPrefix, selectResult));
+          }
         }
         if (removeDepthProperty) {
           // Removing the "depthVariable" property from results
@@ -376,11 +471,17 @@ public class ODataExpandToMongoAggregationPipelineParser {
         }
         Map<String, ExpandElement> nestedElements = null;
         if (eOption.getExpandOption() != null) {
-          pipeline.add(
-              new Document(
-                  "$unwind",
-                  new Document("path", "$" + navPropertyWithRootPrefix)
-                      .append("preserveNullAndEmptyArrays", true)));
+          // The nested $expand with $levels greater than 1 requires the unwound documents
+          boolean arrayNativeMerge =
+              expandParserContext.isUseArrayNativeNestedExpandMerge()
+                  && !hasExpandItemWithLevelsGreaterThanOne(eOption.getExpandOption());
+          if (!arrayNativeMerge) {
+            pipeline.add(
+                new Document(
+                    "$unwind",
+                    new Document("path", "$" + navPropertyWithRootPrefix)
+                        .append("preserveNullAndEmptyArrays", true)));
+          }
           Set<String> newIdProperties = new HashSet<>(parserExpandItemContext.getIdProperties());
           newIdProperties.add(lookupMongoStartWith);
           ExpandOperatorResult nestedExpandResult = null;
@@ -396,7 +497,9 @@ public class ODataExpandToMongoAggregationPipelineParser {
                         newAccumulatedLevels,
                         currentLevel + 1,
                         currentPath,
-                        targetFullTypeName));
+                        targetFullTypeName,
+                        false,
+                        arrayNativeMerge));
           } catch (ExpandLevelExceededException e) {
             String path = e.getEdmPath();
             if (!navProp.getName().equals(path)) {
@@ -406,13 +509,29 @@ public class ODataExpandToMongoAggregationPipelineParser {
           }
           nestedElements = nestedExpandResult.getExpandElements();
           pipeline.addAll(nestedExpandResult.getStageObjects());
-          pipeline.add(prepareCleanUpStageForSingleObjectProperty(navPropertyWithRootPrefix));
-          pipeline.addAll(prepareMergingDocumentStages(navPropertyWithRootPrefix, newIdProperties));
+          if (!arrayNativeMerge) {
+            pipeline.add(prepareCleanUpStageForSingleObjectProperty(navPropertyWithRootPrefix));
+            pipeline.addAll(
+                prepareMergingDocumentStages(navPropertyWithRootPrefix, newIdProperties));
+          }
           // TODO group if nav is collection
 
           // TODO Remove properties that were foreign keys
 
         }
+        if (buildTreeOnServer) {
+          pipeline.addAll(
+              prepareStagesThatBuildTreeFromGraphLookupResults(
+                  navPropertyWithRootPrefix,
+                  navProp.getName(),
+                  navProp.isCollection(),
+                  depthVariable,
+                  mongoConnectTo,
+                  mongoConnectFrom,
+                  maxDepth,
+                  selectResult,
+                  nestedElements));
+        }
 
         int levelValue = 1;
         boolean maxLevelRequest = false;
@@ -425,7 +544,7 @@ public class ODataExpandToMongoAggregationPipelineParser {
         }
         // TODO add clean-up property
         GraphLookUpCleanUpInfo graphLookUpCleanUpInfo = null;
-        if (selectResult != null) {
+        if (selectResult != null && !buildTreeOnServer) {
           // TODO
           graphLookUpCleanUpInfo =
               GraphLookUpCleanUpInfo.builder()
@@ -442,7 +561,8 @@ public class ODataExpandToMongoAggregationPipelineParser {
             ExpandElement.builder()
                 .withEdmPath(navProp.getName())
                 .withMongoPath(navProp.getName())
-                .withFetchType(FetchType.GRAPHLOOKUP)
+                .withFetchType(
+                    buildTreeOnServer ? FetchType.GRAPHLOOKUP_TREE : FetchType.GRAPHLOOKUP)
                 .withLevel(levelValue)
                 .withMaxLevelRequest(maxLevelRequest)
                 .withLocalKeyProperty(mongoStartWith)
@@ -471,7 +591,8 @@ public class ODataExpandToMongoAggregationPipelineParser {
                         newAccumulatedLevels,
                         currentLevel + 1,
                         currentPath,
-                        targetFullTypeName));
+                        targetFullTypeName,
+                        false));
           } catch (ExpandLevelExceededException e) {
             String path = e.getEdmPath();
             if (!navProp.getName().equals(path)) {
@@ -501,6 +622,17 @@ public class ODataExpandToMongoAggregationPipelineParser {
                   maxDepth + 1,
                   nestedExpandResult,
                   targetResolver));
+        } else if (parserExpandItemContext.isArrayRoot()) {
+          pipeline.addAll(
+              prepareArrayNativeLookUpStages(
+                  targetCollection,
+                  mongoStartWith,
+                  mongoConnectTo,
+                  eOption,
+                  parserExpandItemContext.getRoot(),
+                  navProp,
+                  nestedExpandResult,
+                  targetResolver));
         } else {
           pipeline.addAll(
               prepareLookUpStage(
@@ -550,6 +682,209 @@ public class ODataExpandToMongoAggregationPipelineParser {
     return List.of();
   }
 
+  private ExpandElement prepareBatchedExpandElement(
+      ExpandItem eOption,
+      ExpandParserContext expandParserContext,
+      EdmNavigationProperty navProp,
+      Map<String, Integer> newAccumulatedLevels,
+      int currentLevel,
+      String currentPath,
+      String targetFullTypeName,
+      EdmMongoContextFacade targetResolver,
+      String mongoStartWith,
+      String mongoConnectTo,
+      String targetCollection,
+      boolean levelsGreaterThanOne)
+      throws ExpressionVisitException, ODataApplicationException {
+    // The hierarchy is fetched level by level, the level is limited like the $graphLookup depth
+    int levelValue =
+        levelsGreaterThanOne
+            ? translateODataExpandLevelsToGraphLookupMaxDepth(
+                    eOption, expandParserContext, navProp.getName())
+                + 1
+            : 1;
+    EdmMongoContextFacade facade =
+        targetResolver == null ? DefaultEdmMongoContextFacade.withoutMapping() : targetResolver;
+    // Stages executed after the $in match stage
+    List<Bson> pipeline = new ArrayList<>();
+    if (eOption.getFilterOption() != null) {
+      pipeline.addAll(
+          new ODataFilterToMongoMatchParser()
+              .parse(eOption.getFilterOption(), facade)
+              .getStageObjects());
+    }
+    if (eOption.getOrderByOption() != null) {
+      pipeline.addAll(
+          new OdataOrderByToMongoSortParser()
+              .parse(eOption.getOrderByOption(), facade)
+              .getStageObjects());
+    }
+    Map<String, ExpandElement> nestedElements = null;
+    if (eOption.getExpandOption() != null) {
+      ExpandOperatorResult nestedExpandResult;
+      try {
+        nestedExpandResult =
+            parse(
+                eOption.getExpandOption(),
+                expandParserContext,
+                new ParserExpandItemContext(
+                    null,
+                    null,
+                    false,
+                    newAccumulatedLevels,
+                    currentLevel + 1,
+                    currentPath,
+                    targetFullTypeName));
+      } catch (ExpandLevelExceededException e) {
+        String path = e.getEdmPath();
+        if (!navProp.getName().equals(path)) {
+          path = navProp.getName() + "." + path;
+        }
+        throw new ExpandLevelExceededException(path, e.getRequestedLevel(), e.getMaxLevel());
+      }
+      nestedElements = nestedExpandResult.getExpandElements();
+      pipeline.addAll(nestedExpandResult.getStageObjects());
+    }
+    Set<String> removedProperties = new LinkedHashSet<>();
+    if (eOption.getSelectOption() != null) {
+      // The foreign key and the local keys of the nested batched joins are required by the joins
+      Set<String> joinKeys = new LinkedHashSet<>();
+      joinKeys.add(mongoConnectTo);
+      if (levelsGreaterThanOne) {
+        // The local key of the fetched documents is the join key of the next level
+        joinKeys.add(mongoStartWith);
+      }
+      Set<String> additionalFields = new LinkedHashSet<>();
+      if (nestedElements != null) {
+        for (ExpandElement nestedElement : nestedElements.values()) {
+          additionalFields.add(nestedElement.getMongoPath());
+          if (FetchType.BATCHED.equals(nestedElement.getFetchType())
+              || FetchType.BATCHED_LEVELS.equals(nestedElement.getFetchType())
+              || FetchType.CACHED.equals(nestedElement.getFetchType())) {
+            joinKeys.add(nestedElement.getLocalKeyProperty());
+          }
+        }
+      }
+      additionalFields.addAll(joinKeys);
+      SelectOperatorResult selectOperatorResult =
+          new OdataSelectToMongoProjectParser()
+              .parse(
+                  eOption.getSelectOption(),
+                  facade,
+                  DefaultOdataSelectToMongoProjectParserContext.builder()
+                      .appendAdditionalFields(additionalFields)
+                      .build());
+      pipeline.addAll(selectOperatorResult.getStageObjects());
+      if (!selectOperatorResult.isWildCard()) {
+        for (String joinKey : joinKeys) {
+          if (!selectOperatorResult.getRequestedFields().contains(joinKey)) {
+            removedProperties.add(joinKey);
+          }
+        }
+      }
+    }
+    return ExpandElement.builder()
+        .withEdmPath(navProp.getName())
+        .withMongoPath(navProp.getName())
+        .withFetchType(levelsGreaterThanOne ? FetchType.BATCHED_LEVELS : FetchType.BATCHED)
+        .withLevel(levelValue)
+        .withMaxLevelRequest(levelsGreaterThanOne && eOption.getLevelsOption().isMax())
+        .withDepthVariableName(
+            levelsGreaterThanOne
+                ? navProp.getName() + ODATA_GRAPHLOOKUP_STAGE_DEPTH_VARIABLE_SUFFIX
+                : null)
+        .withLocalKeyProperty(mongoStartWith)
+        .withForeignKeyProperty(mongoConnectTo)
+        .withForeignCollection(targetCollection)
+        .withEdmEntityFullName(targetFullTypeName)
+        .withCollection(navProp.isCollection())
+        .withExpandElements(nestedElements)
+        .withBatchedJoinInfo(
+            BatchedJoinInfo.builder()
+                .withPipeline(pipeline)
+                .withSkip(
+                    eOption.getSkipOption() == null ? null : eOption.getSkipOption().getValue())
+                .withTop(eOption.getTopOption() == null ? null : eOption.getTopOption().getValue())
+                .withRemovedProperties(removedProperties)
+                .build())
+        .build();
+  }
+
+  /**
+   * Prepares the expand element of the navigation property to the cached entity type. Only the
+   * $select of the top level properties can be applied to the documents of the cache. For other
+   * options null is returned and the $expand is translated like for the entity type that is not
+   * cached.
+   */
+  private ExpandElement prepareCachedExpandElement(
+      ExpandItem eOption,
+      EdmNavigationProperty navProp,
+      String targetFullTypeName,
+      EdmMongoContextFacade targetResolver,
+      String mongoStartWith,
+      String mongoConnectTo,
+      String targetCollection)
+      throws ExpressionVisitException, ODataApplicationException {
+    if (eOption.getFilterOption() != null
+        || eOption.getOrderByOption() != null
+        || eOption.getSkipOption() != null
+        || eOption.getTopOption() != null
+        || eOption.getExpandOption() != null
+        || eOption.getSearchOption() != null
+        || eOption.getCountOption() != null) {
+      return null;
+    }
+    // Stages executed after the $in match stage when the executor does not use the cache
+    List<Bson> pipeline = new ArrayList<>();
+    Set<String> removedProperties = new LinkedHashSet<>();
+    Set<String> selectedProperties = new LinkedHashSet<>();
+    if (eOption.getSelectOption() != null) {
+      EdmMongoContextFacade facade =
+          targetResolver == null ? DefaultEdmMongoContextFacade.withoutMapping() : targetResolver;
+      SelectOperatorResult selectOperatorResult =
+          new OdataSelectToMongoProjectParser()
+              .parse(
+                  eOption.getSelectOption(),
+                  facade,
+                  DefaultOdataSelectToMongoProjectParserContext.builder()
+                      .appendAdditionalFields(Set.of(mongoConnectTo))
+                      .build());
+      pipeline.addAll(selectOperatorResult.getStageObjects());
+      if (!selectOperatorResult.isWildCard()) {
+        selectedProperties.addAll(selectOperatorResult.getRequestedFields());
+        selectedProperties.add(mongoConnectTo);
+        if (!selectOperatorResult.getRequestedFields().contains(mongoConnectTo)) {
+          removedProperties.add(mongoConnectTo);
+        }
+      }
+      for (String selectedProperty : selectedProperties) {
+        if (selectedProperty.contains(".")) {
+          return null;
+        }
+      }
+    }
+    return ExpandElement.builder()
+        .withEdmPath(navProp.getName())
+        .withMongoPath(navProp.getName())
+        .withFetchType(FetchType.CACHED)
+        .withLevel(1)
+        .withMaxLevelRequest(false)
+        .withDepthVariableName(null)
+        .withLocalKeyProperty(mongoStartWith)
+        .withForeignKeyProperty(mongoConnectTo)
+        .withForeignCollection(targetCollection)
+        .withEdmEntityFullName(targetFullTypeName)
+        .withCollection(navProp.isCollection())
+        .withExpandElements(null)
+        .withBatchedJoinInfo(
+            BatchedJoinInfo.builder()
+                .withPipeline(pipeline)
+                .withRemovedProperties(removedProperties)
+                .withSelectedProperties(selectedProperties)
+                .build())
+        .build();
+  }
+
   private static String getCurrentSourceFullTypeName(
       ExpandItem eOption, ParserExpandItemContext parserExpandItemContext) {
     String currentSourceFullTypeName;
@@ -609,11 +944,7 @@ public class ODataExpandToMongoAggregationPipelineParser {
       OdataSelectToMongoProjectParser odataSelectToMongoProjectParser =
           new OdataSelectToMongoProjectParser();
       EdmMongoContextFacade facade =
-          targetResolver == null
-              ? DefaultEdmMongoContextFacade.builder()
-                  .withEntityPropertiesMongoPathContext(null)
-                  .build()
-              : targetResolver;
+          targetResolver == null ? DefaultEdmMongoContextFacade.withoutMapping() : targetResolver;
 
       // $lookup with pipeline
       List<Bson> lookupPipeline = new ArrayList<>();
@@ -748,47 +1079,147 @@ public class ODataExpandToMongoAggregationPipelineParser {
     return pipeline;
   }
 
+  private static boolean hasExpandItemWithLevelsGreaterThanOne(ExpandOption expandOption) {
+    for (ExpandItem expandItem : expandOption.getExpandItems()) {
+      if (expandItem.getLevelsOption() != null
+          && (expandItem.getLevelsOption().isMax()
+              || expandItem.getLevelsOption().getValue() > 1)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Prepares the stages that merge the related documents into each element of the array root. The
+   * single $lookup stage fetches the related documents of all array elements. The $map expression
+   * assigns to each element the related documents with the matching foreign key, so the skip and
+   * top options are applied per element and the array root does not have to be unwound and grouped
+   * again.
+   */
+  private List<Bson> prepareArrayNativeLookUpStages(
+      String targetCollection,
+      String mongoStartWith,
+      String mongoConnectTo,
+      ExpandItem eOption,
+      String root,
+      EdmNavigationProperty navProp,
+      ExpandOperatorResult nestedExpandResult,
+      EdmMongoContextFacade targetResolver)
+      throws ExpressionVisitException, ODataApplicationException {
+    EdmMongoContextFacade facade =
+        targetResolver == null ? DefaultEdmMongoContextFacade.withoutMapping() : targetResolver;
+    String tmpArray = root + "_" + navProp.getName() + ODATA_MERGING_STAGE_TMP_ARRAY_SUFFIX;
+    List<Bson> lookupPipeline = new ArrayList<>();
+    if (eOption.getFilterOption() != null) {
+      lookupPipeline.addAll(
+          new ODataFilterToMongoMatchParser()
+              .parse(eOption.getFilterOption(), facade)
+              .getStageObjects());
+    }
+    if (eOption.getOrderByOption() != null) {
+      lookupPipeline.addAll(
+          new OdataOrderByToMongoSortParser()
+              .parse(eOption.getOrderByOption(), facade)
+              .getStageObjects());
+    }
+    if (nestedExpandResult != null) {
+      lookupPipeline.addAll(nestedExpandResult.getStageObjects());
+    }
+    boolean removeForeignKeyProperty = false;
+    if (eOption.getSelectOption() != null) {
+      // The foreign key is required to assign the related documents to the array elements
+      Set<String> additionalFields = new LinkedHashSet<>();
+      additionalFields.add(mongoConnectTo);
+      if (nestedExpandResult != null) {
+        additionalFields.addAll(nestedExpandResult.getExpandElements().keySet());
+      }
+      SelectOperatorResult selectOperatorResult =
+          new OdataSelectToMongoProjectParser()
+              .parse(
+                  eOption.getSelectOption(),
+                  facade,
+                  DefaultOdataSelectToMongoProjectParserContext.builder()
+                      .appendAdditionalFields(additionalFields)
+                      .build());
+      lookupPipeline.addAll(selectOperatorResult.getStageObjects());
+      removeForeignKeyProperty =
+          !selectOperatorResult.isWildCard()
+              && !selectOperatorResult.getRequestedFields().contains(mongoConnectTo);
+    }
+    Document lookupInnerObject =
+        new Document()
+            .append("from", targetCollection)
+            .append("localField", root + "." + mongoStartWith)
+            .append("foreignField", mongoConnectTo);
+    if (!lookupPipeline.isEmpty()) {
+      lookupInnerObject.append("pipeline", lookupPipeline);
+    }
+    lookupInnerObject.append("as", tmpArray);
+    List<Bson> pipeline = new ArrayList<>();
+    pipeline.add(new Document("$lookup", lookupInnerObject));
+
+    Object related =
+        filter(
+            fieldPath(tmpArray),
+            "related",
+            eq(variable("related", mongoConnectTo), variable("node", mongoStartWith)));
+    Integer skip = eOption.getSkipOption() == null ? null : eOption.getSkipOption().getValue();
+    Integer top = eOption.getTopOption() == null ? null : eOption.getTopOption().getValue();
+    if (top != null && top == 0) {
+      related = List.of();
+    } else if (skip != null || top != null) {
+      // The number of elements of the $slice expression has to be positive
+      related =
+          let(
+              new Document("matches", related),
+              slice(
+                  variable("matches", null),
+                  skip == null ? 0 : skip,
+                  top == null ? add(size(variable("matches", null)), 1) : top));
+    }
+    Object value;
+    if (!navProp.isCollection()) {
+      value = arrayElemAt(related, 0);
+    } else if (eOption.getExpandOption() == null) {
+      // The empty array is removed, like by the clean-up stage of the $lookup stage
+      value =
+          let(
+              new Document("matches", related),
+              cond(eq(size(variable("matches", null)), 0), "$$REMOVE", variable("matches", null)));
+    } else {
+      value = related;
+    }
+    pipeline.add(
+        set(
+            root,
+            map(
+                fieldPath(root),
+                "node",
+                mergeObjects(variable("node", null), new Document(navProp.getName(), value)))));
+    List<String> unsetFields = new ArrayList<>();
+    unsetFields.add(tmpArray);
+    if (removeForeignKeyProperty) {
+      unsetFields.add(root + "." + navProp.getName() + "." + mongoConnectTo);
+    }
+    pipeline.add(new Document("$unset", unsetFields));
+    return pipeline;
+  }
+
   private Bson prepareCleanUpStageForSingleObjectProperty(String navProperty) {
-    return Document.parse(
-        """
-                    {
-                                              $addFields: {
-                                                "%1$s": {
-                                                  $cond: {
-                                                    if: {
-                                                      $eq: [
-                                                        { $size: { $objectToArray: { $ifNull: ["$%1$s", {}] } } },
-                                                        0
-                                                      ]
-                                                    },
-                                                    then: "$$REMOVE",
-                                                    else: "$%1$s"
-                                                  }
-                                                }
-                                              }
-                                            }
-            """
-            .formatted(navProperty));
+    String navPropertyPath = fieldPath(navProperty);
+    return addFields(
+        navProperty,
+        condDocument(
+            eq(size(objectToArray(ifNull(navPropertyPath, new Document()))), 0),
+            "$$REMOVE",
+            navPropertyPath));
   }
 
   private Bson prepareCleanUpStageForArrayProperty(String navProperty) {
-    return Document.parse(
-        """
-                    {
-                                            "$addFields": {
-                                              "%1$s": {
-                                                "$cond": {
-                                                  "if": {
-                                                    "$eq": [{ "$size": "$%1$s" }, 0]
-                                                  },
-                                                  "then": "$$REMOVE",
-                                                  "else": "$%1$s"
-                                                }
-                                              }
-                                            }
-                                         }
-                    """
-            .formatted(navProperty));
+    String navPropertyPath = fieldPath(navProperty);
+    return addFields(
+        navProperty, condDocument(eq(size(navPropertyPath), 0), "$$REMOVE", navPropertyPath));
   }
 
   private static final class ParserExpandItemContext {
@@ -799,6 +1230,8 @@ public class ODataExpandToMongoAggregationPipelineParser {
     private final int currentNestedLevel;
     private final String currentEdmPath;
     private final String sourceFullTypeName;
+    private final boolean batchedJoinAllowed;
+    private final boolean arrayRoot;
 
     public boolean isAddCleanUpEmptyPropertiesStage() {
       return addCleanUpEmptyPropertiesStage;
@@ -847,6 +1280,56 @@ public class ODataExpandToMongoAggregationPipelineParser {
         int currentNestedLevel,
         String currentEdmPath,
         String sourceFullTypeName) {
+      this(
+          root,
+          idProperties,
+          addCleanUpEmptyPropertiesStage,
+          accumulatedLevels,
+          currentNestedLevel,
+          currentEdmPath,
+          sourceFullTypeName,
+          true);
+    }
+
+    /**
+     * The batched join is not allowed for the nested $expand translated to the stages of the outer
+     * $lookup or $graphLookup stage, because these stages are executed by the database.
+     */
+    public ParserExpandItemContext(
+        String root,
+        Set<String> idProperties,
+        boolean addCleanUpEmptyPropertiesStage,
+        Map<String, Integer> accumulatedLevels,
+        int currentNestedLevel,
+        String currentEdmPath,
+        String sourceFullTypeName,
+        boolean batchedJoinAllowed) {
+      this(
+          root,
+          idProperties,
+          addCleanUpEmptyPropertiesStage,
+          accumulatedLevels,
+          currentNestedLevel,
+          currentEdmPath,
+          sourceFullTypeName,
+          batchedJoinAllowed,
+          false);
+    }
+
+    /**
+     * The array root means that the root property is the array of documents found by the
+     * $graphLookup stage and the nested $expand is merged into each of its elements.
+     */
+    public ParserExpandItemContext(
+        String root,
+        Set<String> idProperties,
+        boolean addCleanUpEmptyPropertiesStage,
+        Map<String, Integer> accumulatedLevels,
+        int currentNestedLevel,
+        String currentEdmPath,
+        String sourceFullTypeName,
+        boolean batchedJoinAllowed,
+        boolean arrayRoot) {
       this.root = root;
       this.idProperties =
           Collections.unmodifiableSet(idProperties == null ? Collections.emptySet() : idProperties);
@@ -859,6 +1342,8 @@ public class ODataExpandToMongoAggregationPipelineParser {
       this.currentNestedLevel = currentNestedLevel;
       this.currentEdmPath = currentEdmPath;
       this.sourceFullTypeName = sourceFullTypeName;
+      this.batchedJoinAllowed = batchedJoinAllowed;
+      this.arrayRoot = arrayRoot;
     }
 
     public String getSourceFullTypeName() {
@@ -884,6 +1369,14 @@ public class ODataExpandToMongoAggregationPipelineParser {
     public String getCurrentEdmPath() {
       return currentEdmPath;
     }
+
+    public boolean isBatchedJoinAllowed() {
+      return batchedJoinAllowed;
+    }
+
+    public boolean isArrayRoot() {
+      return arrayRoot;
+    }
   }
 
   private Collection<? extends Bson> prepareMergingDocumentStages(
@@ -893,39 +1386,15 @@ public class ODataExpandToMongoAggregationPipelineParser {
     Document idObject = new Document();
     int i = 0;
     for (String idField : idFields) {
-      idObject.append("id_" + (i++), "$" + idField);
+      idObject.append("id_" + (i++), fieldPath(idField));
     }
     results.add(
-        Document.parse(
-            """
-                    {
-                             $group: {
-                               _id: %1$s,
-                               "tmp_array": { $push: "$%2$s" },
-                               "tmp_root": { $first: "$$ROOT" }
-                             }
-                           }
-                 """
-                .formatted(idObject.toJson(), navPropertyWithRootPrefix)));
-    results.add(
-        Document.parse(
-            """
-                            {
-                                     $set: {
-                                       "tmp_root.%1$s": "$tmp_array"
-                                     }
-                                   }
-                         """
-                .formatted(navPropertyWithRootPrefix)));
-    results.add(
-        Document.parse(
-            """
-              {
-                $replaceRoot: {
-                  newRoot: "$tmp_root"
-                }
-              }
-              """));
+        group(
+            idObject,
+            new Document("tmp_array", new Document("$push", fieldPath(navPropertyWithRootPrefix)))
+                .append("tmp_root", new Document("$first", "$$ROOT"))));
+    results.add(set("tmp_root." + navPropertyWithRootPrefix, "$tmp_array"));
+    results.add(replaceRoot("$tmp_root"));
     return results;
   }
 
@@ -936,21 +1405,9 @@ public class ODataExpandToMongoAggregationPipelineParser {
     Document mapObject =
         selectOptionToMapConverter.convert(
             selectResult.getSelectedFields(), "item", selectResult.getArrayFields());
-    return Document.parse(
-        """
-                {
-                    $set: {
-                      %1$s: {
-                        $map: {
-                          input: { $ifNull: ["$%1$s", []] },
-                          as: "item",
-                          in: %2$s
-                        }
-                      }
-                    }
-                  }
-                """
-            .formatted(navPropertyWithRootPrefix, mapObject.toJson()));
+    return set(
+        navPropertyWithRootPrefix,
+        map(ifNull(fieldPath(navPropertyWithRootPrefix), List.of()), "item", mapObject));
   }
 
   /**
@@ -1022,161 +1479,184 @@ public class ODataExpandToMongoAggregationPipelineParser {
       String depthVariable,
       String mongoConnectTo,
       String mongoConnectFrom) {
-
-    return Document.parse(
-        """
-            {
-              $set: {
-                  %1$s: {
-                    $reduce: {
-                      input: { $ifNull: ["$%2$s", []] },
-                              initialValue: [],
-                      in: {
-                        $let: {
-                          vars: {
-                            index: { $indexOfArray: ["$$value.%4$s", "$$this.%4$s"] }
-                          },
-                          in: {
-                            $cond: [
-                            { $eq: ["$$index", -1] },
-                            {
-                              $concatArrays: [
-                              "$$value",
-                                  [{ %4$s: "$$this.%4$s", %3$s: "$$this.%3$s", %5$s: ["$$this"] }]
-                                ]
-                            },
-                            {
-                              $map: {
-                                input: "$$value",
-                                        as: "bucket",
-                                        in: {
-                                  $cond: [
-                                  { $eq: ["$$bucket.%4$s", "$$this.%4$s"] },
-                                  {
-                                    %4$s: "$$bucket.%4$s",
-                                            %5$s: { $concatArrays: ["$$bucket.%5$s", ["$$this"]] }
-                                  },
-                                  "$$bucket"
-                                    ]
-                                }
-                              }
-                            }
-                            ]
-                          }
-                        }
-                      }
-                    }
-                  }
-                }
-              }
-            """
-            .formatted(
-                navPropertyWithRootPrefix + ODATA_GRAPHLOOKUP_STAGE_TMP_ARRAY_SUFFIX,
-                navPropertyWithRootPrefix,
-                depthVariable,
-                mongoConnectTo,
-                navPropName));
+    Document newBucket =
+        new Document(mongoConnectTo, variable("this", mongoConnectTo))
+            .append(depthVariable, variable("this", depthVariable))
+            .append(navPropName, array("$$this"));
+    Document mergedBucket =
+        new Document(mongoConnectTo, variable("bucket", mongoConnectTo))
+            .append(navPropName, concatArrays(variable("bucket", navPropName), array("$$this")));
+    return set(
+        navPropertyWithRootPrefix + ODATA_GRAPHLOOKUP_STAGE_TMP_ARRAY_SUFFIX,
+        reduce(
+            ifNull(fieldPath(navPropertyWithRootPrefix), List.of()),
+            List.of(),
+            let(
+                new Document(
+                    "index",
+                    indexOfArray(
+                        variable("value", mongoConnectTo), variable("this", mongoConnectTo))),
+                cond(
+                    eq("$$index", -1),
+                    concatArrays("$$value", array(newBucket)),
+                    map(
+                        "$$value",
+                        "bucket",
+                        cond(
+                            eq(
+                                variable("bucket", mongoConnectTo),
+                                variable("this", mongoConnectTo)),
+                            mergedBucket,
+                            "$$bucket"))))));
   }
 
   private static Document prepareArrayWithSortedChildrenArray(
       String navPropertyWithRootPrefix, String navPropName, Document sortObject) {
-
-    return Document.parse(
-        """
-            {
-                $set: {
-                  %1$s: {
-                    $map: {
-                      input: { $ifNull: ["$%1$s", []] },
-                      as: "item",
-                      in: {
-                        $mergeObjects: [
-                                  "$$item",
-                                  {
-                                    %2$s: {
-                                      $sortArray: {
-                                        input: "$$item.%2$s",
-                                        sortBy: %3$s
-                                      }
-                                    }
-                                  }
-                                ]
-                      }
-                    }
-                  }
-                }
-              }
-            """
-            .formatted(
-                navPropertyWithRootPrefix + ODATA_GRAPHLOOKUP_STAGE_TMP_ARRAY_SUFFIX,
-                navPropName,
-                sortObject.toJson()));
+    String tmpArray = navPropertyWithRootPrefix + ODATA_GRAPHLOOKUP_STAGE_TMP_ARRAY_SUFFIX;
+    return set(
+        tmpArray,
+        map(
+            ifNull(fieldPath(tmpArray), List.of()),
+            "item",
+            mergeObjects(
+                "$$item",
+                new Document(navPropName, sortArray(variable("item", navPropName), sortObject)))));
   }
 
   private static Document prepareArrayWithSkippedAndLimitedChildrenArray(
       String navPropertyWithRootPrefix, String navPropName, Integer skip, Integer top) {
-
-    return Document.parse(
-        """
-                {
-                    $set: {
-                      %1$s: {
-                        $map: {
-                          input: { $ifNull: ["$%1$s", []] },
-                          as: "item",
-                          in: {
-                            $mergeObjects: [
-                                      "$$item",
-                                      {
-                                        %2$s: {
-                                          $slice: [
-                                            "$$item.%2$s",
-                                            %3$s,
-                                            %4$s
-                                          ]
-                                        }
-                                      }
-                                    ]
-                          }
-                        }
-                      }
-                    }
-                  }
-                """
-            .formatted(
-                navPropertyWithRootPrefix + ODATA_GRAPHLOOKUP_STAGE_TMP_ARRAY_SUFFIX,
-                navPropName,
-                skip == null ? 0 : skip,
-                top == null
-                    ? """
-                                    { $size: "$$item.%2$s" }
-                                    """
-                    : top));
+    String tmpArray = navPropertyWithRootPrefix + ODATA_GRAPHLOOKUP_STAGE_TMP_ARRAY_SUFFIX;
+    String children = variable("item", navPropName);
+    return set(
+        tmpArray,
+        map(
+            ifNull(fieldPath(tmpArray), List.of()),
+            "item",
+            mergeObjects(
+                "$$item",
+                new Document(
+                    navPropName,
+                    slice(
+                        children, skip == null ? 0 : skip, top == null ? size(children) : top)))));
   }
 
   private static Document prepareFlatterArrayBasedOnChildrenArray(
       String navPropertyWithRootPrefix, String navPropName) {
+    String tmpArray = navPropertyWithRootPrefix + ODATA_GRAPHLOOKUP_STAGE_TMP_ARRAY_SUFFIX;
+    return set(
+        tmpArray,
+        reduce(
+            fieldPath(tmpArray),
+            List.of(),
+            concatArrays("$$value", variable("this", navPropName))));
+  }
 
-    return Document.parse(
-        """
-                    {
-                        $set: {
-                          %1$s: {
-                            $reduce: {
-                                    input: "$%1$s",
-                                    initialValue: [],
-                                    in: {
-                                      $concatArrays: ["$$value", "$$this.%3$s"]
-                                    }
-                            }
-                          }
-                        }
-                     }
-                    """
-            .formatted(
-                navPropertyWithRootPrefix + ODATA_GRAPHLOOKUP_STAGE_TMP_ARRAY_SUFFIX,
-                navPropertyWithRootPrefix,
-                navPropName));
+  /**
+   * Prepares the stages that assemble the nested tree from the flat array of documents returned by
+   * the $graphLookup stage.
+   *
+   * <p>The aggregation framework does not support recursion, so the stages are generated for each
+   * depth, starting from the deepest one. Each stage moves the documents from the given depth into
+   * the arrays of their parents from the previous depth. The last stage keeps only the documents
+   * from the depth 0 and applies the selected properties to them. The documents at the maximal
+   * depth do not get the navigation property, the same as for the {@link
+   * GraphLookUpToLookUpStrategyResultsTransformer}. The empty arrays of the nested expanded
+   * collections, removed by the stages of the nested $expand, are restored for each document the
+   * same way.
+   *
+   * @param navPropertyWithRootPrefix the navigation property being expanded
+   * @param navPropName the name of the navigation property in the nested documents
+   * @param collection true if the navigation property is a collection
+   * @param depthVariable the name of the field storing the recursion depth
+   * @param mongoConnectTo the field name used for the "connectToField" in $graphLookup
+   * @param mongoConnectFrom the field name used for the "connectFromField" in $graphLookup
+   * @param maxDepth the maxDepth value of the $graphLookup stage
+   * @param selectResult the selected properties, can be null
+   * @param nestedElements the elements of the nested $expand option, can be null
+   * @return the stages that build the tree
+   */
+  private static List<Bson> prepareStagesThatBuildTreeFromGraphLookupResults(
+      String navPropertyWithRootPrefix,
+      String navPropName,
+      boolean collection,
+      String depthVariable,
+      String mongoConnectTo,
+      String mongoConnectFrom,
+      int maxDepth,
+      SelectOperatorOptionsForMapOperator selectResult,
+      Map<String, ExpandElement> nestedElements) {
+    List<Bson> results = new ArrayList<>();
+    String navPropertyPath = fieldPath(navPropertyWithRootPrefix);
+    for (int depth = maxDepth; depth > 0; depth--) {
+      Document children =
+          map(
+              filter(
+                  navPropertyPath,
+                  "child",
+                  and(
+                      eq(variable("child", depthVariable), depth),
+                      eq(variable("child", mongoConnectTo), variable("node", mongoConnectFrom)))),
+              "child",
+              prepareTreeNode("child", navPropName, depthVariable, selectResult, nestedElements));
+      results.add(
+          set(
+              navPropertyWithRootPrefix,
+              map(
+                  filter(navPropertyPath, "node", lt(variable("node", depthVariable), depth)),
+                  "node",
+                  cond(
+                      eq(variable("node", depthVariable), depth - 1),
+                      mergeObjects(
+                          "$$node",
+                          new Document(
+                              navPropName, collection ? children : arrayElemAt(children, 0))),
+                      "$$node"))));
+    }
+    // The documents without the depth property are the placeholders created by the nested $expand
+    Document roots =
+        map(
+            filter(navPropertyPath, "node", eq(variable("node", depthVariable), 0)),
+            "child",
+            prepareTreeNode("child", navPropName, depthVariable, selectResult, nestedElements));
+    results.add(
+        set(
+            navPropertyWithRootPrefix,
+            collection
+                ? roots
+                : let(
+                    new Document("roots", roots),
+                    cond(eq(size("$$roots"), 0), "$$REMOVE", arrayElemAt("$$roots", 0)))));
+    return results;
+  }
+
+  private static Object prepareTreeNode(
+      String variableName,
+      String navPropName,
+      String depthVariable,
+      SelectOperatorOptionsForMapOperator selectResult,
+      Map<String, ExpandElement> nestedElements) {
+    Document expandedProperties = new Document();
+    if (nestedElements != null) {
+      for (ExpandElement nestedElement : nestedElements.values()) {
+        String nestedProperty = variable(variableName, nestedElement.getMongoPath());
+        expandedProperties.append(
+            nestedElement.getMongoPath(),
+            Boolean.TRUE.equals(nestedElement.getCollection())
+                ? ifNull(nestedProperty, new ArrayList<>())
+                : nestedProperty);
+      }
+    }
+    Object node;
+    if (selectResult == null || selectResult.isWildCard()) {
+      node = withoutField(variable(variableName, null), depthVariable);
+    } else {
+      node =
+          new SelectOperatorResultToBsonDocumentConverter()
+              .convert(
+                  selectResult.getSelectedFields(), variableName, selectResult.getArrayFields());
+      expandedProperties.append(navPropName, variable(variableName, navPropName));
+    }
+    return expandedProperties.isEmpty() ? node : mergeObjects(node, expandedProperties);
   }
 
   /**
@@ -1273,6 +1753,12 @@ public class ODataExpandToMongoAggregationPipelineParser {
     private final Integer maxAllowedNestedExpandLevel;
     private final String rootEdmEntityTypeName;
     private final EdmMongoContextFacade rootEdmMongoContextFacade;
+    private final boolean buildGraphLookUpTreeOnServer;
+    private final boolean useBatchedClientSideJoin;
+    private final boolean useArrayNativeNestedExpandMerge;
+    private final boolean useBatchedLevelsExpand;
+    private final Set<String> cachedEntityTypes;
+    private final CompiledEdmMongoModel compiledEdmMongoModel;
 
     /**
      * Constructs a new DefaultExpandParserContext.
@@ -1436,6 +1922,44 @@ public class ODataExpandToMongoAggregationPipelineParser {
         Integer maxAllowedNestedExpandLevel,
         String rootEdmEntityTypeName,
         EdmMongoContextFacade rootEdmMongoContextFacade) {
+      this(
+          edmTypeMapping,
+          edmTablesToMongoDBCollections,
+          maxLevel,
+          useLookupForLevelGreaterThanOne,
+          propagateGraphLookUpJoinKeys,
+          throwExceptionOnExpandLevelsExceeded,
+          maxAllowedNestedExpandLevel,
+          rootEdmEntityTypeName,
+          rootEdmMongoContextFacade,
+          false,
+          false,
+          false,
+          false,
+          Collections.emptySet(),
+          null);
+    }
+
+    /**
+     * Constructs a new DefaultExpandParserContext with all options. The options added after the
+     * constructor with the root EDM mongo context facade are set only by the {@link Builder}.
+     */
+    private DefaultExpandParserContext(
+        Map<String, EdmMongoContextFacade> edmTypeMapping,
+        Map<KeyValue<String, String>, String> edmTablesToMongoDBCollections,
+        Integer maxLevel,
+        boolean useLookupForLevelGreaterThanOne,
+        boolean propagateGraphLookUpJoinKeys,
+        boolean throwExceptionOnExpandLevelsExceeded,
+        Integer maxAllowedNestedExpandLevel,
+        String rootEdmEntityTypeName,
+        EdmMongoContextFacade rootEdmMongoContextFacade,
+        boolean buildGraphLookUpTreeOnServer,
+        boolean useBatchedClientSideJoin,
+        boolean useArrayNativeNestedExpandMerge,
+        boolean useBatchedLevelsExpand,
+        Set<String> cachedEntityTypes,
+        CompiledEdmMongoModel compiledEdmMongoModel) {
       this.edmTypeMapping = edmTypeMapping;
       this.edmTablesToMongoDBCollections = edmTablesToMongoDBCollections;
       this.maxLevel = maxLevel;
@@ -1445,6 +1969,15 @@ public class ODataExpandToMongoAggregationPipelineParser {
       this.maxAllowedNestedExpandLevel = maxAllowedNestedExpandLevel;
       this.rootEdmEntityTypeName = rootEdmEntityTypeName;
       this.rootEdmMongoContextFacade = rootEdmMongoContextFacade;
+      this.buildGraphLookUpTreeOnServer = buildGraphLookUpTreeOnServer;
+      this.useBatchedClientSideJoin = useBatchedClientSideJoin;
+      this.useArrayNativeNestedExpandMerge = useArrayNativeNestedExpandMerge;
+      this.useBatchedLevelsExpand = useBatchedLevelsExpand;
+      this.cachedEntityTypes =
+          cachedEntityTypes == null
+              ? Collections.emptySet()
+              : Collections.unmodifiableSet(new LinkedHashSet<>(cachedEntityTypes));
+      this.compiledEdmMongoModel = compiledEdmMongoModel;
     }
 
     @Override
@@ -1492,6 +2025,43 @@ public class ODataExpandToMongoAggregationPipelineParser {
       return rootEdmMongoContextFacade;
     }
 
+    @Override
+    public boolean isBuildGraphLookUpTreeOnServer() {
+      return buildGraphLookUpTreeOnServer;
+    }
+
+    @Override
+    public boolean isUseBatchedClientSideJoin() {
+      return useBatchedClientSideJoin;
+    }
+
+    @Override
+    public boolean isUseArrayNativeNestedExpandMerge() {
+      return useArrayNativeNestedExpandMerge;
+    }
+
+    @Override
+    public boolean isUseBatchedLevelsExpand() {
+      return useBatchedLevelsExpand;
+    }
+
+    @Override
+    public Set<String> getCachedEntityTypes() {
+      return cachedEntityTypes;
+    }
+
+    @Override
+    public NavigationJoinKeys getNavigationJoinKeys(
+        String sourceFullTypeName, String navigationPropertyName) {
+      return compiledEdmMongoModel == null
+          ? null
+          : compiledEdmMongoModel.getNavigationJoinKeys(sourceFullTypeName, navigationPropertyName);
+    }
+
+    public CompiledEdmMongoModel getCompiledEdmMongoModel() {
+      return compiledEdmMongoModel;
+    }
+
     @Override
     public boolean equals(Object o) {
       if (this == o) return true;
@@ -1500,6 +2070,12 @@ public class ODataExpandToMongoAggregationPipelineParser {
       return useLookupForLevelGreaterThanOne == that.useLookupForLevelGreaterThanOne
           && propagateGraphLookUpJoinKeys == that.propagateGraphLookUpJoinKeys
           && throwExceptionOnExpandLevelsExceeded == that.throwExceptionOnExpandLevelsExceeded
+          && buildGraphLookUpTreeOnServer == that.buildGraphLookUpTreeOnServer
+          && useBatchedClientSideJoin == that.useBatchedClientSideJoin
+          && useArrayNativeNestedExpandMerge == that.useArrayNativeNestedExpandMerge
+          && useBatchedLevelsExpand == that.useBatchedLevelsExpand
+          && Objects.equals(cachedEntityTypes, that.cachedEntityTypes)
+          && Objects.equals(compiledEdmMongoModel, that.compiledEdmMongoModel)
           && Objects.equals(edmTypeMapping, that.edmTypeMapping)
           && Objects.equals(edmTablesToMongoDBCollections, that.edmTablesToMongoDBCollections)
           && Objects.equals(maxLevel, that.maxLevel)
@@ -1519,7 +2095,13 @@ public class ODataExpandToMongoAggregationPipelineParser {
           throwExceptionOnExpandLevelsExceeded,
           maxAllowedNestedExpandLevel,
           rootEdmEntityTypeName,
-          rootEdmMongoContextFacade);
+          rootEdmMongoContextFacade,
+          buildGraphLookUpTreeOnServer,
+          useBatchedClientSideJoin,
+          useArrayNativeNestedExpandMerge,
+          useBatchedLevelsExpand,
+          cachedEntityTypes,
+          compiledEdmMongoModel);
     }
 
     @Override
@@ -1544,6 +2126,18 @@ public class ODataExpandToMongoAggregationPipelineParser {
           + '\''
           + ", rootEdmMongoContextFacade="
           + rootEdmMongoContextFacade
+          + ", buildGraphLookUpTreeOnServer="
+          + buildGraphLookUpTreeOnServer
+          + ", useBatchedClientSideJoin="
+          + useBatchedClientSideJoin
+          + ", useArrayNativeNestedExpandMerge="
+          + useArrayNativeNestedExpandMerge
+          + ", useBatchedLevelsExpand="
+          + useBatchedLevelsExpand
+          + ", cachedEntityTypes="
+          + cachedEntityTypes
+          + ", compiledEdmMongoModel="
+          + compiledEdmMongoModel
           + '}';
     }
 
@@ -1572,6 +2166,12 @@ public class ODataExpandToMongoAggregationPipelineParser {
       private Integer maxAllowedNestedExpandLevel = null;
       private String rootEdmEntityTypeName = null;
       private EdmMongoContextFacade rootEdmMongoContextFacade = null;
+      private boolean buildGraphLookUpTreeOnServer = false;
+      private boolean useBatchedClientSideJoin = false;
+      private boolean useArrayNativeNestedExpandMerge = false;
+      private boolean useBatchedLevelsExpand = false;
+      private Set<String> cachedEntityTypes = new LinkedHashSet<>();
+      private CompiledEdmMongoModel compiledEdmMongoModel = null;
 
       /**
        * Sets the mapping between EDM type names and their Mongo path resolvers.
@@ -1675,6 +2275,99 @@ public class ODataExpandToMongoAggregationPipelineParser {
         return this;
       }
 
+      /**
+       * Sets whether the tree of the $graphLookup results should be built in the database.
+       *
+       * @param buildGraphLookUpTreeOnServer true to build the tree in the database, false to return
+       *     the flat array of documents
+       * @return the builder instance
+       */
+      public Builder withBuildGraphLookUpTreeOnServer(boolean buildGraphLookUpTreeOnServer) {
+        this.buildGraphLookUpTreeOnServer = buildGraphLookUpTreeOnServer;
+        return this;
+      }
+
+      /**
+       * Sets whether the related documents should be fetched by the {@link BatchedExpandExecutor}
+       * with batched $in queries instead of the $lookup stage.
+       *
+       * @param useBatchedClientSideJoin true to fetch the related documents with batched $in
+       *     queries, false to use the aggregation stages
+       * @return the builder instance
+       */
+      public Builder withUseBatchedClientSideJoin(boolean useBatchedClientSideJoin) {
+        this.useBatchedClientSideJoin = useBatchedClientSideJoin;
+        return this;
+      }
+
+      /**
+       * Sets whether the nested $expand of the $graphLookup results should be merged with the $map,
+       * $filter and $mergeObjects expressions instead of the $unwind, $group and $replaceRoot
+       * stages.
+       *
+       * @param useArrayNativeNestedExpandMerge true to merge the nested $expand with the array
+       *     expressions, false to use the $group stage
+       * @return the builder instance
+       */
+      public Builder withUseArrayNativeNestedExpandMerge(boolean useArrayNativeNestedExpandMerge) {
+        this.useArrayNativeNestedExpandMerge = useArrayNativeNestedExpandMerge;
+        return this;
+      }
+
+      /**
+       * Sets whether the $expand with $levels greater than 1 should be fetched by the {@link
+       * BatchedExpandExecutor} level by level instead of the $graphLookup stage, when the batched
+       * join is used.
+       *
+       * @param useBatchedLevelsExpand true to fetch the hierarchy level by level with batched $in
+       *     queries, false to use the $graphLookup stage
+       * @return the builder instance
+       */
+      public Builder withUseBatchedLevelsExpand(boolean useBatchedLevelsExpand) {
+        this.useBatchedLevelsExpand = useBatchedLevelsExpand;
+        return this;
+      }
+
+      /**
+       * Sets the full names of the EDM entity types with the reference data kept in memory by the
+       * {@link NavigationTargetCache}.
+       *
+       * @param cachedEntityTypes the full names of the cached entity types
+       * @return the builder instance
+       */
+      public Builder withCachedEntityTypes(Set<String> cachedEntityTypes) {
+        this.cachedEntityTypes =
+            cachedEntityTypes != null
+                ? new LinkedHashSet<>(cachedEntityTypes)
+                : new LinkedHashSet<>();
+        return this;
+      }
+
+      /**
+       * Sets the type mapping, the collection mapping and the root entity from the compiled model.
+       * The join keys of the navigation properties are taken from the compiled model instead of
+       * being resolved for each request.
+       *
+       * @param compiledEdmMongoModel the compiled model of the EDM
+       * @param rootEdmEntityTypeName the full name of the root EDM entity type
+       * @return the builder instance
+       * @throws IllegalArgumentException if the compiled model is null
+       */
+      public Builder withCompiledEdmMongoModel(
+          CompiledEdmMongoModel compiledEdmMongoModel, String rootEdmEntityTypeName) {
+        if (compiledEdmMongoModel == null) {
+          throw new IllegalArgumentException("The compiled model can not be null");
+        }
+        this.edmTypeMapping = compiledEdmMongoModel.getEdmTypeMapping();
+        this.edmTablesToMongoDBCollections =
+            compiledEdmMongoModel.getEdmTablesToMongoDBCollections();
+        this.rootEdmEntityTypeName = rootEdmEntityTypeName;
+        this.rootEdmMongoContextFacade =
+            compiledEdmMongoModel.getEdmMongoContextFacade(rootEdmEntityTypeName);
+        this.compiledEdmMongoModel = compiledEdmMongoModel;
+        return this;
+      }
+
       /**
        * Initializes the builder with values from an existing context.
        *
@@ -1700,6 +2393,13 @@ public class ODataExpandToMongoAggregationPipelineParser {
         this.maxAllowedNestedExpandLevel = defaultExpandParserContext.maxAllowedNestedExpandLevel;
         this.rootEdmEntityTypeName = defaultExpandParserContext.rootEdmEntityTypeName;
         this.rootEdmMongoContextFacade = defaultExpandParserContext.getRootEdmMongoContextFacade();
+        this.buildGraphLookUpTreeOnServer = defaultExpandParserContext.buildGraphLookUpTreeOnServer;
+        this.useBatchedClientSideJoin = defaultExpandParserContext.useBatchedClientSideJoin;
+        this.useArrayNativeNestedExpandMerge =
+            defaultExpandParserContext.useArrayNativeNestedExpandMerge;
+        this.useBatchedLevelsExpand = defaultExpandParserContext.useBatchedLevelsExpand;
+        this.cachedEntityTypes = new LinkedHashSet<>(defaultExpandParserContext.cachedEntityTypes);
+        this.compiledEdmMongoModel = defaultExpandParserContext.compiledEdmMongoModel;
         return this;
       }
 
@@ -1722,7 +2422,13 @@ public class ODataExpandToMongoAggregationPipelineParser {
             throwExceptionOnExpandLevelsExceeded,
             maxAllowedNestedExpandLevel,
             rootEdmEntityTypeName,
-            rootEdmMongoContextFacade);
+            rootEdmMongoContextFacade,
+            buildGraphLookUpTreeOnServer,
+            useBatchedClientSideJoin,
+            useArrayNativeNestedExpandMerge,
+            useBatchedLevelsExpand,
+            cachedEntityTypes,
+            compiledEdmMongoModel);
       }
     }
   }
@@ -7,6 +7,8 @@ public class DefaultMongoFilterVisitorCommonContext implements MongoFilterVisito
 
   private final LiteralToBsonConverter literalToBsonConverter;
   private final ODataToBsonConverter oDataToBsonConverter;
+  private final boolean startsWithTranslatedToRange;
+  private final boolean matchOptimizationEnabled;
 
   /**
    * Creates a new DefaultMongoFilterVisitorCommonContext.
@@ -16,8 +18,18 @@ public class DefaultMongoFilterVisitorCommonContext implements MongoFilterVisito
    */
   public DefaultMongoFilterVisitorCommonContext(
       LiteralToBsonConverter literalToBsonConverter, ODataToBsonConverter oDataToBsonConverter) {
+    this(literalToBsonConverter, oDataToBsonConverter, false, false);
+  }
+
+  private DefaultMongoFilterVisitorCommonContext(
+      LiteralToBsonConverter literalToBsonConverter,
+      ODataToBsonConverter oDataToBsonConverter,
+      boolean startsWithTranslatedToRange,
+      boolean matchOptimizationEnabled) {
     this.literalToBsonConverter = literalToBsonConverter;
     this.oDataToBsonConverter = oDataToBsonConverter;
+    this.startsWithTranslatedToRange = startsWithTranslatedToRange;
+    this.matchOptimizationEnabled = matchOptimizationEnabled;
   }
 
   @Override
@@ -30,18 +42,34 @@ public class DefaultMongoFilterVisitorCommonContext implements MongoFilterVisito
     return oDataToBsonConverter;
   }
 
+  @Override
+  public boolean isStartsWithTranslatedToRange() {
+    return startsWithTranslatedToRange;
+  }
+
+  @Override
+  public boolean isMatchOptimizationEnabled() {
+    return matchOptimizationEnabled;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
     if (o == null || getClass() != o.getClass()) return false;
     DefaultMongoFilterVisitorCommonContext that = (DefaultMongoFilterVisitorCommonContext) o;
-    return Objects.equals(literalToBsonConverter, that.literalToBsonConverter)
+    return startsWithTranslatedToRange == that.startsWithTranslatedToRange
+        && matchOptimizationEnabled == that.matchOptimizationEnabled
+        && Objects.equals(literalToBsonConverter, that.literalToBsonConverter)
         && Objects.equals(oDataToBsonConverter, that.oDataToBsonConverter);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(literalToBsonConverter, oDataToBsonConverter);
+    return Objects.hash(
+        literalToBsonConverter,
+        oDataToBsonConverter,
+        startsWithTranslatedToRange,
+        matchOptimizationEnabled);
   }
 
   @Override
@@ -51,6 +79,10 @@ public class DefaultMongoFilterVisitorCommonContext implements MongoFilterVisito
         + literalToBsonConverter
         + ", oDataToBsonConverter="
         + oDataToBsonConverter
+        + ", startsWithTranslatedToRange="
+        + startsWithTranslatedToRange
+        + ", matchOptimizationEnabled="
+        + matchOptimizationEnabled
         + '}';
   }
 
@@ -67,6 +99,8 @@ public class DefaultMongoFilterVisitorCommonContext implements MongoFilterVisito
   public static class Builder {
     private LiteralToBsonConverter literalToBsonConverter = new DefaultLiteralToBsonConverter();
     private ODataToBsonConverter oDataToBsonConverter = new DefaultODataToBsonConverter();
+    private boolean startsWithTranslatedToRange = false;
+    private boolean matchOptimizationEnabled = false;
 
     /**
      * Initializes the builder with values from an existing context.
@@ -78,6 +112,8 @@ public class DefaultMongoFilterVisitorCommonContext implements MongoFilterVisito
         DefaultMongoFilterVisitorCommonContext context) {
       this.literalToBsonConverter = context.literalToBsonConverter;
       this.oDataToBsonConverter = context.oDataToBsonConverter;
+      this.startsWithTranslatedToRange = context.startsWithTranslatedToRange;
+      this.matchOptimizationEnabled = context.matchOptimizationEnabled;
       return this;
     }
 
@@ -103,6 +139,30 @@ public class DefaultMongoFilterVisitorCommonContext implements MongoFilterVisito
       return this;
     }
 
+    /**
+     * Sets whether the "startswith" function should be translated to the range of strings.
+     *
+     * @param startsWithTranslatedToRange true to translate the prefix to the "$gte" and "$lt"
+     *     range, false to use the anchored regular expression
+     * @return the builder
+     */
+    public Builder withStartsWithTranslatedToRange(boolean startsWithTranslatedToRange) {
+      this.startsWithTranslatedToRange = startsWithTranslatedToRange;
+      return this;
+    }
+
+    /**
+     * Sets whether the query document of the $match stage should be optimized.
+     *
+     * @param matchOptimizationEnabled true to optimize the query document with the {@link
+     *     MatchQueryOptimizer}
+     * @return the builder
+     */
+    public Builder withMatchOptimizationEnabled(boolean matchOptimizationEnabled) {
+      this.matchOptimizationEnabled = matchOptimizationEnabled;
+      return this;
+    }
+
     /**
      * Builds the DefaultMongoFilterVisitorCommonContext.
      *
@@ -110,7 +170,10 @@ public class DefaultMongoFilterVisitorCommonContext implements MongoFilterVisito
      */
     public DefaultMongoFilterVisitorCommonContext build() {
       return new DefaultMongoFilterVisitorCommonContext(
-          literalToBsonConverter, oDataToBsonConverter);
+          literalToBsonConverter,
+          oDataToBsonConverter,
+          startsWithTranslatedToRange,
+          matchOptimizationEnabled);
     }
   }
 }
@@ -13,7 +13,9 @@ public interface FilterOperatorQueryObjectResult {
   Bson getQueryObject();
 
   /**
-   * Returns true if aggregation pipeline is required to execute the query.
+   * Returns true if aggregation pipeline is required to execute the query. The query object
+   * requires the aggregation pipeline when it contains the $expr operator, generated for example
+   * for the lambda expressions and functions that can not be translated to the query operators.
    *
    * @return true if aggregation pipeline is required
    */
@@ -0,0 +1,55 @@
+package com.github.starnowski.jamolingo.core.operators.filter;
+
+import java.util.List;
+
+/**
+ * Translated $filter expression with typed literal slots. The template is created once for the
+ * {@link ODataFilterShape} and can be bound with literals of any expression with the same shape,
+ * without parsing and translating the expression again.
+ */
+public interface FilterOperatorTemplate {
+
+  /**
+   * Returns the shape of the expression for which the template was created.
+   *
+   * @return the shape
+   */
+  ODataFilterShape getShape();
+
+  /**
+   * Returns true if the literals of the expression can be bound into the template. If the
+   * translation of the expression depends on the literal values in a way that can not be expressed
+   * by slots (for example the literal is a part of a regular expression), the template can only be
+   * bound with the same literals as the original expression.
+   *
+   * @return true if the template is parameterized
+   */
+  boolean isParameterized();
+
+  /**
+   * Returns the number of literal slots.
+   *
+   * @return the number of slots
+   */
+  int getSlotCount();
+
+  /**
+   * Binds the literals of the given shape into the template.
+   *
+   * @param shape the shape of the expression, it must have the same shape key as the template
+   * @return the result with the bound literals
+   * @throws IllegalArgumentException if the shape key does not match or the template is not
+   *     parameterized and the literals differ from the original ones
+   */
+  FilterOperatorResult bind(ODataFilterShape shape);
+
+  /**
+   * Binds the literals into the template.
+   *
+   * @param literals the literal texts in the order in which they appear in the expression
+   * @return the result with the bound literals
+   * @throws IllegalArgumentException if the number of literals does not match or the template is
+   *     not parameterized and the literals differ from the original ones
+   */
+  FilterOperatorResult bind(List<String> literals);
+}
@@ -140,4 +140,17 @@ public class Filters {
   public static Bson regex(String field, Pattern compile) {
     return new Document(field, new Document("$regex", compile.pattern()));
   }
+
+  /**
+   * Creates a filter that matches all documents where the value of the field is greater than or
+   * equal to the lower bound and less than the upper bound.
+   *
+   * @param field the field name
+   * @param lowerBound the inclusive lower bound
+   * @param upperBound the exclusive upper bound
+   * @return the filter
+   */
+  public static Bson range(String field, Object lowerBound, Object upperBound) {
+    return new Document(field, new Document("$gte", lowerBound).append("$lt", upperBound));
+  }
 }
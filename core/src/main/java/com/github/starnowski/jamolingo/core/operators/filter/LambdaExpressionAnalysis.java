@@ -0,0 +1,246 @@
+package com.github.starnowski.jamolingo.core.operators.filter;
+
+import java.util.List;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceCount;
+import org.apache.olingo.server.api.uri.UriResourceLambdaAll;
+import org.apache.olingo.server.api.uri.UriResourceLambdaAny;
+import org.apache.olingo.server.api.uri.UriResourceLambdaVariable;
+import org.apache.olingo.server.api.uri.queryoption.expression.Binary;
+import org.apache.olingo.server.api.uri.queryoption.expression.BinaryOperatorKind;
+import org.apache.olingo.server.api.uri.queryoption.expression.Expression;
+import org.apache.olingo.server.api.uri.queryoption.expression.Literal;
+import org.apache.olingo.server.api.uri.queryoption.expression.Member;
+import org.apache.olingo.server.api.uri.queryoption.expression.Method;
+import org.apache.olingo.server.api.uri.queryoption.expression.Unary;
+
+/**
+ * Result of the analysis of the lambda (any or all) expression, done before the expression is
+ * translated by the {@link MongoFilterVisitor}. The analysis decides up front whether the lambda
+ * has to be translated to the $expr operator or to multiple $elemMatch operators, so the visitor
+ * does not have to translate the expression in the plain query mode first and repeat the
+ * translation after it fails.
+ *
+ * <p>The analysis reports only the cases for which the translation in the plain query mode always
+ * fails. For other cases the visitor still falls back to the other modes when the plain query mode
+ * is not enough.
+ */
+final class LambdaExpressionAnalysis {
+
+  private final boolean exprRequired;
+  private final boolean andOperatorPresent;
+  private final boolean orOperatorPresent;
+  private final boolean addOperatorPresent;
+
+  private LambdaExpressionAnalysis(
+      boolean exprRequired,
+      boolean andOperatorPresent,
+      boolean orOperatorPresent,
+      boolean addOperatorPresent) {
+    this.exprRequired = exprRequired;
+    this.andOperatorPresent = andOperatorPresent;
+    this.orOperatorPresent = orOperatorPresent;
+    this.addOperatorPresent = addOperatorPresent;
+  }
+
+  /**
+   * Analyzes the expression of the lambda.
+   *
+   * @param lambdaVariable the lambda variable
+   * @param expression the expression of the lambda
+   * @param allLambda true for the all lambda, false for the any lambda
+   * @return the analysis result
+   */
+  static LambdaExpressionAnalysis analyze(
+      String lambdaVariable, Expression expression, boolean allLambda) {
+    Analyzer analyzer = new Analyzer(lambdaVariable, allLambda, true);
+    analyzer.analyze(expression);
+    return new LambdaExpressionAnalysis(
+        analyzer.exprRequired,
+        analyzer.andOperatorPresent,
+        analyzer.orOperatorPresent,
+        analyzer.addOperatorPresent);
+  }
+
+  /**
+   * Returns true if the lambda has to be translated to the $expr operator.
+   *
+   * @return true if the $expr operator is required
+   */
+  boolean isExprRequired() {
+    return exprRequired;
+  }
+
+  /**
+   * Returns true if the expression of the lambda, excluding nested lambdas, contains the and
+   * operator.
+   *
+   * @return true if the and operator is present
+   */
+  boolean isAndOperatorPresent() {
+    return andOperatorPresent;
+  }
+
+  /**
+   * Returns true if the expression of the lambda, excluding nested lambdas, contains the or
+   * operator.
+   *
+   * @return true if the or operator is present
+   */
+  boolean isOrOperatorPresent() {
+    return orOperatorPresent;
+  }
+
+  /**
+   * Returns true if the expression of the lambda, excluding nested lambdas, contains the add
+   * operator.
+   *
+   * @return true if the add operator is present
+   */
+  boolean isAddOperatorPresent() {
+    return addOperatorPresent;
+  }
+
+  @Override
+  public String toString() {
+    return "LambdaExpressionAnalysis{"
+        + "exprRequired="
+        + exprRequired
+        + ", andOperatorPresent="
+        + andOperatorPresent
+        + ", orOperatorPresent="
+        + orOperatorPresent
+        + ", addOperatorPresent="
+        + addOperatorPresent
+        + '}';
+  }
+
+  private static final class Analyzer {
+
+    private final String lambdaVariable;
+    private final boolean allLambda;
+    private final boolean collectOperators;
+    private boolean exprRequired;
+    private boolean andOperatorPresent;
+    private boolean orOperatorPresent;
+    private boolean addOperatorPresent;
+
+    private Analyzer(String lambdaVariable, boolean allLambda, boolean collectOperators) {
+      this.lambdaVariable = lambdaVariable;
+      this.allLambda = allLambda;
+      this.collectOperators = collectOperators;
+    }
+
+    private void analyze(Expression expression) {
+      if (expression == null) {
+        return;
+      }
+      if (expression instanceof Binary binary) {
+        analyzeBinary(binary);
+      } else if (expression instanceof Unary unary) {
+        analyze(unary.getOperand());
+      } else if (expression instanceof Method method) {
+        analyzeMethod(method);
+      } else if (expression instanceof Member member) {
+        analyzeMember(member);
+      }
+    }
+
+    private void analyzeBinary(Binary binary) {
+      BinaryOperatorKind operator = binary.getOperator();
+      switch (operator) {
+        case AND:
+          andOperatorPresent |= collectOperators;
+          break;
+        case OR:
+          orOperatorPresent |= collectOperators;
+          // The all lambda with the or operator is always translated to the $expr operator
+          exprRequired |= allLambda;
+          break;
+        case ADD:
+          addOperatorPresent |= collectOperators;
+          exprRequired |= !isFieldReference(binary.getLeftOperand());
+          break;
+        case NE:
+        case GT:
+        case GE:
+        case LT:
+        case LE:
+          // The comparison requires the field on the left side
+          exprRequired |= !isFieldReference(binary.getLeftOperand());
+          break;
+        default:
+          break;
+      }
+      analyze(binary.getLeftOperand());
+      analyze(binary.getRightOperand());
+      if (binary.getExpressions() != null) {
+        binary.getExpressions().forEach(this::analyze);
+      }
+    }
+
+    private void analyzeMethod(Method method) {
+      List<Expression> parameters = method.getParameters();
+      if (parameters != null && parameters.size() == 1) {
+        ODataMongoFunctionMapper.MappedFunction mappedFunction =
+            ODataMongoFunctionMapper.toOneArgumentMongoOperator(method.getMethod().toString());
+        exprRequired |= mappedFunction != null && !mappedFunction.isResultBoolean();
+      } else if (parameters != null && parameters.size() == 2) {
+        // The regular expression can be used only for the field and the literal value
+        exprRequired |=
+            !isFieldReference(parameters.get(0)) || !(parameters.get(1) instanceof Literal);
+      }
+      if (parameters != null) {
+        parameters.forEach(this::analyze);
+      }
+    }
+
+    private void analyzeMember(Member member) {
+      List<UriResource> parts = member.getResourcePath().getUriResourceParts();
+      UriResource first = parts.get(0);
+      UriResource last = parts.get(parts.size() - 1);
+      if (!(first instanceof UriResourceLambdaVariable variable)) {
+        // The lambda for the root path is translated independently
+        exprRequired |= last instanceof UriResourceCount;
+        return;
+      }
+      if (parts.size() == 1) {
+        return;
+      }
+      if (!variable.getVariableName().equals(lambdaVariable)) {
+        exprRequired = true;
+        return;
+      }
+      if (last instanceof UriResourceLambdaAny any) {
+        if (any.getLambdaVariable() == null) {
+          exprRequired = true;
+          return;
+        }
+        analyzeNestedLambda(any.getLambdaVariable(), any.getExpression(), false);
+      } else if (last instanceof UriResourceLambdaAll all) {
+        analyzeNestedLambda(all.getLambdaVariable(), all.getExpression(), true);
+      }
+    }
+
+    private void analyzeNestedLambda(String variable, Expression expression, boolean all) {
+      /*
+       * The nested lambda for the lambda variable path passes the $expr requirement to the parent
+       * lambda, but its operators are translated in its own element match context.
+       */
+      Analyzer nested = new Analyzer(variable, all, false);
+      nested.analyze(expression);
+      exprRequired |= nested.exprRequired;
+    }
+
+    private static boolean isFieldReference(Expression expression) {
+      if (!(expression instanceof Member member)) {
+        return false;
+      }
+      List<UriResource> parts = member.getResourcePath().getUriResourceParts();
+      UriResource last = parts.get(parts.size() - 1);
+      return !(last instanceof UriResourceCount
+          || last instanceof UriResourceLambdaAny
+          || last instanceof UriResourceLambdaAll);
+    }
+  }
+}
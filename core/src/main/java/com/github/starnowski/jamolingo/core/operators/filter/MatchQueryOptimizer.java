@@ -0,0 +1,203 @@
+package com.github.starnowski.jamolingo.core.operators.filter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+/**
+ * Optimizer of the query document generated for the $match stage. The optimizer rewrites the
+ * logical operators "$and" and "$or" to the smaller, canonical form:
+ *
+ * <ul>
+ *   <li>flattens the nested "$and" and "$or" chains
+ *   <li>folds the constant true and false branches
+ *   <li>removes the duplicated clauses
+ *   <li>merges the range predicates ("$gt", "$gte", "$lt", "$lte") for the same field combined with
+ *       "$and" into one document
+ *   <li>rewrites the equality predicates for the same field combined with "$or" to the "$in"
+ *       operator
+ * </ul>
+ *
+ * <p>The optimizer does not modify the passed document and does not descend into other operators,
+ * for example "$not", "$elemMatch" or "$expr".
+ */
+public class MatchQueryOptimizer {
+
+  private static final String AND = "$and";
+  private static final String OR = "$or";
+  private static final String IN = "$in";
+  private static final Set<String> RANGE_OPERATORS = Set.of("$gt", "$gte", "$lt", "$lte");
+  private static final Object TRUE = new Object();
+  private static final Object FALSE = new Object();
+
+  /**
+   * Optimizes the query document.
+   *
+   * @param query the query document
+   * @return the optimized query document, the empty document if the query matches all documents or
+   *     {@code {"$expr": false}} if the query matches no document
+   */
+  public Bson optimize(Bson query) {
+    Object result = optimizeNode(query);
+    if (result == TRUE) {
+      return new Document();
+    }
+    if (result == FALSE) {
+      return new Document("$expr", false);
+    }
+    return (Bson) result;
+  }
+
+  private Object optimizeNode(Object node) {
+    if (isConstant(node, true)) {
+      return TRUE;
+    }
+    if (isConstant(node, false)) {
+      return FALSE;
+    }
+    String operator = logicalOperator(node);
+    if (operator == null) {
+      return node;
+    }
+    boolean and = AND.equals(operator);
+    Object absorbing = and ? FALSE : TRUE;
+    Object neutral = and ? TRUE : FALSE;
+    Set<Object> clauses = new LinkedHashSet<>();
+    for (Object child : (List<?>) ((Document) node).get(operator)) {
+      Object optimizedChild = optimizeNode(child);
+      if (optimizedChild == absorbing) {
+        return absorbing;
+      }
+      if (optimizedChild == neutral) {
+        continue;
+      }
+      if (operator.equals(logicalOperator(optimizedChild))) {
+        clauses.addAll((List<?>) ((Document) optimizedChild).get(operator));
+      } else {
+        clauses.add(optimizedChild);
+      }
+    }
+    List<Object> result = and ? mergeRanges(clauses) : mergeEqualities(clauses);
+    if (result.isEmpty()) {
+      return neutral;
+    }
+    if (result.size() == 1) {
+      return result.get(0);
+    }
+    return new Document(operator, result);
+  }
+
+  private static List<Object> mergeRanges(Set<Object> clauses) {
+    Map<Object, Object> merged = new LinkedHashMap<>();
+    for (Object clause : clauses) {
+      String field = singleField(clause);
+      Document range = field == null ? null : rangeOperators(((Document) clause).get(field));
+      if (range != null && merged.get(field) instanceof Document) {
+        Document existing = (Document) ((Document) merged.get(field)).get(field);
+        if (existing.keySet().stream().noneMatch(range::containsKey)) {
+          Document union = new Document(existing);
+          union.putAll(range);
+          merged.put(field, new Document(field, union));
+          continue;
+        }
+      }
+      if (range != null && !merged.containsKey(field)) {
+        merged.put(field, clause);
+      } else {
+        merged.put(new Object(), clause);
+      }
+    }
+    return new ArrayList<>(merged.values());
+  }
+
+  private static List<Object> mergeEqualities(Set<Object> clauses) {
+    Map<String, Set<Object>> values = new LinkedHashMap<>();
+    for (Object clause : clauses) {
+      String field = singleField(clause);
+      if (field != null && equalityValues(((Document) clause).get(field)) != null) {
+        values
+            .computeIfAbsent(field, key -> new LinkedHashSet<>())
+            .addAll(equalityValues(((Document) clause).get(field)));
+      }
+    }
+    List<Object> result = new ArrayList<>();
+    Set<String> addedFields = new LinkedHashSet<>();
+    for (Object clause : clauses) {
+      String field = singleField(clause);
+      if (field == null || equalityValues(((Document) clause).get(field)) == null) {
+        result.add(clause);
+      } else if (addedFields.add(field)) {
+        result.add(
+            values.get(field).size() == 1
+                ? clause
+                : new Document(field, new Document(IN, new ArrayList<>(values.get(field)))));
+      }
+    }
+    return result;
+  }
+
+  private static List<?> equalityValues(Object value) {
+    if (value instanceof Document) {
+      Document document = (Document) value;
+      if (document.size() == 1 && document.get(IN) instanceof List) {
+        return (List<?>) document.get(IN);
+      }
+      if (document.size() == 1 && document.containsKey("$eq")) {
+        return List.of(document.get("$eq"));
+      }
+      if (document.keySet().stream().anyMatch(key -> key.startsWith("$"))) {
+        return null;
+      }
+    }
+    return value instanceof Bson && !(value instanceof Document) ? null : listOf(value);
+  }
+
+  private static List<Object> listOf(Object value) {
+    List<Object> list = new ArrayList<>(1);
+    list.add(value);
+    return list;
+  }
+
+  private static Document rangeOperators(Object value) {
+    if (!(value instanceof Document) || ((Document) value).isEmpty()) {
+      return null;
+    }
+    Document document = (Document) value;
+    return RANGE_OPERATORS.containsAll(document.keySet()) ? document : null;
+  }
+
+  private static String singleField(Object clause) {
+    if (!(clause instanceof Document) || ((Document) clause).size() != 1) {
+      return null;
+    }
+    String key = ((Document) clause).keySet().iterator().next();
+    return key.startsWith("$") ? null : key;
+  }
+
+  private static String logicalOperator(Object node) {
+    if (!(node instanceof Document) || ((Document) node).size() != 1) {
+      return null;
+    }
+    Document document = (Document) node;
+    if (document.get(AND) instanceof List) {
+      return AND;
+    }
+    if (document.get(OR) instanceof List) {
+      return OR;
+    }
+    return null;
+  }
+
+  private static boolean isConstant(Object node, boolean constant) {
+    if (!(node instanceof Document) || ((Document) node).size() != 1) {
+      return false;
+    }
+    Object value = ((Document) node).get(MongoFilterVisitor.CUSTOM_LITERAL_VALUE_PROPERTY);
+    return Boolean.valueOf(constant).equals(value) || String.valueOf(constant).equals(value);
+  }
+}
@@ -32,6 +32,8 @@ public class MongoFilterVisitor implements ExpressionVisitor<Bson> {
       "$odata.member.mongo.field.reference";
   public static final String ODATA_MEMBER_MONGO_FIELD_FULL_PATH =
       "$odata.member.mongo.field.full.path";
+  private static final StringFunctionPatternCache STRING_FUNCTION_PATTERNS =
+      new StringFunctionPatternCache();
   private final EdmPropertyMongoPathResolver edmPropertyMongoPathResolver;
   private final MongoFilterVisitorContext context;
   private final MongoFilterVisitorCommonContext mongoFilterVisitorCommonContext;
@@ -502,6 +504,34 @@ public class MongoFilterVisitor implements ExpressionVisitor<Bson> {
               : visitor.prepareElementMatchDocumentForAllLambda(
                   innerObject, propertyContext.getMongoField(), false);
         };
+    // Choosing the translation mode up front instead of failing in the other modes first
+    LambdaExpressionAnalysis analysis =
+        LambdaExpressionAnalysis.analyze(all.getLambdaVariable(), all.getExpression(), true);
+    if (!expressionOperantRequiredExceptionThrown && analysis.isExprRequired()) {
+      if (rethrowExprRequireException) {
+        throw new ExpressionOperantRequiredException(
+            "ExpressionOperantRequiredException requires to rethrown for the ALL lambda");
+      }
+      expressionOperantRequiredExceptionThrown = true;
+      // The add operator requires the element match context also in the $expr mode
+      function =
+          analysis.isAddOperatorPresent()
+              ? prepareElementMatchFunctionForAllLambda(
+                  member, all, propertyContext, true, false, nestedExpression)
+              : prepareExprFunctionForAllLambda(member, all, propertyContext, nestedExpression);
+    } else if (!expressionOperantRequiredExceptionThrown && analysis.isAndOperatorPresent()) {
+      multipleElementMatchOperantRequiredExceptionThrown = true;
+      function =
+          prepareMultipleElementMatchFunctionForAllLambda(
+              member, all, propertyContext, false, nestedExpression);
+    } else if (expressionOperantRequiredExceptionThrown
+        && analysis.isOrOperatorPresent()
+        && !analysis.isAndOperatorPresent()) {
+      multipleElementMatchOperantRequiredExceptionThrown = true;
+      function =
+          prepareMultipleElementMatchFunctionForAllLambda(
+              member, all, propertyContext, true, nestedExpression);
+    }
     while (!allVariantTested) {
       try {
         allVariantTested =
@@ -514,112 +544,138 @@ public class MongoFilterVisitor implements ExpressionVisitor<Bson> {
               "ExpressionOperantRequiredException requires to rethrown for the ALL lambda", ex);
         }
         expressionOperantRequiredExceptionThrown = true;
-        function =
-            () -> {
-              MongoFilterVisitor innerMongoFilterVisitor =
-                  new MongoFilterVisitor(
-                      edmPropertyMongoPathResolver,
-                      MongoFilterVisitorContext.builder()
-                          .lambdaVariableAliases(
-                              prepareMapOfLambadaVariableAliases(
-                                  all.getLambdaVariable(),
-                                  prepareMemberDocument(propertyContext.getMongoField(), member),
-                                  LambdaType.ALL,
-                                  null))
-                          .isLambdaAllContext(true)
-                          .isExprMode(true)
-                          .build(),
-                      this.mongoFilterVisitorCommonContext);
-              Bson innerObject =
-                  unwrapWrapperIfNeeded(
-                      innerMongoFilterVisitor.visitLambdaExpression(
-                          "ALL", all.getLambdaVariable(), all.getExpression()));
-              this.addUsedMongoDBProperties(innerMongoFilterVisitor.getUsedMongoDBProperties());
-              return prepareExprDocumentForAllLambdaWithExpr(
-                  innerObject,
-                  propertyContext.getMongoField(),
-                  all.getLambdaVariable(),
-                  nestedExpression);
-            };
+        function = prepareExprFunctionForAllLambda(member, all, propertyContext, nestedExpression);
       } catch (ElementMatchOperantRequiredException ex) {
-        MongoFilterVisitor innerMongoFilterVisitor =
-            new MongoFilterVisitor(
-                edmPropertyMongoPathResolver,
-                MongoFilterVisitorContext.builder()
-                    .lambdaVariableAliases(
-                        prepareMapOfLambadaVariableAliases(
-                            all.getLambdaVariable(),
-                            prepareMemberDocument(propertyContext.getMongoField(), member),
-                            LambdaType.ALL,
-                            new ElementMatchContext(
-                                propertyContext.getMongoField(),
-                                multipleElementMatchOperantRequiredExceptionThrown)))
-                    .isLambdaAllContext(true)
-                    .isExprMode(expressionOperantRequiredExceptionThrown)
-                    .elementMatchContext(
-                        new ElementMatchContext(
-                            propertyContext.getMongoField(),
-                            multipleElementMatchOperantRequiredExceptionThrown))
-                    .build(),
-                this.mongoFilterVisitorCommonContext);
         function =
-            () -> {
-              Bson innerObject =
-                  unwrapWrapperIfNeeded(
-                      innerMongoFilterVisitor.visitLambdaExpression(
-                          "ALL", all.getLambdaVariable(), all.getExpression()));
-              this.addUsedMongoDBProperties(innerMongoFilterVisitor.getUsedMongoDBProperties());
-              return innerMongoFilterVisitor.context.isExprMode()
-                  ? prepareExprDocumentForAllLambdaWithExpr(
-                      innerObject,
-                      propertyContext.getMongoField(),
-                      all.getLambdaVariable(),
-                      nestedExpression)
-                  : prepareElementMatchDocumentForAllLambda(
-                      innerObject, propertyContext.getMongoField(), false);
-            };
+            prepareElementMatchFunctionForAllLambda(
+                member,
+                all,
+                propertyContext,
+                expressionOperantRequiredExceptionThrown,
+                multipleElementMatchOperantRequiredExceptionThrown,
+                nestedExpression);
       } catch (MultipleElementMatchOperantRequiredException ex) {
         multipleElementMatchOperantRequiredExceptionThrown = true;
-        MongoFilterVisitor innerMongoFilterVisitor =
-            new MongoFilterVisitor(
-                edmPropertyMongoPathResolver,
-                MongoFilterVisitorContext.builder()
-                    .lambdaVariableAliases(
-                        prepareMapOfLambadaVariableAliases(
-                            all.getLambdaVariable(),
-                            prepareMemberDocument(propertyContext.getMongoField(), member),
-                            LambdaType.ALL,
-                            new ElementMatchContext(
-                                propertyContext.getMongoField(),
-                                multipleElementMatchOperantRequiredExceptionThrown)))
-                    .isLambdaAllContext(true)
-                    .isExprMode(expressionOperantRequiredExceptionThrown)
-                    .elementMatchContext(
-                        new ElementMatchContext(
-                            propertyContext.getMongoField(),
-                            multipleElementMatchOperantRequiredExceptionThrown))
-                    .build(),
-                this.mongoFilterVisitorCommonContext);
         function =
-            () -> {
-              Bson innerObject =
-                  unwrapWrapperIfNeeded(
-                      innerMongoFilterVisitor.visitLambdaExpression(
-                          "ALL", all.getLambdaVariable(), all.getExpression()));
-              this.addUsedMongoDBProperties(innerMongoFilterVisitor.getUsedMongoDBProperties());
-              return innerMongoFilterVisitor.context.isExprMode()
-                  ? innerMongoFilterVisitor.prepareExprDocumentForAllLambdaWithExpr(
-                      innerObject,
-                      propertyContext.getMongoField(),
-                      all.getLambdaVariable(),
-                      nestedExpression)
-                  : innerObject;
-            };
+            prepareMultipleElementMatchFunctionForAllLambda(
+                member,
+                all,
+                propertyContext,
+                expressionOperantRequiredExceptionThrown,
+                nestedExpression);
       }
     }
     return null;
   }
 
+  private Supplier<Bson> prepareExprFunctionForAllLambda(
+      Member member,
+      UriResourceLambdaAll all,
+      PropertyContext propertyContext,
+      boolean nestedExpression) {
+    return () -> {
+      MongoFilterVisitor innerMongoFilterVisitor =
+          new MongoFilterVisitor(
+              edmPropertyMongoPathResolver,
+              MongoFilterVisitorContext.builder()
+                  .lambdaVariableAliases(
+                      prepareMapOfLambadaVariableAliases(
+                          all.getLambdaVariable(),
+                          prepareMemberDocument(propertyContext.getMongoField(), member),
+                          LambdaType.ALL,
+                          null))
+                  .isLambdaAllContext(true)
+                  .isExprMode(true)
+                  .build(),
+              this.mongoFilterVisitorCommonContext);
+      Bson innerObject =
+          unwrapWrapperIfNeeded(
+              innerMongoFilterVisitor.visitLambdaExpression(
+                  "ALL", all.getLambdaVariable(), all.getExpression()));
+      this.addUsedMongoDBProperties(innerMongoFilterVisitor.getUsedMongoDBProperties());
+      return prepareExprDocumentForAllLambdaWithExpr(
+          innerObject, propertyContext.getMongoField(), all.getLambdaVariable(), nestedExpression);
+    };
+  }
+
+  private Supplier<Bson> prepareElementMatchFunctionForAllLambda(
+      Member member,
+      UriResourceLambdaAll all,
+      PropertyContext propertyContext,
+      boolean exprMode,
+      boolean multipleElemMatch,
+      boolean nestedExpression) {
+    MongoFilterVisitor innerMongoFilterVisitor =
+        new MongoFilterVisitor(
+            edmPropertyMongoPathResolver,
+            MongoFilterVisitorContext.builder()
+                .lambdaVariableAliases(
+                    prepareMapOfLambadaVariableAliases(
+                        all.getLambdaVariable(),
+                        prepareMemberDocument(propertyContext.getMongoField(), member),
+                        LambdaType.ALL,
+                        new ElementMatchContext(
+                            propertyContext.getMongoField(), multipleElemMatch)))
+                .isLambdaAllContext(true)
+                .isExprMode(exprMode)
+                .elementMatchContext(
+                    new ElementMatchContext(propertyContext.getMongoField(), multipleElemMatch))
+                .build(),
+            this.mongoFilterVisitorCommonContext);
+    return () -> {
+      Bson innerObject =
+          unwrapWrapperIfNeeded(
+              innerMongoFilterVisitor.visitLambdaExpression(
+                  "ALL", all.getLambdaVariable(), all.getExpression()));
+      this.addUsedMongoDBProperties(innerMongoFilterVisitor.getUsedMongoDBProperties());
+      return innerMongoFilterVisitor.context.isExprMode()
+          ? prepareExprDocumentForAllLambdaWithExpr(
+              innerObject,
+              propertyContext.getMongoField(),
+              all.getLambdaVariable(),
+              nestedExpression)
+          : prepareElementMatchDocumentForAllLambda(
+              innerObject, propertyContext.getMongoField(), false);
+    };
+  }
+
+  private Supplier<Bson> prepareMultipleElementMatchFunctionForAllLambda(
+      Member member,
+      UriResourceLambdaAll all,
+      PropertyContext propertyContext,
+      boolean exprMode,
+      boolean nestedExpression) {
+    MongoFilterVisitor innerMongoFilterVisitor =
+        new MongoFilterVisitor(
+            edmPropertyMongoPathResolver,
+            MongoFilterVisitorContext.builder()
+                .lambdaVariableAliases(
+                    prepareMapOfLambadaVariableAliases(
+                        all.getLambdaVariable(),
+                        prepareMemberDocument(propertyContext.getMongoField(), member),
+                        LambdaType.ALL,
+                        new ElementMatchContext(propertyContext.getMongoField(), true)))
+                .isLambdaAllContext(true)
+                .isExprMode(exprMode)
+                .elementMatchContext(new ElementMatchContext(propertyContext.getMongoField(), true))
+                .build(),
+            this.mongoFilterVisitorCommonContext);
+    return () -> {
+      Bson innerObject =
+          unwrapWrapperIfNeeded(
+              innerMongoFilterVisitor.visitLambdaExpression(
+                  "ALL", all.getLambdaVariable(), all.getExpression()));
+      this.addUsedMongoDBProperties(innerMongoFilterVisitor.getUsedMongoDBProperties());
+      return innerMongoFilterVisitor.context.isExprMode()
+          ? innerMongoFilterVisitor.prepareExprDocumentForAllLambdaWithExpr(
+              innerObject,
+              propertyContext.getMongoField(),
+              all.getLambdaVariable(),
+              nestedExpression)
+          : innerObject;
+    };
+  }
+
   private Bson getBsonForUriResourceLambdaAll(
       Member member, UriResourceLambdaAll all, PropertyContext propertyContext) {
     return getBsonForUriResourceLambdaAll(member, all, propertyContext, false, false);
@@ -681,6 +737,35 @@ public class MongoFilterVisitor implements ExpressionVisitor<Bson> {
         };
     boolean multipleElementMatchOperantRequiredExceptionThrown = false;
     boolean allVariantTested = false;
+    if (any.getLambdaVariable() == null && !this.context.isExprMode()) {
+      // The any() lambda without expression can be only translated to the $expr operator
+      if (rethrowExprRequireException) {
+        throw new ExpressionOperantRequiredException(
+            "ExpressionOperantRequiredException requires to rethrown for the ALL lambda");
+      }
+      this.addUsedMongoDBProperty(propertyContext.getMongoFullPath());
+      return prepareExprDocumentForAnyLambdaThatValidatesIfCollectionIsNotEmpty(
+          propertyContext.getMongoField(), nestedExpression, parentLambdaVariable);
+    } else if (any.getLambdaVariable() != null) {
+      // Choosing the translation mode up front instead of failing in the other modes first
+      LambdaExpressionAnalysis analysis =
+          LambdaExpressionAnalysis.analyze(any.getLambdaVariable(), any.getExpression(), false);
+      if (!expressionOperantRequiredExceptionThrown && analysis.isExprRequired()) {
+        if (rethrowExprRequireException) {
+          throw new ExpressionOperantRequiredException(
+              "ExpressionOperantRequiredException requires to rethrown for the ALL lambda");
+        }
+        expressionOperantRequiredExceptionThrown = true;
+        function =
+            prepareExprFunctionForAnyLambda(
+                member, any, propertyContext, nestedExpression, parentLambdaVariable);
+      } else if (analysis.isOrOperatorPresent()) {
+        multipleElementMatchOperantRequiredExceptionThrown = true;
+        function =
+            prepareMultipleElementMatchFunctionForAnyLambda(
+                member, any, propertyContext, expressionOperantRequiredExceptionThrown);
+      }
+    }
     while (!allVariantTested) {
       try {
         allVariantTested =
@@ -700,97 +785,128 @@ public class MongoFilterVisitor implements ExpressionVisitor<Bson> {
               propertyContext.getMongoField(), nestedExpression, parentLambdaVariable);
         }
         function =
-            () -> {
-              MongoFilterVisitor innerMongoFilterVisitor =
-                  new MongoFilterVisitor(
-                      edmPropertyMongoPathResolver,
-                      MongoFilterVisitorContext.builder()
-                          .lambdaVariableAliases(
-                              prepareMapOfLambadaVariableAliases(
-                                  any.getLambdaVariable(),
-                                  prepareMemberDocument(propertyContext.getMongoField(), member),
-                                  LambdaType.ANY,
-                                  null))
-                          .isLambdaAnyContext(true)
-                          .isExprMode(true)
-                          .build(),
-                      this.mongoFilterVisitorCommonContext);
-              Bson innerObject =
-                  innerMongoFilterVisitor.visitLambdaExpression(
-                      "ANY", any.getLambdaVariable(), any.getExpression());
-              this.addUsedMongoDBProperties(innerMongoFilterVisitor.getUsedMongoDBProperties());
-              return innerMongoFilterVisitor.prepareExprDocumentForAnyLambdaWithExpr(
-                  innerObject,
-                  propertyContext.getMongoField(),
-                  any.getLambdaVariable(),
-                  nestedExpression,
-                  parentLambdaVariable);
-            };
+            prepareExprFunctionForAnyLambda(
+                member, any, propertyContext, nestedExpression, parentLambdaVariable);
       } catch (ElementMatchOperantRequiredException ex) {
         elementMatchOperantRequiredExceptionThrown = true;
-        MongoFilterVisitor innerMongoFilterVisitor =
-            new MongoFilterVisitor(
-                edmPropertyMongoPathResolver,
-                MongoFilterVisitorContext.builder()
-                    .lambdaVariableAliases(
-                        prepareMapOfLambadaVariableAliases(
-                            any.getLambdaVariable(),
-                            prepareMemberDocument(propertyContext.getMongoField(), member),
-                            LambdaType.ANY,
-                            new ElementMatchContext(propertyContext.getMongoField(), false)))
-                    .isLambdaAnyContext(true)
-                    .isExprMode(expressionOperantRequiredExceptionThrown)
-                    .elementMatchContext(
-                        new ElementMatchContext(propertyContext.getMongoField(), false))
-                    .build(),
-                this.mongoFilterVisitorCommonContext);
         function =
-            () -> {
-              Bson innerObject =
-                  innerMongoFilterVisitor.visitLambdaExpression(
-                      "ANY", any.getLambdaVariable(), any.getExpression());
-              this.addUsedMongoDBProperties(innerMongoFilterVisitor.getUsedMongoDBProperties());
-              return innerMongoFilterVisitor.context.isExprMode()
-                  ? innerMongoFilterVisitor.prepareExprDocumentForAnyLambdaWithExpr(
-                      innerObject,
-                      propertyContext.getMongoField(),
-                      any.getLambdaVariable(),
-                      nestedExpression,
-                      parentLambdaVariable)
-                  : innerMongoFilterVisitor.prepareElementMatchDocumentForAnyLambda(
-                      innerObject, propertyContext.getMongoField());
-            };
+            prepareElementMatchFunctionForAnyLambda(
+                member,
+                any,
+                propertyContext,
+                expressionOperantRequiredExceptionThrown,
+                nestedExpression,
+                parentLambdaVariable);
       } catch (MultipleElementMatchOperantRequiredException ex) {
         multipleElementMatchOperantRequiredExceptionThrown = true;
-        MongoFilterVisitor innerMongoFilterVisitor =
-            new MongoFilterVisitor(
-                edmPropertyMongoPathResolver,
-                MongoFilterVisitorContext.builder()
-                    .lambdaVariableAliases(
-                        prepareMapOfLambadaVariableAliases(
-                            any.getLambdaVariable(),
-                            prepareMemberDocument(propertyContext.getMongoField(), member),
-                            LambdaType.ANY,
-                            new ElementMatchContext(propertyContext.getMongoField(), true)))
-                    .isLambdaAnyContext(true)
-                    .isExprMode(expressionOperantRequiredExceptionThrown)
-                    .elementMatchContext(
-                        new ElementMatchContext(propertyContext.getMongoField(), true))
-                    .build(),
-                this.mongoFilterVisitorCommonContext);
         function =
-            () -> {
-              Bson innerObject =
-                  innerMongoFilterVisitor.visitLambdaExpression(
-                      "ANY", any.getLambdaVariable(), any.getExpression());
-              this.addUsedMongoDBProperties(innerMongoFilterVisitor.getUsedMongoDBProperties());
-              return innerObject;
-            };
+            prepareMultipleElementMatchFunctionForAnyLambda(
+                member, any, propertyContext, expressionOperantRequiredExceptionThrown);
       }
     }
     return null;
   }
 
+  private Supplier<Bson> prepareExprFunctionForAnyLambda(
+      Member member,
+      UriResourceLambdaAny any,
+      PropertyContext propertyContext,
+      boolean nestedExpression,
+      String parentLambdaVariable) {
+    return () -> {
+      MongoFilterVisitor innerMongoFilterVisitor =
+          new MongoFilterVisitor(
+              edmPropertyMongoPathResolver,
+              MongoFilterVisitorContext.builder()
+                  .lambdaVariableAliases(
+                      prepareMapOfLambadaVariableAliases(
+                          any.getLambdaVariable(),
+                          prepareMemberDocument(propertyContext.getMongoField(), member),
+                          LambdaType.ANY,
+                          null))
+                  .isLambdaAnyContext(true)
+                  .isExprMode(true)
+                  .build(),
+              this.mongoFilterVisitorCommonContext);
+      Bson innerObject =
+          innerMongoFilterVisitor.visitLambdaExpression(
+              "ANY", any.getLambdaVariable(), any.getExpression());
+      this.addUsedMongoDBProperties(innerMongoFilterVisitor.getUsedMongoDBProperties());
+      return innerMongoFilterVisitor.prepareExprDocumentForAnyLambdaWithExpr(
+          innerObject,
+          propertyContext.getMongoField(),
+          any.getLambdaVariable(),
+          nestedExpression,
+          parentLambdaVariable);
+    };
+  }
+
+  private Supplier<Bson> prepareElementMatchFunctionForAnyLambda(
+      Member member,
+      UriResourceLambdaAny any,
+      PropertyContext propertyContext,
+      boolean exprMode,
+      boolean nestedExpression,
+      String parentLambdaVariable) {
+    MongoFilterVisitor innerMongoFilterVisitor =
+        new MongoFilterVisitor(
+            edmPropertyMongoPathResolver,
+            MongoFilterVisitorContext.builder()
+                .lambdaVariableAliases(
+                    prepareMapOfLambadaVariableAliases(
+                        any.getLambdaVariable(),
+                        prepareMemberDocument(propertyContext.getMongoField(), member),
+                        LambdaType.ANY,
+                        new ElementMatchContext(propertyContext.getMongoField(), false)))
+                .isLambdaAnyContext(true)
+                .isExprMode(exprMode)
+                .elementMatchContext(
+                    new ElementMatchContext(propertyContext.getMongoField(), false))
+                .build(),
+            this.mongoFilterVisitorCommonContext);
+    return () -> {
+      Bson innerObject =
+          innerMongoFilterVisitor.visitLambdaExpression(
+              "ANY", any.getLambdaVariable(), any.getExpression());
+      this.addUsedMongoDBProperties(innerMongoFilterVisitor.getUsedMongoDBProperties());
+      return innerMongoFilterVisitor.context.isExprMode()
+          ? innerMongoFilterVisitor.prepareExprDocumentForAnyLambdaWithExpr(
+              innerObject,
+              propertyContext.getMongoField(),
+              any.getLambdaVariable(),
+              nestedExpression,
+              parentLambdaVariable)
+          : innerMongoFilterVisitor.prepareElementMatchDocumentForAnyLambda(
+              innerObject, propertyContext.getMongoField());
+    };
+  }
+
+  private Supplier<Bson> prepareMultipleElementMatchFunctionForAnyLambda(
+      Member member, UriResourceLambdaAny any, PropertyContext propertyContext, boolean exprMode) {
+    MongoFilterVisitor innerMongoFilterVisitor =
+        new MongoFilterVisitor(
+            edmPropertyMongoPathResolver,
+            MongoFilterVisitorContext.builder()
+                .lambdaVariableAliases(
+                    prepareMapOfLambadaVariableAliases(
+                        any.getLambdaVariable(),
+                        prepareMemberDocument(propertyContext.getMongoField(), member),
+                        LambdaType.ANY,
+                        new ElementMatchContext(propertyContext.getMongoField(), true)))
+                .isLambdaAnyContext(true)
+                .isExprMode(exprMode)
+                .elementMatchContext(new ElementMatchContext(propertyContext.getMongoField(), true))
+                .build(),
+            this.mongoFilterVisitorCommonContext);
+    return () -> {
+      Bson innerObject =
+          innerMongoFilterVisitor.visitLambdaExpression(
+              "ANY", any.getLambdaVariable(), any.getExpression());
+      this.addUsedMongoDBProperties(innerMongoFilterVisitor.getUsedMongoDBProperties());
+      return innerObject;
+    };
+  }
+
   private Bson prepareExprDocumentForAnyLambdaWithExpr(
       Bson innerPartWrapper,
       String field,
@@ -1251,25 +1367,48 @@ public class MongoFilterVisitor implements ExpressionVisitor<Bson> {
           }
         };
     if (this.context.isRootContext()) {
+      if (isFieldRequiredForOperator(operator) && resolveMongoField(left) == null) {
+        // The comparison without the field on the left side can be only translated to $expr
+        return prepareExprDocumentForRootBinaryOperator(operator, left, right);
+      }
       try {
         return bsonWrapper(
             mainSupplier.get(),
             BsonWrapperProperties.builder().withBinaryOperator(operator).build());
       } catch (ExpressionOperantRequiredException ex) {
-        MongoFilterVisitor innerVisitor =
-            new MongoFilterVisitor(
-                edmPropertyMongoPathResolver,
-                MongoFilterVisitorContext.builder().isExprMode(true).build(),
-                this.mongoFilterVisitorCommonContext);
-        return new Document(
-            "$expr",
-            unwrapWrapperIfNeeded(innerVisitor.visitBinaryOperator(operator, left, right)));
+        return prepareExprDocumentForRootBinaryOperator(operator, left, right);
       }
     }
     return bsonWrapper(
         mainSupplier.get(), BsonWrapperProperties.builder().withBinaryOperator(operator).build());
   }
 
+  private static boolean isFieldRequiredForOperator(BinaryOperatorKind operator) {
+    switch (operator) {
+      case NE:
+      case GT:
+      case GE:
+      case LT:
+      case LE:
+      case ADD:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private Bson prepareExprDocumentForRootBinaryOperator(
+      BinaryOperatorKind operator, Bson left, Bson right)
+      throws ExpressionVisitException, ODataApplicationException {
+    MongoFilterVisitor innerVisitor =
+        new MongoFilterVisitor(
+            edmPropertyMongoPathResolver,
+            MongoFilterVisitorContext.builder().isExprMode(true).build(),
+            this.mongoFilterVisitorCommonContext);
+    return new Document(
+        "$expr", unwrapWrapperIfNeeded(innerVisitor.visitBinaryOperator(operator, left, right)));
+  }
+
   private void enrichDocumentWithQueryDocumentValues(BsonDocument doc, Document finalDOcument) {
     if (doc.containsKey(this.context.getElementMatchContext().getProperty())) {
       BsonValue value = doc.get(this.context.getElementMatchContext().getProperty());
@@ -1319,7 +1458,6 @@ public class MongoFilterVisitor implements ExpressionVisitor<Bson> {
   private Bson visitMethodWithTwoParameters(MethodKind methodCall, List<Bson> parameters) {
     String field = resolveMongoField(parameters.get(0));
     String value = extractValue(parameters.get(1));
-    String pattern = null;
     if (value == null || field == null) {
       if (!this.context.isExprMode()) {
         throw new ExpressionOperantRequiredException("value for regex pattern is null");
@@ -1336,8 +1474,6 @@ public class MongoFilterVisitor implements ExpressionVisitor<Bson> {
                       Arrays.asList(
                           field == null ? parameters.get(0) : "$" + field, parameters.get(1))),
                   0));
-        } else {
-          pattern = "^" + Pattern.quote(value);
         }
         break;
       case ENDSWITH:
@@ -1362,8 +1498,6 @@ public class MongoFilterVisitor implements ExpressionVisitor<Bson> {
                                   new Document("$strLenBytes", parameters.get(1)))),
                           new Document("$strLenBytes", parameters.get(1)))),
                   parameters.get(1)));
-        } else {
-          pattern = Pattern.quote(value) + "$";
         }
         break;
       case CONTAINS:
@@ -1376,13 +1510,18 @@ public class MongoFilterVisitor implements ExpressionVisitor<Bson> {
                       Arrays.asList(
                           field == null ? parameters.get(0) : "$" + field, parameters.get(1))),
                   0));
-        } else {
-          pattern = Pattern.quote(value);
         }
         break;
       default:
         throw new UnsupportedOperationException("Method not supported: " + methodCall);
     }
+    if (methodCall == MethodKind.STARTSWITH && isStartsWithTranslatedToRange()) {
+      String upperBound = prefixUpperBound(value);
+      if (upperBound != null) {
+        return Filters.range(field, value, upperBound);
+      }
+    }
+    Pattern pattern = STRING_FUNCTION_PATTERNS.getPattern(methodCall, value);
     if (!this.context.isExprMode()
         && this.context.isLambdaAnyContext()
         && !this.context.isElementMatchContext()
@@ -1390,11 +1529,39 @@ public class MongoFilterVisitor implements ExpressionVisitor<Bson> {
       field = this.context.enrichFieldPathWithRootPathIfNecessary(field);
     }
     return this.context.isExprMode()
-        ? prepareRegexMatchExpr(
-            field == null ? parameters.get(0) : field, Pattern.compile(pattern).pattern())
+        ? prepareRegexMatchExpr(field == null ? parameters.get(0) : field, pattern.pattern())
         : this.context.isElementMatchContext()
-            ? prepareRegexOperator(field, Pattern.compile(pattern).pattern())
-            : Filters.regex(field, Pattern.compile(pattern));
+            ? prepareRegexOperator(field, pattern.pattern())
+            : Filters.regex(field, pattern);
+  }
+
+  /**
+   * The range is used only for the field compared directly in the query document. In the $expr,
+   * $elemMatch and lambda contexts the regular expression is kept because the range would be
+   * applied to the whole array or it can not be served from the index anyway.
+   */
+  private boolean isStartsWithTranslatedToRange() {
+    return this.mongoFilterVisitorCommonContext != null
+        && this.mongoFilterVisitorCommonContext.isStartsWithTranslatedToRange()
+        && !this.context.isExprMode()
+        && !this.context.isElementMatchContext()
+        && !this.context.isLambdaAnyContext();
+  }
+
+  /**
+   * Returns the smallest string greater than all strings that start with the prefix, or null if it
+   * can not be computed by incrementing the last character, for example for the empty prefix or
+   * when the last character is a surrogate or is the last character before the surrogates range.
+   */
+  static String prefixUpperBound(String prefix) {
+    if (prefix == null || prefix.isEmpty()) {
+      return null;
+    }
+    char last = prefix.charAt(prefix.length() - 1);
+    if (last >= Character.MIN_SURROGATE - 1) {
+      return null;
+    }
+    return prefix.substring(0, prefix.length() - 1) + (char) (last + 1);
   }
 
   private Bson prepareRegexOperator(String field, String regex) {
@@ -2328,14 +2495,14 @@ public class MongoFilterVisitor implements ExpressionVisitor<Bson> {
   private static class ElementMatchOperantRequiredException extends RuntimeException {
 
     public ElementMatchOperantRequiredException(String message) {
-      super(message);
+      super(message, null, false, false);
     }
   }
 
   private static class MultipleElementMatchOperantRequiredException extends RuntimeException {
 
     public MultipleElementMatchOperantRequiredException(String message) {
-      super(message);
+      super(message, null, false, false);
     }
   }
 }
@@ -16,4 +16,31 @@ public interface MongoFilterVisitorCommonContext {
    * @return the OData to BSON converter
    */
   ODataToBsonConverter oDataToBsonConverter();
+
+  /**
+   * Returns true if the "startswith" function with the literal prefix should be translated to the
+   * range of strings, with the "$gte" and "$lt" operators, instead of the anchored regular
+   * expression. The range can be served from the index without evaluating the regular expression
+   * for each index key. The range is used only when the field is compared directly in the query
+   * document. It should be enabled only for fields that do not store arrays, because for an array
+   * field each bound could be matched by a different element. It also follows the collation of the
+   * query, while the regular expression is always case sensitive.
+   *
+   * @return true if the prefix is translated to the range, the default is false
+   */
+  default boolean isStartsWithTranslatedToRange() {
+    return false;
+  }
+
+  /**
+   * Returns true if the query document of the generated $match stage should be optimized with the
+   * {@link MatchQueryOptimizer}. The optimizer flattens the "$and" and "$or" chains, folds the
+   * constant branches, removes the duplicated clauses, merges the range predicates of the same
+   * field and rewrites the equality alternatives of the same field to the "$in" operator.
+   *
+   * @return true if the query document is optimized, the default is false
+   */
+  default boolean isMatchOptimizationEnabled() {
+    return false;
+  }
 }
@@ -0,0 +1,186 @@
+package com.github.starnowski.jamolingo.core.operators.filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Shape of the OData $filter expression. The shape is the text of the expression in which every
+ * literal is replaced by a typed placeholder, for example the expressions "Id eq 123" and "Id eq
+ * 456" have the same shape "Id eq ?n". The shape is resolved by a lightweight tokenizer, without
+ * running the Olingo parser, so it can be used as a key for the {@link FilterOperatorTemplate}
+ * cache.
+ *
+ * <p>The placeholder contains the kind of the literal: "s" for string, "n" for integer, "d" for
+ * decimal, "b" for boolean, "g" for GUID, "t" for date and time literals, "x" for other prefixed
+ * literals like duration'P1D' and "u" for unrecognized numeric-like tokens. The null keyword is not
+ * treated as a literal and stays part of the shape.
+ */
+public final class ODataFilterShape {
+
+  private static final Pattern GUID_PATTERN =
+      Pattern.compile(
+          "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+  private static final Pattern INTEGER_PATTERN = Pattern.compile("-?\\d+");
+  private static final Pattern DECIMAL_PATTERN =
+      Pattern.compile("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?");
+  private static final Pattern DATE_TIME_PATTERN =
+      Pattern.compile(
+          "\\d{4}-\\d{2}-\\d{2}(T[0-9:.]+(Z|[+-]\\d{2}:\\d{2})?)?|\\d{2}:\\d{2}[0-9:.]*");
+
+  private final String shapeKey;
+  private final List<String> literals;
+
+  private ODataFilterShape(String shapeKey, List<String> literals) {
+    this.shapeKey = shapeKey;
+    this.literals = literals;
+  }
+
+  /**
+   * Resolves the shape of the $filter expression.
+   *
+   * @param filterText the decoded text of the $filter expression, can be null
+   * @return the shape
+   */
+  public static ODataFilterShape of(String filterText) {
+    if (filterText == null) {
+      return new ODataFilterShape("", Collections.emptyList());
+    }
+    StringBuilder shape = new StringBuilder();
+    List<String> literals = new ArrayList<>();
+    int length = filterText.length();
+    int i = 0;
+    while (i < length) {
+      char c = filterText.charAt(i);
+      if (c == '\'') {
+        int end = findEndOfQuotedText(filterText, i);
+        literals.add(filterText.substring(i, end));
+        shape.append("?s");
+        i = end;
+      } else if (isGuidAt(filterText, i)) {
+        literals.add(filterText.substring(i, i + 36));
+        shape.append("?g");
+        i += 36;
+      } else if (Character.isDigit(c)
+          || (c == '-' && i + 1 < length && Character.isDigit(filterText.charAt(i + 1)))) {
+        int end = i + 1;
+        while (end < length && isNumericLikeCharacter(filterText.charAt(end))) {
+          end++;
+        }
+        String token = filterText.substring(i, end);
+        literals.add(token);
+        shape.append('?').append(resolveNumericLikeKind(token));
+        i = end;
+      } else if (Character.isLetter(c) || c == '_' || c == '$' || c == '@') {
+        int end = i + 1;
+        while (end < length && isIdentifierCharacter(filterText.charAt(end))) {
+          end++;
+        }
+        String token = filterText.substring(i, end);
+        if (end < length && filterText.charAt(end) == '\'') {
+          end = findEndOfQuotedText(filterText, end);
+          literals.add(filterText.substring(i, end));
+          shape.append("?x");
+        } else if ("true".equals(token) || "false".equals(token)) {
+          literals.add(token);
+          shape.append("?b");
+        } else if ("INF".equals(token) || "NaN".equals(token)) {
+          literals.add(token);
+          shape.append("?d");
+        } else {
+          shape.append(token);
+        }
+        i = end;
+      } else {
+        shape.append(c);
+        i++;
+      }
+    }
+    return new ODataFilterShape(shape.toString(), Collections.unmodifiableList(literals));
+  }
+
+  private static int findEndOfQuotedText(String text, int start) {
+    int i = start + 1;
+    while (i < text.length()) {
+      if (text.charAt(i) == '\'') {
+        if (i + 1 < text.length() && text.charAt(i + 1) == '\'') {
+          i += 2;
+          continue;
+        }
+        return i + 1;
+      }
+      i++;
+    }
+    return text.length();
+  }
+
+  private static boolean isGuidAt(String text, int start) {
+    if (start + 36 > text.length()
+        || (start > 0 && isIdentifierCharacter(text.charAt(start - 1)))
+        || (start + 36 < text.length() && isIdentifierCharacter(text.charAt(start + 36)))) {
+      return false;
+    }
+    return GUID_PATTERN.matcher(text).region(start, start + 36).matches();
+  }
+
+  private static boolean isNumericLikeCharacter(char c) {
+    return Character.isLetterOrDigit(c) || c == '.' || c == ':' || c == '+' || c == '-';
+  }
+
+  private static boolean isIdentifierCharacter(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '.';
+  }
+
+  private static char resolveNumericLikeKind(String token) {
+    if (INTEGER_PATTERN.matcher(token).matches()) {
+      return 'n';
+    }
+    if (DECIMAL_PATTERN.matcher(token).matches()) {
+      return 'd';
+    }
+    if (DATE_TIME_PATTERN.matcher(token).matches()) {
+      return 't';
+    }
+    return 'u';
+  }
+
+  /**
+   * Returns the text of the expression with literals replaced by typed placeholders.
+   *
+   * @return the shape key
+   */
+  public String getShapeKey() {
+    return shapeKey;
+  }
+
+  /**
+   * Returns the texts of the literals in the order in which they appear in the expression. String
+   * literals contain the surrounding quotes, the same as {@link
+   * org.apache.olingo.server.api.uri.queryoption.expression.Literal#getText()}.
+   *
+   * @return the literal texts
+   */
+  public List<String> getLiterals() {
+    return literals;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    ODataFilterShape that = (ODataFilterShape) o;
+    return Objects.equals(shapeKey, that.shapeKey) && Objects.equals(literals, that.literals);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(shapeKey, literals);
+  }
+
+  @Override
+  public String toString() {
+    return "ODataFilterShape{" + "shapeKey='" + shapeKey + '\'' + ", literals=" + literals + '}';
+  }
+}
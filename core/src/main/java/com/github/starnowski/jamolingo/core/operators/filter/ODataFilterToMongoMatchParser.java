@@ -2,19 +2,56 @@ package com.github.starnowski.jamolingo.core.operators.filter;
 
 import com.github.starnowski.jamolingo.core.api.EdmPropertyMongoPathResolver;
 import com.github.starnowski.jamolingo.core.context.DefaultEdmMongoContextFacade;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import org.apache.olingo.commons.api.edm.EdmEnumType;
+import org.apache.olingo.commons.api.edm.EdmType;
 import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceLambdaAll;
+import org.apache.olingo.server.api.uri.UriResourceLambdaAny;
 import org.apache.olingo.server.api.uri.queryoption.FilterOption;
+import org.apache.olingo.server.api.uri.queryoption.expression.BinaryOperatorKind;
 import org.apache.olingo.server.api.uri.queryoption.expression.Expression;
 import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitException;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitor;
+import org.apache.olingo.server.api.uri.queryoption.expression.Literal;
+import org.apache.olingo.server.api.uri.queryoption.expression.Member;
+import org.apache.olingo.server.api.uri.queryoption.expression.MethodKind;
+import org.apache.olingo.server.api.uri.queryoption.expression.UnaryOperatorKind;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonString;
 import org.bson.Document;
+import org.bson.UuidRepresentation;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.conversions.Bson;
 
 /** Parser that converts OData filter options into MongoDB match stages. */
 public class ODataFilterToMongoMatchParser {
 
+  private static final CodecRegistry TEMPLATE_CODEC_REGISTRY =
+      CodecRegistries.withUuidRepresentation(
+          Bson.DEFAULT_CODEC_REGISTRY, UuidRepresentation.STANDARD);
+  private static final Codec<Document> DOCUMENT_CODEC =
+      new DocumentCodec(TEMPLATE_CODEC_REGISTRY)
+          .withUuidRepresentation(UuidRepresentation.STANDARD);
+  private static final MatchQueryOptimizer MATCH_QUERY_OPTIMIZER = new MatchQueryOptimizer();
+
   /**
    * Parses the given OData filter option into a FilterOperatorResult.
    *
@@ -25,7 +62,7 @@ public class ODataFilterToMongoMatchParser {
    */
   public FilterOperatorResult parse(FilterOption filter)
       throws ODataApplicationException, ExpressionVisitException {
-    return parse(filter, DefaultEdmMongoContextFacade.builder().build());
+    return parse(filter, DefaultEdmMongoContextFacade.withoutMapping());
   }
 
   /**
@@ -42,7 +79,7 @@ public class ODataFilterToMongoMatchParser {
       FilterOption filter, MongoFilterVisitorCommonContext mongoFilterVisitorCommonContext)
       throws ODataApplicationException, ExpressionVisitException {
     return parse(
-        filter, DefaultEdmMongoContextFacade.builder().build(), mongoFilterVisitorCommonContext);
+        filter, DefaultEdmMongoContextFacade.withoutMapping(), mongoFilterVisitorCommonContext);
   }
 
   /**
@@ -87,7 +124,7 @@ public class ODataFilterToMongoMatchParser {
         new MongoFilterVisitor(edmMongoContextFacade, mongoFilterVisitorCommonContext);
     Bson result = MongoFilterVisitor.unwrapWrapperIfNeeded(expr.accept(rootMongoFilterVisitor));
     return new DefaultFilterOperatorResult(
-        List.of(new Document("$match", new Document("$and", List.of(result)))),
+        List.of(new Document("$match", matchQuery(result, mongoFilterVisitorCommonContext))),
         rootMongoFilterVisitor.getUsedMongoDBProperties());
   }
 
@@ -101,7 +138,7 @@ public class ODataFilterToMongoMatchParser {
    */
   public FilterOperatorQueryObjectResult parseQueryObject(FilterOption filter)
       throws ODataApplicationException, ExpressionVisitException {
-    return parseQueryObject(filter, DefaultEdmMongoContextFacade.builder().build());
+    return parseQueryObject(filter, DefaultEdmMongoContextFacade.withoutMapping());
   }
 
   /**
@@ -118,7 +155,7 @@ public class ODataFilterToMongoMatchParser {
       FilterOption filter, MongoFilterVisitorCommonContext mongoFilterVisitorCommonContext)
       throws ODataApplicationException, ExpressionVisitException {
     return parseQueryObject(
-        filter, DefaultEdmMongoContextFacade.builder().build(), mongoFilterVisitorCommonContext);
+        filter, DefaultEdmMongoContextFacade.withoutMapping(), mongoFilterVisitorCommonContext);
   }
 
   /**
@@ -162,8 +199,189 @@ public class ODataFilterToMongoMatchParser {
     MongoFilterVisitor rootMongoFilterVisitor =
         new MongoFilterVisitor(edmMongoContextFacade, mongoFilterVisitorCommonContext);
     Bson result = MongoFilterVisitor.unwrapWrapperIfNeeded(expr.accept(rootMongoFilterVisitor));
+    Bson queryObject = matchQuery(result, mongoFilterVisitorCommonContext);
     return new DefaultFilterOperatorQueryObjectResult(
-        new Document("$and", List.of(result)), false, null);
+        queryObject, containsOperator(queryObject, "$expr"), null);
+  }
+
+  private static boolean containsOperator(Object node, String operator) {
+    if (node instanceof Map) {
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) node).entrySet()) {
+        if (operator.equals(entry.getKey()) || containsOperator(entry.getValue(), operator)) {
+          return true;
+        }
+      }
+    } else if (node instanceof List) {
+      for (Object element : (List<?>) node) {
+        if (containsOperator(element, operator)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static Bson matchQuery(
+      Bson result, MongoFilterVisitorCommonContext mongoFilterVisitorCommonContext) {
+    Bson query = new Document("$and", List.of(result));
+    return mongoFilterVisitorCommonContext.isMatchOptimizationEnabled()
+        ? MATCH_QUERY_OPTIMIZER.optimize(query)
+        : query;
+  }
+
+  /**
+   * Parses the given OData filter option into a FilterOperatorTemplate.
+   *
+   * @param filter the OData filter option
+   * @return the template
+   * @throws ODataApplicationException if an error occurs during parsing
+   * @throws ExpressionVisitException if an error occurs during expression visiting
+   */
+  public FilterOperatorTemplate parseTemplate(FilterOption filter)
+      throws ODataApplicationException, ExpressionVisitException {
+    return parseTemplate(filter, DefaultEdmMongoContextFacade.withoutMapping());
+  }
+
+  /**
+   * Parses the given OData filter option into a FilterOperatorTemplate using the specified common
+   * context.
+   *
+   * @param filter the OData filter option
+   * @param mongoFilterVisitorCommonContext the common context for the filter visitor
+   * @return the template
+   * @throws ODataApplicationException if an error occurs during parsing
+   * @throws ExpressionVisitException if an error occurs during expression visiting
+   */
+  public FilterOperatorTemplate parseTemplate(
+      FilterOption filter, MongoFilterVisitorCommonContext mongoFilterVisitorCommonContext)
+      throws ODataApplicationException, ExpressionVisitException {
+    return parseTemplate(
+        filter, DefaultEdmMongoContextFacade.withoutMapping(), mongoFilterVisitorCommonContext);
+  }
+
+  /**
+   * Parses the given OData filter option into a FilterOperatorTemplate using the specified path
+   * resolver.
+   *
+   * @param filter the OData filter option
+   * @param edmMongoContextFacade the path resolver for mapping EDM properties to MongoDB paths
+   * @return the template
+   * @throws ODataApplicationException if an error occurs during parsing
+   * @throws ExpressionVisitException if an error occurs during expression visiting
+   */
+  public FilterOperatorTemplate parseTemplate(
+      FilterOption filter, EdmPropertyMongoPathResolver edmMongoContextFacade)
+      throws ODataApplicationException, ExpressionVisitException {
+    return parseTemplate(
+        filter, edmMongoContextFacade, DefaultMongoFilterVisitorCommonContext.builder().build());
+  }
+
+  /**
+   * Parses the given OData filter option into a FilterOperatorTemplate using the specified path
+   * resolver and common context. The expression is translated with placeholder values in place of
+   * literals. The template is parameterized only if every placeholder ends up as a whole value in
+   * the translated stages and binding the original literals produces the same stages as the regular
+   * translation, otherwise the template can only be bound with the original literals.
+   *
+   * @param filter the OData filter option
+   * @param edmMongoContextFacade the path resolver for mapping EDM properties to MongoDB paths
+   * @param mongoFilterVisitorCommonContext the common context for the filter visitor
+   * @return the template
+   * @throws ODataApplicationException if an error occurs during parsing
+   * @throws ExpressionVisitException if an error occurs during expression visiting
+   */
+  public FilterOperatorTemplate parseTemplate(
+      FilterOption filter,
+      EdmPropertyMongoPathResolver edmMongoContextFacade,
+      MongoFilterVisitorCommonContext mongoFilterVisitorCommonContext)
+      throws ODataApplicationException, ExpressionVisitException {
+    FilterOperatorResult reference =
+        parse(filter, edmMongoContextFacade, mongoFilterVisitorCommonContext);
+    ODataFilterShape shape = ODataFilterShape.of(filter == null ? null : filter.getText());
+    if (filter == null) {
+      return new DefaultFilterOperatorTemplate(shape, reference);
+    }
+    LiteralCollector literalCollector = new LiteralCollector();
+    filter.getExpression().accept(literalCollector);
+    List<Literal> literals = literalCollector.literals;
+    if (!shape
+        .getLiterals()
+        .equals(literals.stream().map(Literal::getText).collect(Collectors.toList()))) {
+      return new DefaultFilterOperatorTemplate(shape, reference);
+    }
+    TemplateMongoFilterVisitorCommonContext templateContext =
+        new TemplateMongoFilterVisitorCommonContext(literals, mongoFilterVisitorCommonContext);
+    MongoFilterVisitor rootMongoFilterVisitor =
+        new MongoFilterVisitor(edmMongoContextFacade, templateContext);
+    Bson result =
+        MongoFilterVisitor.unwrapWrapperIfNeeded(
+            filter.getExpression().accept(rootMongoFilterVisitor));
+    if (templateContext.unknownLiteralVisited || templateContext.conflictingTypes) {
+      return new DefaultFilterOperatorTemplate(shape, reference);
+    }
+    try {
+      Document stage =
+          DOCUMENT_CODEC.decode(
+              new BsonDocumentReader(
+                  new Document("$match", matchQuery(result, mongoFilterVisitorCommonContext))
+                      .toBsonDocument(BsonDocument.class, TEMPLATE_CODEC_REGISTRY)),
+              DecoderContext.builder().build());
+      int[] occurrences = new int[literals.size()];
+      if (!countSlotOccurrences(stage, templateContext, occurrences)
+          || Arrays.stream(occurrences).anyMatch(count -> count == 0)) {
+        return new DefaultFilterOperatorTemplate(shape, reference);
+      }
+      DefaultFilterOperatorTemplate template =
+          new DefaultFilterOperatorTemplate(
+              shape,
+              reference,
+              stage,
+              templateContext,
+              literals.stream().map(Literal::getType).collect(Collectors.toList()),
+              mongoFilterVisitorCommonContext);
+      FilterOperatorResult bound = template.bind(shape.getLiterals());
+      if (!toComparableDocument(bound.getStageObjects().get(0))
+          .equals(toComparableDocument(reference.getStageObjects().get(0)))) {
+        return new DefaultFilterOperatorTemplate(shape, reference);
+      }
+      return template;
+    } catch (RuntimeException e) {
+      return new DefaultFilterOperatorTemplate(shape, reference);
+    }
+  }
+
+  private static BsonDocument toComparableDocument(Bson bson) {
+    return bson.toBsonDocument(BsonDocument.class, TEMPLATE_CODEC_REGISTRY);
+  }
+
+  private static boolean countSlotOccurrences(
+      Object value, TemplateMongoFilterVisitorCommonContext templateContext, int[] occurrences) {
+    if (value instanceof Map) {
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        if (String.valueOf(entry.getKey()).contains(templateContext.prefix)
+            || !countSlotOccurrences(entry.getValue(), templateContext, occurrences)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (value instanceof List) {
+      for (Object item : (List<?>) value) {
+        if (!countSlotOccurrences(item, templateContext, occurrences)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (value instanceof String) {
+      int slot = templateContext.resolveSlot((String) value);
+      if (slot >= 0) {
+        occurrences[slot]++;
+        return true;
+      }
+      return !((String) value).contains(templateContext.prefix);
+    }
+    return value == null || !value.toString().contains(templateContext.prefix);
   }
 
   /** Default implementation of the FilterOperatorResult. */
@@ -245,4 +463,313 @@ public class ODataFilterToMongoMatchParser {
       return cause;
     }
   }
+
+  private static class DefaultFilterOperatorTemplate implements FilterOperatorTemplate {
+
+    private final ODataFilterShape shape;
+    private final FilterOperatorResult reference;
+    private final Document stage;
+    private final String[] sentinels;
+    private final String[] slotEdmTypes;
+    private final boolean[] slotEdmTypeResolved;
+    private final List<EdmType> slotLiteralTypes;
+    private final MongoFilterVisitorCommonContext mongoFilterVisitorCommonContext;
+
+    private DefaultFilterOperatorTemplate(ODataFilterShape shape, FilterOperatorResult reference) {
+      this(shape, reference, null, null, List.of(), null);
+    }
+
+    private DefaultFilterOperatorTemplate(
+        ODataFilterShape shape,
+        FilterOperatorResult reference,
+        Document stage,
+        TemplateMongoFilterVisitorCommonContext templateContext,
+        List<EdmType> slotLiteralTypes,
+        MongoFilterVisitorCommonContext mongoFilterVisitorCommonContext) {
+      this.shape = shape;
+      this.reference = reference;
+      this.stage = stage;
+      this.sentinels = templateContext == null ? new String[0] : templateContext.sentinels;
+      this.slotEdmTypes = templateContext == null ? new String[0] : templateContext.slotEdmTypes;
+      this.slotEdmTypeResolved =
+          templateContext == null ? new boolean[0] : templateContext.slotEdmTypeResolved;
+      this.slotLiteralTypes = slotLiteralTypes;
+      this.mongoFilterVisitorCommonContext = mongoFilterVisitorCommonContext;
+    }
+
+    @Override
+    public ODataFilterShape getShape() {
+      return shape;
+    }
+
+    @Override
+    public boolean isParameterized() {
+      return stage != null;
+    }
+
+    @Override
+    public int getSlotCount() {
+      return sentinels.length;
+    }
+
+    @Override
+    public FilterOperatorResult bind(ODataFilterShape shape) {
+      if (!this.shape.getShapeKey().equals(shape.getShapeKey())) {
+        throw new IllegalArgumentException(
+            "The shape [%s] does not match the template shape [%s]"
+                .formatted(shape.getShapeKey(), this.shape.getShapeKey()));
+      }
+      return bind(shape.getLiterals());
+    }
+
+    @Override
+    public FilterOperatorResult bind(List<String> literals) {
+      if (stage == null) {
+        if (!shape.getLiterals().equals(literals)) {
+          throw new IllegalArgumentException(
+              "The template for shape [%s] is not parameterized, the filter has to be parsed"
+                  .formatted(shape.getShapeKey()));
+        }
+        return reference;
+      }
+      if (literals.size() != sentinels.length) {
+        throw new IllegalArgumentException(
+            "Expected %d literals but got %d".formatted(sentinels.length, literals.size()));
+      }
+      Map<String, Object> values = new HashMap<>();
+      for (int i = 0; i < sentinels.length; i++) {
+        Object value =
+            mongoFilterVisitorCommonContext
+                .literalToBsonConverter()
+                .convert(new TemplateLiteral(literals.get(i), slotLiteralTypes.get(i)))
+                .toBsonDocument()
+                .get(MongoFilterVisitor.CUSTOM_LITERAL_VALUE_PROPERTY);
+        if (slotEdmTypeResolved[i]) {
+          value =
+              mongoFilterVisitorCommonContext
+                  .oDataToBsonConverter()
+                  .toBsonValue(value, slotEdmTypes[i]);
+        }
+        values.put(sentinels[i], value);
+      }
+      return new DefaultFilterOperatorResult(
+          List.of((Bson) copyWithBoundValues(stage, values)),
+          new HashSet<>(reference.getUsedMongoDocumentProperties()));
+    }
+
+    private static Object copyWithBoundValues(Object value, Map<String, Object> values) {
+      if (value instanceof Document) {
+        Document document = (Document) value;
+        Document copy = new Document();
+        for (Map.Entry<String, Object> entry : document.entrySet()) {
+          copy.put(entry.getKey(), copyWithBoundValues(entry.getValue(), values));
+        }
+        return copy;
+      }
+      if (value instanceof List) {
+        List<?> list = (List<?>) value;
+        List<Object> copy = new ArrayList<>(list.size());
+        for (Object item : list) {
+          copy.add(copyWithBoundValues(item, values));
+        }
+        return copy;
+      }
+      if (value instanceof String && values.containsKey(value)) {
+        return values.get(value);
+      }
+      return value;
+    }
+  }
+
+  /**
+   * Common context that replaces every collected literal with a unique placeholder string and
+   * records the EDM type to which the placeholder is converted.
+   */
+  private static class TemplateMongoFilterVisitorCommonContext
+      implements MongoFilterVisitorCommonContext {
+
+    private final IdentityHashMap<Literal, Integer> slots = new IdentityHashMap<>();
+    private final String prefix = "\u0000jamolingo.slot." + UUID.randomUUID() + ".";
+    private final String[] sentinels;
+    private final String[] slotEdmTypes;
+    private final boolean[] slotEdmTypeResolved;
+    private final MongoFilterVisitorCommonContext delegate;
+    private boolean unknownLiteralVisited;
+    private boolean conflictingTypes;
+
+    private TemplateMongoFilterVisitorCommonContext(
+        List<Literal> literals, MongoFilterVisitorCommonContext delegate) {
+      this.delegate = delegate;
+      this.sentinels = new String[literals.size()];
+      this.slotEdmTypes = new String[literals.size()];
+      this.slotEdmTypeResolved = new boolean[literals.size()];
+      for (int i = 0; i < literals.size(); i++) {
+        slots.put(literals.get(i), i);
+        sentinels[i] = prefix + i;
+      }
+    }
+
+    private int resolveSlot(String value) {
+      if (!value.startsWith(prefix)) {
+        return -1;
+      }
+      try {
+        int slot = Integer.parseInt(value.substring(prefix.length()));
+        return slot < sentinels.length ? slot : -1;
+      } catch (NumberFormatException e) {
+        return -1;
+      }
+    }
+
+    @Override
+    public LiteralToBsonConverter literalToBsonConverter() {
+      return new LiteralToBsonConverter() {
+        @Override
+        public Bson convert(Literal literal) {
+          Integer slot = slots.get(literal);
+          if (slot == null) {
+            if (!"null".equals(literal.getText())) {
+              unknownLiteralVisited = true;
+            }
+            return delegate.literalToBsonConverter().convert(literal);
+          }
+          return literal(sentinels[slot]);
+        }
+      };
+    }
+
+    @Override
+    public ODataToBsonConverter oDataToBsonConverter() {
+      return (value, edmType) -> {
+        String text =
+            value instanceof BsonString
+                ? ((BsonString) value).getValue()
+                : value instanceof String ? (String) value : null;
+        int slot = text == null ? -1 : resolveSlot(text);
+        if (slot < 0) {
+          return delegate.oDataToBsonConverter().toBsonValue(value, edmType);
+        }
+        if (slotEdmTypeResolved[slot] && !Objects.equals(slotEdmTypes[slot], edmType)) {
+          conflictingTypes = true;
+        }
+        slotEdmTypeResolved[slot] = true;
+        slotEdmTypes[slot] = edmType;
+        return text;
+      };
+    }
+
+    @Override
+    public boolean isStartsWithTranslatedToRange() {
+      return delegate.isStartsWithTranslatedToRange();
+    }
+
+    @Override
+    public boolean isMatchOptimizationEnabled() {
+      return delegate.isMatchOptimizationEnabled();
+    }
+  }
+
+  /** Collects the literals of the expression in the order in which they appear in the text. */
+  private static class LiteralCollector implements ExpressionVisitor<Void> {
+
+    private final List<Literal> literals = new ArrayList<>();
+
+    @Override
+    public Void visitBinaryOperator(BinaryOperatorKind operator, Void left, Void right) {
+      return null;
+    }
+
+    @Override
+    public Void visitUnaryOperator(UnaryOperatorKind operator, Void operand) {
+      return null;
+    }
+
+    @Override
+    public Void visitMethodCall(MethodKind methodCall, List<Void> parameters) {
+      return null;
+    }
+
+    @Override
+    public Void visitLambdaExpression(
+        String lambdaFunction, String lambdaVariable, Expression expression)
+        throws ExpressionVisitException, ODataApplicationException {
+      return expression.accept(this);
+    }
+
+    @Override
+    public Void visitLiteral(Literal literal) {
+      if (!"null".equals(literal.getText())) {
+        literals.add(literal);
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitMember(Member member)
+        throws ExpressionVisitException, ODataApplicationException {
+      for (UriResource uriResource : member.getResourcePath().getUriResourceParts()) {
+        Expression expression = null;
+        if (uriResource instanceof UriResourceLambdaAny) {
+          expression = ((UriResourceLambdaAny) uriResource).getExpression();
+        } else if (uriResource instanceof UriResourceLambdaAll) {
+          expression = ((UriResourceLambdaAll) uriResource).getExpression();
+        }
+        if (expression != null) {
+          expression.accept(this);
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitAlias(String aliasName) {
+      return null;
+    }
+
+    @Override
+    public Void visitTypeLiteral(EdmType type) {
+      return null;
+    }
+
+    @Override
+    public Void visitLambdaReference(String variableName) {
+      return null;
+    }
+
+    @Override
+    public Void visitEnum(EdmEnumType type, List<String> enumValues) {
+      return null;
+    }
+
+    @Override
+    public Void visitBinaryOperator(BinaryOperatorKind operator, Void left, List<Void> right) {
+      return null;
+    }
+  }
+
+  private static class TemplateLiteral implements Literal {
+    private final String text;
+    private final EdmType type;
+
+    private TemplateLiteral(String text, EdmType type) {
+      this.text = text;
+      this.type = type;
+    }
+
+    @Override
+    public String getText() {
+      return text;
+    }
+
+    @Override
+    public EdmType getType() {
+      return type;
+    }
+
+    @Override
+    public <T> T accept(ExpressionVisitor<T> visitor)
+        throws ExpressionVisitException, ODataApplicationException {
+      return visitor.visitLiteral(this);
+    }
+  }
 }
@@ -0,0 +1,102 @@
+package com.github.starnowski.jamolingo.core.operators.filter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import org.apache.olingo.server.api.uri.queryoption.expression.MethodKind;
+
+/**
+ * Bounded cache of the escaped and compiled regular expressions for the string functions
+ * "startswith", "endswith" and "contains". When the cache is full the least recently used pattern
+ * is evicted. The cache can be shared between threads.
+ */
+final class StringFunctionPatternCache {
+
+  /** Maximum number of patterns remembered by the cache. */
+  static final int MAX_CACHED_PATTERNS = 10000;
+
+  private final int maximumSize;
+  private final LinkedHashMap<PatternKey, Pattern> patterns;
+
+  StringFunctionPatternCache() {
+    this(MAX_CACHED_PATTERNS);
+  }
+
+  StringFunctionPatternCache(int maximumSize) {
+    this.maximumSize = maximumSize;
+    this.patterns =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<PatternKey, Pattern> eldest) {
+            return size() > StringFunctionPatternCache.this.maximumSize;
+          }
+        };
+  }
+
+  /**
+   * Returns the compiled pattern that matches the string function for the literal value.
+   *
+   * @param methodKind the string function, one of STARTSWITH, ENDSWITH or CONTAINS
+   * @param value the literal value
+   * @return the compiled pattern
+   * @throws IllegalArgumentException if the method is not a supported string function
+   */
+  Pattern getPattern(MethodKind methodKind, String value) {
+    PatternKey key = new PatternKey(methodKind, value);
+    synchronized (patterns) {
+      Pattern pattern = patterns.get(key);
+      if (pattern != null) {
+        return pattern;
+      }
+    }
+    // The pattern is compiled outside of the lock
+    Pattern pattern = Pattern.compile(escape(methodKind, value));
+    synchronized (patterns) {
+      Pattern previous = patterns.putIfAbsent(key, pattern);
+      return previous == null ? pattern : previous;
+    }
+  }
+
+  int size() {
+    synchronized (patterns) {
+      return patterns.size();
+    }
+  }
+
+  private static String escape(MethodKind methodKind, String value) {
+    switch (methodKind) {
+      case STARTSWITH:
+        return "^" + Pattern.quote(value);
+      case ENDSWITH:
+        return Pattern.quote(value) + "$";
+      case CONTAINS:
+        return Pattern.quote(value);
+      default:
+        throw new IllegalArgumentException("Method not supported: " + methodKind);
+    }
+  }
+
+  private static final class PatternKey {
+    private final MethodKind methodKind;
+    private final String value;
+
+    private PatternKey(MethodKind methodKind, String value) {
+      this.methodKind = methodKind;
+      this.value = value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      PatternKey that = (PatternKey) o;
+      return methodKind == that.methodKind && Objects.equals(value, that.value);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(methodKind, value);
+    }
+  }
+}
@@ -1,6 +1,42 @@
 package com.github.starnowski.jamolingo.core.operators.orderby;
 
 import com.github.starnowski.jamolingo.core.operators.OlingoOperatorResult;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.conversions.Bson;
 
 /** Represents the result of processing an OData $orderby system query option. */
-public interface OrderByOperatorResult extends OlingoOperatorResult {}
+public interface OrderByOperatorResult extends OlingoOperatorResult {
+
+  /**
+   * Returns the sort properties of the $sort stages in the order of the sort keys.
+   *
+   * @return the sort properties, empty if there is no $sort stage
+   * @throws IllegalArgumentException if the sort key is not ascending or descending, for example
+   *     the text score
+   */
+  default List<SortProperty> getSortProperties() {
+    List<SortProperty> sortProperties = new ArrayList<>();
+    if (getStageObjects() == null) {
+      return sortProperties;
+    }
+    for (Bson stage : getStageObjects()) {
+      BsonDocument stageDocument = stage.toBsonDocument();
+      if (!stageDocument.containsKey("$sort")) {
+        continue;
+      }
+      for (Map.Entry<String, BsonValue> entry : stageDocument.getDocument("$sort").entrySet()) {
+        if (!entry.getValue().isNumber()) {
+          throw new IllegalArgumentException(
+              "Only ascending and descending sort is supported, found: " + entry);
+        }
+        sortProperties.add(
+            new SortProperty(entry.getKey(), entry.getValue().asNumber().intValue() < 0));
+      }
+    }
+    return sortProperties;
+  }
+}
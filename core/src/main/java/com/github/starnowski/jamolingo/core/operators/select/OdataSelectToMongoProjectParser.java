@@ -3,7 +3,6 @@ package com.github.starnowski.jamolingo.core.operators.select;
 import com.github.starnowski.jamolingo.core.api.EdmMongoContextFacade;
 import com.github.starnowski.jamolingo.core.context.DefaultEdmMongoContextFacade;
 import java.util.*;
-import java.util.stream.Collectors;
 import org.apache.olingo.server.api.uri.UriResource;
 import org.apache.olingo.server.api.uri.UriResourceProperty;
 import org.apache.olingo.server.api.uri.queryoption.SelectItem;
@@ -24,7 +23,7 @@ public class OdataSelectToMongoProjectParser {
    * @return the result of the parsing containing the MongoDB projection
    */
   public SelectOperatorResult parse(SelectOption selectOption) {
-    return parse(selectOption, DefaultEdmMongoContextFacade.builder().build());
+    return parse(selectOption, DefaultEdmMongoContextFacade.withoutMapping());
   }
 
   /**
@@ -102,13 +101,7 @@ public class OdataSelectToMongoProjectParser {
    * @return the select operator options for $map operator
    */
   public SelectOperatorOptionsForMapOperator computeValueForMapOperator(SelectOption selectOption) {
-    return computeValueForMapOperator(selectOption, DefaultEdmMongoContextFacade.builder().build());
-  }
-
-  private String prepareEDMPath(List<UriResource> parts) {
-    return parts.stream()
-        .map(p -> ((UriResourceProperty) p).getProperty().getName())
-        .collect(Collectors.joining("/"));
+    return computeValueForMapOperator(selectOption, DefaultEdmMongoContextFacade.withoutMapping());
   }
 
   /**
@@ -153,7 +146,7 @@ public class OdataSelectToMongoProjectParser {
           if (part instanceof UriResourceProperty && ((UriResourceProperty) part).isCollection()) {
             arrayFields.add(
                 edmMongoContextFacade
-                    .resolveMongoPathForEDMPath(prepareEDMPath(parts.subList(0, i + 1)))
+                    .resolveMongoPathForEDMPath(parts.subList(0, i + 1))
                     .getMongoPath());
           }
         }
@@ -0,0 +1,283 @@
+package com.github.starnowski.jamolingo.core.operators.skiptoken;
+
+import com.github.starnowski.jamolingo.core.operators.orderby.OrderByOperatorResult;
+import com.github.starnowski.jamolingo.core.operators.orderby.SortProperty;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.apache.olingo.server.api.uri.queryoption.SkipTokenOption;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonNull;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.UuidRepresentation;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonParseException;
+import org.bson.json.JsonWriterSettings;
+
+/**
+ * Parses OData $skiptoken system query options and translates them into MongoDB $match stages for
+ * the keyset pagination. The next page is selected by the range condition on the sort properties,
+ * starting after the last document of the previous page, so unlike the $skip stage the cost of
+ * reading the page does not grow with the page depth when the sort properties are indexed.
+ *
+ * <p>The sort properties are taken from the $sort stage of the {@link OrderByOperatorResult} and
+ * the "_id" property is appended as the tiebreaker, so the order of documents is total. The skip
+ * token is the URL-safe Base64 encoded document with the sort properties and the values of the last
+ * document, the token created for a different $orderby option is rejected. The null value, which
+ * MongoDB uses also for the missing property, is ordered before other values. Sort properties with
+ * values of different types other than null are not supported. The values of the token have to be
+ * scalars and are compared only with the $eq, $gt, $lt and $ne operators, so the token can not
+ * inject query operators.
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * SkipTokenOperatorResult skipToken =
+ *     parser.parse(uriInfo.getSkipTokenOption(), orderByParser.parse(uriInfo.getOrderByOption()));
+ * List<Bson> pipeline = new ArrayList<>(filterResult.getStageObjects());
+ * pipeline.addAll(skipToken.getStageObjects());
+ * pipeline.add(new Document("$limit", pageSize));
+ * List<Document> page = collection.aggregate(pipeline).into(new ArrayList<>());
+ * String nextSkipToken =
+ *     page.size() < pageSize ? null : skipToken.createSkipToken(page.get(page.size() - 1));
+ * }</pre>
+ */
+public class OdataSkipTokenToMongoMatchParser {
+
+  /** The property appended to the sort properties as the tiebreaker. */
+  public static final String TIEBREAKER_PROPERTY = "_id";
+
+  private static final String SORT_KEYS_PROPERTY = "k";
+  private static final String VALUES_PROPERTY = "v";
+  private static final JsonWriterSettings TOKEN_JSON_WRITER_SETTINGS =
+      JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+  private static final CodecRegistry TOKEN_CODEC_REGISTRY =
+      CodecRegistries.withUuidRepresentation(
+          Bson.DEFAULT_CODEC_REGISTRY, UuidRepresentation.STANDARD);
+
+  /**
+   * Parses the given SkipTokenOption.
+   *
+   * @param skipTokenOption the OData skiptoken option to parse, can be null
+   * @param orderByResult the result of the $orderby parsing, can be null if there is no $orderby
+   * @return the result of the parsing containing the MongoDB match and sort stages
+   * @throws IllegalArgumentException if the skip token is invalid or was created for different sort
+   *     properties
+   */
+  public SkipTokenOperatorResult parse(
+      SkipTokenOption skipTokenOption, OrderByOperatorResult orderByResult) {
+    return parse(skipTokenOption == null ? null : skipTokenOption.getValue(), orderByResult);
+  }
+
+  /**
+   * Parses the given skip token.
+   *
+   * @param skipToken the skip token, can be null
+   * @param orderByResult the result of the $orderby parsing, can be null if there is no $orderby
+   * @return the result of the parsing containing the MongoDB match and sort stages
+   * @throws IllegalArgumentException if the skip token is invalid or was created for different sort
+   *     properties
+   */
+  public SkipTokenOperatorResult parse(String skipToken, OrderByOperatorResult orderByResult) {
+    List<SortProperty> sortProperties = resolveSortProperties(orderByResult);
+    if (skipToken == null || skipToken.isEmpty()) {
+      return new DefaultSkipTokenOperatorResult(sortProperties, null);
+    }
+    BsonDocument token = decode(skipToken);
+    if (!sortKeys(sortProperties).equals(token.get(SORT_KEYS_PROPERTY))) {
+      throw new IllegalArgumentException(
+          "The $skiptoken was created for different sort properties than " + sortProperties);
+    }
+    BsonValue values = token.get(VALUES_PROPERTY);
+    if (!(values instanceof BsonArray) || ((BsonArray) values).size() != sortProperties.size()) {
+      throw new IllegalArgumentException("Invalid $skiptoken: " + skipToken);
+    }
+    for (BsonValue value : ((BsonArray) values).getValues()) {
+      if (!isScalar(value)) {
+        throw new IllegalArgumentException(
+            "Invalid $skiptoken, the values of the sort properties have to be scalars: "
+                + skipToken);
+      }
+    }
+    return new DefaultSkipTokenOperatorResult(
+        sortProperties, rangeQuery(sortProperties, ((BsonArray) values).getValues()));
+  }
+
+  private static List<SortProperty> resolveSortProperties(OrderByOperatorResult orderByResult) {
+    List<SortProperty> sortProperties =
+        orderByResult == null
+            ? new ArrayList<>()
+            : new ArrayList<>(orderByResult.getSortProperties());
+    if (sortProperties.stream()
+        .noneMatch(property -> TIEBREAKER_PROPERTY.equals(property.getPropertyName()))) {
+      sortProperties.add(new SortProperty(TIEBREAKER_PROPERTY, false));
+    }
+    return Collections.unmodifiableList(sortProperties);
+  }
+
+  private static BsonDocument sortKeys(List<SortProperty> sortProperties) {
+    BsonDocument keys = new BsonDocument();
+    for (SortProperty property : sortProperties) {
+      keys.append(property.getPropertyName(), new BsonInt32(property.isDescending() ? -1 : 1));
+    }
+    return keys;
+  }
+
+  private static BsonDocument decode(String skipToken) {
+    try {
+      return BsonDocument.parse(
+          new String(Base64.getUrlDecoder().decode(skipToken), StandardCharsets.UTF_8));
+    } catch (IllegalArgumentException | JsonParseException ex) {
+      throw new IllegalArgumentException("Invalid $skiptoken: " + skipToken, ex);
+    }
+  }
+
+  private static boolean isScalar(BsonValue value) {
+    return !value.isDocument() && !value.isArray() && !value.isJavaScriptWithScope();
+  }
+
+  private static Bson rangeQuery(List<SortProperty> sortProperties, List<BsonValue> values) {
+    // (k1 after v1) or (k1 = v1 and k2 after v2) or ...
+    List<Bson> branches = new ArrayList<>();
+    for (int i = 0; i < sortProperties.size(); i++) {
+      Document after = afterCondition(sortProperties.get(i), values.get(i));
+      if (after == null) {
+        continue;
+      }
+      Document branch = new Document();
+      for (int j = 0; j < i; j++) {
+        BsonValue value = values.get(j);
+        branch.append(
+            sortProperties.get(j).getPropertyName(),
+            new Document("$eq", value.isNull() ? null : value));
+      }
+      // The condition key is the next sort property or the $or operator, so it is not repeated
+      branch.putAll(after);
+      branches.add(branch);
+    }
+    if (branches.isEmpty()) {
+      // The last document of the previous page was the last document of the collection
+      return new Document("$expr", false);
+    }
+    return branches.size() == 1 ? branches.get(0) : new Document("$or", branches);
+  }
+
+  private static Document afterCondition(SortProperty property, BsonValue value) {
+    String name = property.getPropertyName();
+    if (value.isNull()) {
+      // The null is the lowest value, no document follows it in the descending order
+      return property.isDescending() ? null : new Document(name, new Document("$ne", null));
+    }
+    if (!property.isDescending()) {
+      return new Document(name, new Document("$gt", value));
+    }
+    return new Document(
+        "$or", List.of(new Document(name, new Document("$lt", value)), new Document(name, null)));
+  }
+
+  private static BsonValue readValue(Document document, String path) {
+    Object current = document;
+    for (String part : path.split("\\.")) {
+      if (!(current instanceof Document)) {
+        return BsonNull.VALUE;
+      }
+      current = ((Document) current).get(part);
+    }
+    if (current == null) {
+      return BsonNull.VALUE;
+    }
+    // The value can be the UUID of the Edm.Guid property
+    return new Document("value", current)
+        .toBsonDocument(BsonDocument.class, TOKEN_CODEC_REGISTRY)
+        .get("value");
+  }
+
+  private static class DefaultSkipTokenOperatorResult implements SkipTokenOperatorResult {
+
+    private final List<SortProperty> sortProperties;
+    private final Bson rangeQuery;
+
+    private DefaultSkipTokenOperatorResult(List<SortProperty> sortProperties, Bson rangeQuery) {
+      this.sortProperties = sortProperties;
+      this.rangeQuery = rangeQuery;
+    }
+
+    @Override
+    public boolean isSkipTokenPresent() {
+      return rangeQuery != null;
+    }
+
+    @Override
+    public List<SortProperty> getSortProperties() {
+      return sortProperties;
+    }
+
+    @Override
+    public String createSkipToken(Document lastDocument) {
+      if (lastDocument == null) {
+        throw new IllegalArgumentException("The last document can not be null");
+      }
+      BsonArray values = new BsonArray();
+      for (SortProperty property : sortProperties) {
+        values.add(readValue(lastDocument, property.getPropertyName()));
+      }
+      BsonDocument token =
+          new BsonDocument(SORT_KEYS_PROPERTY, sortKeys(sortProperties))
+              .append(VALUES_PROPERTY, values);
+      return Base64.getUrlEncoder()
+          .withoutPadding()
+          .encodeToString(
+              token.toJson(TOKEN_JSON_WRITER_SETTINGS).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public List<Bson> getStageObjects() {
+      List<Bson> stages = new ArrayList<>();
+      if (rangeQuery != null) {
+        stages.add(new Document("$match", rangeQuery));
+      }
+      Document sort = new Document();
+      for (SortProperty property : sortProperties) {
+        sort.append(property.getPropertyName(), property.isDescending() ? -1 : 1);
+      }
+      stages.add(new Document("$sort", sort));
+      return Collections.unmodifiableList(stages);
+    }
+
+    @Override
+    public List<String> getUsedMongoDocumentProperties() {
+      return sortProperties.stream()
+          .map(SortProperty::getPropertyName)
+          .collect(Collectors.toUnmodifiableList());
+    }
+
+    @Override
+    public List<String> getWrittenMongoDocumentProperties() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> getAddedMongoDocumentProperties() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> getRemovedMongoDocumentProperties() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isDocumentShapeRedefined() {
+      return false;
+    }
+  }
+}
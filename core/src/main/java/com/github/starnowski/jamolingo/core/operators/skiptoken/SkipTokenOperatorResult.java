@@ -0,0 +1,40 @@
+package com.github.starnowski.jamolingo.core.operators.skiptoken;
+
+import com.github.starnowski.jamolingo.core.operators.OlingoOperatorResult;
+import com.github.starnowski.jamolingo.core.operators.orderby.SortProperty;
+import java.util.List;
+import org.bson.Document;
+
+/**
+ * Represents the result of processing an OData $skiptoken system query option. The stage objects
+ * are the $match stage that selects the documents after the last document of the previous page, if
+ * the skip token is present, and the $sort stage with the "_id" property appended as the
+ * tiebreaker. The stages replace the stages of the $orderby and $skip options.
+ */
+public interface SkipTokenOperatorResult extends OlingoOperatorResult {
+
+  /**
+   * Returns true if the $skiptoken option is present.
+   *
+   * @return true if the skip token is present
+   */
+  boolean isSkipTokenPresent();
+
+  /**
+   * Returns the sort properties of the keyset, the $orderby properties followed by the "_id"
+   * property.
+   *
+   * @return the sort properties
+   */
+  List<SortProperty> getSortProperties();
+
+  /**
+   * Creates the opaque skip token of the next page from the last document of the current page. The
+   * document has to contain the sort properties, so it should be the document before the $project
+   * stage or the $select option has to include the sort properties.
+   *
+   * @param lastDocument the last document of the current page
+   * @return the skip token
+   */
+  String createSkipToken(Document lastDocument);
+}
@@ -0,0 +1,318 @@
+package com.github.starnowski.jamolingo.core.query;
+
+import com.github.starnowski.jamolingo.core.operators.OlingoOperatorResult;
+import com.github.starnowski.jamolingo.core.operators.filter.FilterOperatorQueryObjectResult;
+import com.github.starnowski.jamolingo.core.operators.orderby.OrderByOperatorResult;
+import com.github.starnowski.jamolingo.core.operators.select.SelectOperatorResult;
+import com.github.starnowski.jamolingo.core.operators.skip.SkipOperatorResult;
+import com.github.starnowski.jamolingo.core.operators.top.TopOperatorResult;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+/**
+ * Read query assembled from the results of the $filter, $orderby, $skip, $top and $select parsers.
+ * The query can be executed with the "find" command when the filter is the plain query object and
+ * each of the other results consists of the single stage that has the equivalent "find" option. The
+ * "find" command has lower overhead on the server than the aggregation pipeline and its plans are
+ * cached in the same way for all the queries of the same shape. Otherwise, the query has to be
+ * executed with the aggregation pipeline returned by {@link #getPipeline()}.
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * List<Document> documents =
+ *     query.execute(
+ *         q ->
+ *             collection
+ *                 .find(q.getFilter())
+ *                 .sort(q.getSort())
+ *                 .skip(q.getSkip())
+ *                 .limit(q.getLimit())
+ *                 .projection(q.getProjection())
+ *                 .into(new ArrayList<>()),
+ *         pipeline -> collection.aggregate(pipeline).into(new ArrayList<>()));
+ * }</pre>
+ */
+public final class MongoReadQuery {
+
+  private final boolean findQuery;
+  private final Bson filter;
+  private final Bson sort;
+  private final int skip;
+  private final int limit;
+  private final Bson projection;
+  private final List<Bson> pipeline;
+
+  private MongoReadQuery(
+      boolean findQuery,
+      Bson filter,
+      Bson sort,
+      int skip,
+      int limit,
+      Bson projection,
+      List<Bson> pipeline) {
+    this.findQuery = findQuery;
+    this.filter = filter;
+    this.sort = sort;
+    this.skip = skip;
+    this.limit = limit;
+    this.projection = projection;
+    this.pipeline = Collections.unmodifiableList(pipeline);
+  }
+
+  /**
+   * Returns true if the query can be executed with the "find" command.
+   *
+   * @return true for the "find" command, false for the aggregation pipeline
+   */
+  public boolean isFindQuery() {
+    return findQuery;
+  }
+
+  /**
+   * Returns the filter of the "find" command, the empty document if there is no filter.
+   *
+   * @return the filter
+   */
+  public Bson getFilter() {
+    return filter;
+  }
+
+  /**
+   * Returns the sort of the "find" command or null if there is no sort.
+   *
+   * @return the sort
+   */
+  public Bson getSort() {
+    return sort;
+  }
+
+  /**
+   * Returns the number of documents to skip in the "find" command, zero if there is no $skip.
+   *
+   * @return the number of documents to skip
+   */
+  public int getSkip() {
+    return skip;
+  }
+
+  /**
+   * Returns the limit of the "find" command, zero if there is no $top, which means no limit.
+   *
+   * @return the limit
+   */
+  public int getLimit() {
+    return limit;
+  }
+
+  /**
+   * Returns the projection of the "find" command or null if there is no projection.
+   *
+   * @return the projection
+   */
+  public Bson getProjection() {
+    return projection;
+  }
+
+  /**
+   * Returns the aggregation pipeline equivalent to the query. The pipeline is returned also for the
+   * query that can be executed with the "find" command.
+   *
+   * @return the read-only list of the pipeline stages
+   */
+  public List<Bson> getPipeline() {
+    return pipeline;
+  }
+
+  /**
+   * Executes the query with the "find" command, if possible, or with the aggregation pipeline.
+   *
+   * @param findExecutor the function that executes the "find" command for this query
+   * @param aggregateExecutor the function that executes the aggregation pipeline
+   * @param <R> the type of the result
+   * @return the result returned by the executed function
+   */
+  public <R> R execute(
+      Function<MongoReadQuery, R> findExecutor, Function<List<Bson>, R> aggregateExecutor) {
+    return findQuery ? findExecutor.apply(this) : aggregateExecutor.apply(pipeline);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    MongoReadQuery that = (MongoReadQuery) o;
+    return findQuery == that.findQuery
+        && skip == that.skip
+        && limit == that.limit
+        && Objects.equals(filter, that.filter)
+        && Objects.equals(sort, that.sort)
+        && Objects.equals(projection, that.projection)
+        && Objects.equals(pipeline, that.pipeline);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(findQuery, filter, sort, skip, limit, projection, pipeline);
+  }
+
+  @Override
+  public String toString() {
+    return "MongoReadQuery{"
+        + "findQuery="
+        + findQuery
+        + ", filter="
+        + filter
+        + ", sort="
+        + sort
+        + ", skip="
+        + skip
+        + ", limit="
+        + limit
+        + ", projection="
+        + projection
+        + ", pipeline="
+        + pipeline
+        + '}';
+  }
+
+  /**
+   * Creates a new builder for MongoReadQuery.
+   *
+   * @return the builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Builder for MongoReadQuery. */
+  public static class Builder {
+    private FilterOperatorQueryObjectResult filter;
+    private OrderByOperatorResult orderBy;
+    private SkipOperatorResult skip;
+    private TopOperatorResult top;
+    private SelectOperatorResult select;
+
+    /**
+     * Sets the result of the $filter parser.
+     *
+     * @param filter the result of the parseQueryObject method of the $filter parser
+     * @return the builder
+     */
+    public Builder withFilter(FilterOperatorQueryObjectResult filter) {
+      this.filter = filter;
+      return this;
+    }
+
+    /**
+     * Sets the result of the $orderby parser.
+     *
+     * @param orderBy the $orderby result
+     * @return the builder
+     */
+    public Builder withOrderBy(OrderByOperatorResult orderBy) {
+      this.orderBy = orderBy;
+      return this;
+    }
+
+    /**
+     * Sets the result of the $skip parser.
+     *
+     * @param skip the $skip result
+     * @return the builder
+     */
+    public Builder withSkip(SkipOperatorResult skip) {
+      this.skip = skip;
+      return this;
+    }
+
+    /**
+     * Sets the result of the $top parser.
+     *
+     * @param top the $top result
+     * @return the builder
+     */
+    public Builder withTop(TopOperatorResult top) {
+      this.top = top;
+      return this;
+    }
+
+    /**
+     * Sets the result of the $select parser.
+     *
+     * @param select the $select result
+     * @return the builder
+     */
+    public Builder withSelect(SelectOperatorResult select) {
+      this.select = select;
+      return this;
+    }
+
+    /**
+     * Builds the MongoReadQuery.
+     *
+     * @return the query
+     * @throws IllegalArgumentException if the filter result has the cause of failure
+     */
+    public MongoReadQuery build() {
+      if (filter != null && filter.getCause() != null) {
+        throw new IllegalArgumentException(
+            "The filter result can not have the cause of failure", filter.getCause());
+      }
+      Bson filterObject = filter == null ? null : filter.getQueryObject();
+      List<Bson> pipeline = new ArrayList<>();
+      if (filterObject != null) {
+        pipeline.add(new Document("$match", filterObject));
+      }
+      addStages(pipeline, orderBy);
+      addStages(pipeline, skip);
+      addStages(pipeline, top);
+      addStages(pipeline, select);
+      Bson sortObject = singleStageValue(orderBy, "$sort");
+      Bson projectionObject = singleStageValue(select, "$project");
+      boolean findQuery =
+          (filter == null || !filter.isAggregationPipelineRequired())
+              && (isEmpty(orderBy) || sortObject != null)
+              && (isEmpty(select) || projectionObject != null)
+              // the limit 0 of the "find" command means no limit
+              && (isEmpty(top) || top.getTopValue() > 0);
+      return new MongoReadQuery(
+          findQuery,
+          filterObject == null ? new Document() : filterObject,
+          sortObject,
+          isEmpty(skip) ? 0 : skip.getSkipValue(),
+          isEmpty(top) ? 0 : top.getTopValue(),
+          projectionObject,
+          pipeline);
+    }
+
+    private static void addStages(List<Bson> pipeline, OlingoOperatorResult result) {
+      if (!isEmpty(result)) {
+        pipeline.addAll(result.getStageObjects());
+      }
+    }
+
+    private static boolean isEmpty(OlingoOperatorResult result) {
+      return result == null
+          || result.getStageObjects() == null
+          || result.getStageObjects().isEmpty();
+    }
+
+    private static Bson singleStageValue(OlingoOperatorResult result, String stageName) {
+      if (isEmpty(result) || result.getStageObjects().size() != 1) {
+        return null;
+      }
+      Bson stage = result.getStageObjects().get(0);
+      if (!(stage instanceof Document) || ((Document) stage).size() != 1) {
+        return null;
+      }
+      Object value = ((Document) stage).get(stageName);
+      return value instanceof Bson ? (Bson) value : null;
+    }
+  }
+}
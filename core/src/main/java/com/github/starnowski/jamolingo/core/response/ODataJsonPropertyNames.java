@@ -0,0 +1,145 @@
+package com.github.starnowski.jamolingo.core.response;
+
+import com.github.starnowski.jamolingo.core.context.EntityPropertiesMongoPathContext;
+import com.github.starnowski.jamolingo.core.context.MongoPathEntry;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable tree that maps the names of the MongoDB document properties to the names of the EDM
+ * properties, used by the {@link ODataJsonResponseWriter} to rename the properties while the
+ * document is written. Only the mappings where the MongoDB path has the same depth as the EDM path
+ * can be applied to the streamed document. The properties moved to a different level, for example
+ * with the "relativeTo" or "flattenedLevelUp" options, have to be reshaped by the $project stage.
+ */
+public final class ODataJsonPropertyNames {
+
+  private static final ODataJsonPropertyNames EMPTY =
+      new ODataJsonPropertyNames(null, Collections.emptyMap());
+
+  private final String edmName;
+  private final Map<String, ODataJsonPropertyNames> children;
+
+  private ODataJsonPropertyNames(String edmName, Map<String, ODataJsonPropertyNames> children) {
+    this.edmName = edmName;
+    this.children = children;
+  }
+
+  /**
+   * Creates the property names from the EDM to MongoDB paths of the entity.
+   *
+   * @param context the context of the entity
+   * @return the property names
+   */
+  public static ODataJsonPropertyNames of(EntityPropertiesMongoPathContext context) {
+    Map<String, String> edmToMongoPaths = new HashMap<>();
+    for (Map.Entry<String, MongoPathEntry> entry : context.getEdmToMongoPath().entrySet()) {
+      edmToMongoPaths.put(entry.getKey(), entry.getValue().getMongoPath());
+    }
+    return of(edmToMongoPaths);
+  }
+
+  /**
+   * Creates the property names from the map of EDM paths, for example "Address/City", to MongoDB
+   * paths, for example "address.city".
+   *
+   * @param edmToMongoPaths the map of EDM paths to MongoDB paths
+   * @return the property names
+   */
+  public static ODataJsonPropertyNames of(Map<String, String> edmToMongoPaths) {
+    Builder root = new Builder();
+    for (Map.Entry<String, String> entry : edmToMongoPaths.entrySet()) {
+      if (entry.getValue() == null) {
+        continue;
+      }
+      String[] edmSegments = entry.getKey().split("/");
+      String[] mongoSegments = entry.getValue().split("\\.");
+      if (edmSegments.length != mongoSegments.length) {
+        continue;
+      }
+      Builder node = root;
+      for (int i = 0; i < mongoSegments.length; i++) {
+        node = node.children.computeIfAbsent(mongoSegments[i], key -> new Builder());
+        node.edmName = edmSegments[i];
+      }
+    }
+    return root.build();
+  }
+
+  /**
+   * Returns the property names without any mapping, the properties are written with the MongoDB
+   * names.
+   *
+   * @return the empty property names
+   */
+  public static ODataJsonPropertyNames empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Returns the EDM name of the property or null if the property is not mapped.
+   *
+   * @return the EDM name
+   */
+  public String getEdmName() {
+    return edmName;
+  }
+
+  /**
+   * Returns the names of the nested property.
+   *
+   * @param mongoName the MongoDB name of the nested property
+   * @return the names of the nested property or null if the property is not mapped
+   */
+  public ODataJsonPropertyNames getChild(String mongoName) {
+    return children.get(mongoName);
+  }
+
+  /**
+   * Returns true if there are no mapped nested properties.
+   *
+   * @return true if there are no mapped nested properties
+   */
+  public boolean isEmpty() {
+    return children.isEmpty();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    ODataJsonPropertyNames that = (ODataJsonPropertyNames) o;
+    return Objects.equals(edmName, that.edmName) && Objects.equals(children, that.children);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(edmName, children);
+  }
+
+  @Override
+  public String toString() {
+    return "ODataJsonPropertyNames{"
+        + "edmName='"
+        + edmName
+        + '\''
+        + ", children="
+        + children
+        + '}';
+  }
+
+  private static final class Builder {
+    private String edmName;
+    private final Map<String, Builder> children = new HashMap<>();
+
+    private ODataJsonPropertyNames build() {
+      Map<String, ODataJsonPropertyNames> built = new HashMap<>();
+      for (Map.Entry<String, Builder> entry : children.entrySet()) {
+        built.put(entry.getKey(), entry.getValue().build());
+      }
+      return new ODataJsonPropertyNames(edmName, Collections.unmodifiableMap(built));
+    }
+  }
+}
@@ -0,0 +1,405 @@
+package com.github.starnowski.jamolingo.core.response;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import org.bson.BsonBinary;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinarySubType;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.RawBsonDocument;
+import org.bson.io.ByteBufferBsonInput;
+import org.bson.types.Decimal128;
+
+/**
+ * Writes the OData JSON payload directly from the bytes of the {@link RawBsonDocument} results to
+ * the output stream. The documents are read with the {@link BsonBinaryReader} and written token by
+ * token, so no intermediate {@code Document} maps are created. The MongoDB property names are
+ * renamed to the EDM names with {@link ODataJsonPropertyNames} while the document is written. The
+ * raw documents can be read with {@code collection.withDocumentClass(RawBsonDocument.class)}.
+ *
+ * <p>The BSON values are written as the OData JSON values: the ObjectId as the hexadecimal string,
+ * the date as the ISO-8601 string of the Edm.DateTimeOffset, the binary as the base64url string of
+ * the Edm.Binary, the UUID as the string of the Edm.Guid and the special double values as the
+ * "NaN", "INF" and "-INF" strings. The 64-bit integers and decimals are written as strings when the
+ * IEEE754Compatible format is enabled, the same applies to the Int64 and Decimal annotations, for
+ * example "@odata.count".
+ *
+ * <p>The writer is immutable and thread safe.
+ */
+public final class ODataJsonResponseWriter {
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private final ODataJsonPropertyNames propertyNames;
+  private final boolean unmappedPropertiesSkipped;
+  private final boolean ieee754Compatible;
+
+  private ODataJsonResponseWriter(
+      ODataJsonPropertyNames propertyNames,
+      boolean unmappedPropertiesSkipped,
+      boolean ieee754Compatible) {
+    this.propertyNames = propertyNames;
+    this.unmappedPropertiesSkipped = unmappedPropertiesSkipped;
+    this.ieee754Compatible = ieee754Compatible;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Writes the collection payload: the annotations, for example "@odata.count", the "value" array
+   * with the documents and the "@odata.nextLink" annotation. The output stream is flushed but not
+   * closed.
+   *
+   * @param outputStream the output stream
+   * @param documents the documents of the collection, consumed one at a time
+   * @param annotations the annotations written before the "value" array, can be null
+   * @param nextLink the URL of the next page or null if there is no next page
+   * @throws IOException if writing to the output stream fails
+   */
+  public void writeCollection(
+      OutputStream outputStream,
+      Iterator<? extends RawBsonDocument> documents,
+      Map<String, ?> annotations,
+      String nextLink)
+      throws IOException {
+    Writer writer = writer(outputStream);
+    writer.write('{');
+    for (Map.Entry<String, ?> annotation :
+        (annotations == null ? Collections.<String, Object>emptyMap() : annotations).entrySet()) {
+      writeString(writer, annotation.getKey());
+      writer.write(':');
+      writeScalar(writer, annotation.getValue());
+      writer.write(',');
+    }
+    writer.write("\"value\":[");
+    boolean first = true;
+    while (documents.hasNext()) {
+      if (!first) {
+        writer.write(',');
+      }
+      first = false;
+      writeDocument(writer, documents.next());
+    }
+    writer.write(']');
+    if (nextLink != null) {
+      writer.write(",\"@odata.nextLink\":");
+      writeString(writer, nextLink);
+    }
+    writer.write('}');
+    writer.flush();
+  }
+
+  /**
+   * Writes the single entity payload. The output stream is flushed but not closed.
+   *
+   * @param outputStream the output stream
+   * @param document the entity document
+   * @throws IOException if writing to the output stream fails
+   */
+  public void writeEntity(OutputStream outputStream, RawBsonDocument document) throws IOException {
+    Writer writer = writer(outputStream);
+    writeDocument(writer, document);
+    writer.flush();
+  }
+
+  private static Writer writer(OutputStream outputStream) {
+    return new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 8192);
+  }
+
+  private void writeDocument(Writer writer, RawBsonDocument document) throws IOException {
+    try (BsonBinaryReader reader =
+        new BsonBinaryReader(new ByteBufferBsonInput(document.getByteBuffer()))) {
+      writeDocument(writer, reader, propertyNames);
+    }
+  }
+
+  private void writeDocument(Writer writer, BsonReader reader, ODataJsonPropertyNames names)
+      throws IOException {
+    reader.readStartDocument();
+    writer.write('{');
+    boolean first = true;
+    while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+      String mongoName = reader.readName();
+      ODataJsonPropertyNames child = names == null ? null : names.getChild(mongoName);
+      String name;
+      if (child != null && child.getEdmName() != null) {
+        name = child.getEdmName();
+      } else if (unmappedPropertiesSkipped && names != null && !names.isEmpty()) {
+        reader.skipValue();
+        continue;
+      } else {
+        name = mongoName;
+      }
+      if (!first) {
+        writer.write(',');
+      }
+      first = false;
+      writeString(writer, name);
+      writer.write(':');
+      writeValue(writer, reader, child);
+    }
+    reader.readEndDocument();
+    writer.write('}');
+  }
+
+  private void writeValue(Writer writer, BsonReader reader, ODataJsonPropertyNames names)
+      throws IOException {
+    switch (reader.getCurrentBsonType()) {
+      case DOCUMENT:
+        writeDocument(writer, reader, names);
+        break;
+      case ARRAY:
+        reader.readStartArray();
+        writer.write('[');
+        boolean first = true;
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+          if (!first) {
+            writer.write(',');
+          }
+          first = false;
+          // The elements of the collection property share the names of the property
+          writeValue(writer, reader, names);
+        }
+        reader.readEndArray();
+        writer.write(']');
+        break;
+      case STRING:
+        writeString(writer, reader.readString());
+        break;
+      case INT32:
+        writer.write(Integer.toString(reader.readInt32()));
+        break;
+      case INT64:
+        writeNumber(writer, Long.toString(reader.readInt64()), ieee754Compatible);
+        break;
+      case DOUBLE:
+        writeDouble(writer, reader.readDouble());
+        break;
+      case DECIMAL128:
+        writeDecimal(writer, reader.readDecimal128());
+        break;
+      case BOOLEAN:
+        writer.write(reader.readBoolean() ? "true" : "false");
+        break;
+      case DATE_TIME:
+        writeString(writer, Instant.ofEpochMilli(reader.readDateTime()).toString());
+        break;
+      case OBJECT_ID:
+        writeString(writer, reader.readObjectId().toHexString());
+        break;
+      case BINARY:
+        writeBinary(writer, reader.readBinaryData());
+        break;
+      case TIMESTAMP:
+        writeNumber(writer, Long.toString(reader.readTimestamp().getValue()), ieee754Compatible);
+        break;
+      case SYMBOL:
+        writeString(writer, reader.readSymbol());
+        break;
+      case JAVASCRIPT:
+        writeString(writer, reader.readJavaScript());
+        break;
+      case REGULAR_EXPRESSION:
+        writeString(writer, reader.readRegularExpression().getPattern());
+        break;
+      case NULL:
+        reader.readNull();
+        writer.write("null");
+        break;
+      case UNDEFINED:
+        reader.readUndefined();
+        writer.write("null");
+        break;
+      default:
+        // MinKey, MaxKey, DBPointer and JavaScript with scope have no OData representation
+        reader.skipValue();
+        writer.write("null");
+    }
+  }
+
+  private static void writeNumber(Writer writer, String value, boolean quoted) throws IOException {
+    if (quoted) {
+      writer.write('"');
+      writer.write(value);
+      writer.write('"');
+    } else {
+      writer.write(value);
+    }
+  }
+
+  private static void writeDouble(Writer writer, double value) throws IOException {
+    if (Double.isNaN(value)) {
+      writer.write("\"NaN\"");
+    } else if (Double.isInfinite(value)) {
+      writer.write(value > 0 ? "\"INF\"" : "\"-INF\"");
+    } else {
+      writer.write(Double.toString(value));
+    }
+  }
+
+  private void writeDecimal(Writer writer, Decimal128 value) throws IOException {
+    if (value.isNaN()) {
+      writer.write("\"NaN\"");
+    } else if (value.isInfinite()) {
+      writer.write(value.isNegative() ? "\"-INF\"" : "\"INF\"");
+    } else {
+      writeNumber(writer, value.bigDecimalValue().toString(), ieee754Compatible);
+    }
+  }
+
+  private static void writeBinary(Writer writer, BsonBinary binary) throws IOException {
+    if (binary.getType() == BsonBinarySubType.UUID_STANDARD.getValue()) {
+      writeString(writer, binary.asUuid().toString());
+    } else {
+      writeString(writer, Base64.getUrlEncoder().encodeToString(binary.getData()));
+    }
+  }
+
+  private void writeScalar(Writer writer, Object value) throws IOException {
+    if (value == null) {
+      writer.write("null");
+    } else if (value instanceof Boolean || value instanceof Integer) {
+      writer.write(value.toString());
+    } else if (value instanceof Long || value instanceof BigDecimal) {
+      // The Int64 and Decimal annotations, for example "@odata.count", follow the IEEE754Compatible
+      // format of the property values
+      writeNumber(writer, value.toString(), ieee754Compatible);
+    } else {
+      writeString(writer, value.toString());
+    }
+  }
+
+  private static void writeString(Writer writer, String value) throws IOException {
+    writer.write('"');
+    int start = 0;
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c >= 0x20 && c != '"' && c != '\\') {
+        continue;
+      }
+      writer.write(value, start, i - start);
+      start = i + 1;
+      switch (c) {
+        case '"':
+          writer.write("\\\"");
+          break;
+        case '\\':
+          writer.write("\\\\");
+          break;
+        case '\n':
+          writer.write("\\n");
+          break;
+        case '\r':
+          writer.write("\\r");
+          break;
+        case '\t':
+          writer.write("\\t");
+          break;
+        case '\b':
+          writer.write("\\b");
+          break;
+        case '\f':
+          writer.write("\\f");
+          break;
+        default:
+          writer.write("\\u00");
+          writer.write(HEX_DIGITS[c >> 4]);
+          writer.write(HEX_DIGITS[c & 0xF]);
+      }
+    }
+    writer.write(value, start, length - start);
+    writer.write('"');
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    ODataJsonResponseWriter that = (ODataJsonResponseWriter) o;
+    return unmappedPropertiesSkipped == that.unmappedPropertiesSkipped
+        && ieee754Compatible == that.ieee754Compatible
+        && Objects.equals(propertyNames, that.propertyNames);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(propertyNames, unmappedPropertiesSkipped, ieee754Compatible);
+  }
+
+  @Override
+  public String toString() {
+    return "ODataJsonResponseWriter{"
+        + "propertyNames="
+        + propertyNames
+        + ", unmappedPropertiesSkipped="
+        + unmappedPropertiesSkipped
+        + ", ieee754Compatible="
+        + ieee754Compatible
+        + '}';
+  }
+
+  public static class Builder {
+    private ODataJsonPropertyNames propertyNames = ODataJsonPropertyNames.empty();
+    private boolean unmappedPropertiesSkipped;
+    private boolean ieee754Compatible;
+
+    /**
+     * Sets the names of the EDM properties. By default the properties are written with the MongoDB
+     * names.
+     *
+     * @param propertyNames the property names
+     * @return the builder
+     */
+    public Builder withPropertyNames(ODataJsonPropertyNames propertyNames) {
+      this.propertyNames = propertyNames;
+      return this;
+    }
+
+    /**
+     * Sets whether the properties without the EDM name are skipped, for example the "_id" property
+     * that is not mapped to the EDM. By default the properties are written with the MongoDB names.
+     *
+     * @param unmappedPropertiesSkipped true if the properties without the EDM name are skipped
+     * @return the builder
+     */
+    public Builder withUnmappedPropertiesSkipped(boolean unmappedPropertiesSkipped) {
+      this.unmappedPropertiesSkipped = unmappedPropertiesSkipped;
+      return this;
+    }
+
+    /**
+     * Sets whether the 64-bit integers and decimals are written as strings, as requested by the
+     * "IEEE754Compatible=true" parameter of the media type.
+     *
+     * @param ieee754Compatible true if the 64-bit integers and decimals are written as strings
+     * @return the builder
+     */
+    public Builder withIeee754Compatible(boolean ieee754Compatible) {
+      this.ieee754Compatible = ieee754Compatible;
+      return this;
+    }
+
+    public ODataJsonResponseWriter build() {
+      if (propertyNames == null) {
+        throw new IllegalArgumentException("The property names can not be null");
+      }
+      return new ODataJsonResponseWriter(
+          propertyNames, unmappedPropertiesSkipped, ieee754Compatible);
+    }
+  }
+}
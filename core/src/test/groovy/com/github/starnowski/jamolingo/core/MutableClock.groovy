@@ -0,0 +1,38 @@
+package com.github.starnowski.jamolingo.core
+
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneId
+import java.time.ZoneOffset
+
+/**
+ * Clock of the specifications that returns the instant set by the test.
+ */
+class MutableClock extends Clock {
+
+    Instant instant
+
+    MutableClock(Instant instant) {
+        this.instant = instant
+    }
+
+    void advance(Duration duration) {
+        instant = instant.plus(duration)
+    }
+
+    @Override
+    ZoneId getZone() {
+        ZoneOffset.UTC
+    }
+
+    @Override
+    Clock withZone(ZoneId zone) {
+        this
+    }
+
+    @Override
+    Instant instant() {
+        instant
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.starnowski.jamolingo.core
+
+import org.bson.Document
+
+/**
+ * Helper methods that create the documents used by the specifications.
+ */
+final class TestDocuments {
+
+    private TestDocuments() {
+    }
+
+    /**
+     * Parses the JSON array of documents.
+     */
+    static List<Document> parseDocuments(String json) {
+        Document.parse("{\"arr\": " + json + "}").getList("arr", Document.class)
+    }
+}
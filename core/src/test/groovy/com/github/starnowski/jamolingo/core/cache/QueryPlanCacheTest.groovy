@@ -0,0 +1,140 @@
+package com.github.starnowski.jamolingo.core.cache
+
+import com.github.starnowski.jamolingo.core.MutableClock
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.time.Duration
+import java.time.Instant
+
+class QueryPlanCacheTest extends Specification {
+
+    @Unroll
+    def "should produce the same key for query '#first' and '#second'"() {
+        expect:
+        QueryPlanCacheKey.of("Items", first) == QueryPlanCacheKey.of("Items", second)
+
+        where:
+        first                                       | second
+        "\$top=5&\$filter=Id eq 1"                  | "\$filter=Id eq 1&\$top=5"
+        "?\$select=Name&\$skip=2"                   | "\$skip=2&\$select=Name"
+        "\$orderby=Name&&\$top=1"                   | "\$top=1&\$orderby=Name"
+        null                                        | ""
+        " \$count=true"                             | "\$count=true"
+        "%24filter=Id%20eq%201&%24top=5"            | "\$top=5&\$filter=Id eq 1"
+        "\$filter=Name eq '%c3%a9'"                 | "\$filter=Name eq '%C3%A9'"
+    }
+
+    @Unroll
+    def "should produce different keys for query '#first' and '#second'"() {
+        expect:
+        QueryPlanCacheKey.of("Items", first) != QueryPlanCacheKey.of("Items", second)
+
+        where:
+        first                                       | second
+        "\$filter=Id eq 1"                          | "\$filter=Id eq 2"
+        "\$filter=Id eq 1"                          | "\$filter=Id  eq 1"
+        "\$top=5"                                   | "\$skip=5"
+        "\$filter=Name eq 'a%26b'"                  | "\$filter=Name eq 'a&b'"
+        "\$filter=Name eq 'a%2Bb'"                  | "\$filter=Name eq 'a+b'"
+    }
+
+    def "should produce different keys for different entity sets"() {
+        expect:
+        QueryPlanCacheKey.of("Items", "\$top=1") != QueryPlanCacheKey.of("Orders", "\$top=1")
+    }
+
+    def "should return cached value and count hits and misses"() {
+        given:
+        QueryPlanCache<String> tested = QueryPlanCache.<String>builder().build()
+        def key = QueryPlanCacheKey.of("Items", "\$filter=Id eq 1")
+        int loads = 0
+
+        when:
+        def first = tested.get(key, { k -> loads++; "plan" })
+        def second = tested.get(QueryPlanCacheKey.of("Items", "\$filter=Id eq 1"), { k -> loads++; "other" })
+
+        then:
+        first == "plan"
+        second == "plan"
+        loads == 1
+        tested.getHitCount() == 1
+        tested.getMissCount() == 1
+        tested.size() == 1
+    }
+
+    def "should evict least recently used entry when maximum size is exceeded"() {
+        given:
+        QueryPlanCache<String> tested = QueryPlanCache.<String>builder().withMaximumSize(2).build()
+        def key1 = QueryPlanCacheKey.of("Items", "\$top=1")
+        def key2 = QueryPlanCacheKey.of("Items", "\$top=2")
+        def key3 = QueryPlanCacheKey.of("Items", "\$top=3")
+        tested.put(key1, "1")
+        tested.put(key2, "2")
+        tested.getIfPresent(key1)
+
+        when:
+        tested.put(key3, "3")
+
+        then:
+        tested.size() == 2
+        tested.getEvictionCount() == 1
+        tested.getIfPresent(key1) == "1"
+        tested.getIfPresent(key2) == null
+        tested.getIfPresent(key3) == "3"
+    }
+
+    def "should expire entry after time to live"() {
+        given:
+        MutableClock clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"))
+        QueryPlanCache<String> tested = QueryPlanCache.<String>builder()
+                .withExpireAfterWrite(Duration.ofSeconds(10))
+                .withClock(clock)
+                .build()
+        def key = QueryPlanCacheKey.of("Items", "\$top=1")
+        tested.put(key, "1")
+
+        when:
+        clock.instant = clock.instant.plusSeconds(9)
+
+        then:
+        tested.getIfPresent(key) == "1"
+
+        when:
+        clock.instant = clock.instant.plusSeconds(1)
+
+        then:
+        tested.getIfPresent(key) == null
+        tested.getEvictionCount() == 1
+        tested.size() == 0
+    }
+
+    def "should not store value when loader throws exception"() {
+        given:
+        QueryPlanCache<String> tested = QueryPlanCache.<String>builder().build()
+        def key = QueryPlanCacheKey.of("Items", "\$top=1")
+
+        when:
+        tested.get(key, { k -> throw new IOException("failure") })
+
+        then:
+        thrown(IOException)
+        tested.size() == 0
+    }
+
+    @Unroll
+    def "should throw exception for invalid configuration maximumSize: #maximumSize, expireAfterWrite: #expireAfterWrite"() {
+        when:
+        QueryPlanCache.builder().withMaximumSize(maximumSize).withExpireAfterWrite(expireAfterWrite).build()
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        maximumSize | expireAfterWrite
+        0           | null
+        -1          | null
+        10          | Duration.ZERO
+        10          | Duration.ofSeconds(-1)
+    }
+}
@@ -0,0 +1,47 @@
+package com.github.starnowski.jamolingo.core.context
+
+import spock.lang.Specification
+
+class BoundedLruCacheTest extends Specification {
+
+    def "should return the remembered value"() {
+        given:
+        def tested = new BoundedLruCache<String, String>(2)
+
+        when:
+        def result = tested.putIfAbsent("key", "value")
+
+        then:
+        result == "value"
+        tested.get("key") == "value"
+        tested.get("other") == null
+    }
+
+    def "should keep the value remembered first for the same key"() {
+        given:
+        def tested = new BoundedLruCache<String, String>(2)
+        tested.putIfAbsent("key", "first")
+
+        expect:
+        tested.putIfAbsent("key", "second") == "first"
+        tested.get("key") == "first"
+        tested.size() == 1
+    }
+
+    def "should evict the least recently used value when the cache is full"() {
+        given:
+        def tested = new BoundedLruCache<String, String>(2)
+        tested.putIfAbsent("first", "1")
+        tested.putIfAbsent("second", "2")
+        tested.get("first")
+
+        when:
+        tested.putIfAbsent("third", "3")
+
+        then:
+        tested.size() == 2
+        tested.get("first") == "1"
+        tested.get("third") == "3"
+        tested.get("second") == null
+    }
+}
@@ -0,0 +1,156 @@
+package com.github.starnowski.jamolingo.core.context
+
+import com.github.starnowski.jamolingo.common.beans.KeyValue
+import com.github.starnowski.jamolingo.core.AbstractSpecification
+import com.github.starnowski.jamolingo.core.mapping.EntityMapping
+import com.github.starnowski.jamolingo.core.mapping.NavigationMapping
+import com.github.starnowski.jamolingo.core.mapping.ODataMongoMapping
+import com.github.starnowski.jamolingo.core.mapping.ODataMongoMappingFactory
+import com.github.starnowski.jamolingo.core.mapping.PropertyMapping
+import org.apache.olingo.commons.api.edm.Edm
+import spock.lang.Unroll
+
+class CompiledEdmMongoModelTest extends AbstractSpecification {
+
+    private ODataMongoMapping treeMapping(Edm edm) {
+        def mapping = new ODataMongoMappingFactory().build(edm.getSchema("MyService"))
+        mapping.getEntities().get("TreeType1").withTable("tree_type_1")
+        mapping.getEntities().get("TreeType1").getProperties().get("parentId").withMongoName("parent_id")
+        mapping
+    }
+
+    @Unroll
+    def "should return join keys #expectedJoinKeys for navigation property #navigationProperty of #typeName"() {
+        given:
+            Edm edm = loadEmdProvider("edm/edm_tree.xml")
+
+        when:
+            def result = CompiledEdmMongoModel.compile(edm, treeMapping(edm))
+
+        then:
+            result.getNavigationJoinKeys(typeName, navigationProperty) == expectedJoinKeys
+
+        where:
+            typeName              | navigationProperty || expectedJoinKeys
+            "MyService.TreeType1" | "parent"           || new NavigationJoinKeys("parent", "MyService.TreeType1", "tree_type_1", "parent_id", "_id", false)
+            "MyService.TreeType1" | "children"         || new NavigationJoinKeys("children", "MyService.TreeType1", "tree_type_1", "_id", "parent_id", true)
+            "MyService.TreeType1" | "category"         || new NavigationJoinKeys("category", "MyService.Category", "Category", "categoryId", "_id", false)
+            "MyService.TreeType1" | "treeType2s"       || new NavigationJoinKeys("treeType2s", "MyService.TreeType2", "TreeType2", "_id", "treeType1Id", true)
+            "MyService.TreeType2" | "treeType1"        || new NavigationJoinKeys("treeType1", "MyService.TreeType1", "tree_type_1", "treeType1Id", "_id", false)
+            "MyService.TreeType1" | "unknown"          || null
+            "MyService.Unknown"   | "parent"           || null
+    }
+
+    def "should return facades and collections for all mapped entity types"() {
+        given:
+            Edm edm = loadEmdProvider("edm/edm_tree.xml")
+
+        when:
+            def result = CompiledEdmMongoModel.compile(edm, treeMapping(edm))
+
+        then:
+            result.getEdmTypeMapping().keySet() == ["MyService.Category", "MyService.TreeType1", "MyService.TreeType2", "MyService.TreeType3", "MyService.TreeType4"] as Set
+            result.getEdmMongoContextFacade("MyService.TreeType1").resolveMongoPathForEDMPath("parentId").getMongoPath() == "parent_id"
+            result.getEntityPropertiesMongoPathContext("MyService.TreeType1").resolveMongoPathForEDMPath("parentId").getMongoPath() == "parent_id"
+            result.getCollectionName("MyService", "TreeType1") == "tree_type_1"
+            result.getCollectionName("MyService", "TreeType2") == "TreeType2"
+            result.getEdmTablesToMongoDBCollections().get(new KeyValue<>("MyService", "TreeType1")) == "tree_type_1"
+            result.getEdmMongoContextFacade("MyService.Unknown") == null
+            result.getCollectionName("Other", "TreeType1") == null
+    }
+
+    def "should return the same compiled facade for each lookup"() {
+        given:
+            Edm edm = loadEmdProvider("edm/edm_tree.xml")
+            def result = CompiledEdmMongoModel.compile(edm, treeMapping(edm))
+
+        expect:
+            result.getEdmMongoContextFacade("MyService.TreeType1").is(result.getEdmMongoContextFacade("MyService.TreeType1"))
+            result.getEdmTypeMapping().get("MyService.TreeType1").is(result.getEdmMongoContextFacade("MyService.TreeType1"))
+    }
+
+    def "should prefix the mongo paths with the root path of the entity mapping"() {
+        given:
+            Edm edm = loadEmdProvider("edm/edm_tree.xml")
+            def mapping = treeMapping(edm)
+            mapping.getEntities().get("TreeType2").withRootPath("nested")
+
+        when:
+            def result = CompiledEdmMongoModel.compile(edm, mapping)
+
+        then:
+            result.getEdmMongoContextFacade("MyService.TreeType2").resolveMongoPathForEDMPath("parentId").getMongoPath() == "nested.parentId"
+            result.getNavigationJoinKeys("MyService.TreeType1", "treeType2s").getForeignField() == "nested.treeType1Id"
+    }
+
+    def "should override join keys with the navigation mapping"() {
+        given:
+            Edm edm = loadEmdProvider("edm/edm_tree.xml")
+            def mapping = treeMapping(edm)
+            mapping.getEntities().get("TreeType1").getProperties().put("category", new PropertyMapping()
+                    .withNavigation(NavigationMapping.builder()
+                            .withLocalField("category_ref")
+                            .build()))
+
+        when:
+            def result = CompiledEdmMongoModel.compile(edm, mapping)
+
+        then:
+            result.getNavigationJoinKeys("MyService.TreeType1", "category") == new NavigationJoinKeys("category", "MyService.Category", "Category", "category_ref", "_id", false)
+    }
+
+    def "should return read-only maps"() {
+        given:
+            Edm edm = loadEmdProvider("edm/edm_tree.xml")
+            def result = CompiledEdmMongoModel.compile(edm, treeMapping(edm))
+
+        when:
+            result.getEdmTypeMapping().put("MyService.Other", DefaultEdmMongoContextFacade.withoutMapping())
+
+        then:
+            thrown(UnsupportedOperationException)
+
+        when:
+            result.getEdmTablesToMongoDBCollections().put(new KeyValue<>("MyService", "Other"), "other")
+
+        then:
+            thrown(UnsupportedOperationException)
+    }
+
+    def "should compile only the entity types that have the mapping"() {
+        given:
+            Edm edm = loadEmdProvider("edm/edm_tree.xml")
+            def mapping = new ODataMongoMapping()
+            def factoryEntity = new ODataMongoMappingFactory().build(edm.getSchema("MyService")).getEntities().get("TreeType1")
+            mapping.setEntities(["TreeType1": factoryEntity.withTable(null)])
+
+        when:
+            def result = CompiledEdmMongoModel.compile(edm, mapping)
+
+        then:
+            result.getEdmTypeMapping().keySet() == ["MyService.TreeType1"] as Set
+            result.getCollectionName("MyService", "TreeType1") == "MyService.TreeType1"
+            result.getNavigationJoinKeys("MyService.TreeType1", "treeType2s") == new NavigationJoinKeys("treeType2s", "MyService.TreeType2", "MyService.TreeType2", "_id", "treeType1Id", true)
+    }
+
+    @Unroll
+    def "should throw exception when #description"() {
+        given:
+            Edm edm = loadEmdProvider("edm/edm_tree.xml")
+            def mapping = new ODataMongoMapping()
+            mapping.setEntities(["NotExisting": new EntityMapping()])
+
+        when:
+            CompiledEdmMongoModel.compile(useEdm ? edm : null, useMapping ? mapping : null)
+
+        then:
+            def ex = thrown(IllegalArgumentException)
+            ex.message == expectedMessage
+
+        where:
+            description                          | useEdm | useMapping || expectedMessage
+            "EDM is null"                        | false  | true       || "The EDM can not be null"
+            "mapping is null"                    | true   | false      || "The ODataMongoMapping can not be null"
+            "mapping entity does not exist"      | true   | true       || "The entity mapping 'NotExisting' does not match any entity type of the EDM"
+    }
+}
@@ -1,5 +1,7 @@
 package com.github.starnowski.jamolingo.core.context
 
+import org.apache.olingo.commons.api.edm.EdmProperty
+import org.apache.olingo.server.api.uri.UriResourceProperty
 import spock.lang.Specification
 
 class DefaultEdmMongoContextFacadeTest extends Specification {
@@ -39,4 +41,140 @@ class DefaultEdmMongoContextFacadeTest extends Specification {
         then:
         newFacade.getRootMongoPath() == rootPath
     }
+
+    def "should return shared facade without mapping that replaces the EDM path delimiter"() {
+        given:
+        def facade = DefaultEdmMongoContextFacade.withoutMapping()
+
+        expect:
+        facade.is(DefaultEdmMongoContextFacade.withoutMapping())
+        facade.getRootMongoPath() == null
+        facade.resolveMongoPathForEDMPath("address/street").getMongoPath() == "address.street"
+    }
+
+    def "should resolve EDM path only once and return the same resolution for repeated lookups"() {
+        given:
+        def context = Mock(EntityPropertiesMongoPathContext)
+        def facade = DefaultEdmMongoContextFacade.builder()
+                .withEntityPropertiesMongoPathContext(context)
+                .withRootMongoPath("root")
+                .build()
+
+        when:
+        def first = facade.resolveMongoPathForEDMPath("address/street")
+        def second = facade.resolveMongoPathForEDMPath("address/street")
+
+        then:
+        1 * context.resolveMongoPathForEDMPath("address/street") >> { new TestMongoPathResolution("addr.street") }
+        first.is(second)
+        first.getMongoPath() == "root.addr.street"
+    }
+
+    def "should resolve list of URI resource parts without building path for repeated lookups"() {
+        given:
+        def context = Mock(EntityPropertiesMongoPathContext)
+        def facade = DefaultEdmMongoContextFacade.builder()
+                .withEntityPropertiesMongoPathContext(context)
+                .build()
+        def parts = [propertyPart("address"), propertyPart("street")]
+        def otherParts = [propertyPart("address"), propertyPart("street")]
+
+        when:
+        def first = facade.resolveMongoPathForEDMPath(parts)
+        def second = facade.resolveMongoPathForEDMPath(otherParts)
+        def byString = facade.resolveMongoPathForEDMPath("address/street")
+
+        then:
+        1 * context.resolveMongoPathForEDMPath("address/street") >> { new TestMongoPathResolution("addr.street") }
+        first.getMongoPath() == "addr.street"
+        first.is(second)
+        first.is(byString)
+    }
+
+    def "should not remember EDM path which resolution failed"() {
+        given:
+        def context = Mock(EntityPropertiesMongoPathContext)
+        def facade = DefaultEdmMongoContextFacade.builder()
+                .withEntityPropertiesMongoPathContext(context)
+                .build()
+
+        when:
+        facade.resolveMongoPathForEDMPath("unknown")
+
+        then:
+        1 * context.resolveMongoPathForEDMPath("unknown") >> { throw new EntityPropertiesMongoPathContext.InvalidEDMPathException("No 'unknown' EDM path found") }
+        thrown(EntityPropertiesMongoPathContext.InvalidEDMPathException)
+
+        when:
+        facade.resolveMongoPathForEDMPath("unknown")
+
+        then:
+        1 * context.resolveMongoPathForEDMPath("unknown") >> { throw new EntityPropertiesMongoPathContext.InvalidEDMPathException("No 'unknown' EDM path found") }
+        thrown(EntityPropertiesMongoPathContext.InvalidEDMPathException)
+    }
+
+    def "should evict the least recently used EDM path when the limit is reached"() {
+        given:
+        def context = Mock(EntityPropertiesMongoPathContext)
+        def facade = new DefaultEdmMongoContextFacade(context, null, null, 2)
+
+        when:
+        def first = facade.resolveMongoPathForEDMPath("first")
+        facade.resolveMongoPathForEDMPath("second")
+        facade.resolveMongoPathForEDMPath("first")
+        facade.resolveMongoPathForEDMPath("third")
+
+        then:
+        1 * context.resolveMongoPathForEDMPath("first") >> { new TestMongoPathResolution("first") }
+        1 * context.resolveMongoPathForEDMPath("second") >> { new TestMongoPathResolution("second") }
+        1 * context.resolveMongoPathForEDMPath("third") >> { new TestMongoPathResolution("third") }
+
+        when:
+        def firstAgain = facade.resolveMongoPathForEDMPath("first")
+        facade.resolveMongoPathForEDMPath("third")
+        facade.resolveMongoPathForEDMPath("second")
+
+        then:
+        1 * context.resolveMongoPathForEDMPath("second") >> { new TestMongoPathResolution("second") }
+        0 * context._
+        firstAgain.is(first)
+    }
+
+    def "should evict the least recently used list of URI resource parts when the limit is reached"() {
+        given:
+        def context = Mock(EntityPropertiesMongoPathContext)
+        def facade = new DefaultEdmMongoContextFacade(context, null, null, 1)
+
+        when:
+        facade.resolveMongoPathForEDMPath([propertyPart("address"), propertyPart("street")])
+        facade.resolveMongoPathForEDMPath([propertyPart("name")])
+        def result = facade.resolveMongoPathForEDMPath([propertyPart("address"), propertyPart("street")])
+
+        then:
+        2 * context.resolveMongoPathForEDMPath("address/street") >> { new TestMongoPathResolution("addr.street") }
+        1 * context.resolveMongoPathForEDMPath("name") >> { new TestMongoPathResolution("name") }
+        result.getMongoPath() == "addr.street"
+    }
+
+    private UriResourceProperty propertyPart(String name) {
+        def property = Stub(EdmProperty) {
+            getName() >> name
+        }
+        Stub(UriResourceProperty) {
+            getProperty() >> property
+        }
+    }
+
+    private static class TestMongoPathResolution implements MongoPathResolution {
+        private final String mongoPath
+
+        TestMongoPathResolution(String mongoPath) {
+            this.mongoPath = mongoPath
+        }
+
+        @Override
+        String getMongoPath() {
+            return mongoPath
+        }
+    }
 }
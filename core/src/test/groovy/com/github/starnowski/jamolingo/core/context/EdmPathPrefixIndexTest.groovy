@@ -0,0 +1,31 @@
+package com.github.starnowski.jamolingo.core.context
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class EdmPathPrefixIndexTest extends Specification {
+
+    @Unroll
+    def "should return longest parent path '#expectedPath' for edm path '#edmPath'"() {
+        given:
+            def tested = EdmPathPrefixIndex.of(["Id", "PropA", "PropA/PropB", "PropA/PropB/PropA", "PropA/PropBExt", "Addr"])
+
+        when:
+            def result = tested.findLongestParentPath(edmPath)
+
+        then:
+            result == expectedPath
+
+        where:
+            edmPath                             ||  expectedPath
+            "PropA/PropB/PropA/StringProperty"  ||  "PropA/PropB/PropA"
+            "PropA/PropB/PropC/StringProperty"  ||  "PropA/PropB"
+            "PropA/PropB"                       ||  "PropA"
+            "PropA/PropBExt/Name"               ||  "PropA/PropBExt"
+            "PropA/PropBE/Name"                 ||  "PropA"
+            "Address/Street"                    ||  null
+            "PropA"                             ||  null
+            "Id"                                ||  null
+            ""                                  ||  null
+    }
+}
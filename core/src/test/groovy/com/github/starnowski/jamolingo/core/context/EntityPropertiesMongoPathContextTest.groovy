@@ -350,6 +350,60 @@ class EntityPropertiesMongoPathContextTest extends Specification {
     }
 
 
+    def "should return remembered mongo path for circular edm path only for the same search limits"() {
+        given:
+            def mappings = prepareEdmToMongoPathOneToOneMappingWithCircularReferences()
+            def tested = new DefaultEntityPropertiesMongoPathContext(mappings)
+            def edmPath = "PropC/PropB/PropA/PropB/PropC/PropA/StringProperty"
+            def limitedSearchContext = DefaultEdmPathContextSearch.builder().withMongoPathMaxDepth(2).build()
+
+        when:
+            def first = tested.resolveMongoPathForEDMPath(edmPath)
+            def second = tested.resolveMongoPathForEDMPath(edmPath)
+
+        then:
+            first.getMongoPath() == "PropC.PropB.PropA.PropB.PropC.PropA.StringProperty"
+            second == first
+
+        when:
+            tested.resolveMongoPathForEDMPath(edmPath, limitedSearchContext)
+
+        then:
+            thrown(EntityPropertiesMongoPathContext.MongoPathMaxDepthException)
+    }
+
+    def "should evict the least recently used circular edm path when the limit is reached"() {
+        given:
+            def tested = new DefaultEntityPropertiesMongoPathContext(prepareEdmToMongoPathOneToOneMappingWithCircularReferences(), null, 2)
+            def firstPath = "PropC/PropB/PropA/PropB/StringProperty"
+            def secondPath = "PropA/PropB/PropC/PropB/StringProperty"
+            def thirdPath = "PropC/PropB/PropA/StringProperty"
+            def first = tested.resolveMongoPathForEDMPath(firstPath)
+            def second = tested.resolveMongoPathForEDMPath(secondPath)
+            tested.resolveMongoPathForEDMPath(firstPath)
+
+        when:
+            def third = tested.resolveMongoPathForEDMPath(thirdPath)
+
+        then:
+            tested.resolveMongoPathForEDMPath(firstPath).is(first)
+            tested.resolveMongoPathForEDMPath(thirdPath).is(third)
+            !tested.resolveMongoPathForEDMPath(secondPath).is(second)
+            tested.resolveMongoPathForEDMPath(secondPath).getMongoPath() == "PropA.PropB.PropC.PropB.StringProperty"
+    }
+
+    def "should not change resolved paths when the source map is modified after the context was created"() {
+        given:
+            def mappings = new HashMap<String, MongoPathEntry>(prepareEdmToMongoPathOneToOneMappingWithCircularReferences())
+            def tested = new DefaultEntityPropertiesMongoPathContext(mappings)
+
+        when:
+            mappings.remove("PropA/PropB/StringProperty")
+
+        then:
+            tested.resolveMongoPathForEDMPath("PropC/PropB/PropA/PropB/StringProperty").getMongoPath() == "PropC.PropB.PropA.PropB.StringProperty"
+    }
+
     private static Map<String, MongoPathEntry> prepareEdmToMongoPathOneToOneMappingWithCircularReferences() {
         Map.ofEntries(
                 Map.entry("Id", new MongoPathEntry.MongoPathEntryBuilder().withEdmPath("Id").withMongoPath("Id").withType("Edm.String").withKey(true).build()),
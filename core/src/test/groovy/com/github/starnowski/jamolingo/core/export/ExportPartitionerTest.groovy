@@ -0,0 +1,129 @@
+package com.github.starnowski.jamolingo.core.export
+
+import com.github.starnowski.jamolingo.core.context.EntityPropertiesMongoPathContextBuilder
+import com.github.starnowski.jamolingo.core.mapping.EntityMapping
+import com.github.starnowski.jamolingo.core.mapping.PropertyMapping
+import org.bson.Document
+import org.bson.types.Decimal128
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class ExportPartitionerTest extends Specification {
+
+    def "should return sample pipeline for the key path"() {
+        expect:
+        new ExportPartitioner().sampleBoundariesPipeline("code", 100) == [
+                Document.parse("{'\$sample': {'size': 100}}"),
+                Document.parse("{'\$project': {'_id': 0, 'value': '\$code'}}"),
+                Document.parse("{'\$sort': {'value': 1}}")
+        ]
+    }
+
+    @Unroll
+    def "should split sample #sampleValues into partitions with boundaries #expectedBoundaries for partition count #partitionCount"() {
+        given:
+        def sample = sampleValues.collect { new Document("value", it) }
+
+        when:
+        def result = new ExportPartitioner().partition("_id", sample, partitionCount)
+
+        then:
+        result.size() == expectedBoundaries.size() + 1
+        result*.getLowerBound() == [null] + expectedBoundaries
+        result*.getUpperBound() == expectedBoundaries + [null]
+
+        where:
+        sampleValues                    | partitionCount    || expectedBoundaries
+        [1, 2, 3, 4, 5, 6, 7, 8]        | 4                 || [3, 5, 7]
+        [8, 7, 6, 5, 4, 3, 2, 1]        | 2                 || [5]
+        [1, 1, 1, 1, 2, 2, 2, 2]        | 4                 || [2]
+        [1, 2, 3]                       | 1                 || []
+        []                              | 4                 || []
+        ["a", "b", "c", "d"]            | 2                 || ["c"]
+        [1, "a", "b", "c", "d", 2]      | 2                 || ["c"]
+        [Double.POSITIVE_INFINITY, 1, Double.NEGATIVE_INFINITY, 2]                              | 2 || [2]
+        [Decimal128.POSITIVE_INFINITY, 3, Decimal128.NEGATIVE_INFINITY, Decimal128.NEGATIVE_ZERO] | 2 || [3]
+    }
+
+    def "should return match stage and pipeline of the partition"() {
+        given:
+        def partition = new ExportPartition("code", 10, 20)
+        def stage = new Document("\$limit", 5)
+
+        expect:
+        partition.getMatchStage() == Document.parse("{'\$match': {'code': {'\$gte': 10, '\$lt': 20}}}")
+        partition.toPipeline([stage]) == [partition.getMatchStage(), stage]
+        new ExportPartition("code", null, null).getMatchStage() == Document.parse("{'\$match': {}}")
+        new ExportPartition("code", null, 3).getMatchStage() == Document.parse("{'\$match': {'code': {'\$not': {'\$gte': 3}}}}")
+        new ExportPartition("code", 3, null).getMatchStage() == Document.parse("{'\$match': {'code': {'\$gte': 3}}}")
+    }
+
+    def "should read each document with the missing, null or mixed-type key by exactly one partition"() {
+        given:
+        def sample = [5, 1, "x", 3, 7, 2, 9, 4].collect { new Document("value", it) }
+        def documents = [
+                new Document("_id", 1), new Document("_id", 4.5d), new Document("_id", 9L), new Document("_id", 100),
+                new Document("_id", Double.NaN), new Document("_id", "x"), new Document("_id", true),
+                new Document("_id", null), new Document("name", "no key")
+        ]
+
+        when:
+        def partitions = new ExportPartitioner().partition("_id", sample, 3)
+
+        then:
+        partitions.size() == 3
+        documents.every { document -> partitions.count { matches(it, document) } == 1 }
+    }
+
+    @Unroll
+    def "should resolve key path #expectedKeyPath"() {
+        given:
+        def context = mapping == null ? null : new EntityPropertiesMongoPathContextBuilder().build(mapping)
+
+        expect:
+        new ExportPartitioner().resolveKeyPath(context) == expectedKeyPath
+
+        where:
+        mapping                                                                                                                                         || expectedKeyPath
+        null                                                                                                                                            || "_id"
+        new EntityMapping().withTable("Item").withProperties(Map.of("Name", new PropertyMapping()))                                                      || "_id"
+        new EntityMapping().withTable("Item").withProperties(Map.of("Code", new PropertyMapping().withKey(true).withMongoName("code")))                  || "code"
+        new EntityMapping().withTable("Item").withProperties(Map.of("A", new PropertyMapping().withKey(true), "B", new PropertyMapping().withKey(true))) || "_id"
+    }
+
+    def "should throw exception when partition count is not positive"() {
+        when:
+        new ExportPartitioner().partition("_id", [], 0)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    /**
+     * Evaluates the $match stage of the partition like MongoDB, the comparison operators match only the values of
+     * the same BSON type as the bound.
+     */
+    private static boolean matches(ExportPartition partition, Document document) {
+        Document range = ((Document) partition.getMatchStage()).get("\$match", Document).get(partition.getKeyPath(), Document)
+        if (range == null) {
+            return true
+        }
+        Object value = document.get(partition.getKeyPath())
+        boolean result = true
+        if (range.containsKey("\$gte")) {
+            result &= sameType(value, range.get("\$gte")) && DocumentSortComparator.compareValues(value, range.get("\$gte")) >= 0
+        }
+        if (range.containsKey("\$lt")) {
+            result &= sameType(value, range.get("\$lt")) && DocumentSortComparator.compareValues(value, range.get("\$lt")) < 0
+        }
+        if (range.containsKey("\$not")) {
+            Object bound = range.get("\$not", Document).get("\$gte")
+            result &= !(sameType(value, bound) && DocumentSortComparator.compareValues(value, bound) >= 0)
+        }
+        result
+    }
+
+    private static boolean sameType(Object value, Object bound) {
+        value != null && (value instanceof Number ? bound instanceof Number : value.getClass() == bound.getClass())
+    }
+}
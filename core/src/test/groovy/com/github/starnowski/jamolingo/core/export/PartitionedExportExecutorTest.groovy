@@ -0,0 +1,204 @@
+package com.github.starnowski.jamolingo.core.export
+
+import com.github.starnowski.jamolingo.core.operators.orderby.SortProperty
+import org.bson.Document
+import org.bson.conversions.Bson
+import spock.lang.Specification
+import spock.lang.Unroll
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class PartitionedExportExecutorTest extends Specification {
+
+    static final List<Document> DOCUMENTS = (1..100).collect { new Document("_id", it).append("name", "n" + ((it * 37) % 100).toString().padLeft(2, "0")) }
+
+    def partitions = new ExportPartitioner().partition("_id", (1..100).collect { new Document("value", it) }, 4)
+
+    def "should return all documents of the partitions"() {
+        given:
+        def tested = PartitionedExportExecutor.builder().withQueueCapacity(3).build()
+        def executed = new CopyOnWriteArrayList<List<Bson>>()
+
+        when:
+        def cursor = tested.executeUnordered(partitions, [], { pipeline -> executed.add(pipeline); inMemory(pipeline) })
+        def result = cursor.collect()
+
+        then:
+        result*.get("_id").sort() == (1..100).toList()
+        executed.size() == 4
+        executed.every { it.size() == 1 }
+    }
+
+    def "should merge the sorted partitions by the sort properties"() {
+        given:
+        def tested = PartitionedExportExecutor.builder().withQueueCapacity(2).build()
+        def sortProperties = [new SortProperty("name", true), new SortProperty("_id", false)]
+        def comparator = new DocumentSortComparator(sortProperties)
+
+        when:
+        def result = tested.executeOrdered(partitions, [], sortProperties, { pipeline -> inMemory(pipeline).toList().sort(false, comparator).iterator() }).collect()
+
+        then:
+        result == DOCUMENTS.sort(false, comparator)
+    }
+
+    def "should use the passed executor service"() {
+        given:
+        def executorService = Executors.newFixedThreadPool(2)
+        def tested = PartitionedExportExecutor.builder().withExecutorService(executorService).build()
+
+        when:
+        def result = tested.executeUnordered(partitions, [], { pipeline -> inMemory(pipeline) }).collect()
+
+        then:
+        result.size() == 100
+        !executorService.isShutdown()
+
+        cleanup:
+        executorService.shutdownNow()
+    }
+
+    @Unroll
+    def "should merge the sorted partitions with the fixed thread pool of #threads threads"() {
+        given:
+        def executorService = Executors.newFixedThreadPool(threads)
+        def caller = Executors.newSingleThreadExecutor()
+        def tested = PartitionedExportExecutor.builder().withExecutorService(executorService).withQueueCapacity(2).build()
+        def sortProperties = [new SortProperty("name", true), new SortProperty("_id", false)]
+        def comparator = new DocumentSortComparator(sortProperties)
+
+        when:
+        def result = caller.submit({
+            tested.executeOrdered(partitions, [], sortProperties, { pipeline -> inMemory(pipeline).toList().sort(false, comparator).iterator() }).collect()
+        } as Callable<List<Document>>).get(10, TimeUnit.SECONDS)
+
+        then:
+        partitions.size() > threads
+        result == DOCUMENTS.sort(false, comparator)
+
+        cleanup:
+        caller.shutdownNow()
+        executorService.shutdownNow()
+
+        where:
+        threads << [1, 2]
+    }
+
+    def "should return all documents with the fixed thread pool of one thread"() {
+        given:
+        def executorService = Executors.newFixedThreadPool(1)
+        def tested = PartitionedExportExecutor.builder().withExecutorService(executorService).withQueueCapacity(1).build()
+
+        when:
+        def result = tested.executeUnordered(partitions, [], { pipeline -> inMemory(pipeline) }).collect()
+
+        then:
+        result*.get("_id").sort() == (1..100).toList()
+
+        cleanup:
+        executorService.shutdownNow()
+    }
+
+    def "should close the cursors of the waiting partitions when the ordered export cursor is closed"() {
+        given:
+        def executorService = Executors.newFixedThreadPool(1)
+        def tested = PartitionedExportExecutor.builder().withExecutorService(executorService).withQueueCapacity(1).build()
+        def sortProperties = [new SortProperty("_id", true)]
+        def opened = new AtomicInteger()
+        def closed = new AtomicInteger()
+
+        when:
+        def cursor = tested.executeOrdered(partitions, [], sortProperties, { pipeline -> opened.incrementAndGet(); new ClosableIterator(inMemory(pipeline), closed) })
+        cursor.next()
+        cursor.close()
+
+        then:
+        new PollingConditions(timeout: 5).eventually {
+            assert opened.get() == partitions.size()
+            assert closed.get() == opened.get()
+        }
+
+        cleanup:
+        executorService.shutdownNow()
+    }
+
+    def "should throw export exception when reading of the partition fails"() {
+        given:
+        def tested = PartitionedExportExecutor.builder().build()
+
+        when:
+        tested.executeUnordered(partitions, [], { pipeline ->
+            if (pipeline.get(0).toBsonDocument().getDocument("\$match").isEmpty() || isLast(pipeline)) {
+                throw new IllegalStateException("boom")
+            }
+            inMemory(pipeline)
+        }).collect()
+
+        then:
+        def e = thrown(ExportException)
+        e.cause instanceof IllegalStateException
+    }
+
+    def "should close the partition cursors when the export cursor is closed"() {
+        given:
+        def tested = PartitionedExportExecutor.builder().withQueueCapacity(1).build()
+        def opened = new AtomicInteger()
+        def closed = new AtomicInteger()
+
+        when:
+        def cursor = tested.executeUnordered(partitions, [], { pipeline -> opened.incrementAndGet(); new ClosableIterator(inMemory(pipeline), closed) })
+        cursor.next()
+        cursor.close()
+
+        then:
+        // The partitions that were not started before the cancellation do not open the cursor
+        new PollingConditions(timeout: 5).eventually {
+            assert opened.get() > 0
+            assert closed.get() == opened.get()
+        }
+        !cursor.hasNext()
+    }
+
+    private static boolean isLast(List<Bson> pipeline) {
+        def range = pipeline.get(0).toBsonDocument().getDocument("\$match").getDocument("_id")
+        range.containsKey("\$gte") && !range.containsKey("\$lt")
+    }
+
+    private static Iterator<Document> inMemory(List<Bson> pipeline) {
+        def range = pipeline.get(0).toBsonDocument().getDocument("\$match").getDocument("_id", new org.bson.BsonDocument())
+        Integer lower = range.containsKey("\$gte") ? range.getInt32("\$gte").getValue() : null
+        Integer upper = range.containsKey("\$lt") ? range.getInt32("\$lt").getValue()
+                : range.containsKey("\$not") ? range.getDocument("\$not").getInt32("\$gte").getValue() : null
+        DOCUMENTS.findAll { (lower == null || it.getInteger("_id") >= lower) && (upper == null || it.getInteger("_id") < upper) }.iterator()
+    }
+
+    static class ClosableIterator implements Iterator<Document>, AutoCloseable {
+        private final Iterator<Document> delegate
+        private final AtomicInteger closed
+
+        ClosableIterator(Iterator<Document> delegate, AtomicInteger closed) {
+            this.delegate = delegate
+            this.closed = closed
+        }
+
+        @Override
+        boolean hasNext() {
+            delegate.hasNext()
+        }
+
+        @Override
+        Document next() {
+            delegate.next()
+        }
+
+        @Override
+        void close() {
+            closed.incrementAndGet()
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.starnowski.jamolingo.core.index
+
+import com.github.starnowski.jamolingo.core.AbstractSpecification
+import com.github.starnowski.jamolingo.core.operators.filter.ODataFilterToMongoMatchParser
+import com.github.starnowski.jamolingo.core.operators.orderby.OdataOrderByToMongoSortParser
+import org.apache.olingo.commons.api.edm.Edm
+import org.apache.olingo.server.api.OData
+import org.apache.olingo.server.api.uri.UriInfo
+import org.apache.olingo.server.core.uri.parser.Parser
+import org.bson.Document
+import spock.lang.Unroll
+
+class EsrIndexPlannerTest extends AbstractSpecification {
+
+    private IndexPlan plan(String query, List<IndexDefinition> indexes) {
+        Edm edm = loadEmdProvider("edm/edm6_filter_main.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance()).parseUri("examples2", query, null, null)
+        new EsrIndexPlanner(indexes).plan(
+                new ODataFilterToMongoMatchParser().parse(uriInfo.getFilterOption()),
+                new OdataOrderByToMongoSortParser().parse(uriInfo.getOrderByOption()))
+    }
+
+    private static IndexDefinition index(String keys) {
+        IndexDefinition.fromIndexDocument(new Document("name", keys).append("key", Document.parse(keys)))
+    }
+
+    @Unroll
+    def "should select index #expectedIndex for query '#query'"() {
+        when:
+            def result = plan(query, indexes.collect { index(it) })
+
+        then:
+            result.getIndex()?.getName() == expectedIndex
+            ((Document) result.getHint())?.toJson() == expectedHint
+            result.isSortCoveredByIndex() == expectedSortCovered
+
+        where:
+            query                                                                                       | indexes                                                                  || expectedIndex                                   | expectedHint                                           | expectedSortCovered
+            "\$filter=plainString eq 'a' and smallInteger gt 5&\$orderby=timestamp desc"                | ['{"smallInteger": 1, "plainString": 1}', '{"plainString": 1, "timestamp": 1, "smallInteger": 1}'] || '{"plainString": 1, "timestamp": 1, "smallInteger": 1}' | '{"plainString": 1, "timestamp": 1, "smallInteger": 1}' | true
+            "\$filter=plainString eq 'a' and smallInteger gt 5&\$orderby=timestamp desc"                | ['{"plainString": 1, "smallInteger": 1}']                                 || '{"plainString": 1, "smallInteger": 1}'         | '{"plainString": 1, "smallInteger": 1}'                | false
+            "\$filter=plainString eq 'a'&\$orderby=timestamp desc,smallInteger asc"                      | ['{"plainString": 1, "timestamp": 1, "smallInteger": -1}']              || '{"plainString": 1, "timestamp": 1, "smallInteger": -1}' | '{"plainString": 1, "timestamp": 1, "smallInteger": -1}' | true
+            "\$filter=plainString eq 'a'&\$orderby=timestamp desc,smallInteger asc"                      | ['{"plainString": 1, "timestamp": 1, "smallInteger": 1}']               || '{"plainString": 1, "timestamp": 1, "smallInteger": 1}' | '{"plainString": 1, "timestamp": 1, "smallInteger": 1}' | false
+            "\$filter=plainString eq 'a'&\$orderby=plainString,timestamp"                                | ['{"plainString": 1, "timestamp": -1}']                                  || '{"plainString": 1, "timestamp": -1}'           | '{"plainString": 1, "timestamp": -1}'                  | true
+            "\$orderby=timestamp"                                                                       | ['{"plainString": 1}', '{"timestamp": -1}']                              || '{"timestamp": -1}'                             | '{"timestamp": -1}'                                    | true
+            "\$filter=smallInteger gt 5"                                                                | ['{"plainString": 1}']                                                   || null                                            | null                                                   | true
+            "\$filter=smallInteger gt 5&\$orderby=timestamp"                                            | ['{"plainString": 1}']                                                   || null                                            | null                                                   | false
+            "\$filter=plainString eq 'a'"                                                               | ['{"plainString": 1, "smallInteger": 1}', '{"plainString": 1, "timestamp": 1}'] || '{"plainString": 1, "smallInteger": 1}' | null                                                 | true
+            "\$filter=plainString eq 'a'"                                                               | ['{"plainString": 1}', '{"plainString": 1, "timestamp": 1}']             || '{"plainString": 1}'                            | '{"plainString": 1}'                                   | true
+            "\$filter=plainString in ('a', 'b') and smallInteger gt 1"                                  | ['{"smallInteger": 1}', '{"plainString": 1, "smallInteger": 1}']         || '{"plainString": 1, "smallInteger": 1}'         | '{"plainString": 1, "smallInteger": 1}'                | true
+            "\$filter=plainString in ('a', 'b')&\$orderby=timestamp"                                    | ['{"plainString": 1, "timestamp": 1}', '{"timestamp": 1, "plainString": 1}'] || '{"timestamp": 1, "plainString": 1}'       | '{"timestamp": 1, "plainString": 1}'                   | true
+    }
+
+    @Unroll
+    def "should reorder predicates of query '#query' to #expectedMatch"() {
+        when:
+            def result = plan(query, indexes.collect { index(it) })
+
+        then:
+            ((Document) result.getMatchStage()).toJson() == Document.parse(expectedMatch).toJson()
+            result.getEqualityFields() == expectedEqualityFields
+            result.getRangeFields() == expectedRangeFields
+
+        where:
+            query                                                                                     | indexes                                                      || expectedMatch                                                                                                                                | expectedEqualityFields          | expectedRangeFields
+            "\$filter=smallInteger gt 5 and plainString eq 'a'"                                       | ['{"plainString": 1, "smallInteger": 1}']                    || '{"$match": {"$and": [{"plainString": "a"}, {"smallInteger": {"$gt": 5}}]}}'                                                               | ["plainString"]                 | ["smallInteger"]
+            "\$filter=smallInteger gt 5 and isActive eq true and plainString eq 'a'"                  | ['{"plainString": 1, "isActive": 1, "smallInteger": 1}']     || '{"$match": {"$and": [{"plainString": "a"}, {"isActive": true}, {"smallInteger": {"$gt": 5}}]}}'                                           | ["plainString", "isActive"]     | ["smallInteger"]
+            "\$filter=tags/any(t:t eq 'x') and smallInteger lt 3 and plainString eq 'a'"              | []                                                           || '{"$match": {"$and": [{"plainString": "a"}, {"smallInteger": {"$lt": 3}}, {"tags": {"$elemMatch": {"$eq": "x"}}}]}}'                         | ["plainString"]                 | ["smallInteger"]
+            "\$filter=plainString eq 'a' or smallInteger lt 3"                                        | ['{"plainString": 1}']                                       || '{"$match": {"$or": [{"plainString": "a"}, {"smallInteger": {"$lt": 3}}]}}'                                                                 | []                              | []
+            "\$filter=plainString eq 'a'"                                                             | []                                                           || '{"$match": {"plainString": "a"}}'                                                                                                           | ["plainString"]                 | []
+    }
+
+    def "should return stages of the plan"() {
+        when:
+            def result = plan("\$filter=smallInteger gt 5 and plainString eq 'a'&\$orderby=timestamp desc", [index('{"plainString": 1, "timestamp": -1, "smallInteger": 1}')])
+
+        then:
+            result.getStageObjects().collect { ((Document) it).toJson() } == [
+                    Document.parse('{"$match": {"$and": [{"plainString": "a"}, {"smallInteger": {"$gt": 5}}]}}').toJson(),
+                    Document.parse('{"$sort": {"timestamp": -1}}').toJson()]
+    }
+
+    def "should return empty plan when there is no filter and no sort"() {
+        when:
+            def result = new EsrIndexPlanner([index('{"plainString": 1}')]).plan(null, null)
+
+        then:
+            result.getIndex() == null
+            result.getHint() == null
+            result.isSortCoveredByIndex()
+            result.getStageObjects().isEmpty()
+    }
+
+    @Unroll
+    def "should return index definition #expected for index document #indexDocument"() {
+        expect:
+            IndexDefinition.fromIndexDocument(Document.parse(indexDocument)) == expected
+
+        where:
+            indexDocument                                                    || expected
+            '{"name": "a_1_b_-1", "key": {"a": 1, "b": -1}}'                 || new IndexDefinition("a_1_b_-1", ["a": 1, "b": -1])
+            '{"name": "a_1", "key": {"a": 1.0}}'                             || new IndexDefinition("a_1", ["a": 1])
+            '{"name": "a_text", "key": {"_fts": "text", "_ftsx": 1}}'        || null
+            '{"name": "a_hashed", "key": {"a": "hashed"}}'                   || null
+            '{"name": "wildcard", "key": {"$**": 1}}'                        || null
+            '{"name": "a_1", "key": {"a": 1}, "sparse": true}'                                    || IndexDefinition.builder().withName("a_1").withKeys(["a": 1]).withSparse(true).build()
+            '{"name": "a_1", "key": {"a": 1}, "partialFilterExpression": {"b": {"$gt": 5}}}'      || IndexDefinition.builder().withName("a_1").withKeys(["a": 1]).withPartialFilterExpression(Document.parse('{"b": {"$gt": 5}}')).build()
+            '{"name": "a_1", "key": {"a": 1}, "hidden": true}'                                    || IndexDefinition.builder().withName("a_1").withKeys(["a": 1]).withHidden(true).build()
+            '{"name": "a_1", "key": {"a": 1}, "collation": {"locale": "fr"}}'                     || IndexDefinition.builder().withName("a_1").withKeys(["a": 1]).withCollation(Document.parse('{"locale": "fr"}')).build()
+    }
+
+    @Unroll
+    def "should not return hint for index document #indexDocument"() {
+        given:
+            def index = IndexDefinition.fromIndexDocument(Document.parse(indexDocument))
+
+        when:
+            def result = plan("\$filter=plainString eq 'a'", [index])
+
+        then:
+            !index.isHintable()
+            result.getIndex() == expectedIndex
+            result.getHint() == null
+
+        where:
+            indexDocument                                                                                          || expectedIndex
+            '{"name": "sparse", "key": {"plainString": 1}, "sparse": true}'                                        || IndexDefinition.fromIndexDocument(Document.parse(indexDocument))
+            '{"name": "partial", "key": {"plainString": 1}, "partialFilterExpression": {"smallInteger": {"$gt": 5}}}' || IndexDefinition.fromIndexDocument(Document.parse(indexDocument))
+            '{"name": "hidden", "key": {"plainString": 1}, "hidden": true}'                                        || null
+    }
+
+    def "should hint the regular index instead of the hidden index"() {
+        when:
+            def result = plan("\$filter=plainString eq 'a' and smallInteger gt 5", [
+                    IndexDefinition.fromIndexDocument(Document.parse('{"name": "hidden", "key": {"plainString": 1, "smallInteger": 1}, "hidden": true}')),
+                    index('{"plainString": 1}')])
+
+        then:
+            result.getIndex().getName() == '{"plainString": 1}'
+            ((Document) result.getHint()).toJson() == '{"plainString": 1}'
+    }
+
+    @Unroll
+    def "should throw exception for invalid index keys #keys"() {
+        when:
+            new IndexDefinition("name", keys)
+
+        then:
+            thrown(IllegalArgumentException)
+
+        where:
+            keys << [null, [:], ["a": 2], ["a": null]]
+    }
+
+    def "should throw exception when indexes are null"() {
+        when:
+            new EsrIndexPlanner(null)
+
+        then:
+            thrown(IllegalArgumentException)
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.starnowski.jamolingo.core.operators.count
+
+import com.github.starnowski.jamolingo.core.AbstractSpecification
+import com.github.starnowski.jamolingo.core.MutableClock
+import com.github.starnowski.jamolingo.core.operators.filter.FilterOperatorResult
+import com.github.starnowski.jamolingo.core.operators.filter.ODataFilterToMongoMatchParser
+import org.apache.olingo.commons.api.edm.Edm
+import org.apache.olingo.server.api.OData
+import org.apache.olingo.server.api.uri.UriInfo
+import org.apache.olingo.server.core.uri.parser.Parser
+import org.bson.Document
+
+import java.time.Duration
+import java.time.Instant
+
+class CountCacheTest extends AbstractSpecification {
+
+    def "should return cached count value for the same filter stages"() {
+        given:
+        def countResult = countResult(null)
+        CountCache tested = CountCache.builder().build()
+        int loads = 0
+
+        when:
+        def first = tested.get("items", filterResult(Document.parse("{'a': 1, 'b': 'x&y'}")), countResult, { -> loads++; 15L })
+        def second = tested.get("items", filterResult(Document.parse("{ 'a' : 1 , 'b' : 'x&y' }")), countResult, { -> loads++; 20L })
+
+        then:
+        first == new CountValue(15L, false, false)
+        second == first
+        loads == 1
+        tested.getCache().getHitCount() == 1
+    }
+
+    def "should count documents again for different filter, collection or strategy"() {
+        given:
+        CountCache tested = CountCache.builder().build()
+        def filter = filterResult(new Document("a", 1))
+        int loads = 0
+
+        when:
+        tested.get("items", filter, countResult(null), { -> loads++; 15L })
+        tested.get("items", filterResult(new Document("a", 2)), countResult(null), { -> loads++; 15L })
+        tested.get("orders", filter, countResult(null), { -> loads++; 15L })
+        def capped = tested.get("items", filter, countResult(10L), { -> loads++; 15L })
+
+        then:
+        loads == 4
+        capped == new CountValue(10L, true, false)
+    }
+
+    def "should count documents again when the entry expired"() {
+        given:
+        def clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"))
+        CountCache tested = CountCache.builder()
+                .withExpireAfterWrite(Duration.ofSeconds(5))
+                .withClock(clock)
+                .build()
+        def filter = filterResult(new Document("a", 1))
+        long counted = 1L
+
+        when:
+        tested.get("items", filter, countResult(null), { -> counted })
+        counted = 2L
+        def cached = tested.get("items", filter, countResult(null), { -> counted })
+        clock.advance(Duration.ofSeconds(5))
+        def reloaded = tested.get("items", filter, countResult(null), { -> counted })
+
+        then:
+        cached.getCount() == 1L
+        reloaded.getCount() == 2L
+    }
+
+    def "should return cached count value for the filter with the Edm.Guid literal"() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm6_filter_main.xml")
+        def filterResult = new ODataFilterToMongoMatchParser().parse(new Parser(edm, OData.newInstance())
+                .parseUri("examples2", "\$filter=uuidProp eq b921f1dd-3cbc-0495-fdab-8cd14d33f0aa", null, null)
+                .getFilterOption())
+        def otherFilterResult = new ODataFilterToMongoMatchParser().parse(new Parser(edm, OData.newInstance())
+                .parseUri("examples2", "\$filter=uuidProp eq c921f1dd-3cbc-0495-fdab-8cd14d33f0aa", null, null)
+                .getFilterOption())
+        def countResult = countResult(null)
+        CountCache tested = CountCache.builder().build()
+        int loads = 0
+
+        when:
+        def first = tested.get("examples2", filterResult, countResult, { -> loads++; 3L })
+        def second = tested.get("examples2", filterResult, countResult, { -> loads++; 4L })
+        def other = tested.get("examples2", otherFilterResult, countResult, { -> loads++; 5L })
+
+        then:
+        first.getCount() == 3L
+        second.getCount() == 3L
+        other.getCount() == 5L
+        loads == 2
+    }
+
+    private CountOperatorResult countResult(Long maximumCount) {
+        Edm edm = loadEmdProvider("edm/edm1.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("Items", "\$count=true", null, null)
+        new OdataCountToMongoCountParser().parse(uriInfo.getCountOption(), null,
+                DefaultOdataCountToMongoCountParserContext.builder().withMaximumCount(maximumCount).build())
+    }
+
+    private FilterOperatorResult filterResult(Document query) {
+        Mock(FilterOperatorResult) {
+            getStageObjects() >> [new Document("\$match", query)]
+        }
+    }
+}
@@ -1,11 +1,13 @@
 package com.github.starnowski.jamolingo.core.operators.count
 
 import com.github.starnowski.jamolingo.core.AbstractSpecification
+import com.github.starnowski.jamolingo.core.operators.filter.FilterOperatorResult
 import org.apache.olingo.commons.api.edm.Edm
 import org.apache.olingo.server.api.OData
 import org.apache.olingo.server.api.uri.UriInfo
 import org.apache.olingo.server.core.uri.parser.Parser
 import org.bson.Document
+import spock.lang.Unroll
 
 class OdataCountToMongoCountParserTest extends AbstractSpecification {
 
@@ -75,4 +77,206 @@ class OdataCountToMongoCountParserTest extends AbstractSpecification {
         !result.isCountOptionPresent()
         result.getStageObjects().isEmpty()
     }
+
+    def "should return facet stage with data and count when \$count=true"() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm1.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("Items", "\$count=true", null, null)
+        OdataCountToMongoCountParser tested = new OdataCountToMongoCountParser()
+        def dataStages = [new Document("\$sort", new Document("name", 1)), new Document("\$skip", 10), new Document("\$limit", 5)]
+
+        when:
+        def result = tested.parseWithFacet(uriInfo.getCountOption(), dataStages)
+
+        then:
+        result.isCountOptionPresent()
+        result.getDataFieldName() == "data"
+        result.getCountFieldName() == "count"
+        result.getDataStages() == dataStages
+        result.getStageObjects() == [
+                Document.parse('{"\$facet": {"data": [{"\$sort": {"name": 1}}, {"\$skip": 10}, {"\$limit": 5}], "count": [{"\$count": "count"}]}}')]
+        result.isDocumentShapeRedefined()
+        result.getAddedMongoDocumentProperties() == ["data", "count"]
+    }
+
+    def "should place the sort stage before the facet stage when the sort is covered by an index"() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm1.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("Items", "\$count=true", null, null)
+        OdataCountToMongoCountParser tested = new OdataCountToMongoCountParser()
+        def dataStages = [new Document("\$sort", new Document("name", 1)), new Document("\$skip", 10), new Document("\$limit", 5)]
+
+        when:
+        def result = tested.parseWithFacet(uriInfo.getCountOption(), dataStages, "data", "count", true)
+
+        then:
+        result.getDataStages() == dataStages
+        result.getStageObjects() == [
+                Document.parse('{"\$sort": {"name": 1}}'),
+                Document.parse('{"\$facet": {"data": [{"\$skip": 10}, {"\$limit": 5}], "count": [{"\$count": "count"}]}}')]
+    }
+
+    def "should return facet stage with custom field names and not empty data pipeline"() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm1.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("Items", "\$count=true", null, null)
+        OdataCountToMongoCountParser tested = new OdataCountToMongoCountParser()
+
+        when:
+        def result = tested.parseWithFacet(uriInfo.getCountOption(), [], "items", "total")
+
+        then:
+        result.getStageObjects() == [Document.parse('{"\$facet": {"items": [{"\$skip": 0}], "total": [{"\$count": "total"}]}}')]
+    }
+
+    def "should return data stages when \$count is not requested"() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm1.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("Items", "\$count=false", null, null)
+        OdataCountToMongoCountParser tested = new OdataCountToMongoCountParser()
+        def dataStages = [new Document("\$limit", 5)]
+
+        when:
+        def result = tested.parseWithFacet(uriInfo.getCountOption(), dataStages)
+
+        then:
+        !result.isCountOptionPresent()
+        result.getStageObjects() == dataStages
+        !result.isDocumentShapeRedefined()
+        result.getAddedMongoDocumentProperties().isEmpty()
+        result.unpack([new Document("name", "a")]) == new CountFacetPage([new Document("name", "a")], null)
+    }
+
+    def "should unpack facet results to the page and count"() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm1.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("Items", "\$count=true", null, null)
+        def result = new OdataCountToMongoCountParser().parseWithFacet(uriInfo.getCountOption(), [new Document("\$limit", 1)])
+
+        expect:
+        result.unpack([Document.parse('{"data": [{"name": "a"}], "count": [{"count": 42}]}')]) == new CountFacetPage([new Document("name", "a")], 42L)
+        result.unpack([Document.parse('{"data": [], "count": []}')]) == new CountFacetPage([], 0L)
+        result.unpack([]) == new CountFacetPage([], 0L)
+    }
+
+    def "should throw exception when data field name is equal to count field name"() {
+        when:
+        new OdataCountToMongoCountParser().parseWithFacet(null, [], "count", "count")
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    @Unroll
+    def "should return count stages for strategy with estimated count #estimated and maximum count #maximumCount when filter is present #filtered"() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm1.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("Items", "\$count=true", null, null)
+        FilterOperatorResult filterResult = Mock(FilterOperatorResult) {
+            getStageObjects() >> (filtered ? [new Document("\$match", new Document("a", 1))] : [])
+        }
+        def context = DefaultOdataCountToMongoCountParserContext.builder()
+                .withEstimatedCountForUnfilteredQuery(estimated)
+                .withMaximumCount(maximumCount)
+                .build()
+        OdataCountToMongoCountParser tested = new OdataCountToMongoCountParser()
+
+        when:
+        def result = tested.parse(uriInfo.getCountOption(), filterResult, context)
+
+        then:
+        result.isCountOptionPresent()
+        result.isEstimatedCount() == expectedEstimated
+        result.getMaximumCount() == expectedMaximumCount
+        result.getStageObjects() == expectedStages
+        result.isDocumentShapeRedefined() == !expectedEstimated
+
+        where:
+        estimated   | maximumCount  | filtered  || expectedEstimated | expectedMaximumCount  | expectedStages
+        true        | null          | false     || true              | null                  | []
+        true        | 1000L         | false     || true              | null                  | []
+        true        | null          | true      || false             | null                  | [new Document("\$count", "count")]
+        false       | null          | false     || false             | null                  | [new Document("\$count", "count")]
+        false       | 1000L         | true      || false             | 1000L                 | [new Document("\$limit", 1001L), new Document("\$count", "count")]
+        true        | 5L            | true      || false             | 5L                    | [new Document("\$limit", 6L), new Document("\$count", "count")]
+    }
+
+    def "should return estimated count result when filter result is null"() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm1.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("Items", "\$count=true", null, null)
+        def context = DefaultOdataCountToMongoCountParserContext.builder()
+                .withEstimatedCountForUnfilteredQuery(true)
+                .build()
+        OdataCountToMongoCountParser tested = new OdataCountToMongoCountParser()
+
+        when:
+        def result = tested.parse(uriInfo.getCountOption(), null, context)
+
+        then:
+        result.isEstimatedCount()
+        result.getStageObjects().isEmpty()
+        result.getAddedMongoDocumentProperties().isEmpty()
+        result.toCountValue(123456789L) == new CountValue(123456789L, false, true)
+    }
+
+    def "should return empty list of stages for strategy when \$count=false"() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm1.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("Items", "\$count=false", null, null)
+        def context = DefaultOdataCountToMongoCountParserContext.builder()
+                .withMaximumCount(10L)
+                .build()
+        OdataCountToMongoCountParser tested = new OdataCountToMongoCountParser()
+
+        when:
+        def result = tested.parse(uriInfo.getCountOption(), null, context)
+
+        then:
+        !result.isCountOptionPresent()
+        result.getStageObjects().isEmpty()
+    }
+
+    @Unroll
+    def "should convert counted documents #counted with maximum count #maximumCount to the count value with annotations #expectedAnnotations"() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm1.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("Items", "\$count=true", null, null)
+        def context = DefaultOdataCountToMongoCountParserContext.builder()
+                .withMaximumCount(maximumCount)
+                .build()
+        def result = new OdataCountToMongoCountParser().parse(uriInfo.getCountOption(), null, context)
+
+        when:
+        def value = result.toCountValue(counted)
+
+        then:
+        value.getCount() == expectedCount
+        value.isCapped() == expectedCapped
+        value.toAnnotations() == expectedAnnotations
+
+        where:
+        counted | maximumCount  || expectedCount | expectedCapped    | expectedAnnotations
+        7L      | null          || 7L            | false             | ["@odata.count": 7L]
+        7L      | 10L           || 7L            | false             | ["@odata.count": 7L]
+        10L     | 10L           || 10L           | false             | ["@odata.count": 10L]
+        11L     | 10L           || 10L           | true              | ["@odata.count": 10L, "@jamolingo.countCapped": true]
+    }
+
+    def "should throw exception when maximum count is negative"() {
+        when:
+        DefaultOdataCountToMongoCountParserContext.builder().withMaximumCount(-1L).build()
+
+        then:
+        thrown(IllegalArgumentException)
+    }
 }
@@ -0,0 +1,38 @@
+package com.github.starnowski.jamolingo.core.operators.expand
+
+import org.bson.Document
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static com.github.starnowski.jamolingo.core.operators.expand.AggregationStages.*
+
+class AggregationStagesTest extends Specification {
+
+    @Unroll
+    def "should build stage equal to the parsed JSON #json"() {
+        expect:
+            stage == Document.parse(json)
+
+        where:
+            stage                                                                                          | json
+            group(new Document("id_0", "\$_id"), new Document("tmp_array", new Document("\$push", "\$nav")))  | '{"$group": {"_id": {"id_0": "$_id"}, "tmp_array": {"$push": "$nav"}}}'
+            set("tmp_root.nav", "\$tmp_array")                                                             | '{"$set": {"tmp_root.nav": "$tmp_array"}}'
+            replaceRoot("\$tmp_root")                                                                      | '{"$replaceRoot": {"newRoot": "$tmp_root"}}'
+            set("nav", map(ifNull(fieldPath("nav"), []), "item", new Document("a", variable("item", "a")))) | '{"$set": {"nav": {"$map": {"input": {"$ifNull": ["$nav", []]}, "as": "item", "in": {"a": "$$item.a"}}}}}'
+            set("nav", reduce(fieldPath("nav"), [], concatArrays("\$\$value", variable("this", "children")))) | '{"$set": {"nav": {"$reduce": {"input": "$nav", "initialValue": [], "in": {"$concatArrays": ["$$value", "$$this.children"]}}}}}'
+            addFields("nav", condDocument(eq(size("\$nav"), 0), "\$\$REMOVE", "\$nav"))                     | '{"$addFields": {"nav": {"$cond": {"if": {"$eq": [{"$size": "$nav"}, 0]}, "then": "$$REMOVE", "else": "$nav"}}}}'
+            let(new Document("index", indexOfArray("\$\$value.p", "\$\$this.p")), cond(eq("\$\$index", -1), "\$\$value", array("\$\$this"))) | '{"$let": {"vars": {"index": {"$indexOfArray": ["$$value.p", "$$this.p"]}}, "in": {"$cond": [{"$eq": ["$$index", -1]}, "$$value", ["$$this"]]}}}'
+            mergeObjects("\$\$item", new Document("c", slice("\$\$item.c", 1, size("\$\$item.c"))))        | '{"$mergeObjects": ["$$item", {"c": {"$slice": ["$$item.c", 1, {"$size": "$$item.c"}]}}]}'
+            sortArray("\$\$item.c", new Document("index", 1))                                              | '{"$sortArray": {"input": "$$item.c", "sortBy": {"index": 1}}}'
+            objectToArray(ifNull("\$nav", new Document()))                                                 | '{"$objectToArray": {"$ifNull": ["$nav", {}]}}'
+            filter("\$nav", "node", and(lt("\$\$node.d", 2), ne("\$\$node.p", null)))                      | '{"$filter": {"input": "$nav", "as": "node", "cond": {"$and": [{"$lt": ["$$node.d", 2]}, {"$ne": ["$$node.p", null]}]}}}'
+            arrayElemAt("\$nav", 0)                                                                        | '{"$arrayElemAt": ["$nav", 0]}'
+            withoutField("\$\$node", "d")                                                                  | '{"$arrayToObject": {"$filter": {"input": {"$objectToArray": "$$node"}, "as": "field", "cond": {"$ne": ["$$field.k", "d"]}}}}'
+    }
+
+    def "should return variable expression without field path"() {
+        expect:
+            variable("this", null) == "\$\$this"
+            variable("item", "a.b") == "\$\$item.a.b"
+    }
+}
@@ -0,0 +1,560 @@
+package com.github.starnowski.jamolingo.core.operators.expand
+
+import com.github.starnowski.jamolingo.core.AbstractSpecification
+import com.github.starnowski.jamolingo.core.operators.expand.ODataExpandToMongoAggregationPipelineParser.DefaultExpandParserContext
+import org.apache.olingo.commons.api.edm.Edm
+import org.apache.olingo.server.api.OData
+import org.apache.olingo.server.api.uri.UriInfo
+import org.apache.olingo.server.core.uri.parser.Parser
+import org.bson.Document
+import org.bson.conversions.Bson
+import spock.lang.Unroll
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+import static com.github.starnowski.jamolingo.core.TestDocuments.parseDocuments
+
+class BatchedExpandExecutorTest extends AbstractSpecification {
+
+    static final String TREE_TYPE_1_DOCUMENTS = '''[
+        {"_id": 1, "index": 1, "categoryId": 10},
+        {"_id": 2, "index": 2, "parentId": 1, "categoryId": 10},
+        {"_id": 3, "index": 3, "parentId": 1, "categoryId": 11},
+        {"_id": 4, "index": 4, "parentId": 1},
+        {"_id": 5, "index": 5, "parentId": 2, "categoryId": 11}
+    ]'''
+
+    static final String CATEGORY_DOCUMENTS = '''[
+        {"_id": 10, "name": "first"},
+        {"_id": 11, "name": "second"}
+    ]'''
+
+    def "should fetch the single-valued navigation property with one query for the whole page"() {
+        given:
+        def expandOperatorResult = parseExpand('$expand=category')
+        def documents = parseDocuments(TREE_TYPE_1_DOCUMENTS)
+        def loader = new InMemoryLoader()
+
+        when:
+        def results = new BatchedExpandExecutor().expand(documents, expandOperatorResult, loader)
+
+        then:
+        results.is(documents)
+        loader.queries.size() == 1
+        loader.queries[0].collection == "MyService.Category"
+        loader.queries[0].pipeline == [Document.parse('{"$match": {"_id": {"$in": [10, 11]}}}')]
+        results*.get("category") == [
+                Document.parse('{"_id": 10, "name": "first"}'),
+                Document.parse('{"_id": 10, "name": "first"}'),
+                Document.parse('{"_id": 11, "name": "second"}'),
+                null,
+                Document.parse('{"_id": 11, "name": "second"}')]
+        !results[3].containsKey("category")
+
+        and: "the related document joined with many documents is copied"
+        !results[0].get("category").is(results[1].get("category"))
+    }
+
+    def "should fetch the collection navigation property and nested expand with one query per navigation property"() {
+        given:
+        def expandOperatorResult = parseExpand('$expand=children($expand=category)')
+        def documents = parseDocuments(TREE_TYPE_1_DOCUMENTS).subList(0, 2)
+        def loader = new InMemoryLoader()
+
+        when:
+        def results = new BatchedExpandExecutor().expand(documents, expandOperatorResult, loader)
+
+        then:
+        loader.queries.size() == 2
+        loader.queries[0].collection == "MyService.TreeType1"
+        loader.queries[0].pipeline == [Document.parse('{"$match": {"parentId": {"$in": [1, 2]}}}')]
+        loader.queries[1].collection == "MyService.Category"
+        loader.queries[1].pipeline == [Document.parse('{"$match": {"_id": {"$in": [10, 11]}}}')]
+        results[0].get("children") == parseDocuments('''[
+            {"_id": 2, "index": 2, "parentId": 1, "categoryId": 10, "category": {"_id": 10, "name": "first"}},
+            {"_id": 3, "index": 3, "parentId": 1, "categoryId": 11, "category": {"_id": 11, "name": "second"}},
+            {"_id": 4, "index": 4, "parentId": 1}
+        ]''')
+        results[1].get("children") == parseDocuments('''[
+            {"_id": 5, "index": 5, "parentId": 2, "categoryId": 11, "category": {"_id": 11, "name": "second"}}
+        ]''')
+    }
+
+    def "should copy the nested documents of the related document joined with many documents"() {
+        given:
+        def expandOperatorResult = parseExpand('$expand=category')
+        def documents = parseDocuments(TREE_TYPE_1_DOCUMENTS).subList(0, 2)
+        def loader = new InMemoryLoader(related: parseDocuments('[{"_id": 10, "name": "first", "tags": [{"code": "a"}]}]'))
+
+        when:
+        def results = new BatchedExpandExecutor().expand(documents, expandOperatorResult, loader)
+        results[0].get("category", Document).getList("tags", Document)[0].put("code", "b")
+
+        then:
+        results[1].get("category") == Document.parse('{"_id": 10, "name": "first", "tags": [{"code": "a"}]}')
+    }
+
+    def "should set empty array when there are no related documents of the collection navigation property"() {
+        given:
+        def expandOperatorResult = parseExpand('$expand=children')
+        def documents = parseDocuments(TREE_TYPE_1_DOCUMENTS).subList(3, 5)
+        def loader = new InMemoryLoader()
+
+        when:
+        def results = new BatchedExpandExecutor().expand(documents, expandOperatorResult, loader)
+
+        then:
+        loader.queries.size() == 1
+        results*.get("children") == [[], []]
+    }
+
+    def 'should apply $skip and $top to the related documents of each parent document'() {
+        given:
+        def expandOperatorResult = parseExpand('$expand=children($orderby=index desc;$skip=1;$top=1)')
+        def documents = [Document.parse('{"_id": 1}'), Document.parse('{"_id": 2}')]
+        def loader = new InMemoryLoader(related: parseDocuments('''[
+            {"_id": 14, "index": 14, "parentId": 1},
+            {"_id": 13, "index": 13, "parentId": 1},
+            {"_id": 12, "index": 12, "parentId": 2},
+            {"_id": 11, "index": 11, "parentId": 1}
+        ]'''))
+
+        when:
+        def results = new BatchedExpandExecutor().expand(documents, expandOperatorResult, loader)
+
+        then:
+        loader.queries[0].pipeline == [
+                Document.parse('{"$match": {"parentId": {"$in": [1, 2]}}}'),
+                Document.parse('{"$sort": {"index": -1}}')]
+        results[0].get("children") == [Document.parse('{"_id": 13, "index": 13, "parentId": 1}')]
+        results[1].get("children") == []
+    }
+
+    def 'should remove the join keys that were not selected by $select'() {
+        given:
+        def expandOperatorResult = parseExpand('$expand=children($select=index;$expand=category($select=name))')
+        def documents = parseDocuments(TREE_TYPE_1_DOCUMENTS).subList(0, 1)
+        def loader = new InMemoryLoader()
+
+        when:
+        def results = new BatchedExpandExecutor().expand(documents, expandOperatorResult, loader)
+
+        then:
+        results[0].get("children") == parseDocuments('''[
+            {"_id": 2, "index": 2, "category": {"name": "first"}},
+            {"_id": 3, "index": 3, "category": {"name": "second"}},
+            {"_id": 4, "index": 4}
+        ]''')
+    }
+
+    def "should join the numeric keys of different types"() {
+        given:
+        def expandOperatorResult = parseExpand('$expand=category')
+        def documents = [new Document("_id", 1).append("categoryId", 10L), new Document("_id", 2).append("categoryId", 11.0d)]
+        def loader = new InMemoryLoader()
+
+        when:
+        def results = new BatchedExpandExecutor().expand(documents, expandOperatorResult, loader)
+
+        then:
+        results*.get("category")*.get("name") == ["first", "second"]
+    }
+
+    def "should not execute query when the documents do not have the join keys"() {
+        given:
+        def expandOperatorResult = parseExpand('$expand=category')
+        def documents = [Document.parse('{"_id": 1}')]
+        def loader = new InMemoryLoader()
+
+        when:
+        def results = new BatchedExpandExecutor().expand(documents, expandOperatorResult, loader)
+
+        then:
+        loader.queries.isEmpty()
+        !results[0].containsKey("category")
+    }
+
+    def "should throw exception with the navigation property when the query fails"() {
+        given:
+        def expandOperatorResult = parseExpand('$expand=category')
+        def failure = new IllegalStateException("connection lost")
+
+        when:
+        new BatchedExpandExecutor().expand(parseDocuments(TREE_TYPE_1_DOCUMENTS), expandOperatorResult,
+                { collection, pipeline -> throw failure } as BatchedExpandExecutor.BatchLoader)
+
+        then:
+        def ex = thrown(ExpandException)
+        ex.getEdmPath() == "category"
+        ex.getCause().is(failure)
+    }
+
+    def "should throw exception when the batch loader is null"() {
+        when:
+        new BatchedExpandExecutor().expand([], parseExpand('$expand=category'), null)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def 'should fetch the hierarchy requested with $levels level by level'() {
+        given:
+        def expandOperatorResult = parseExpand('$expand=children($levels=max)')
+        def documents = parseDocuments(TREE_TYPE_1_DOCUMENTS).subList(0, 1)
+        def loader = new InMemoryLoader()
+
+        when:
+        def results = new BatchedExpandExecutor().expand(documents, expandOperatorResult, loader)
+
+        then:
+        loader.queries*.pipeline == [
+                [Document.parse('{"$match": {"parentId": {"$in": [1]}}}')],
+                [Document.parse('{"$match": {"parentId": {"$in": [2, 3, 4]}}}')],
+                [Document.parse('{"$match": {"parentId": {"$in": [5]}}}')]]
+        results[0].get("children") == parseDocuments('''[
+            {"_id": 2, "index": 2, "parentId": 1, "categoryId": 10, "children": [
+                {"_id": 5, "index": 5, "parentId": 2, "categoryId": 11, "children": []}
+            ]},
+            {"_id": 3, "index": 3, "parentId": 1, "categoryId": 11, "children": []},
+            {"_id": 4, "index": 4, "parentId": 1, "children": []}
+        ]''')
+    }
+
+    def 'should stop fetching the hierarchy at the requested level and build the tree of each document'() {
+        given:
+        def expandOperatorResult = parseExpand('$expand=children($levels=2)')
+        def documents = parseDocuments(TREE_TYPE_1_DOCUMENTS).subList(0, 2)
+        def loader = new InMemoryLoader()
+
+        when:
+        def results = new BatchedExpandExecutor().expand(documents, expandOperatorResult, loader)
+
+        then:
+        loader.queries*.pipeline == [
+                [Document.parse('{"$match": {"parentId": {"$in": [1, 2]}}}')],
+                [Document.parse('{"$match": {"parentId": {"$in": [3, 4, 5]}}}')]]
+        results[0].get("children") == parseDocuments('''[
+            {"_id": 2, "index": 2, "parentId": 1, "categoryId": 10, "children": [
+                {"_id": 5, "index": 5, "parentId": 2, "categoryId": 11}
+            ]},
+            {"_id": 3, "index": 3, "parentId": 1, "categoryId": 11, "children": []},
+            {"_id": 4, "index": 4, "parentId": 1, "children": []}
+        ]''')
+        results[1].get("children") == parseDocuments('''[
+            {"_id": 5, "index": 5, "parentId": 2, "categoryId": 11, "children": []}
+        ]''')
+    }
+
+    def 'should not query the visited keys again when the hierarchy has a cycle'() {
+        given:
+        def expandOperatorResult = parseExpand('$expand=children($levels=max)')
+        def related = parseDocuments('''[
+            {"_id": 1, "parentId": 2},
+            {"_id": 2, "parentId": 1}
+        ]''')
+        def documents = [new Document(related[0])]
+        def loader = new InMemoryLoader(related: related)
+
+        when:
+        def results = new BatchedExpandExecutor().expand(documents, expandOperatorResult, loader)
+
+        then:
+        loader.queries.size() == 2
+        results[0].get("children") == parseDocuments('''[
+            {"_id": 2, "parentId": 1, "children": [
+                {"_id": 1, "parentId": 2, "children": []}
+            ]}
+        ]''')
+    }
+
+    def 'should apply $top to the children of each parent and remove the join keys of the hierarchy'() {
+        given:
+        def expandOperatorResult = parseExpand(expand)
+        def documents = parseDocuments(TREE_TYPE_1_DOCUMENTS).subList(index, index + 1)
+        def loader = new InMemoryLoader()
+
+        when:
+        def results = new BatchedExpandExecutor().expand(documents, expandOperatorResult, loader)
+
+        then:
+        loader.queries.size() == expectedQueries
+        results[0].get(property) == Document.parse('{"value": ' + expected + '}').get("value")
+
+        where:
+        expand                                      | index | property   | expectedQueries || expected
+        '$expand=children($levels=2;$top=1)'        | 0     | "children" | 2               || '[{"_id": 2, "index": 2, "parentId": 1, "categoryId": 10, "children": [{"_id": 5, "index": 5, "parentId": 2, "categoryId": 11}]}]'
+        '$expand=parent($levels=2;$select=index)'   | 4     | "parent"   | 2               || '{"index": 2, "parent": {"index": 1}}'
+    }
+
+    def "should join the cached navigation target without querying the database for each page"() {
+        given:
+        def cache = NavigationTargetCache.builder().build()
+        def tested = BatchedExpandExecutor.builder().withNavigationTargetCache(cache).build()
+        def expandOperatorResult = parseExpand('$expand=category', ["MyService.Category"] as Set)
+        def loader = new InMemoryLoader()
+
+        when:
+        def first = tested.expand(parseDocuments(TREE_TYPE_1_DOCUMENTS).subList(0, 2), expandOperatorResult, loader)
+        def second = tested.expand(parseDocuments(TREE_TYPE_1_DOCUMENTS).subList(2, 5), expandOperatorResult, loader)
+
+        then:
+        expandOperatorResult.getStageObjects().isEmpty()
+        loader.queries == [[collection: "MyService.Category", pipeline: []]]
+        first*.get("category") == [
+                Document.parse('{"_id": 10, "name": "first"}'),
+                Document.parse('{"_id": 10, "name": "first"}')]
+        second*.get("category") == [
+                Document.parse('{"_id": 11, "name": "second"}'),
+                null,
+                Document.parse('{"_id": 11, "name": "second"}')]
+        !second[1].containsKey("category")
+        !first[0].get("category").is(first[1].get("category"))
+    }
+
+    def 'should copy the properties selected by $select from the cached documents'() {
+        given:
+        def tested = BatchedExpandExecutor.builder().withNavigationTargetCache(NavigationTargetCache.builder().build()).build()
+        def expandOperatorResult = parseExpand('$expand=children($select=index;$expand=category($select=name))', ["MyService.Category"] as Set)
+        def documents = parseDocuments(TREE_TYPE_1_DOCUMENTS).subList(0, 1)
+        def loader = new InMemoryLoader()
+
+        when:
+        def results = tested.expand(documents, expandOperatorResult, loader)
+
+        then:
+        loader.queries*.collection == ["MyService.TreeType1", "MyService.Category"]
+        loader.queries[1].pipeline == []
+        results[0].get("children") == parseDocuments('''[
+            {"_id": 2, "index": 2, "category": {"name": "first"}},
+            {"_id": 3, "index": 3, "category": {"name": "second"}},
+            {"_id": 4, "index": 4}
+        ]''')
+    }
+
+    def "should fetch the cached navigation target with the query when the collection can not be cached"() {
+        given:
+        def expandOperatorResult = parseExpand('$expand=category($select=name)', ["MyService.Category"] as Set)
+        def documents = parseDocuments(TREE_TYPE_1_DOCUMENTS).subList(0, 1)
+        def loader = new InMemoryLoader()
+
+        when:
+        def results = tested.expand(documents, expandOperatorResult, loader)
+
+        then:
+        loader.queries*.pipeline == expectedPipelines
+        results[0].get("category") == Document.parse('{"name": "first"}')
+
+        where:
+        tested                                                                                                                          || expectedPipelines
+        new BatchedExpandExecutor()                                                                                                     || [[Document.parse('{"$match": {"_id": {"$in": [10]}}}'), Document.parse('{"$project": {"name": 1, "_id": 1}}')]]
+        BatchedExpandExecutor.builder().withNavigationTargetCache(NavigationTargetCache.builder().withMaximumDocuments(1).build()).build() || [[], [Document.parse('{"$match": {"_id": {"$in": [10]}}}'), Document.parse('{"$project": {"name": 1, "_id": 1}}')]]
+    }
+
+    def "should fetch the sibling navigation properties concurrently"() {
+        given:
+        def expandOperatorResult = parseExpand('$expand=category,children($expand=category),parent')
+        def executorService = Executors.newCachedThreadPool()
+        def tested = BatchedExpandExecutor.builder().withExecutorService(executorService).withMaxConcurrency(3).build()
+        def allStarted = new CountDownLatch(3)
+        def delegate = new InMemoryLoader()
+        def loader = { collection, pipeline ->
+            allStarted.countDown()
+            // Each sibling query waits until all sibling queries are started
+            allStarted.await(5, TimeUnit.SECONDS)
+            synchronized (delegate) {
+                delegate.load(collection, pipeline)
+            }
+        } as BatchedExpandExecutor.BatchLoader
+        def expected = new BatchedExpandExecutor().expand(parseDocuments(TREE_TYPE_1_DOCUMENTS), expandOperatorResult, new InMemoryLoader())
+
+        when:
+        def results = tested.expand(parseDocuments(TREE_TYPE_1_DOCUMENTS), expandOperatorResult, loader)
+
+        then:
+        allStarted.getCount() == 0
+        results == expected
+        delegate.queries.size() == 4
+
+        cleanup:
+        executorService.shutdownNow()
+    }
+
+    @Unroll
+    def "should expand the nested navigation properties with the fixed thread pool of #threads threads"() {
+        given:
+        def expandOperatorResult = parseExpand('$expand=category,children($expand=category,children($expand=category,parent))')
+        def executorService = Executors.newFixedThreadPool(threads)
+        def caller = Executors.newSingleThreadExecutor()
+        def tested = BatchedExpandExecutor.builder().withExecutorService(executorService).build()
+        def delegate = new InMemoryLoader()
+        def loader = { collection, pipeline ->
+            synchronized (delegate) {
+                delegate.load(collection, pipeline)
+            }
+        } as BatchedExpandExecutor.BatchLoader
+        def expected = new BatchedExpandExecutor().expand(parseDocuments(TREE_TYPE_1_DOCUMENTS), expandOperatorResult, new InMemoryLoader())
+
+        when:
+        // The calling thread is not a thread of the pool, the expand has to finish even when all threads of the pool are busy
+        def results = caller.submit({ -> tested.expand(parseDocuments(TREE_TYPE_1_DOCUMENTS), expandOperatorResult, loader) } as Callable<List<Document>>)
+                .get(10, TimeUnit.SECONDS)
+
+        then:
+        results == expected
+        delegate.queries.size() == 6
+
+        cleanup:
+        executorService.shutdownNow()
+        caller.shutdownNow()
+
+        where:
+        threads << [1, 2]
+    }
+
+    def "should not execute more queries at the same time than the maximum concurrency"() {
+        given:
+        def expandOperatorResult = parseExpand('$expand=category,children($expand=category,parent),parent')
+        def executorService = Executors.newCachedThreadPool()
+        def tested = BatchedExpandExecutor.builder().withExecutorService(executorService).withMaxConcurrency(2).build()
+        def running = new AtomicInteger()
+        def maxRunning = new AtomicInteger()
+        def delegate = new InMemoryLoader()
+        def loader = { collection, pipeline ->
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max)
+            Thread.sleep(50)
+            running.decrementAndGet()
+            synchronized (delegate) {
+                delegate.load(collection, pipeline)
+            }
+        } as BatchedExpandExecutor.BatchLoader
+
+        when:
+        tested.expand(parseDocuments(TREE_TYPE_1_DOCUMENTS), expandOperatorResult, loader)
+
+        then:
+        delegate.queries.size() == 5
+        maxRunning.get() == 2
+
+        cleanup:
+        executorService.shutdownNow()
+    }
+
+    @Unroll
+    def "should cancel the sibling queries when the query of #failedEdmPath fails"() {
+        given:
+        def expandOperatorResult = parseExpand('$expand=category,children')
+        def executorService = Executors.newCachedThreadPool()
+        def tested = BatchedExpandExecutor.builder().withExecutorService(executorService).build()
+        def blockedStarted = new CountDownLatch(1)
+        def interrupted = new CountDownLatch(1)
+        def failure = new IllegalStateException("connection lost")
+        def loader = { collection, pipeline ->
+            if (collection == failedCollection) {
+                blockedStarted.await(5, TimeUnit.SECONDS)
+                throw failure
+            }
+            blockedStarted.countDown()
+            try {
+                Thread.sleep(10_000)
+            } catch (InterruptedException e) {
+                interrupted.countDown()
+                throw e
+            }
+            [].iterator()
+        } as BatchedExpandExecutor.BatchLoader
+
+        when:
+        tested.expand(parseDocuments(TREE_TYPE_1_DOCUMENTS), expandOperatorResult, loader)
+
+        then:
+        def ex = thrown(ExpandException)
+        ex.getEdmPath() == failedEdmPath
+        ex.getCause().is(failure)
+        interrupted.await(5, TimeUnit.SECONDS)
+
+        cleanup:
+        executorService.shutdownNow()
+
+        where:
+        failedCollection        | failedEdmPath
+        "MyService.Category"    | "category"
+        "MyService.TreeType1"   | "children"
+    }
+
+    def "should throw exception when the maximum concurrency is not greater than zero"() {
+        when:
+        BatchedExpandExecutor.builder().withMaxConcurrency(0).build()
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "should create executor with default values"() {
+        when:
+        def tested = BatchedExpandExecutor.builder().build()
+
+        then:
+        tested.getExecutorService() == null
+        tested.getMaxConcurrency() == BatchedExpandExecutor.DEFAULT_MAX_CONCURRENCY
+        tested == new BatchedExpandExecutor()
+        tested.hashCode() == new BatchedExpandExecutor().hashCode()
+        tested.toString().contains("maxConcurrency=4")
+    }
+
+    private ExpandOperatorResult parseExpand(String expand) {
+        parseExpand(expand, [] as Set)
+    }
+
+    private ExpandOperatorResult parseExpand(String expand, Set<String> cachedEntityTypes) {
+        Edm edm = loadEmdProvider("edm/edm_tree.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("treeType1s", expand, null, null)
+        def context = DefaultExpandParserContext.builder()
+                .withUseBatchedClientSideJoin(true)
+                .withUseBatchedLevelsExpand(true)
+                .withCachedEntityTypes(cachedEntityTypes)
+                .build()
+        new ODataExpandToMongoAggregationPipelineParser().parse(uriInfo.getExpandOption(), context)
+    }
+
+    /**
+     * Returns the documents of the collection that match the $in stage, the remaining stages are
+     * only recorded. The $project stages are applied as the inclusion of the top level properties.
+     * The empty pipeline returns all documents of the collection.
+     */
+    static class InMemoryLoader implements BatchedExpandExecutor.BatchLoader {
+
+        List<Map> queries = []
+        List<Document> related
+
+        @Override
+        Iterator<Document> load(String collection, List<Bson> pipeline) {
+            queries << [collection: collection, pipeline: pipeline]
+            def source = related != null ? related
+                    : collection == "MyService.Category" ? parseDocuments(CATEGORY_DOCUMENTS) : parseDocuments(TREE_TYPE_1_DOCUMENTS)
+            if (pipeline.isEmpty()) {
+                return source.iterator()
+            }
+            def match = (pipeline[0] as Document).get('$match', Document)
+            def property = match.keySet().iterator().next()
+            def keys = match.get(property, Document).getList('$in', Object).collect { BatchedExpandExecutor.normalizeKey(it) }
+            def results = source.findAll { it.get(property) != null && keys.contains(BatchedExpandExecutor.normalizeKey(it.get(property))) }
+            pipeline.findAll { (it as Document).containsKey('$project') }.each { stage ->
+                def projection = (stage as Document).get('$project', Document)
+                results = results.collect { document ->
+                    def projected = new Document()
+                    document.each { key, value ->
+                        if (key == "_id" || projection.get(key) == 1 || projection.get(key) == true) {
+                            projected.put(key, value)
+                        }
+                    }
+                    projected
+                }
+            }
+            results.iterator()
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.starnowski.jamolingo.core.operators.expand
+
+import com.github.starnowski.jamolingo.core.AbstractSpecification
+import com.github.starnowski.jamolingo.core.operators.expand.ODataExpandToMongoAggregationPipelineParser.DefaultExpandParserContext
+import com.mongodb.client.MongoCursor
+import org.apache.olingo.commons.api.edm.Edm
+import org.apache.olingo.server.api.OData
+import org.apache.olingo.server.api.uri.UriInfo
+import org.apache.olingo.server.core.uri.parser.Parser
+import org.bson.Document
+import spock.lang.Unroll
+
+import static com.github.starnowski.jamolingo.core.TestDocuments.parseDocuments
+
+class GraphLookUpToLookUpStrategyResultsTransformerTest extends AbstractSpecification {
+
+    static final String ROOT_DOCUMENTS = '''[
+        {"_id": 1, "index": 1, "children": [
+            {"_id": 2, "parentId": 1, "index": 2},
+            {"_id": 3, "parentId": 1, "index": 3},
+            {"_id": 4, "parentId": 2, "index": 4},
+            {"_id": 5, "parentId": 4, "index": 5}]},
+        {"_id": 6, "index": 6, "children": []},
+        {"_id": 7, "index": 7, "children": [
+            {"_id": 8, "parentId": 7, "index": 8},
+            {"_id": 7, "parentId": 8, "index": 7}]}
+    ]'''
+
+    @Unroll
+    def "should return the same documents for iterator and list for expand '#expand'"() {
+        given:
+        def expandOperatorResult = parseExpand(expand)
+        def tested = new GraphLookUpToLookUpStrategyResultsTransformer()
+        def expected = tested.transform(parseDocuments(ROOT_DOCUMENTS), expandOperatorResult)
+
+        when:
+        def iterator = tested.transform(parseDocuments(ROOT_DOCUMENTS).iterator(), expandOperatorResult)
+        def results = []
+        while (iterator.hasNext()) {
+            results << iterator.next()
+        }
+
+        then:
+        results*.toJson() == expected*.toJson()
+        results[0].toJson() == expectedFirstJson
+
+        where:
+        expand                        || expectedFirstJson
+        '$expand=children($levels=max)' || '{"_id": 1, "index": 1, "children": [{"_id": 2, "parentId": 1, "index": 2, "children": [{"_id": 4, "parentId": 2, "index": 4, "children": [{"_id": 5, "parentId": 4, "index": 5, "children": []}]}]}, {"_id": 3, "parentId": 1, "index": 3, "children": []}]}'
+        '$expand=children($levels=2)'   || '{"_id": 1, "index": 1, "children": [{"_id": 2, "parentId": 1, "index": 2, "children": [{"_id": 4, "parentId": 2, "index": 4, "children": [{"_id": 5, "parentId": 4, "index": 5, "children": []}]}]}, {"_id": 3, "parentId": 1, "index": 3, "children": []}]}'
+    }
+
+    def "should transform documents lazily one at a time"() {
+        given:
+        def documents = parseDocuments(ROOT_DOCUMENTS)
+        def source = Mock(Iterator)
+        source.hasNext() >>> [true, false]
+        def tested = new GraphLookUpToLookUpStrategyResultsTransformer()
+
+        when:
+        def iterator = tested.transform(source, parseExpand('$expand=children($levels=max)'))
+
+        then:
+        0 * source.next()
+
+        when:
+        def first = iterator.next()
+
+        then:
+        1 * source.next() >> documents[0]
+        first.get("children").size() == 2
+        documents[1].get("children") == []
+
+        when:
+        def second = iterator.next()
+
+        then:
+        1 * source.next() >> documents[1]
+        second.get("children") == []
+        iterator.hasNext()
+        !iterator.hasNext()
+    }
+
+    def "should close the cursor when the iterator is closed"() {
+        given:
+        def cursor = Mock(MongoCursor)
+        def tested = new GraphLookUpToLookUpStrategyResultsTransformer()
+
+        when:
+        tested.transform(cursor, parseExpand('$expand=children($levels=max)')).close()
+
+        then:
+        1 * cursor.close()
+    }
+
+    def "should return not transformed documents when the expand result is null"() {
+        given:
+        def documents = parseDocuments(ROOT_DOCUMENTS)
+        def tested = new GraphLookUpToLookUpStrategyResultsTransformer()
+
+        when:
+        def iterator = tested.transform(documents.iterator(), null)
+
+        then:
+        iterator.next().is(documents[0])
+        documents[0].get("children").size() == 4
+    }
+
+    def "should throw exception when the iterator is null"() {
+        when:
+        new GraphLookUpToLookUpStrategyResultsTransformer().transform((Iterator<Document>) null, null)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    private ExpandOperatorResult parseExpand(String expand) {
+        Edm edm = loadEmdProvider("edm/edm_tree.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("treeType1s", expand, null, null)
+        def context = DefaultExpandParserContext.builder()
+                .withUseLookupForLevelGreaterThanOne(false)
+                .withMaxLevel(5)
+                .build()
+        new ODataExpandToMongoAggregationPipelineParser().parse(uriInfo.getExpandOption(), context)
+    }
+}
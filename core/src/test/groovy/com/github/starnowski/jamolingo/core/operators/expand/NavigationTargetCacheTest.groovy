@@ -0,0 +1,214 @@
+package com.github.starnowski.jamolingo.core.operators.expand
+
+import com.github.starnowski.jamolingo.core.MutableClock
+import org.bson.Document
+import org.bson.conversions.Bson
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+
+class NavigationTargetCacheTest extends Specification {
+
+    static final List<Document> CURRENCIES = [
+            Document.parse('{"_id": 1, "code": "EUR", "rates": [{"code": "USD", "rate": 1.1}]}'),
+            Document.parse('{"_id": 2, "code": "USD", "regionIds": [10, 11]}'),
+            Document.parse('{"_id": 3, "code": "PLN", "regionIds": [11]}')
+    ]
+
+    def "should load the whole collection once and return the copies of the matching documents"() {
+        given:
+        def loader = new CountingLoader(documents: CURRENCIES)
+        def tested = NavigationTargetCache.builder().build()
+
+        when:
+        def first = tested.find("currencies", "_id", [3, 1L], loader)
+        def second = tested.find("currencies", "code", ["USD"], loader)
+
+        then:
+        loader.pipelines == [[]]
+        first == [CURRENCIES[0], CURRENCIES[2]]
+        second == [CURRENCIES[1]]
+        tested.getMissCount() == 1
+        tested.getHitCount() == 1
+        tested.size() == 1
+
+        when: "the returned documents are modified"
+        first[0].getList("rates", Document)[0].put("rate", 2)
+
+        then:
+        tested.find("currencies", "_id", [1], loader) == [CURRENCIES[0]]
+        !CURRENCIES[0].getList("rates", Document)[0].is(first[0].getList("rates", Document)[0])
+    }
+
+    def "should match the keys with the values of the arrays"() {
+        given:
+        def tested = NavigationTargetCache.builder().build()
+
+        expect:
+        tested.find("currencies", "regionIds", [11.0d], new CountingLoader(documents: CURRENCIES)) == [CURRENCIES[1], CURRENCIES[2]]
+    }
+
+    def "should return null when the collection has more documents than the maximum number of documents"() {
+        given:
+        def loader = new CountingLoader(documents: CURRENCIES)
+        def tested = NavigationTargetCache.builder().withMaximumDocuments(2).build()
+
+        when:
+        def results = tested.find("currencies", "_id", [1], loader)
+
+        then:
+        results == null
+        loader.closed
+    }
+
+    def "should load the collection again after time to live or invalidation"() {
+        given:
+        MutableClock clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"))
+        def loader = new CountingLoader(documents: CURRENCIES)
+        def tested = NavigationTargetCache.builder()
+                .withExpireAfterWrite(Duration.ofSeconds(10))
+                .withClock(clock)
+                .build()
+        tested.find("currencies", "_id", [1], loader)
+
+        when:
+        clock.instant = clock.instant.plusSeconds(9)
+        tested.find("currencies", "_id", [1], loader)
+
+        then:
+        loader.pipelines.size() == 1
+
+        when:
+        clock.instant = clock.instant.plusSeconds(1)
+        loader.documents = [Document.parse('{"_id": 1, "code": "EURO"}')]
+
+        then:
+        tested.find("currencies", "_id", [1], loader) == [Document.parse('{"_id": 1, "code": "EURO"}')]
+        loader.pipelines.size() == 2
+
+        when:
+        tested.invalidate("currencies")
+        loader.documents = CURRENCIES
+
+        then:
+        tested.size() == 0
+        tested.find("currencies", "_id", [1], loader) == [CURRENCIES[0]]
+        loader.pipelines.size() == 3
+
+        when:
+        tested.invalidateAll()
+
+        then:
+        tested.size() == 0
+    }
+
+    @Unroll
+    def "should not store the documents loaded before the collection was invalidated with #method"() {
+        given:
+        def tested = NavigationTargetCache.builder().build()
+        def loader = { collection, pipeline ->
+            // The collection changes while the documents are loaded
+            method == "invalidate" ? tested.invalidate("currencies") : tested.invalidateAll()
+            CURRENCIES.iterator()
+        } as BatchedExpandExecutor.BatchLoader
+        def current = new CountingLoader(documents: [Document.parse('{"_id": 1, "code": "EURO"}')])
+
+        when:
+        def stale = tested.find("currencies", "_id", [1], loader)
+
+        then:
+        stale == [CURRENCIES[0]]
+        tested.size() == 0
+        tested.find("currencies", "_id", [1], current) == [Document.parse('{"_id": 1, "code": "EURO"}')]
+        current.pipelines.size() == 1
+        tested.size() == 1
+
+        where:
+        method << ["invalidate", "invalidateAll"]
+    }
+
+    def "should not store the collection when the loader throws exception"() {
+        given:
+        def tested = NavigationTargetCache.builder().build()
+
+        when:
+        tested.find("currencies", "_id", [1], { collection, pipeline -> throw new IOException("failure") })
+
+        then:
+        thrown(IOException)
+        tested.size() == 0
+    }
+
+    @Unroll
+    def "should throw exception for invalid configuration maximumDocuments: #maximumDocuments, expireAfterWrite: #expireAfterWrite"() {
+        when:
+        NavigationTargetCache.builder()
+                .withMaximumDocuments(maximumDocuments)
+                .withExpireAfterWrite(expireAfterWrite)
+                .withClock(clock)
+                .build()
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        maximumDocuments | expireAfterWrite       | clock
+        0                | null                   | Clock.systemUTC()
+        -1               | null                   | Clock.systemUTC()
+        10               | Duration.ZERO          | Clock.systemUTC()
+        10               | Duration.ofSeconds(-1) | Clock.systemUTC()
+        10               | null                   | null
+    }
+
+    def "should create cache with default values"() {
+        when:
+        def tested = NavigationTargetCache.builder().build()
+
+        then:
+        tested.getMaximumDocuments() == NavigationTargetCache.DEFAULT_MAXIMUM_DOCUMENTS
+        tested.getExpireAfterWrite() == null
+        tested.toString().contains("maximumDocuments=10000")
+    }
+
+    static class CountingLoader implements BatchedExpandExecutor.BatchLoader {
+
+        List<List<Bson>> pipelines = []
+        List<Document> documents
+        boolean closed
+
+        @Override
+        Iterator<Document> load(String collection, List<Bson> pipeline) {
+            pipelines << pipeline
+            new ClosableIterator(documents.iterator(), { closed = true })
+        }
+    }
+
+    static class ClosableIterator implements Iterator<Document>, AutoCloseable {
+
+        private final Iterator<Document> delegate
+        private final Runnable onClose
+
+        ClosableIterator(Iterator<Document> delegate, Runnable onClose) {
+            this.delegate = delegate
+            this.onClose = onClose
+        }
+
+        @Override
+        boolean hasNext() {
+            delegate.hasNext()
+        }
+
+        @Override
+        Document next() {
+            delegate.next()
+        }
+
+        @Override
+        void close() {
+            onClose.run()
+        }
+    }
+}
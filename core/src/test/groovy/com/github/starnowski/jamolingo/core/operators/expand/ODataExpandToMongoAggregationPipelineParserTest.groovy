@@ -1,6 +1,10 @@
 package com.github.starnowski.jamolingo.core.operators.expand
 
 import com.github.starnowski.jamolingo.core.AbstractSpecification
+import com.github.starnowski.jamolingo.core.context.CompiledEdmMongoModel
+import com.github.starnowski.jamolingo.core.mapping.NavigationMapping
+import com.github.starnowski.jamolingo.core.mapping.ODataMongoMappingFactory
+import com.github.starnowski.jamolingo.core.mapping.PropertyMapping
 import com.github.starnowski.jamolingo.core.operators.expand.ExpandParserContext
 import com.github.starnowski.jamolingo.core.operators.expand.ODataExpandToMongoAggregationPipelineParser.DefaultExpandParserContext
 import com.github.starnowski.jamolingo.core.operators.expand.ODataExpandToMongoAggregationPipelineParser
@@ -87,6 +91,353 @@ class ODataExpandToMongoAggregationPipelineParserTest extends AbstractSpecificat
         context3.toString().contains("useLookupForLevelGreaterThanOne=false")
     }
 
+    def "should set and copy isBuildGraphLookUpTreeOnServer in DefaultExpandParserContext builder"() {
+        given:
+        def context = DefaultExpandParserContext.builder()
+                .withBuildGraphLookUpTreeOnServer(true)
+                .build()
+
+        when:
+        def contextCopy = DefaultExpandParserContext.builder()
+                .withDefaultExpandParserContext(context)
+                .build()
+
+        then:
+        context.isBuildGraphLookUpTreeOnServer()
+        contextCopy.isBuildGraphLookUpTreeOnServer()
+        contextCopy == context
+        context != DefaultExpandParserContext.builder().build()
+        !DefaultExpandParserContext.builder().build().isBuildGraphLookUpTreeOnServer()
+        context.toString().contains("buildGraphLookUpTreeOnServer=true")
+    }
+
+    def "should set and copy isUseBatchedClientSideJoin in DefaultExpandParserContext builder"() {
+        given:
+        def context = DefaultExpandParserContext.builder()
+                .withUseBatchedClientSideJoin(true)
+                .build()
+
+        when:
+        def contextCopy = DefaultExpandParserContext.builder()
+                .withDefaultExpandParserContext(context)
+                .build()
+
+        then:
+        context.isUseBatchedClientSideJoin()
+        contextCopy.isUseBatchedClientSideJoin()
+        contextCopy == context
+        context != DefaultExpandParserContext.builder().build()
+        !DefaultExpandParserContext.builder().build().isUseBatchedClientSideJoin()
+        context.toString().contains("useBatchedClientSideJoin=true")
+    }
+
+    def 'should not return stages for expand fetched with batched $in queries'() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm_tree.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("treeType1s", '$expand=children($filter=index gt 1;$orderby=index desc;$skip=1;$top=2;$select=index;$expand=category($select=name))', null, null)
+        def context = DefaultExpandParserContext.builder()
+                .withUseBatchedClientSideJoin(true)
+                .build()
+
+        when:
+        def result = new ODataExpandToMongoAggregationPipelineParser().parse(uriInfo.getExpandOption(), context)
+
+        then:
+        result.getStageObjects().isEmpty()
+        def children = result.getExpandElements().get("children")
+        children.getFetchType() == FetchType.BATCHED
+        children.getLocalKeyProperty() == "_id"
+        children.getForeignKeyProperty() == "parentId"
+        children.getForeignCollection() == "MyService.TreeType1"
+        children.getCollection()
+        children.getBatchedJoinInfo().getSkip() == 1
+        children.getBatchedJoinInfo().getTop() == 2
+        children.getBatchedJoinInfo().getRemovedProperties() == ["parentId", "categoryId"] as Set
+        def stages = children.getBatchedJoinInfo().getPipeline() as List<Document>
+        stages*.keySet()*.iterator()*.next() == ['$match', '$sort', '$project']
+        stages[1] == Document.parse('{"$sort": {"index": -1}}')
+        def category = children.getExpandElements().get("category")
+        category.getFetchType() == FetchType.BATCHED
+        category.getLocalKeyProperty() == "categoryId"
+        category.getForeignKeyProperty() == "_id"
+        !category.getCollection()
+        category.getBatchedJoinInfo().getRemovedProperties() == ["_id"] as Set
+    }
+
+    def 'should translate expand with $levels > 1 to stages when batched $in queries are used'() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm_tree.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("treeType1s", '$expand=children($levels=2;$expand=category),parent', null, null)
+        def context = DefaultExpandParserContext.builder()
+                .withUseBatchedClientSideJoin(true)
+                .build()
+        def expectedContext = DefaultExpandParserContext.builder()
+                .withDefaultExpandParserContext(context)
+                .withUseBatchedClientSideJoin(false)
+                .build()
+        UriInfo expectedUriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("treeType1s", '$expand=children($levels=2;$expand=category)', null, null)
+
+        when:
+        def result = new ODataExpandToMongoAggregationPipelineParser().parse(uriInfo.getExpandOption(), context)
+
+        then:
+        result.getStageObjects() == new ODataExpandToMongoAggregationPipelineParser().parse(expectedUriInfo.getExpandOption(), expectedContext).getStageObjects()
+        result.getExpandElements().get("children").getFetchType() == FetchType.GRAPHLOOKUP
+        result.getExpandElements().get("children").getExpandElements().get("category").getFetchType() == FetchType.LOOKUP
+        result.getExpandElements().get("parent").getFetchType() == FetchType.BATCHED
+    }
+
+    def "should set and copy isUseBatchedLevelsExpand in DefaultExpandParserContext builder"() {
+        given:
+        def context = DefaultExpandParserContext.builder()
+                .withUseBatchedLevelsExpand(true)
+                .build()
+
+        when:
+        def contextCopy = DefaultExpandParserContext.builder()
+                .withDefaultExpandParserContext(context)
+                .build()
+
+        then:
+        context.isUseBatchedLevelsExpand()
+        contextCopy.isUseBatchedLevelsExpand()
+        contextCopy == context
+        context != DefaultExpandParserContext.builder().build()
+        !DefaultExpandParserContext.builder().build().isUseBatchedLevelsExpand()
+        context.toString().contains("useBatchedLevelsExpand=true")
+    }
+
+    def 'should not return stages for expand with $levels > 1 fetched level by level'() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm_tree.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("treeType1s", '$expand=children($levels=max;$filter=index gt 1;$select=index;$expand=category)', null, null)
+        def context = DefaultExpandParserContext.builder()
+                .withUseBatchedClientSideJoin(true)
+                .withUseBatchedLevelsExpand(true)
+                .withMaxLevel(3)
+                .build()
+
+        when:
+        def result = new ODataExpandToMongoAggregationPipelineParser().parse(uriInfo.getExpandOption(), context)
+
+        then:
+        result.getStageObjects().isEmpty()
+        def children = result.getExpandElements().get("children")
+        children.getFetchType() == FetchType.BATCHED_LEVELS
+        children.getLevel() == 3
+        children.getMaxLevelRequest()
+        children.getLocalKeyProperty() == "_id"
+        children.getForeignKeyProperty() == "parentId"
+        children.getDepthVariableName() == "children" + ODataExpandToMongoAggregationPipelineParser.ODATA_GRAPHLOOKUP_STAGE_DEPTH_VARIABLE_SUFFIX
+        children.getBatchedJoinInfo().getRemovedProperties() == ["parentId", "_id", "categoryId"] as Set
+        (children.getBatchedJoinInfo().getPipeline() as List<Document>)*.keySet()*.iterator()*.next() == ['$match', '$project']
+        children.getExpandElements().get("category").getFetchType() == FetchType.BATCHED
+    }
+
+    def "should set and copy getCachedEntityTypes in DefaultExpandParserContext builder"() {
+        given:
+        def context = DefaultExpandParserContext.builder()
+                .withCachedEntityTypes(["MyService.Category"] as Set)
+                .build()
+
+        when:
+        def contextCopy = DefaultExpandParserContext.builder()
+                .withDefaultExpandParserContext(context)
+                .build()
+
+        then:
+        context.getCachedEntityTypes() == ["MyService.Category"] as Set
+        contextCopy.getCachedEntityTypes() == ["MyService.Category"] as Set
+        contextCopy == context
+        context != DefaultExpandParserContext.builder().build()
+        DefaultExpandParserContext.builder().build().getCachedEntityTypes().isEmpty()
+        context.toString().contains("cachedEntityTypes=[MyService.Category]")
+    }
+
+    def 'should not return stages for expand of cached entity type'() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm_tree.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("treeType1s", '$expand=category($select=name)', null, null)
+        def context = DefaultExpandParserContext.builder()
+                .withCachedEntityTypes(["MyService.Category"] as Set)
+                .build()
+
+        when:
+        def result = new ODataExpandToMongoAggregationPipelineParser().parse(uriInfo.getExpandOption(), context)
+
+        then:
+        result.getStageObjects().isEmpty()
+        def category = result.getExpandElements().get("category")
+        category.getFetchType() == FetchType.CACHED
+        category.getLocalKeyProperty() == "categoryId"
+        category.getForeignKeyProperty() == "_id"
+        category.getForeignCollection() == "MyService.Category"
+        !category.getCollection()
+        category.getBatchedJoinInfo().getSelectedProperties() == ["name", "_id"] as Set
+        category.getBatchedJoinInfo().getRemovedProperties() == ["_id"] as Set
+    }
+
+    def 'should translate expand of cached entity type to stages for expand: #expand'() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm_tree.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("treeType1s", expand, null, null)
+        def context = DefaultExpandParserContext.builder()
+                .withCachedEntityTypes(["MyService.Category", "MyService.TreeType1"] as Set)
+                .build()
+
+        when:
+        def result = new ODataExpandToMongoAggregationPipelineParser().parse(uriInfo.getExpandOption(), context)
+
+        then:
+        !result.getStageObjects().isEmpty()
+        result.getExpandElements().get(property).getFetchType() == FetchType.LOOKUP
+
+        where:
+        expand                                             | property
+        '$expand=category($filter=name eq \'first\')'      | "category"
+        '$expand=children($top=1)'                         | "children"
+        '$expand=children($expand=category)'               | "children"
+    }
+
+    def "should set and copy isUseArrayNativeNestedExpandMerge in DefaultExpandParserContext builder"() {
+        given:
+        def context = DefaultExpandParserContext.builder()
+                .withUseArrayNativeNestedExpandMerge(true)
+                .build()
+
+        when:
+        def contextCopy = DefaultExpandParserContext.builder()
+                .withDefaultExpandParserContext(context)
+                .build()
+
+        then:
+        context.isUseArrayNativeNestedExpandMerge()
+        contextCopy.isUseArrayNativeNestedExpandMerge()
+        contextCopy == context
+        context != DefaultExpandParserContext.builder().build()
+        !DefaultExpandParserContext.builder().build().isUseArrayNativeNestedExpandMerge()
+        context.toString().contains("useArrayNativeNestedExpandMerge=true")
+    }
+
+    def 'should merge nested expand of $graphLookup results with array expressions'() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm_tree.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("treeType1s", '$expand=children($levels=max;$expand=treeType2s($orderby=index desc;$top=1;$select=index))', null, null)
+        def context = DefaultExpandParserContext.builder()
+                .withUseArrayNativeNestedExpandMerge(true)
+                .build()
+        def expectedStages = [
+                Document.parse('{"$lookup": {"from": "MyService.TreeType2", "localField": "children._id", "foreignField": "treeType1Id", "pipeline": [{"$sort": {"index": -1}}, {"$project": {"index": 1, "treeType1Id": 1, "_id": 0}}], "as": "children_treeType2s_odata_merge_tmp_array"}}'),
+                Document.parse('{"$set": {"children": {"$map": {"input": "$children", "as": "node", "in": {"$mergeObjects": ["$$node", {"treeType2s": {"$let": {"vars": {"matches": {"$let": {"vars": {"matches": {"$filter": {"input": "$children_treeType2s_odata_merge_tmp_array", "as": "related", "cond": {"$eq": ["$$related.treeType1Id", "$$node._id"]}}}}, "in": {"$slice": ["$$matches", 0, 1]}}}}, "in": {"$cond": [{"$eq": [{"$size": "$$matches"}, 0]}, "$$REMOVE", "$$matches"]}}}}]}}}}}'),
+                Document.parse('{"$unset": ["children_treeType2s_odata_merge_tmp_array", "children.treeType2s.treeType1Id"]}')
+        ]
+
+        when:
+        def result = new ODataExpandToMongoAggregationPipelineParser().parse(uriInfo.getExpandOption(), context)
+
+        then:
+        def stages = result.getStageObjects() as List<Document>
+        stages.findAll { it.containsKey('$unwind') || it.containsKey('$group') || it.containsKey('$replaceRoot') }.isEmpty()
+        stages.subList(stages.size() - 3, stages.size()) == expectedStages
+        result.getExpandElements().get("children").getExpandElements().get("treeType2s").getFetchType() == FetchType.LOOKUP
+    }
+
+    def 'should merge nested expand with $levels > 1 of $graphLookup results with $group stage'() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm_tree.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("treeType1s", '$expand=parent($levels=2;$expand=children($levels=2),treeType2s)', null, null)
+        def context = DefaultExpandParserContext.builder()
+                .withUseArrayNativeNestedExpandMerge(true)
+                .build()
+        def expectedContext = DefaultExpandParserContext.builder()
+                .withDefaultExpandParserContext(context)
+                .withUseArrayNativeNestedExpandMerge(false)
+                .build()
+
+        when:
+        def result = new ODataExpandToMongoAggregationPipelineParser().parse(uriInfo.getExpandOption(), context)
+
+        then:
+        result.getStageObjects() == new ODataExpandToMongoAggregationPipelineParser().parse(uriInfo.getExpandOption(), expectedContext).getStageObjects()
+        (result.getStageObjects() as List<Document>).any { it.containsKey('$group') }
+    }
+
+    def "should set type mapping, collections and root entity from the compiled model in DefaultExpandParserContext builder"() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm_tree.xml")
+        def mapping = new ODataMongoMappingFactory().build(edm.getSchema("MyService"))
+        mapping.getEntities().get("TreeType1").withTable("tree_type_1")
+        mapping.getEntities().get("TreeType1").getProperties().get("parentId").withMongoName("parent_id")
+        def model = CompiledEdmMongoModel.compile(edm, mapping)
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("treeType1s", "\$expand=children(\$levels=2)", null, null)
+        def manualContext = DefaultExpandParserContext.builder()
+                .withEdmTypeMapping(new HashMap<>(model.getEdmTypeMapping()))
+                .withEdmTablesToMongoDBCollections(new HashMap<>(model.getEdmTablesToMongoDBCollections()))
+                .withRootEdmEntityTypeName("MyService.TreeType1")
+                .withRootEdmMongoContextFacade(model.getEdmMongoContextFacade("MyService.TreeType1"))
+                .build()
+
+        when:
+        def context = DefaultExpandParserContext.builder()
+                .withCompiledEdmMongoModel(model, "MyService.TreeType1")
+                .build()
+        def result = new ODataExpandToMongoAggregationPipelineParser().parse(uriInfo.getExpandOption(), context)
+
+        then:
+        context.getEDMTypeMapping() == manualContext.getEDMTypeMapping()
+        context.getEDMTablesToMongoDBCollections() == manualContext.getEDMTablesToMongoDBCollections()
+        context.getRootEdmEntityTypeName() == manualContext.getRootEdmEntityTypeName()
+        context.getCompiledEdmMongoModel().is(model)
+        context.getRootEdmMongoContextFacade().is(model.getEdmMongoContextFacade("MyService.TreeType1"))
+        result.getStageObjects() == new ODataExpandToMongoAggregationPipelineParser().parse(uriInfo.getExpandOption(), manualContext).getStageObjects()
+        def graphLookup = (result.getStageObjects()[0] as Document).get("\$graphLookup", Document)
+        graphLookup.get("from") == "tree_type_1"
+        graphLookup.get("connectToField") == "parent_id"
+    }
+
+    def "should use the join keys of the compiled model"() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm_tree.xml")
+        def mapping = new ODataMongoMappingFactory().build(edm.getSchema("MyService"))
+        mapping.getEntities().get("TreeType1").getProperties().put("category", new PropertyMapping()
+                .withNavigation(NavigationMapping.builder()
+                        .withLocalField("category_ref")
+                        .build()))
+        def model = CompiledEdmMongoModel.compile(edm, mapping)
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("treeType1s", '$expand=category,children($expand=category)', null, null)
+        def context = DefaultExpandParserContext.builder()
+                .withCompiledEdmMongoModel(model, "MyService.TreeType1")
+                .build()
+
+        when:
+        def result = new ODataExpandToMongoAggregationPipelineParser().parse(uriInfo.getExpandOption(), context)
+
+        then:
+        result.getExpandElements().get("category").getLocalKeyProperty() == "category_ref"
+        result.getExpandElements().get("children").getExpandElements().get("category").getLocalKeyProperty() == "category_ref"
+        (result.getStageObjects()[0] as Document).get('$lookup', Document).get("localField") == "category_ref"
+        context.getNavigationJoinKeys("MyService.TreeType1", "category") == model.getNavigationJoinKeys("MyService.TreeType1", "category")
+        DefaultExpandParserContext.builder().build().getNavigationJoinKeys("MyService.TreeType1", "category") == null
+    }
+
+    def "should throw exception when compiled model is null in DefaultExpandParserContext builder"() {
+        when:
+        DefaultExpandParserContext.builder().withCompiledEdmMongoModel(null, "MyService.TreeType1")
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
     def 'should parse expand with $levels > 1 using $graphLookup when isUseLookupForLevelGreaterThanOne is false'() {
         given:
         Edm edm = loadEmdProvider("edm/edm_expand.xml")
@@ -88,6 +88,39 @@ class ODataExpandToMongoAggregationPipelineParserTreeRelationsTest extends Abstr
         [expandQuery, expectedPipelineBsonArray] << graphLookupEdmPathsMappings()
     }
 
+    @Unroll
+    def "should return expected pipeline stages for tree relations with graphLookup tree built on server: #expandQuery"() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm_tree.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("treeType1s", expandQuery, null, null)
+
+        def context = DefaultExpandParserContext.builder()
+                .withUseLookupForLevelGreaterThanOne(false)
+                .withBuildGraphLookUpTreeOnServer(true)
+                .withMaxLevel(5)
+                .build()
+
+        def parser = new ODataExpandToMongoAggregationPipelineParser()
+
+        when:
+        def result = parser.parse(uriInfo.getExpandOption(), context)
+
+        then:
+        def expectedList = parseJsonArray(expectedPipelineBsonArray)
+        def actualList = result.getStageObjects() as List<Document>
+
+        convertToFormattedJsonArray(sortKeys(actualList) as List<Document>) == convertToFormattedJsonArray(sortKeys(expectedList) as List<Document>)
+        def expandElement = result.getExpandElements().values().iterator().next()
+        expandElement.getFetchType() == FetchType.GRAPHLOOKUP_TREE
+        expandElement.getGraphLookUpCleanUpInfo() == null
+
+        where:
+        expandQuery | expectedPipelineBsonArray
+        '$expand=children($levels=2)' | '''[{"$graphLookup": {"from": "MyService.TreeType1", "startWith": "$_id", "connectFromField": "_id", "connectToField": "parentId", "maxDepth": 1, "as": "children", "depthField": "children_odata_graphlookup_depth_variable"}}, {"$set": {"children": {"$map": {"input": {"$filter": {"input": "$children", "as": "node", "cond": {"$lt": ["$$node.children_odata_graphlookup_depth_variable", 1]}}}, "as": "node", "in": {"$cond": [{"$eq": ["$$node.children_odata_graphlookup_depth_variable", 0]}, {"$mergeObjects": ["$$node", {"children": {"$map": {"input": {"$filter": {"input": "$children", "as": "child", "cond": {"$and": [{"$eq": ["$$child.children_odata_graphlookup_depth_variable", 1]}, {"$eq": ["$$child.parentId", "$$node._id"]}]}}}, "as": "child", "in": {"$arrayToObject": {"$filter": {"input": {"$objectToArray": "$$child"}, "as": "field", "cond": {"$ne": ["$$field.k", "children_odata_graphlookup_depth_variable"]}}}}}}}]}, "$$node"]}}}}}, {"$set": {"children": {"$map": {"input": {"$filter": {"input": "$children", "as": "node", "cond": {"$eq": ["$$node.children_odata_graphlookup_depth_variable", 0]}}}, "as": "child", "in": {"$arrayToObject": {"$filter": {"input": {"$objectToArray": "$$child"}, "as": "field", "cond": {"$ne": ["$$field.k", "children_odata_graphlookup_depth_variable"]}}}}}}}}]'''
+        '$expand=parent($levels=2;$select=index)' | '''[{"$graphLookup": {"from": "MyService.TreeType1", "startWith": "$parentId", "connectFromField": "parentId", "connectToField": "_id", "maxDepth": 1, "as": "parent", "depthField": "parent_odata_graphlookup_depth_variable"}}, {"$set": {"parent": {"$map": {"input": {"$filter": {"input": "$parent", "as": "node", "cond": {"$lt": ["$$node.parent_odata_graphlookup_depth_variable", 1]}}}, "as": "node", "in": {"$cond": [{"$eq": ["$$node.parent_odata_graphlookup_depth_variable", 0]}, {"$mergeObjects": ["$$node", {"parent": {"$arrayElemAt": [{"$map": {"input": {"$filter": {"input": "$parent", "as": "child", "cond": {"$and": [{"$eq": ["$$child.parent_odata_graphlookup_depth_variable", 1]}, {"$eq": ["$$child._id", "$$node.parentId"]}]}}}, "as": "child", "in": {"$mergeObjects": [{"index": "$$child.index"}, {"parent": "$$child.parent"}]}}}, 0]}}]}, "$$node"]}}}}}, {"$set": {"parent": {"$let": {"vars": {"roots": {"$map": {"input": {"$filter": {"input": "$parent", "as": "node", "cond": {"$eq": ["$$node.parent_odata_graphlookup_depth_variable", 0]}}}, "as": "child", "in": {"$mergeObjects": [{"index": "$$child.index"}, {"parent": "$$child.parent"}]}}}}, "in": {"$cond": [{"$eq": [{"$size": "$$roots"}, 0]}, "$$REMOVE", {"$arrayElemAt": ["$$roots", 0]}]}}}}}]'''
+    }
+
     @Unroll
     def "should return expected pipeline stages for tree relations with multi-level lookup: #expandQuery"() {
         given:
@@ -133,7 +166,8 @@ class ODataExpandToMongoAggregationPipelineParserTreeRelationsTest extends Abstr
                 ['$expand=children($levels=max;$orderby=index asc)', '''[{"$graphLookup": {"from": "MyService.TreeType1", "startWith": "$_id", "connectFromField": "_id", "connectToField": "parentId", "maxDepth": 4, "as": "children", "depthField": "children_odata_graphlookup_depth_variable"}}, {"$set": {"children": {"$sortArray": {"input": "$children", "sortBy": {"children_odata_graphlookup_depth_variable": 1, "index": 1}}}}}, {"$unset": "children.children_odata_graphlookup_depth_variable"}]'''],
                 ['$expand=children($levels=max;$top=2;$orderby=index asc)', '''[{"$graphLookup": {"from": "MyService.TreeType1", "startWith": "$_id", "connectFromField": "_id", "connectToField": "parentId", "maxDepth": 4, "as": "children", "depthField": "children_odata_graphlookup_depth_variable"}}, {"$set": {"children": {"$sortArray": {"input": "$children", "sortBy": {"children_odata_graphlookup_depth_variable": 1, "index": 1}}}}}, {"$set": {"children_odata_graphlookup_tmp_array": {"$reduce": {"input": {"$ifNull": ["$children", []]}, "initialValue": [], "in": {"$let": {"vars": {"index": {"$indexOfArray": ["$$value.parentId", "$$this.parentId"]}}, "in": {"$cond": [{"$eq": ["$$index", -1]}, {"$concatArrays": ["$$value", [{"parentId": "$$this.parentId", "children_odata_graphlookup_depth_variable": "$$this.children_odata_graphlookup_depth_variable", "children": ["$$this"]}]]}, {"$map": {"input": "$$value", "as": "bucket", "in": {"$cond": [{"$eq": ["$$bucket.parentId", "$$this.parentId"]}, {"parentId": "$$bucket.parentId", "children": {"$concatArrays": ["$$bucket.children", ["$$this"]]}}, "$$bucket"]}}}]}}}}}}}, {"$set": {"children_odata_graphlookup_tmp_array": {"$map": {"input": {"$ifNull": ["$children_odata_graphlookup_tmp_array", []]}, "as": "item", "in": {"$mergeObjects": ["$$item", {"children": {"$sortArray": {"input": "$$item.children", "sortBy": {"children_odata_graphlookup_depth_variable": 1, "index": 1}}}}]}}}}}, {"$set": {"children_odata_graphlookup_tmp_array": {"$map": {"input": {"$ifNull": ["$children_odata_graphlookup_tmp_array", []]}, "as": "item", "in": {"$mergeObjects": ["$$item", {"children": {"$slice": ["$$item.children", 0, 2]}}]}}}}}, {"$set": {"children_odata_graphlookup_tmp_array": {"$reduce": {"input": "$children_odata_graphlookup_tmp_array", "initialValue": [], "in": {"$concatArrays": ["$$value", "$$this.children"]}}}}}, {"$set": {"children": "$children_odata_graphlookup_tmp_array"}}, {"$set": {"children": {"$reduce": {"input": {"$sortArray": {"input": "$children", "sortBy": {"children_odata_graphlookup_depth_variable": 1}}}, "initialValue": [], "in": {"$let": {"vars": {"current": "$$this", "acc": "$$value"}, "in": {"$cond": [{"$or": [{"$eq": ["$$current.children_odata_graphlookup_depth_variable", 0]}, {"$in": ["$$current.parentId", "$$acc._id"]}]}, {"$concatArrays": ["$$acc", ["$$current"]]}, "$$acc"]}}}}}}}, {"$unset": "children_odata_graphlookup_tmp_array"}, {"$unset": "children.children_odata_graphlookup_depth_variable"}]'''],
                 ['$expand=children($levels=max;$skip=1;$top=2;$orderby=index asc)', '''[{"$graphLookup": {"from": "MyService.TreeType1", "startWith": "$_id", "connectFromField": "_id", "connectToField": "parentId", "maxDepth": 4, "as": "children", "depthField": "children_odata_graphlookup_depth_variable"}}, {"$set": {"children": {"$sortArray": {"input": "$children", "sortBy": {"children_odata_graphlookup_depth_variable": 1, "index": 1}}}}}, {"$set": {"children_odata_graphlookup_tmp_array": {"$reduce": {"input": {"$ifNull": ["$children", []]}, "initialValue": [], "in": {"$let": {"vars": {"index": {"$indexOfArray": ["$$value.parentId", "$$this.parentId"]}}, "in": {"$cond": [{"$eq": ["$$index", -1]}, {"$concatArrays": ["$$value", [{"parentId": "$$this.parentId", "children_odata_graphlookup_depth_variable": "$$this.children_odata_graphlookup_depth_variable", "children": ["$$this"]}]]}, {"$map": {"input": "$$value", "as": "bucket", "in": {"$cond": [{"$eq": ["$$bucket.parentId", "$$this.parentId"]}, {"parentId": "$$bucket.parentId", "children": {"$concatArrays": ["$$bucket.children", ["$$this"]]}}, "$$bucket"]}}}]}}}}}}}, {"$set": {"children_odata_graphlookup_tmp_array": {"$map": {"input": {"$ifNull": ["$children_odata_graphlookup_tmp_array", []]}, "as": "item", "in": {"$mergeObjects": ["$$item", {"children": {"$sortArray": {"input": "$$item.children", "sortBy": {"children_odata_graphlookup_depth_variable": 1, "index": 1}}}}]}}}}}, {"$set": {"children_odata_graphlookup_tmp_array": {"$map": {"input": {"$ifNull": ["$children_odata_graphlookup_tmp_array", []]}, "as": "item", "in": {"$mergeObjects": ["$$item", {"children": {"$slice": ["$$item.children", 1, 2]}}]}}}}}, {"$set": {"children_odata_graphlookup_tmp_array": {"$reduce": {"input": "$children_odata_graphlookup_tmp_array", "initialValue": [], "in": {"$concatArrays": ["$$value", "$$this.children"]}}}}}, {"$set": {"children": "$children_odata_graphlookup_tmp_array"}}, {"$set": {"children": {"$reduce": {"input": {"$sortArray": {"input": "$children", "sortBy": {"children_odata_graphlookup_depth_variable": 1}}}, "initialValue": [], "in": {"$let": {"vars": {"current": "$$this", "acc": "$$value"}, "in": {"$cond": [{"$or": [{"$eq": ["$$current.children_odata_graphlookup_depth_variable", 0]}, {"$in": ["$$current.parentId", "$$acc._id"]}]}, {"$concatArrays": ["$$acc", ["$$current"]]}, "$$acc"]}}}}}}}, {"$unset": "children_odata_graphlookup_tmp_array"}, {"$unset": "children.children_odata_graphlookup_depth_variable"}]'''],
-                ['$expand=children($levels=max;$skip=1;$top=2;$orderby=index asc;$select=index)', '''[{"$graphLookup": {"from": "MyService.TreeType1", "startWith": "$_id", "connectFromField": "_id", "connectToField": "parentId", "maxDepth": 4, "as": "children", "depthField": "children_odata_graphlookup_depth_variable"}}, {"$set": {"children": {"$sortArray": {"input": "$children", "sortBy": {"children_odata_graphlookup_depth_variable": 1, "index": 1}}}}}, {"$set": {"children_odata_graphlookup_tmp_array": {"$reduce": {"input": {"$ifNull": ["$children", []]}, "initialValue": [], "in": {"$let": {"vars": {"index": {"$indexOfArray": ["$$value.parentId", "$$this.parentId"]}}, "in": {"$cond": [{"$eq": ["$$index", -1]}, {"$concatArrays": ["$$value", [{"parentId": "$$this.parentId", "children_odata_graphlookup_depth_variable": "$$this.children_odata_graphlookup_depth_variable", "children": ["$$this"]}]]}, {"$map": {"input": "$$value", "as": "bucket", "in": {"$cond": [{"$eq": ["$$bucket.parentId", "$$this.parentId"]}, {"parentId": "$$bucket.parentId", "children": {"$concatArrays": ["$$bucket.children", ["$$this"]]}}, "$$bucket"]}}}]}}}}}}}, {"$set": {"children_odata_graphlookup_tmp_array": {"$map": {"input": {"$ifNull": ["$children_odata_graphlookup_tmp_array", []]}, "as": "item", "in": {"$mergeObjects": ["$$item", {"children": {"$sortArray": {"input": "$$item.children", "sortBy": {"children_odata_graphlookup_depth_variable": 1, "index": 1}}}}]}}}}}, {"$set": {"children_odata_graphlookup_tmp_array": {"$map": {"input": {"$ifNull": ["$children_odata_graphlookup_tmp_array", []]}, "as": "item", "in": {"$mergeObjects": ["$$item", {"children": {"$slice": ["$$item.children", 1, 2]}}]}}}}}, {"$set": {"children_odata_graphlookup_tmp_array": {"$reduce": {"input": "$children_odata_graphlookup_tmp_array", "initialValue": [], "in": {"$concatArrays": ["$$value", "$$this.children"]}}}}}, {"$set": {"children": "$children_odata_graphlookup_tmp_array"}}, {"$set": {"children": {"$reduce": {"input": {"$sortArray": {"input": "$children", "sortBy": {"children_odata_graphlookup_depth_variable": 1}}}, "initialValue": [], "in": {"$let": {"vars": {"current": "$$this", "acc": "$$value"}, "in": {"$cond": [{"$or": [{"$eq": ["$$current.children_odata_graphlookup_depth_variable", 0]}, {"$in": ["$$current.parentId", "$$acc._id"]}]}, {"$concatArrays": ["$$acc", ["$$current"]]}, "$$acc"]}}}}}}}, {"$unset": "children_odata_graphlookup_tmp_array"}, {"$set": {"children": {"$map": {"input": {"$ifNull": ["$children", []]}, "as": "item", "in": {"index": "$$item.index"}}}}}, {"$unset": "children.children_odata_graphlookup_depth_variable"}]''']
+                ['$expand=children($levels=max;$skip=1;$top=2;$orderby=index asc;$select=index)', '''[{"$graphLookup": {"from": "MyService.TreeType1", "startWith": "$_id", "connectFromField": "_id", "connectToField": "parentId", "maxDepth": 4, "as": "children", "depthField": "children_odata_graphlookup_depth_variable"}}, {"$set": {"children": {"$sortArray": {"input": "$children", "sortBy": {"children_odata_graphlookup_depth_variable": 1, "index": 1}}}}}, {"$set": {"children_odata_graphlookup_tmp_array": {"$reduce": {"input": {"$ifNull": ["$children", []]}, "initialValue": [], "in": {"$let": {"vars": {"index": {"$indexOfArray": ["$$value.parentId", "$$this.parentId"]}}, "in": {"$cond": [{"$eq": ["$$index", -1]}, {"$concatArrays": ["$$value", [{"parentId": "$$this.parentId", "children_odata_graphlookup_depth_variable": "$$this.children_odata_graphlookup_depth_variable", "children": ["$$this"]}]]}, {"$map": {"input": "$$value", "as": "bucket", "in": {"$cond": [{"$eq": ["$$bucket.parentId", "$$this.parentId"]}, {"parentId": "$$bucket.parentId", "children": {"$concatArrays": ["$$bucket.children", ["$$this"]]}}, "$$bucket"]}}}]}}}}}}}, {"$set": {"children_odata_graphlookup_tmp_array": {"$map": {"input": {"$ifNull": ["$children_odata_graphlookup_tmp_array", []]}, "as": "item", "in": {"$mergeObjects": ["$$item", {"children": {"$sortArray": {"input": "$$item.children", "sortBy": {"children_odata_graphlookup_depth_variable": 1, "index": 1}}}}]}}}}}, {"$set": {"children_odata_graphlookup_tmp_array": {"$map": {"input": {"$ifNull": ["$children_odata_graphlookup_tmp_array", []]}, "as": "item", "in": {"$mergeObjects": ["$$item", {"children": {"$slice": ["$$item.children", 1, 2]}}]}}}}}, {"$set": {"children_odata_graphlookup_tmp_array": {"$reduce": {"input": "$children_odata_graphlookup_tmp_array", "initialValue": [], "in": {"$concatArrays": ["$$value", "$$this.children"]}}}}}, {"$set": {"children": "$children_odata_graphlookup_tmp_array"}}, {"$set": {"children": {"$reduce": {"input": {"$sortArray": {"input": "$children", "sortBy": {"children_odata_graphlookup_depth_variable": 1}}}, "initialValue": [], "in": {"$let": {"vars": {"current": "$$this", "acc": "$$value"}, "in": {"$cond": [{"$or": [{"$eq": ["$$current.children_odata_graphlookup_depth_variable", 0]}, {"$in": ["$$current.parentId", "$$acc._id"]}]}, {"$concatArrays": ["$$acc", ["$$current"]]}, "$$acc"]}}}}}}}, {"$unset": "children_odata_graphlookup_tmp_array"}, {"$set": {"children": {"$map": {"input": {"$ifNull": ["$children", []]}, "as": "item", "in": {"index": "$$item.index"}}}}}, {"$unset": "children.children_odata_graphlookup_depth_variable"}]'''],
+                ['$expand=children($levels=max;$skip=1)', '''[{"$graphLookup": {"from": "MyService.TreeType1", "startWith": "$_id", "connectFromField": "_id", "connectToField": "parentId", "maxDepth": 4, "as": "children", "depthField": "children_odata_graphlookup_depth_variable"}}, {"$set": {"children_odata_graphlookup_tmp_array": {"$reduce": {"input": {"$ifNull": ["$children", []]}, "initialValue": [], "in": {"$let": {"vars": {"index": {"$indexOfArray": ["$$value.parentId", "$$this.parentId"]}}, "in": {"$cond": [{"$eq": ["$$index", -1]}, {"$concatArrays": ["$$value", [{"parentId": "$$this.parentId", "children_odata_graphlookup_depth_variable": "$$this.children_odata_graphlookup_depth_variable", "children": ["$$this"]}]]}, {"$map": {"input": "$$value", "as": "bucket", "in": {"$cond": [{"$eq": ["$$bucket.parentId", "$$this.parentId"]}, {"parentId": "$$bucket.parentId", "children": {"$concatArrays": ["$$bucket.children", ["$$this"]]}}, "$$bucket"]}}}]}}}}}}}, {"$set": {"children_odata_graphlookup_tmp_array": {"$map": {"input": {"$ifNull": ["$children_odata_graphlookup_tmp_array", []]}, "as": "item", "in": {"$mergeObjects": ["$$item", {"children": {"$slice": ["$$item.children", 1, {"$size": "$$item.children"}]}}]}}}}}, {"$set": {"children_odata_graphlookup_tmp_array": {"$reduce": {"input": "$children_odata_graphlookup_tmp_array", "initialValue": [], "in": {"$concatArrays": ["$$value", "$$this.children"]}}}}}, {"$set": {"children": "$children_odata_graphlookup_tmp_array"}}, {"$set": {"children": {"$reduce": {"input": {"$sortArray": {"input": "$children", "sortBy": {"children_odata_graphlookup_depth_variable": 1}}}, "initialValue": [], "in": {"$let": {"vars": {"current": "$$this", "acc": "$$value"}, "in": {"$cond": [{"$or": [{"$eq": ["$$current.children_odata_graphlookup_depth_variable", 0]}, {"$in": ["$$current.parentId", "$$acc._id"]}]}, {"$concatArrays": ["$$acc", ["$$current"]]}, "$$acc"]}}}}}}}, {"$unset": "children_odata_graphlookup_tmp_array"}, {"$unset": "children.children_odata_graphlookup_depth_variable"}]''']
         ]
     }
 
@@ -0,0 +1,53 @@
+package com.github.starnowski.jamolingo.core.operators.filter
+
+import com.github.starnowski.jamolingo.core.AbstractSpecification
+import org.apache.olingo.commons.api.edm.Edm
+import org.apache.olingo.server.api.OData
+import org.apache.olingo.server.api.uri.UriInfo
+import org.apache.olingo.server.api.uri.UriResourceLambdaAll
+import org.apache.olingo.server.api.uri.UriResourceLambdaAny
+import org.apache.olingo.server.api.uri.queryoption.expression.Member
+import org.apache.olingo.server.core.uri.parser.Parser
+import spock.lang.Unroll
+
+class LambdaExpressionAnalysisTest extends AbstractSpecification {
+
+    @Unroll
+    def "should return analysis with exprRequired: #exprRequired, and: #and, or: #or, add: #add for filter '#filter'"() {
+        given:
+            Edm edm = loadEmdProvider("edm/edm6_filter_main.xml")
+            UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                    .parseUri("examples2", "\$filter=" + filter, null, null)
+            Member member = (Member) uriInfo.getFilterOption().getExpression()
+            def lambda = member.getResourcePath().getUriResourceParts().last()
+
+        when:
+            def result = lambda instanceof UriResourceLambdaAll
+                    ? LambdaExpressionAnalysis.analyze(lambda.getLambdaVariable(), lambda.getExpression(), true)
+                    : LambdaExpressionAnalysis.analyze(((UriResourceLambdaAny) lambda).getLambdaVariable(), ((UriResourceLambdaAny) lambda).getExpression(), false)
+
+        then:
+            result.isExprRequired() == exprRequired
+            result.isAndOperatorPresent() == and
+            result.isOrOperatorPresent() == or
+            result.isAddOperatorPresent() == add
+
+        where:
+            filter                                                                                      || exprRequired | and   | or    | add
+            "tags/any(t:t eq 'a')"                                                                      || false        | false | false | false
+            "tags/any(t:t eq 'a' or t eq 'b')"                                                          || false        | false | true  | false
+            "tags/all(t:t eq 'a' or t eq 'b')"                                                          || true         | false | true  | false
+            "tags/all(t:t ne 'a' and t ne 'b')"                                                         || false        | true  | false | false
+            "tags/any(t:length(t) gt 3)"                                                                || true         | false | false | false
+            "tags/any(t:startswith(t,'a'))"                                                             || false        | false | false | false
+            "tags/any(t:contains(tolower(t),'a'))"                                                      || true         | false | false | false
+            "numericArray/all(n:n add 2 gt 10)"                                                         || true         | false | false | true
+            "complexList/any(c:c/someNumber gt 5 and c/someString eq 'a')"                              || false        | true  | false | false
+            "complexList/any(c:c/nestedComplexArray/any(n:n/stringVal eq c/someString))"                || true         | false | false | false
+            "complexList/any(c:c/nestedComplexArray/all(n:n/stringVal eq 'a' or n/stringVal eq 'b'))"   || true         | false | false | false
+            "complexList/any(c:c/nestedComplexArray/any(n:n/stringVal eq 'a' or n/stringVal eq 'b'))"   || false        | false | false | false
+            "complexList/any(c:c/nestedComplexArray/any())"                                             || true         | false | false | false
+            "complexList/any(c:c/nestedComplexArray/\$count gt 1)"                                      || true         | false | false | false
+            "complexList/any(c:tags/\$count gt 1)"                                                      || true         | false | false | false
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.starnowski.jamolingo.core.operators.filter
+
+import org.bson.Document
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class MatchQueryOptimizerTest extends Specification {
+
+    @Unroll
+    def "should optimize query #query to #expected"() {
+        given:
+            def tested = new MatchQueryOptimizer()
+
+        when:
+            def result = tested.optimize(Document.parse(query))
+
+        then:
+            result == Document.parse(expected)
+
+        where:
+            query                                                                                            || expected
+            '{"a": 1}'                                                                                       || '{"a": 1}'
+            '{"$and": [{"a": 1}]}'                                                                           || '{"a": 1}'
+            '{"$and": [{"$and": [{"a": 1}, {"b": 2}]}, {"c": 3}]}'                                           || '{"$and": [{"a": 1}, {"b": 2}, {"c": 3}]}'
+            '{"$or": [{"$or": [{"a": 1}, {"b": 2}]}, {"c": 3}]}'                                             || '{"$or": [{"a": 1}, {"b": 2}, {"c": 3}]}'
+            '{"$and": [{"$or": [{"a": 1}, {"b": 2}]}, {"$or": [{"a": 1}, {"b": 2}]}]}'                       || '{"$or": [{"a": 1}, {"b": 2}]}'
+            '{"$and": [{"a": 1}, {"b": 2}, {"a": 1}]}'                                                       || '{"$and": [{"a": 1}, {"b": 2}]}'
+            '{"$and": [{"a": {"$gt": 1}}, {"a": {"$lte": 5}}]}'                                              || '{"a": {"$gt": 1, "$lte": 5}}'
+            '{"$and": [{"a": {"$gt": 1}}, {"b": 2}, {"a": {"$lt": 5}}]}'                                     || '{"$and": [{"a": {"$gt": 1, "$lt": 5}}, {"b": 2}]}'
+            '{"$and": [{"a": {"$gt": 1}}, {"a": {"$gt": 3}}]}'                                               || '{"$and": [{"a": {"$gt": 1}}, {"a": {"$gt": 3}}]}'
+            '{"$and": [{"a": {"$gt": 1}}, {"a": {"$ne": 3}}]}'                                               || '{"$and": [{"a": {"$gt": 1}}, {"a": {"$ne": 3}}]}'
+            '{"$or": [{"a": {"$gt": 1}}, {"a": {"$lt": 0}}]}'                                                || '{"$or": [{"a": {"$gt": 1}}, {"a": {"$lt": 0}}]}'
+            '{"$or": [{"a": 1}, {"a": 2}, {"a": 3}]}'                                                        || '{"a": {"$in": [1, 2, 3]}}'
+            '{"$or": [{"a": 1}, {"b": 2}, {"a": {"$in": [3, 1]}}, {"a": {"$eq": 4}}]}'                       || '{"$or": [{"a": {"$in": [1, 3, 4]}}, {"b": 2}]}'
+            '{"$or": [{"a": 1}, {"a": {"$ne": 2}}]}'                                                         || '{"$or": [{"a": 1}, {"a": {"$ne": 2}}]}'
+            '{"$or": [{"a": {"b": 1}}, {"a": {"b": 2}}]}'                                                    || '{"a": {"$in": [{"b": 1}, {"b": 2}]}}'
+            '{"$or": [{"a": 1}, {"a": 1}]}'                                                                  || '{"a": 1}'
+            '{"$and": [{"$odata.literal": "true"}, {"a": 1}]}'                                               || '{"a": 1}'
+            '{"$and": [{"$odata.literal": "false"}, {"a": 1}]}'                                              || '{"$expr": false}'
+            '{"$or": [{"$odata.literal": "true"}, {"a": 1}]}'                                                || '{}'
+            '{"$or": [{"$odata.literal": "false"}, {"a": 1}]}'                                               || '{"a": 1}'
+            '{"$and": [{"$or": [{"$odata.literal": false}, {"$odata.literal": false}]}, {"a": 1}]}'          || '{"$expr": false}'
+            '{"$and": [{"$odata.literal": true}]}'                                                           || '{}'
+            '{"$and": []}'                                                                                   || '{}'
+            '{"$or": []}'                                                                                    || '{"$expr": false}'
+            '{"$nor": [{"$and": [{"a": 1}]}]}'                                                               || '{"$nor": [{"$and": [{"a": 1}]}]}'
+            '{"a": {"$not": {"$gt": 1}}, "b": 2}'                                                            || '{"a": {"$not": {"$gt": 1}}, "b": 2}'
+    }
+
+    def "should not modify the passed query"() {
+        given:
+            def query = Document.parse('{"$and": [{"$and": [{"a": {"$gt": 1}}, {"a": {"$lt": 5}}]}, {"$or": [{"b": 1}, {"b": 2}]}]}')
+            def copy = Document.parse(query.toJson())
+
+        when:
+            def result = new MatchQueryOptimizer().optimize(query)
+
+        then:
+            result == Document.parse('{"$and": [{"a": {"$gt": 1, "$lt": 5}}, {"b": {"$in": [1, 2]}}]}')
+            query == copy
+    }
+}
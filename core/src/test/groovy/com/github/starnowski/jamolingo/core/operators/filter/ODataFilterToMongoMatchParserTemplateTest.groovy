@@ -0,0 +1,157 @@
+package com.github.starnowski.jamolingo.core.operators.filter
+
+import com.github.starnowski.jamolingo.core.AbstractSpecification
+import com.mongodb.MongoClientSettings
+import org.apache.olingo.commons.api.edm.Edm
+import org.apache.olingo.server.api.OData
+import org.apache.olingo.server.api.uri.UriInfo
+import org.apache.olingo.server.core.uri.parser.Parser
+import org.bson.BsonDocument
+import org.bson.UuidRepresentation
+import org.bson.codecs.configuration.CodecRegistries
+import org.bson.codecs.configuration.CodecRegistry
+import org.bson.conversions.Bson
+import spock.lang.Unroll
+
+/**
+ * Test class for the parameterized templates created by ODataFilterToMongoMatchParser.
+ */
+class ODataFilterToMongoMatchParserTemplateTest extends AbstractSpecification {
+
+    static final CodecRegistry REGISTRY = CodecRegistries.withUuidRepresentation(
+            MongoClientSettings.getDefaultCodecRegistry(), UuidRepresentation.STANDARD)
+
+    @Unroll
+    def "should return shape '#expectedShapeKey' with literals #expectedLiterals for filter '#filter'"() {
+        when:
+        def result = ODataFilterShape.of(filter)
+
+        then:
+        result.getShapeKey() == expectedShapeKey
+        result.getLiterals() == expectedLiterals
+
+        where:
+        filter                                                          || expectedShapeKey                                    | expectedLiterals
+        "plainString eq 'abc'"                                          || "plainString eq ?s"                                 | ["'abc'"]
+        "plainString eq 'O''Neil' and genericInteger gt -5"             || "plainString eq ?s and genericInteger gt ?n"        | ["'O''Neil'", "-5"]
+        "genericNumber ge 5.05 or isActive eq true"                     || "genericNumber ge ?d or isActive eq ?b"             | ["5.05", "true"]
+        "uuidProp eq 5a1b2c3d-1111-2222-3333-444455556666"              || "uuidProp eq ?g"                                    | ["5a1b2c3d-1111-2222-3333-444455556666"]
+        "uuidProp eq bbbbbbbb-1111-2222-3333-444455556666"              || "uuidProp eq ?g"                                    | ["bbbbbbbb-1111-2222-3333-444455556666"]
+        "birthDate lt 2024-01-15 and timestamp gt 2024-01-15T10:00:00Z" || "birthDate lt ?t and timestamp gt ?t"               | ["2024-01-15", "2024-01-15T10:00:00Z"]
+        "plainString eq null"                                           || "plainString eq null"                               | []
+        "tags/any(t:t in ('a', 'b'))"                                   || "tags/any(t:t in (?s, ?s))"                         | ["'a'", "'b'"]
+        "complexList/any(c:c/someNumber gt 5)"                          || "complexList/any(c:c/someNumber gt ?n)"             | ["5"]
+        null                                                            || ""                                                  | []
+    }
+
+    @Unroll
+    def "should bind the original literals into the template and return the same stage as parse for filter '#filter'"() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm6_filter_main.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("examples2", "\$filter=" + filter, null, null)
+        ODataFilterToMongoMatchParser tested = new ODataFilterToMongoMatchParser()
+        def expected = tested.parse(uriInfo.getFilterOption())
+
+        when:
+        def template = tested.parseTemplate(uriInfo.getFilterOption())
+        def result = template.bind(ODataFilterShape.of(filter))
+
+        then:
+        toBsonDocument(result.getStageObjects().get(0)) == toBsonDocument(expected.getStageObjects().get(0))
+        result.getUsedMongoDocumentProperties().toSet() == expected.getUsedMongoDocumentProperties().toSet()
+
+        where:
+        filter << ODataFilterToMongoMatchParserTest.oneToOneEdmPathsMappings().collect { it[0] }
+    }
+
+    @Unroll
+    def "should bind new literals into the template for filter '#templateFilter' and return the same stage as parse for filter '#filter'"() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm6_filter_main.xml")
+        ODataFilterToMongoMatchParser tested = new ODataFilterToMongoMatchParser()
+        UriInfo templateUriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("examples2", "\$filter=" + templateFilter, null, null)
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("examples2", "\$filter=" + filter, null, null)
+        def expected = tested.parse(uriInfo.getFilterOption())
+        def template = tested.parseTemplate(templateUriInfo.getFilterOption())
+
+        when:
+        def result = template.bind(ODataFilterShape.of(filter))
+
+        then:
+        template.isParameterized()
+        template.getSlotCount() == slots
+        toBsonDocument(result.getStageObjects().get(0)) == toBsonDocument(expected.getStageObjects().get(0))
+
+        where:
+        templateFilter                                                         | filter                                                                   || slots
+        "plainString eq 'abc'"                                                 | "plainString eq 'xyz'"                                                   || 1
+        "genericInteger gt 5 and plainString ne 'abc'"                         | "genericInteger gt 17 and plainString ne 'O''Neil'"                      || 2
+        "smallInteger in (1, 2, 3)"                                            | "smallInteger in (7, 8, 9)"                                              || 3
+        "uuidProp eq 5a1b2c3d-1111-2222-3333-444455556666"                     | "uuidProp eq 00000000-1111-2222-3333-444455556666"                       || 1
+        "birthDate lt 2024-01-15"                                              | "birthDate lt 2020-12-31"                                                || 1
+        "timestamp gt 2024-01-15T10:00:00Z"                                    | "timestamp gt 2023-06-01T00:00:00Z"                                      || 1
+        "isActive eq true"                                                     | "isActive eq false"                                                      || 1
+        "complexList/any(c:c/someNumber gt 5 and c/someString eq 'a')"         | "complexList/any(c:c/someNumber gt 25 and c/someString eq 'b')"          || 2
+        "tags/all(t:t ne 'no such text' and t ne 'no such word')"              | "tags/all(t:t ne 'first' and t ne 'second')"                             || 2
+        "numericArray/all(n:n eq 10 or n eq 20 or n eq 30)"                    | "numericArray/all(n:n eq 1 or n eq 2 or n eq 3)"                         || 3
+    }
+
+    @Unroll
+    def "should return not parameterized template for filter '#filter' and allow binding only the original literals"() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm6_filter_main.xml")
+        ODataFilterToMongoMatchParser tested = new ODataFilterToMongoMatchParser()
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("examples2", "\$filter=" + filter, null, null)
+        def expected = tested.parse(uriInfo.getFilterOption())
+        def template = tested.parseTemplate(uriInfo.getFilterOption())
+
+        when:
+        def result = template.bind(ODataFilterShape.of(filter))
+
+        then:
+        !template.isParameterized()
+        toBsonDocument(result.getStageObjects().get(0)) == toBsonDocument(expected.getStageObjects().get(0))
+
+        when:
+        template.bind(ODataFilterShape.of(otherFilter))
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        filter                                       | otherFilter
+        "startswith(plainString,'abc')"              | "startswith(plainString,'xyz')"
+        "contains(plainString,'abc')"                | "contains(plainString,'xyz')"
+    }
+
+    def "should throw exception when binding shape with different shape key"() {
+        given:
+        Edm edm = loadEmdProvider("edm/edm6_filter_main.xml")
+        ODataFilterToMongoMatchParser tested = new ODataFilterToMongoMatchParser()
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("examples2", "\$filter=plainString eq 'abc'", null, null)
+        def template = tested.parseTemplate(uriInfo.getFilterOption())
+
+        when:
+        template.bind(ODataFilterShape.of("plainString ne 'abc'"))
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "should return empty result for null filter option"() {
+        when:
+        def template = new ODataFilterToMongoMatchParser().parseTemplate(null)
+
+        then:
+        template.bind(ODataFilterShape.of(null)).getStageObjects().isEmpty()
+    }
+
+    private static BsonDocument toBsonDocument(Bson bson) {
+        bson.toBsonDocument(BsonDocument.class, REGISTRY)
+    }
+}
@@ -112,6 +112,30 @@ class ODataFilterToMongoMatchParserTest extends AbstractSpecification {
             [filter, bson] << oneToOneEdmPathsMappings()
     }
 
+    /**
+     * Verifies that the query object is marked as requiring the aggregation pipeline only when it contains the $expr operator.
+     */
+    @Unroll
+    def "should return aggregation pipeline required flag for filter #filter"(){
+        given:
+            Edm edm = loadEmdProvider("edm/edm6_filter_main.xml")
+            UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                    .parseUri("examples2",
+                            "\$filter=" +filter
+                            , null, null)
+            ODataFilterToMongoMatchParser tested = new ODataFilterToMongoMatchParser()
+
+        when:
+            def result = tested.parseQueryObject(uriInfo.getFilterOption())
+
+        then:
+            result.isAggregationPipelineRequired() == bson.contains('"\$expr"')
+            result.getCause() == null
+
+        where:
+            [filter, bson] << oneToOneEdmPathsMappings()
+    }
+
     /**
      * Provides test data mapping OData filters to expected MongoDB $match documents and used properties.
      * In this provider, the mapping between EDM and MongoDB is one-to-one.
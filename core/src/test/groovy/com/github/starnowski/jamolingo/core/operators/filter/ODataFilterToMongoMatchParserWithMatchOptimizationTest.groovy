@@ -0,0 +1,87 @@
+package com.github.starnowski.jamolingo.core.operators.filter
+
+import com.github.starnowski.jamolingo.core.AbstractSpecification
+import org.apache.olingo.commons.api.edm.Edm
+import org.apache.olingo.server.api.OData
+import org.apache.olingo.server.api.uri.UriInfo
+import org.apache.olingo.server.core.uri.parser.Parser
+import org.bson.Document
+import spock.lang.Unroll
+
+class ODataFilterToMongoMatchParserWithMatchOptimizationTest extends AbstractSpecification {
+
+    private static final MongoFilterVisitorCommonContext CONTEXT = DefaultMongoFilterVisitorCommonContext.builder()
+            .withMatchOptimizationEnabled(true)
+            .build()
+
+    @Unroll
+    def "should return optimized stage bson object for filter #filter"() {
+        given:
+            Edm edm = loadEmdProvider("edm/edm6_filter_main.xml")
+            UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                    .parseUri("examples2", "\$filter=" + filter, null, null)
+
+        when:
+            def result = new ODataFilterToMongoMatchParser().parse(uriInfo.getFilterOption(), CONTEXT)
+
+        then:
+            ((Document) result.getStageObjects().get(0)).toJson() == Document.parse(bson).toJson()
+            result.getUsedMongoDocumentProperties() == usedFields
+
+        where:
+            filter                                                                    | bson                                                                                                  | usedFields
+            "plainString eq 'a'"                                                      | '{"$match": {"plainString": "a"}}'                                                                    | ["plainString"]
+            "smallInteger gt 1 and smallInteger le 10"                                | '{"$match": {"smallInteger": {"$gt": 1, "$lte": 10}}}'                                                | ["smallInteger"]
+            "plainString eq 'a' or plainString eq 'b' or plainString eq 'c'"          | '{"$match": {"plainString": {"$in": ["a", "b", "c"]}}}'                                               | ["plainString"]
+            "plainString eq 'a' or plainString in ('b', 'a')"                         | '{"$match": {"plainString": {"$in": ["a", "b"]}}}'                                                    | ["plainString"]
+            "(plainString eq 'a' and smallInteger gt 1) and smallInteger lt 5"        | '{"$match": {"$and": [{"plainString": "a"}, {"smallInteger": {"$gt": 1, "$lt": 5}}]}}'               | ["plainString", "smallInteger"]
+            "plainString eq 'a' and plainString eq 'a'"                               | '{"$match": {"plainString": "a"}}'                                                                    | ["plainString"]
+            "true and plainString eq 'a'"                                             | '{"$match": {"plainString": "a"}}'                                                                    | ["plainString"]
+            "false or plainString eq 'a'"                                             | '{"$match": {"plainString": "a"}}'                                                                    | ["plainString"]
+            "true or plainString eq 'a'"                                              | '{"$match": {}}'                                                                                      | ["plainString"]
+            "false and plainString eq 'a'"                                            | '{"$match": {"$expr": false}}'                                                                        | ["plainString"]
+    }
+
+    def "should return optimized query object"() {
+        given:
+            Edm edm = loadEmdProvider("edm/edm6_filter_main.xml")
+            UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                    .parseUri("examples2", "\$filter=smallInteger ge 1 and smallInteger lt 10", null, null)
+
+        when:
+            def result = new ODataFilterToMongoMatchParser().parseQueryObject(uriInfo.getFilterOption(), CONTEXT)
+
+        then:
+            ((Document) result.getQueryObject()).toJson() == Document.parse('{"smallInteger": {"$gte": 1, "$lt": 10}}').toJson()
+    }
+
+    def "should bind template with optimized stage"() {
+        given:
+            Edm edm = loadEmdProvider("edm/edm6_filter_main.xml")
+            def parser = new ODataFilterToMongoMatchParser()
+            def template = parser.parseTemplate(new Parser(edm, OData.newInstance())
+                    .parseUri("examples2", "\$filter=smallInteger gt 1 and smallInteger lt 5", null, null).getFilterOption(), CONTEXT)
+            def filterOption = new Parser(edm, OData.newInstance())
+                    .parseUri("examples2", "\$filter=smallInteger gt 7 and smallInteger lt 9", null, null).getFilterOption()
+
+        when:
+            def result = template.bind(ODataFilterShape.of(filterOption.getText()))
+
+        then:
+            result.getStageObjects().get(0) == parser.parse(filterOption, CONTEXT).getStageObjects().get(0)
+            ((Document) result.getStageObjects().get(0)).toJson() == Document.parse('{"$match": {"smallInteger": {"$gt": 7, "$lt": 9}}}').toJson()
+    }
+
+    def "should copy matchOptimizationEnabled in DefaultMongoFilterVisitorCommonContext builder"() {
+        when:
+            def copy = DefaultMongoFilterVisitorCommonContext.builder()
+                    .withDefaultMongoFilterVisitorCommonContext(CONTEXT)
+                    .build()
+
+        then:
+            copy.isMatchOptimizationEnabled()
+            copy == CONTEXT
+            !DefaultMongoFilterVisitorCommonContext.builder().build().isMatchOptimizationEnabled()
+            CONTEXT.toString().contains("matchOptimizationEnabled=true")
+    }
+}
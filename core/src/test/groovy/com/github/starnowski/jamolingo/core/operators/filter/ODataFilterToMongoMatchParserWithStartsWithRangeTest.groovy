@@ -0,0 +1,87 @@
+package com.github.starnowski.jamolingo.core.operators.filter
+
+import com.github.starnowski.jamolingo.core.AbstractSpecification
+import org.apache.olingo.commons.api.edm.Edm
+import org.apache.olingo.server.api.OData
+import org.apache.olingo.server.api.uri.UriInfo
+import org.apache.olingo.server.core.uri.parser.Parser
+import org.bson.Document
+import spock.lang.Unroll
+
+class ODataFilterToMongoMatchParserWithStartsWithRangeTest extends AbstractSpecification {
+
+    @Unroll
+    def "should return expected stage bson object for filter #filter when startswith is translated to range"() {
+        given:
+            Edm edm = loadEmdProvider("edm/edm6_filter_main.xml")
+            UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                    .parseUri("examples2", "\$filter=" + filter, null, null)
+            MongoFilterVisitorCommonContext context = DefaultMongoFilterVisitorCommonContext.builder()
+                    .withStartsWithTranslatedToRange(true)
+                    .build()
+
+        when:
+            def result = new ODataFilterToMongoMatchParser().parse(uriInfo.getFilterOption(), context)
+
+        then:
+            result.getStageObjects().get(0) == Document.parse(bson)
+            result.getUsedMongoDocumentProperties() == usedFields
+
+        where:
+            filter                                                          | bson                                                                                                                                   | usedFields
+            "startswith(plainString,'abc')"                                 | '{"$match": {"$and": [{"plainString": {"$gte": "abc", "$lt": "abd"}}]}}'                                                             | ["plainString"]
+            "startswith(plainString,'ab') and plainString ne 'abz'"         | '{"$match": {"$and": [{"$and": [{"plainString": {"$gte": "ab", "$lt": "ac"}}, {"plainString": {"$ne": "abz"}}]}]}}'                  | ["plainString"]
+            "startswith(plainString,'abc') or startswith(plainString,'x')"  | '{"$match": {"$and": [{"$or": [{"plainString": {"$gte": "abc", "$lt": "abd"}}, {"plainString": {"$gte": "x", "$lt": "y"}}]}]}}'      | ["plainString"]
+            "startswith(plainString,'')"                                    | '{"$match": {"$and": [{"plainString": {"$regex": "^\\\\Q\\\\E"}}]}}'                                                                   | ["plainString"]
+            "tags/any(t:startswith(t,'star'))"                              | '{"$match": {"$and": [{"tags": {"$elemMatch": {"$regex": "^\\\\Qstar\\\\E"}}}]}}'                                                      | ["tags"]
+            "complexList/any(c:startswith(c/someString,'Ap'))"              | '{"$match": {"$and": [{"complexList": {"$elemMatch": {"someString": {"$regex": "^\\\\QAp\\\\E"}}}}]}}'                                  | ["complexList.someString"]
+    }
+
+    def "should return anchored regular expression for startswith by default"() {
+        given:
+            Edm edm = loadEmdProvider("edm/edm6_filter_main.xml")
+            UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                    .parseUri("examples2", "\$filter=startswith(plainString,'abc')", null, null)
+
+        when:
+            def result = new ODataFilterToMongoMatchParser().parse(uriInfo.getFilterOption(), DefaultMongoFilterVisitorCommonContext.builder().build())
+
+        then:
+            result.getStageObjects().get(0) == Document.parse('{"$match": {"$and": [{"plainString": {"$regex": "^\\\\Qabc\\\\E"}}]}}')
+    }
+
+    @Unroll
+    def "should return upper bound '#expected' for prefix '#prefix'"() {
+        expect:
+            MongoFilterVisitor.prefixUpperBound(prefix) == expected
+
+        where:
+            prefix              | expected
+            "abc"               | "abd"
+            "a"                 | "b"
+            "abÿ"          | "abĀ"
+            "ab퟾"          | "ab퟿"
+            "ab퟿"          | null
+            "ab😀"    | null
+            "ab￿"          | null
+            ""                  | null
+            null                | null
+    }
+
+    def "should copy startsWithTranslatedToRange in DefaultMongoFilterVisitorCommonContext builder"() {
+        given:
+            def context = DefaultMongoFilterVisitorCommonContext.builder()
+                    .withStartsWithTranslatedToRange(true)
+                    .build()
+
+        when:
+            def copy = DefaultMongoFilterVisitorCommonContext.builder()
+                    .withDefaultMongoFilterVisitorCommonContext(context)
+                    .build()
+
+        then:
+            copy.isStartsWithTranslatedToRange()
+            !DefaultMongoFilterVisitorCommonContext.builder().build().isStartsWithTranslatedToRange()
+            context.toString().contains("startsWithTranslatedToRange=true")
+    }
+}
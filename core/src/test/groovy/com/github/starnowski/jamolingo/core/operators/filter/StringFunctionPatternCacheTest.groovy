@@ -0,0 +1,77 @@
+package com.github.starnowski.jamolingo.core.operators.filter
+
+import org.apache.olingo.server.api.uri.queryoption.expression.MethodKind
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class StringFunctionPatternCacheTest extends Specification {
+
+    @Unroll
+    def "should return pattern '#expectedPattern' for #methodKind with value '#value'"() {
+        given:
+            def tested = new StringFunctionPatternCache()
+
+        when:
+            def result = tested.getPattern(methodKind, value)
+
+        then:
+            result.pattern() == expectedPattern
+            tested.getPattern(methodKind, value).is(result)
+
+        where:
+            methodKind            | value   || expectedPattern
+            MethodKind.STARTSWITH | "a.b"   || "^\\Qa.b\\E"
+            MethodKind.ENDSWITH   | "a.b"   || "\\Qa.b\\E\$"
+            MethodKind.CONTAINS   | "a.b"   || "\\Qa.b\\E"
+            MethodKind.STARTSWITH | "a\\Eb" || "^\\Qa\\E\\\\E\\Qb\\E"
+    }
+
+    def "should not mix patterns of different methods for the same value"() {
+        given:
+            def tested = new StringFunctionPatternCache()
+
+        expect:
+            tested.getPattern(MethodKind.STARTSWITH, "abc").pattern() == "^\\Qabc\\E"
+            tested.getPattern(MethodKind.ENDSWITH, "abc").pattern() == "\\Qabc\\E\$"
+            tested.size() == 2
+    }
+
+    def "should evict the least recently used pattern when the cache is full"() {
+        given:
+            def tested = new StringFunctionPatternCache(2)
+            def first = tested.getPattern(MethodKind.CONTAINS, "first")
+            def second = tested.getPattern(MethodKind.CONTAINS, "second")
+            tested.getPattern(MethodKind.CONTAINS, "first")
+
+        when:
+            def third = tested.getPattern(MethodKind.CONTAINS, "third")
+
+        then:
+            tested.size() == 2
+            tested.getPattern(MethodKind.CONTAINS, "first").is(first)
+            tested.getPattern(MethodKind.CONTAINS, "third").is(third)
+            !tested.getPattern(MethodKind.CONTAINS, "second").is(second)
+    }
+
+    def "should remember the patterns after the default maximum number of patterns was used"() {
+        given:
+            def tested = new StringFunctionPatternCache()
+            (0..<StringFunctionPatternCache.MAX_CACHED_PATTERNS).each { tested.getPattern(MethodKind.CONTAINS, "v" + it) }
+
+        when:
+            def first = tested.getPattern(MethodKind.CONTAINS, "extra")
+            def second = tested.getPattern(MethodKind.CONTAINS, "extra")
+
+        then:
+            tested.size() == StringFunctionPatternCache.MAX_CACHED_PATTERNS
+            first.is(second)
+    }
+
+    def "should throw exception for not supported method"() {
+        when:
+            new StringFunctionPatternCache().getPattern(MethodKind.TOLOWER, "abc")
+
+        then:
+            thrown(IllegalArgumentException)
+    }
+}
@@ -0,0 +1,175 @@
+package com.github.starnowski.jamolingo.core.operators.skiptoken
+
+import com.github.starnowski.jamolingo.core.AbstractSpecification
+import com.github.starnowski.jamolingo.core.operators.orderby.OdataOrderByToMongoSortParser
+import com.github.starnowski.jamolingo.core.operators.orderby.OrderByOperatorResult
+import com.github.starnowski.jamolingo.core.operators.orderby.SortProperty
+import org.apache.olingo.commons.api.edm.Edm
+import org.apache.olingo.server.api.OData
+import org.apache.olingo.server.api.uri.UriInfo
+import org.apache.olingo.server.core.uri.parser.Parser
+import org.bson.Document
+import org.bson.types.ObjectId
+import spock.lang.Unroll
+
+class OdataSkipTokenToMongoMatchParserTest extends AbstractSpecification {
+
+    @Unroll
+    def "should return sort stage with _id tiebreaker for \$orderby '#orderBy' when skip token is not present"() {
+        given:
+        OdataSkipTokenToMongoMatchParser tested = new OdataSkipTokenToMongoMatchParser()
+
+        when:
+        def result = tested.parse((String) null, orderByResult(orderBy))
+
+        then:
+        !result.isSkipTokenPresent()
+        result.getStageObjects() == [Document.parse(expectedSort)]
+        result.getSortProperties() == expectedSortProperties
+        result.getUsedMongoDocumentProperties() == expectedSortProperties*.getPropertyName()
+
+        where:
+        orderBy                 || expectedSort                                             | expectedSortProperties
+        null                    || "{'\$sort': {'_id': 1}}"                                  | [new SortProperty("_id", false)]
+        "Name"                  || "{'\$sort': {'Name': 1, '_id': 1}}"                       | [new SortProperty("Name", false), new SortProperty("_id", false)]
+        "Name desc,plainString" || "{'\$sort': {'Name': -1, 'plainString': 1, '_id': 1}}"   | [new SortProperty("Name", true), new SortProperty("plainString", false), new SortProperty("_id", false)]
+    }
+
+    @Unroll
+    def "should return range match for the next page for \$orderby '#orderBy' and last document #lastDocument"() {
+        given:
+        OdataSkipTokenToMongoMatchParser tested = new OdataSkipTokenToMongoMatchParser()
+        def orderByResult = orderByResult(orderBy)
+        String skipToken = tested.parse((String) null, orderByResult).createSkipToken(Document.parse(lastDocument))
+
+        when:
+        def result = tested.parse(skipToken, orderByResult)
+
+        then:
+        result.isSkipTokenPresent()
+        result.getStageObjects().size() == 2
+        result.getStageObjects().get(0).toBsonDocument().toJson() == Document.parse(expectedMatch).toBsonDocument().toJson()
+        skipToken ==~ /[A-Za-z0-9_-]+/
+
+        where:
+        orderBy                 | lastDocument                                              || expectedMatch
+        null                    | "{'_id': 7, 'Name': 'x'}"                                 || "{'\$match': {'_id': {'\$gt': 7}}}"
+        "Name"                  | "{'_id': 7, 'Name': 'x'}"                                 || "{'\$match': {'\$or': [{'Name': {'\$gt': 'x'}}, {'Name': {'\$eq': 'x'}, '_id': {'\$gt': 7}}]}}"
+        "Name desc"             | "{'_id': 7, 'Name': 'x'}"                                 || "{'\$match': {'\$or': [{'\$or': [{'Name': {'\$lt': 'x'}}, {'Name': null}]}, {'Name': {'\$eq': 'x'}, '_id': {'\$gt': 7}}]}}"
+        "Name"                  | "{'_id': 7}"                                              || "{'\$match': {'\$or': [{'Name': {'\$ne': null}}, {'Name': {'\$eq': null}, '_id': {'\$gt': 7}}]}}"
+        "Name desc"             | "{'_id': 7, 'Name': null}"                                || "{'\$match': {'Name': {'\$eq': null}, '_id': {'\$gt': 7}}}"
+        "Name,plainString desc" | "{'_id': 7, 'Name': 'x', 'plainString': 'y'}"            || "{'\$match': {'\$or': [{'Name': {'\$gt': 'x'}}, {'Name': {'\$eq': 'x'}, '\$or': [{'plainString': {'\$lt': 'y'}}, {'plainString': null}]}, {'Name': {'\$eq': 'x'}, 'plainString': {'\$eq': 'y'}, '_id': {'\$gt': 7}}]}}"
+    }
+
+    def "should keep the value types in the skip token"() {
+        given:
+        OdataSkipTokenToMongoMatchParser tested = new OdataSkipTokenToMongoMatchParser()
+        def orderByResult = orderByResult("Name")
+        def id = new ObjectId("65a000000000000000000001")
+        def date = new Date(1700000000000L)
+        String skipToken = tested.parse((String) null, orderByResult)
+                .createSkipToken(new Document("_id", id).append("Name", date))
+
+        when:
+        def result = tested.parse(skipToken, orderByResult)
+
+        then:
+        def match = result.getStageObjects().get(0).toBsonDocument().getDocument("\$match")
+        def branches = match.getArray("\$or")
+        branches.get(0).asDocument().getDocument("Name").get("\$gt").asDateTime().getValue() == 1700000000000L
+        branches.get(1).asDocument().getDocument("Name").get("\$eq").asDateTime().getValue() == 1700000000000L
+        branches.get(1).asDocument().getDocument("_id").get("\$gt").asObjectId().getValue() == id
+    }
+
+    def "should keep the UUID value in the skip token"() {
+        given:
+        OdataSkipTokenToMongoMatchParser tested = new OdataSkipTokenToMongoMatchParser()
+        def orderByResult = orderByResult("Name")
+        def uuid = UUID.fromString("b921f1dd-3cbc-0495-fdab-8cd14d33f0aa")
+        String skipToken = tested.parse((String) null, orderByResult)
+                .createSkipToken(new Document("_id", uuid).append("Name", "x"))
+
+        when:
+        def result = tested.parse(skipToken, orderByResult)
+
+        then:
+        def match = result.getStageObjects().get(0).toBsonDocument().getDocument("\$match")
+        match.getArray("\$or").get(1).asDocument().getDocument("_id").get("\$gt").asBinary().asUuid() == uuid
+    }
+
+    def "should read the sort property value from the nested document"() {
+        given:
+        OdataSkipTokenToMongoMatchParser tested = new OdataSkipTokenToMongoMatchParser()
+        OrderByOperatorResult orderByResult = Mock(OrderByOperatorResult) {
+            getStageObjects() >> [Document.parse("{'\$sort': {'address.city': 1}}")]
+            getSortProperties() >> [new SortProperty("address.city", false)]
+        }
+        String skipToken = tested.parse((String) null, orderByResult)
+                .createSkipToken(Document.parse("{'_id': 3, 'address': {'city': 'Paris'}}"))
+
+        when:
+        def result = tested.parse(skipToken, orderByResult)
+
+        then:
+        result.getStageObjects().get(0).toBsonDocument().toJson() ==
+                Document.parse("{'\$match': {'\$or': [{'address.city': {'\$gt': 'Paris'}}, {'address.city': {'\$eq': 'Paris'}, '_id': {'\$gt': 3}}]}}").toBsonDocument().toJson()
+    }
+
+    def "should parse skip token option of the uri"() {
+        given:
+        OdataSkipTokenToMongoMatchParser tested = new OdataSkipTokenToMongoMatchParser()
+        def orderByResult = orderByResult("Name")
+        String skipToken = tested.parse((String) null, orderByResult)
+                .createSkipToken(Document.parse("{'_id': 7, 'Name': 'x'}"))
+        UriInfo uriInfo = new Parser(loadEmdProvider("edm/edm2_with_nested_collections.xml"), OData.newInstance())
+                .parseUri("Items", "\$orderby=Name&\$skiptoken=" + skipToken, null, null)
+
+        when:
+        def result = tested.parse(uriInfo.getSkipTokenOption(), orderByResult)
+
+        then:
+        result.isSkipTokenPresent()
+        result.getStageObjects().get(1) == Document.parse("{'\$sort': {'Name': 1, '_id': 1}}")
+    }
+
+    @Unroll
+    def "should throw exception for invalid skip token '#skipToken'"() {
+        given:
+        OdataSkipTokenToMongoMatchParser tested = new OdataSkipTokenToMongoMatchParser()
+
+        when:
+        tested.parse(skipToken, orderByResult("Name"))
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        skipToken << [
+                "not a token!",
+                Base64.getUrlEncoder().encodeToString("not json".bytes),
+                Base64.getUrlEncoder().encodeToString("{\"k\": {\"Name\": 1, \"_id\": 1}, \"v\": [1]}".bytes),
+                Base64.getUrlEncoder().encodeToString("{\"k\": {\"Name\": 1, \"_id\": 1}, \"v\": [{\"\$ne\": null}, 1]}".bytes),
+                Base64.getUrlEncoder().encodeToString("{\"k\": {\"Name\": 1, \"_id\": 1}, \"v\": [\"x\", [1, 2]]}".bytes)
+        ]
+    }
+
+    def "should throw exception when skip token was created for different \$orderby"() {
+        given:
+        OdataSkipTokenToMongoMatchParser tested = new OdataSkipTokenToMongoMatchParser()
+        String skipToken = tested.parse((String) null, orderByResult("Name"))
+                .createSkipToken(Document.parse("{'_id': 7, 'Name': 'x'}"))
+
+        when:
+        tested.parse(skipToken, orderByResult("Name desc"))
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    private OrderByOperatorResult orderByResult(String orderBy) {
+        Edm edm = loadEmdProvider("edm/edm2_with_nested_collections.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance())
+                .parseUri("Items", orderBy == null ? null : "\$orderby=" + orderBy, null, null)
+        new OdataOrderByToMongoSortParser().parse(uriInfo.getOrderByOption())
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.starnowski.jamolingo.core.query
+
+import com.github.starnowski.jamolingo.core.AbstractSpecification
+import com.github.starnowski.jamolingo.core.operators.filter.ODataFilterToMongoMatchParser
+import com.github.starnowski.jamolingo.core.operators.orderby.OdataOrderByToMongoSortParser
+import com.github.starnowski.jamolingo.core.operators.select.OdataSelectToMongoProjectParser
+import com.github.starnowski.jamolingo.core.operators.skip.OdataSkipToMongoSkipParser
+import com.github.starnowski.jamolingo.core.operators.top.OdataTopToMongoLimitParser
+import org.apache.olingo.commons.api.edm.Edm
+import org.apache.olingo.server.api.OData
+import org.apache.olingo.server.api.uri.UriInfo
+import org.apache.olingo.server.core.uri.parser.Parser
+import org.bson.Document
+import org.bson.conversions.Bson
+import spock.lang.Unroll
+
+class MongoReadQueryTest extends AbstractSpecification {
+
+    private MongoReadQuery build(String query, boolean withSelect = true) {
+        Edm edm = loadEmdProvider("edm/edm6_filter_main.xml")
+        UriInfo uriInfo = new Parser(edm, OData.newInstance()).parseUri("examples2", query, null, null)
+        def builder = MongoReadQuery.builder()
+                .withFilter(new ODataFilterToMongoMatchParser().parseQueryObject(uriInfo.getFilterOption()))
+                .withOrderBy(new OdataOrderByToMongoSortParser().parse(uriInfo.getOrderByOption()))
+                .withSkip(new OdataSkipToMongoSkipParser().parse(uriInfo.getSkipOption()))
+                .withTop(new OdataTopToMongoLimitParser().parse(uriInfo.getTopOption()))
+        withSelect ? builder.withSelect(new OdataSelectToMongoProjectParser().parse(uriInfo.getSelectOption())).build() : builder.build()
+    }
+
+    private static String json(Bson bson) {
+        bson == null ? null : ((Document) bson).toJson()
+    }
+
+    @Unroll
+    def "should return find query for '#query'"() {
+        when:
+            def result = build(query)
+
+        then:
+            result.isFindQuery()
+            json(result.getFilter()) == Document.parse(expectedFilter).toJson()
+            json(result.getSort()) == (expectedSort == null ? null : Document.parse(expectedSort).toJson())
+            result.getSkip() == expectedSkip
+            result.getLimit() == expectedLimit
+            json(result.getProjection()) == Document.parse(expectedProjection).toJson()
+
+        where:
+            query                                                                                  || expectedFilter                                                        | expectedSort                            | expectedSkip | expectedLimit | expectedProjection
+            "\$filter=plainString eq 'a'"                                                          || '{"$and": [{"plainString": "a"}]}'                                     | null                                    | 0            | 0             | '{"_id": 0}'
+            "\$filter=smallInteger gt 5&\$orderby=timestamp desc&\$skip=10&\$top=5&\$select=plainString" || '{"$and": [{"smallInteger": {"$gt": 5}}]}'                     | '{"timestamp": -1}'                     | 10           | 5             | '{"plainString": 1, "_id": 0}'
+            "\$orderby=plainString,smallInteger desc&\$top=3"                                      || '{}'                                                                   | '{"plainString": 1, "smallInteger": -1}' | 0           | 3             | '{"_id": 0}'
+            "\$filter=tags/any(t:t eq 'x')"                                                        || '{"$and": [{"tags": {"$elemMatch": {"$eq": "x"}}}]}'                   | null                                    | 0            | 0             | '{"_id": 0}'
+    }
+
+    @Unroll
+    def "should return aggregation pipeline for '#query'"() {
+        when:
+            def result = build(query)
+
+        then:
+            !result.isFindQuery()
+            result.getPipeline().collect { json(it) } == expectedPipeline.collect { Document.parse(it).toJson() }
+
+        where:
+            query                                                            || expectedPipeline
+            "\$filter=tags/all(t:length(t) eq 9)&\$top=2"                    || ['{"$match": {"$and": [{"$expr": {"$eq": [{"$size": {"$filter": {"input": {"$ifNull": ["$tags", []]}, "as": "t", "cond": {"$eq": [{"$strLenCP": "$$t"}, 9]}}}}, {"$size": {"$ifNull": ["$tags", []]}}]}}]}}', '{"$limit": 2}', '{"$project": {"_id": 0}}']
+            "\$filter=plainString eq 'a'&\$top=0"                            || ['{"$match": {"$and": [{"plainString": "a"}]}}', '{"$limit": 0}', '{"$project": {"_id": 0}}']
+    }
+
+    def "should return pipeline equivalent to the find query"() {
+        when:
+            def result = build("\$filter=plainString eq 'a'&\$orderby=timestamp&\$skip=1&\$top=2&\$select=plainString")
+
+        then:
+            result.isFindQuery()
+            result.getPipeline().collect { json(it) } == [
+                    '{"$match": {"$and": [{"plainString": "a"}]}}',
+                    '{"$sort": {"timestamp": 1}}',
+                    '{"$skip": 1}',
+                    '{"$limit": 2}',
+                    '{"$project": {"plainString": 1, "_id": 0}}'].collect { Document.parse(it).toJson() }
+    }
+
+    def "should return find query without projection when there is no select result"() {
+        when:
+            def result = build("\$filter=plainString eq 'a'", false)
+
+        then:
+            result.isFindQuery()
+            result.getProjection() == null
+            result.getPipeline().size() == 1
+    }
+
+    def "should execute query with matching executor"() {
+        given:
+            def findQuery = build("\$filter=plainString eq 'a'")
+            def aggregateQuery = build("\$filter=tags/all(t:length(t) eq 9)")
+
+        expect:
+            findQuery.execute({ q -> "find:" + json(q.getFilter()) }, { p -> "aggregate" }) == "find:" + Document.parse('{"$and": [{"plainString": "a"}]}').toJson()
+            aggregateQuery.execute({ q -> "find" }, { p -> "aggregate:" + p.size() }) == "aggregate:2"
+    }
+
+    def "should return empty find query when no result is set"() {
+        when:
+            def result = MongoReadQuery.builder().build()
+
+        then:
+            result.isFindQuery()
+            result.getFilter() == new Document()
+            result.getSort() == null
+            result.getProjection() == null
+            result.getPipeline().isEmpty()
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.starnowski.jamolingo.core.response
+
+import com.github.starnowski.jamolingo.core.context.EntityPropertiesMongoPathContextBuilder
+import com.github.starnowski.jamolingo.core.mapping.EntityMapping
+import com.github.starnowski.jamolingo.core.mapping.PropertyMapping
+import org.bson.BsonBinary
+import org.bson.BsonDocument
+import org.bson.RawBsonDocument
+import org.bson.types.Decimal128
+import org.bson.types.ObjectId
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class ODataJsonResponseWriterTest extends Specification {
+
+    def "should write collection with annotations, renamed properties and next link"() {
+        given:
+        def names = ODataJsonPropertyNames.of(["Name": "name", "Address": "address", "Address/City": "address.city"])
+        def tested = ODataJsonResponseWriter.builder().withPropertyNames(names).build()
+        def documents = [
+                raw("{'name': 'a', 'address': {'city': 'Paris', 'zip': '75'}, 'other': 1}"),
+                raw("{'name': 'b\"\\\\\\n', 'address': null}")
+        ]
+        def out = new ByteArrayOutputStream()
+
+        when:
+        tested.writeCollection(out, documents.iterator(), ["@odata.count": 2L, "@jamolingo.countCapped": true], "Items?\$skiptoken=abc")
+
+        then:
+        out.toString("UTF-8") == '{"@odata.count":2,"@jamolingo.countCapped":true,"value":[' +
+                '{"Name":"a","Address":{"City":"Paris","zip":"75"},"other":1},' +
+                '{"Name":"b\\"\\\\\\n","Address":null}' +
+                '],"@odata.nextLink":"Items?$skiptoken=abc"}'
+    }
+
+    @Unroll
+    def "should write annotations as #expectedJson with IEEE754Compatible #ieee754Compatible"() {
+        given:
+        def tested = ODataJsonResponseWriter.builder().withIeee754Compatible(ieee754Compatible).build()
+        def out = new ByteArrayOutputStream()
+
+        when:
+        tested.writeCollection(out, Collections.emptyIterator(), annotations, null)
+
+        then:
+        out.toString("UTF-8") == '{' + expectedJson + ',"value":[]}'
+
+        where:
+        annotations                                                  | ieee754Compatible || expectedJson
+        ["@odata.count": 9007199254740993L]                          | false             || '"@odata.count":9007199254740993'
+        ["@odata.count": 9007199254740993L]                          | true              || '"@odata.count":"9007199254740993"'
+        ["@custom.total": new BigDecimal("12.50")]                   | false             || '"@custom.total":12.50'
+        ["@custom.total": new BigDecimal("12.50")]                   | true              || '"@custom.total":"12.50"'
+        ["@custom.size": 5, "@jamolingo.countCapped": true]          | true              || '"@custom.size":5,"@jamolingo.countCapped":true'
+    }
+
+    def "should write empty collection"() {
+        given:
+        def out = new ByteArrayOutputStream()
+
+        when:
+        ODataJsonResponseWriter.builder().build().writeCollection(out, Collections.emptyIterator(), null, null)
+
+        then:
+        out.toString("UTF-8") == '{"value":[]}'
+    }
+
+    def "should skip unmapped properties and rename the properties of the collection elements"() {
+        given:
+        def names = ODataJsonPropertyNames.of(["Tags": "tags", "Lines": "lines", "Lines/Qty": "lines.qty"])
+        def tested = ODataJsonResponseWriter.builder()
+                .withPropertyNames(names)
+                .withUnmappedPropertiesSkipped(true)
+                .build()
+        def out = new ByteArrayOutputStream()
+
+        when:
+        tested.writeEntity(out, raw("{'_id': 1, 'tags': ['x', 'y'], 'lines': [{'qty': 1, 'secret': 2}, {'qty': 3}]}"))
+
+        then:
+        out.toString("UTF-8") == '{"Tags":["x","y"],"Lines":[{"Qty":1},{"Qty":3}]}'
+    }
+
+    def "should use the names from the entity properties context and ignore mappings that change the depth"() {
+        given:
+        def context = new EntityPropertiesMongoPathContextBuilder().build(new EntityMapping()
+                .withTable("Item")
+                .withProperties(Map.of(
+                        "Name", new PropertyMapping().withMongoName("name"),
+                        "plainString", new PropertyMapping().withRelativeTo("nested"))))
+
+        when:
+        def names = ODataJsonPropertyNames.of(context)
+
+        then:
+        names.getChild("name").getEdmName() == "Name"
+        names.getChild("nested") == null
+        names.getChild("plainString") == null
+    }
+
+    @Unroll
+    def "should write #type value as #expectedJson with IEEE754Compatible #ieee754Compatible"() {
+        given:
+        def tested = ODataJsonResponseWriter.builder().withIeee754Compatible(ieee754Compatible).build()
+        def out = new ByteArrayOutputStream()
+        BsonDocument document = new BsonDocument("v", value)
+
+        when:
+        tested.writeEntity(out, new RawBsonDocument(document, new org.bson.codecs.BsonDocumentCodec()))
+
+        then:
+        out.toString("UTF-8") == '{"v":' + expectedJson + '}'
+
+        where:
+        type            | value                                                                         | ieee754Compatible || expectedJson
+        "int32"         | new org.bson.BsonInt32(5)                                                     | false             || '5'
+        "int64"         | new org.bson.BsonInt64(9007199254740993L)                                     | false             || '9007199254740993'
+        "int64"         | new org.bson.BsonInt64(9007199254740993L)                                     | true              || '"9007199254740993"'
+        "double"        | new org.bson.BsonDouble(1.5d)                                                 | false             || '1.5'
+        "double"        | new org.bson.BsonDouble(Double.NaN)                                           | false             || '"NaN"'
+        "double"        | new org.bson.BsonDouble(Double.NEGATIVE_INFINITY)                             | false             || '"-INF"'
+        "decimal"       | new org.bson.BsonDecimal128(Decimal128.parse("12.50"))                        | false             || '12.50'
+        "decimal"       | new org.bson.BsonDecimal128(Decimal128.parse("12.50"))                        | true              || '"12.50"'
+        "date"          | new org.bson.BsonDateTime(1700000000000L)                                     | false             || '"2023-11-14T22:13:20Z"'
+        "objectId"      | new org.bson.BsonObjectId(new ObjectId("65a000000000000000000001"))           | false             || '"65a000000000000000000001"'
+        "uuid"          | new BsonBinary(UUID.fromString("123e4567-e89b-12d3-a456-426614174000"))       | false             || '"123e4567-e89b-12d3-a456-426614174000"'
+        "binary"        | new BsonBinary([(byte) 0xfb, (byte) 0xff] as byte[])                          | false             || '"-_8="'
+        "boolean"       | org.bson.BsonBoolean.TRUE                                                     | false             || 'true'
+        "null"          | org.bson.BsonNull.VALUE                                                       | false             || 'null'
+        "control char"  | new org.bson.BsonString("a\u0001")                                            | false             || '"a\\u0001"'
+        "unicode"       | new org.bson.BsonString("zażółć")                                             | false             || '"zażółć"'
+    }
+
+    private static RawBsonDocument raw(String json) {
+        RawBsonDocument.parse(json)
+    }
+}
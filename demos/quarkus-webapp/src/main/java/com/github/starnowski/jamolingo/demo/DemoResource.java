@@ -1,5 +1,6 @@
 package com.github.starnowski.jamolingo.demo;
 
+import com.github.starnowski.jamolingo.core.operators.count.CountFacetPage;
 import com.github.starnowski.jamolingo.perf.ExplainAnalyzeResult;
 import com.github.starnowski.jamolingo.perf.ExplainAnalyzeResultFactory;
 import com.mongodb.client.MongoClient;
@@ -111,25 +112,17 @@ public class DemoResource {
   private Map<String, Object> executeQueryPlan(ODataQueryService.QueryPlan plan) {
     Map<String, Object> response = new LinkedHashMap<>();
 
-    if (plan.isCountRequested()) {
-      List<Document> countResult = new ArrayList<>();
-      mongoClient
-          .getDatabase("demos")
-          .getCollection("items")
-          .aggregate(plan.getCountPipeline())
-          .into(countResult);
-      long totalCount =
-          countResult.isEmpty() ? 0 : ((Number) countResult.get(0).get("count")).longValue();
-      response.put("@odata.count", totalCount);
-    }
-
     List<Document> results = new ArrayList<>();
     mongoClient
         .getDatabase("demos")
         .getCollection("items")
-        .aggregate(plan.getDataPipeline())
+        .aggregate(plan.getPipeline())
         .into(results);
-    response.put("value", results);
+    CountFacetPage page = plan.getCountResult().unpack(results);
+    if (page.getCount() != null) {
+      response.put("@odata.count", page.getCount());
+    }
+    response.put("value", page.getValue());
     return response;
   }
 }
@@ -1,19 +1,28 @@
 package com.github.starnowski.jamolingo.demo;
 
+import com.github.starnowski.jamolingo.core.operators.count.CountFacetOperatorResult;
+import com.github.starnowski.jamolingo.core.operators.count.CountFacetPage;
+import com.github.starnowski.jamolingo.core.response.ODataJsonResponseWriter;
 import com.github.starnowski.jamolingo.perf.ExplainAnalyzeResult;
 import com.github.starnowski.jamolingo.perf.ExplainAnalyzeResultFactory;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import jakarta.servlet.http.HttpServletRequest;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import org.bson.BsonValue;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 public class DemoController {
@@ -22,6 +31,8 @@ public class DemoController {
 
   @Autowired private MongoTemplate mongoTemplate;
 
+  private final ODataJsonResponseWriter responseWriter = ODataJsonResponseWriter.builder().build();
+
   @GetMapping("/query-with-dollar-parameters")
   public Map<String, Object> queryWithDollarParameterOperators(HttpServletRequest request)
       throws Exception {
@@ -29,6 +40,40 @@ public class DemoController {
     return executeQueryPlan(plan);
   }
 
+  @GetMapping(value = "/query-stream", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> queryStream(HttpServletRequest request)
+      throws Exception {
+    ODataQueryService.QueryPlan plan = oDataQueryService.buildQueryPlan(request.getQueryString());
+    MongoCollection<RawBsonDocument> collection =
+        mongoTemplate.getCollection("items").withDocumentClass(RawBsonDocument.class);
+    StreamingResponseBody body =
+        outputStream -> {
+          if (!plan.isCountRequested()) {
+            try (MongoCursor<RawBsonDocument> cursor =
+                collection.aggregate(plan.getPipeline()).cursor()) {
+              responseWriter.writeCollection(outputStream, cursor, null, null);
+            }
+            return;
+          }
+          // The $facet stage returns one document with the page and the count
+          CountFacetOperatorResult countResult = plan.getCountResult();
+          RawBsonDocument facet = collection.aggregate(plan.getPipeline()).first();
+          List<RawBsonDocument> value = new ArrayList<>();
+          long count = 0;
+          if (facet != null) {
+            for (BsonValue document : facet.getArray(countResult.getDataFieldName())) {
+              value.add((RawBsonDocument) document.asDocument());
+            }
+            for (BsonValue document : facet.getArray(countResult.getCountFieldName())) {
+              count = document.asDocument().getNumber(countResult.getCountFieldName()).longValue();
+            }
+          }
+          responseWriter.writeCollection(
+              outputStream, value.iterator(), Map.of("@odata.count", count), null);
+        };
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+  }
+
   @GetMapping("/query")
   public Map<String, Object> query(
       @RequestParam(name = "filter", required = false) String filter,
@@ -97,17 +142,13 @@ public class DemoController {
   private Map<String, Object> executeQueryPlan(ODataQueryService.QueryPlan plan) {
     Map<String, Object> response = new LinkedHashMap<>();
 
-    if (plan.isCountRequested()) {
-      List<Document> countResult = new ArrayList<>();
-      mongoTemplate.getCollection("items").aggregate(plan.getCountPipeline()).into(countResult);
-      long totalCount =
-          countResult.isEmpty() ? 0 : ((Number) countResult.get(0).get("count")).longValue();
-      response.put("@odata.count", totalCount);
-    }
-
     List<Document> results = new ArrayList<>();
-    mongoTemplate.getCollection("items").aggregate(plan.getDataPipeline()).into(results);
-    response.put("value", results);
+    mongoTemplate.getCollection("items").aggregate(plan.getPipeline()).into(results);
+    CountFacetPage page = plan.getCountResult().unpack(results);
+    if (page.getCount() != null) {
+      response.put("@odata.count", page.getCount());
+    }
+    response.put("value", page.getValue());
     return response;
   }
 }
@@ -1,6 +1,9 @@
 package com.github.starnowski.jamolingo.demo;
 
+import com.github.starnowski.jamolingo.core.cache.QueryPlanCache;
+import com.github.starnowski.jamolingo.core.cache.QueryPlanCacheKey;
 import com.github.starnowski.jamolingo.core.context.DefaultEdmMongoContextFacade;
+import com.github.starnowski.jamolingo.core.operators.count.CountFacetOperatorResult;
 import com.github.starnowski.jamolingo.core.operators.count.OdataCountToMongoCountParser;
 import com.github.starnowski.jamolingo.core.operators.expand.ODataExpandToMongoAggregationPipelineParser;
 import com.github.starnowski.jamolingo.core.operators.filter.ODataFilterToMongoMatchParser;
@@ -8,9 +11,11 @@ import com.github.starnowski.jamolingo.core.operators.orderby.OdataOrderByToMong
 import com.github.starnowski.jamolingo.core.operators.select.OdataSelectToMongoProjectParser;
 import com.github.starnowski.jamolingo.core.operators.skip.OdataSkipToMongoSkipParser;
 import com.github.starnowski.jamolingo.core.operators.top.OdataTopToMongoLimitParser;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import org.apache.olingo.commons.api.edm.Edm;
+import org.apache.olingo.commons.api.ex.ODataException;
 import org.apache.olingo.server.api.OData;
 import org.apache.olingo.server.api.ODataApplicationException;
 import org.apache.olingo.server.api.uri.UriInfo;
@@ -18,6 +23,12 @@ import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitEx
 import org.apache.olingo.server.core.uri.parser.Parser;
 import org.apache.olingo.server.core.uri.parser.UriParserException;
 import org.apache.olingo.server.core.uri.validator.UriValidationException;
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+import org.bson.UuidRepresentation;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.conversions.Bson;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -38,32 +49,70 @@ public class ODataQueryService {
   private final OdataCountToMongoCountParser countParser = new OdataCountToMongoCountParser();
   private final ODataExpandToMongoAggregationPipelineParser expandParser =
       new ODataExpandToMongoAggregationPipelineParser();
-
+  private final QueryPlanCache<QueryPlan> queryPlanCache =
+      QueryPlanCache.<QueryPlan>builder()
+          .withMaximumSize(1000)
+          .withExpireAfterWrite(Duration.ofMinutes(10))
+          .build();
+
+  /**
+   * The translated pipelines shared by the concurrent requests. The stages are stored as immutable
+   * {@link RawBsonDocument} copies, so no request can modify the cached plan.
+   */
   public static class QueryPlan {
+    private static final CodecRegistry CODEC_REGISTRY =
+        CodecRegistries.withUuidRepresentation(
+            Bson.DEFAULT_CODEC_REGISTRY, UuidRepresentation.STANDARD);
+    private static final BsonDocumentCodec BSON_DOCUMENT_CODEC = new BsonDocumentCodec();
+
     private final List<Bson> dataPipeline;
-    private final List<Bson> countPipeline;
-    private final boolean countRequested;
+    private final List<Bson> pipeline;
+    private final CountFacetOperatorResult countResult;
+
+    public QueryPlan(
+        List<Bson> dataPipeline, List<Bson> pipeline, CountFacetOperatorResult countResult) {
+      this.dataPipeline = immutableCopy(dataPipeline);
+      this.pipeline = immutableCopy(pipeline);
+      this.countResult = countResult;
+    }
 
-    public QueryPlan(List<Bson> dataPipeline, List<Bson> countPipeline, boolean countRequested) {
-      this.dataPipeline = dataPipeline;
-      this.countPipeline = countPipeline;
-      this.countRequested = countRequested;
+    private static List<Bson> immutableCopy(List<Bson> stages) {
+      List<Bson> copy = new ArrayList<>();
+      for (Bson stage : stages) {
+        copy.add(
+            new RawBsonDocument(
+                stage.toBsonDocument(BsonDocument.class, CODEC_REGISTRY), BSON_DOCUMENT_CODEC));
+      }
+      return List.copyOf(copy);
     }
 
     public List<Bson> getDataPipeline() {
       return dataPipeline;
     }
 
-    public List<Bson> getCountPipeline() {
-      return countPipeline;
+    public List<Bson> getPipeline() {
+      return pipeline;
+    }
+
+    public CountFacetOperatorResult getCountResult() {
+      return countResult;
     }
 
     public boolean isCountRequested() {
-      return countRequested;
+      return countResult.isCountOptionPresent();
     }
   }
 
-  public QueryPlan buildQueryPlan(String query)
+  public QueryPlan buildQueryPlan(String query) throws ODataException {
+    return queryPlanCache.get(
+        QueryPlanCacheKey.of("examples2", query), key -> translateQueryPlan(query));
+  }
+
+  public QueryPlanCache<QueryPlan> getQueryPlanCache() {
+    return queryPlanCache;
+  }
+
+  private QueryPlan translateQueryPlan(String query)
       throws UriParserException,
           UriValidationException,
           ODataApplicationException,
@@ -72,32 +121,35 @@ public class ODataQueryService {
     List<Bson> filterStages =
         filterParser.parse(uriInfo.getFilterOption(), edmMongoContextFacade).getStageObjects();
 
-    List<Bson> dataPipeline = new ArrayList<>(filterStages);
+    List<Bson> pageStages = new ArrayList<>();
     // 2. $orderby -> $sort
-    dataPipeline.addAll(
+    pageStages.addAll(
         orderByParser.parse(uriInfo.getOrderByOption(), edmMongoContextFacade).getStageObjects());
 
     // 3. $skip -> $skip
-    dataPipeline.addAll(skipParser.parse(uriInfo.getSkipOption()).getStageObjects());
+    pageStages.addAll(skipParser.parse(uriInfo.getSkipOption()).getStageObjects());
 
     // 4. $top -> $limit
-    dataPipeline.addAll(topParser.parse(uriInfo.getTopOption()).getStageObjects());
+    pageStages.addAll(topParser.parse(uriInfo.getTopOption()).getStageObjects());
 
     // 5. $select -> $project
-    dataPipeline.addAll(
+    pageStages.addAll(
         selectParser.parse(uriInfo.getSelectOption(), edmMongoContextFacade).getStageObjects());
 
     // 6. $expand -> $lookup or $graphLookup
     if (uriInfo.getExpandOption() != null) {
-      dataPipeline.addAll(expandParser.parse(uriInfo.getExpandOption()).getStageObjects());
+      pageStages.addAll(expandParser.parse(uriInfo.getExpandOption()).getStageObjects());
     }
 
-    List<Bson> countPipeline = new ArrayList<>(filterStages);
-    countPipeline.add(new org.bson.Document("$count", "count"));
+    List<Bson> dataPipeline = new ArrayList<>(filterStages);
+    dataPipeline.addAll(pageStages);
 
-    boolean countRequested =
-        uriInfo.getCountOption() != null && uriInfo.getCountOption().getValue();
+    // 7. $count -> $facet with the page and the count, the filter is executed once
+    CountFacetOperatorResult countResult =
+        countParser.parseWithFacet(uriInfo.getCountOption(), pageStages);
+    List<Bson> pipeline = new ArrayList<>(filterStages);
+    pipeline.addAll(countResult.getStageObjects());
 
-    return new QueryPlan(dataPipeline, countPipeline, countRequested);
+    return new QueryPlan(dataPipeline, pipeline, countResult);
   }
 }
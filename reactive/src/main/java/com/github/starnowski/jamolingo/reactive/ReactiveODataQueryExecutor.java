@@ -0,0 +1,160 @@
+package com.github.starnowski.jamolingo.reactive;
+
+import com.github.starnowski.jamolingo.core.operators.expand.ExpandOperatorResult;
+import com.github.starnowski.jamolingo.core.operators.expand.GraphLookUpToLookUpStrategyResultsTransformer;
+import com.mongodb.reactivestreams.client.AggregatePublisher;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import java.util.List;
+import java.util.Objects;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.reactivestreams.Publisher;
+
+/**
+ * Executes the aggregation pipeline combined from the results of the core parsers with the MongoDB
+ * Reactive Streams driver. The returned publisher streams the documents with the backpressure of
+ * the subscriber, the driver reads the next batch of the cursor only when the subscriber requested
+ * more documents, and the cancellation of the subscription closes the cursor. So the WebFlux or
+ * Mutiny services can stream the large results without loading them into the memory or blocking the
+ * thread for the request.
+ *
+ * <p>When the $expand result is passed, each document is transformed with {@link
+ * GraphLookUpToLookUpStrategyResultsTransformer#documentTransformer(ExpandOperatorResult)}, the
+ * same as the documents returned by the blocking driver.
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * Flux<Document> documents =
+ *     Flux.from(executor.execute(collection, pipeline, expandOperatorResult));
+ * }</pre>
+ */
+public final class ReactiveODataQueryExecutor {
+
+  private final Integer batchSize;
+  private final Boolean allowDiskUse;
+  private final GraphLookUpToLookUpStrategyResultsTransformer transformer =
+      new GraphLookUpToLookUpStrategyResultsTransformer();
+
+  private ReactiveODataQueryExecutor(Integer batchSize, Boolean allowDiskUse) {
+    this.batchSize = batchSize;
+    this.allowDiskUse = allowDiskUse;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Executes the aggregation pipeline.
+   *
+   * @param collection the collection
+   * @param pipeline the aggregation pipeline
+   * @return the publisher of the documents
+   */
+  public Publisher<Document> execute(
+      MongoCollection<Document> collection, List<? extends Bson> pipeline) {
+    return execute(collection, pipeline, null);
+  }
+
+  /**
+   * Executes the aggregation pipeline and transforms the $graphLookup results of each document.
+   *
+   * @param collection the collection
+   * @param pipeline the aggregation pipeline
+   * @param expandOperatorResult the result of the $expand translation, can be null if there is no
+   *     $expand option
+   * @return the publisher of the documents
+   */
+  public Publisher<Document> execute(
+      MongoCollection<Document> collection,
+      List<? extends Bson> pipeline,
+      ExpandOperatorResult expandOperatorResult) {
+    if (collection == null) {
+      throw new IllegalArgumentException("The collection can not be null");
+    }
+    if (pipeline == null) {
+      throw new IllegalArgumentException("The pipeline can not be null");
+    }
+    AggregatePublisher<Document> publisher = collection.aggregate(pipeline);
+    if (batchSize != null) {
+      publisher = publisher.batchSize(batchSize);
+    }
+    if (allowDiskUse != null) {
+      publisher = publisher.allowDiskUse(allowDiskUse);
+    }
+    if (expandOperatorResult == null || expandOperatorResult.getExpandElements() == null) {
+      return publisher;
+    }
+    return new TransformingPublisher<>(
+        publisher, () -> transformer.documentTransformer(expandOperatorResult));
+  }
+
+  public Integer getBatchSize() {
+    return batchSize;
+  }
+
+  public Boolean getAllowDiskUse() {
+    return allowDiskUse;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    ReactiveODataQueryExecutor that = (ReactiveODataQueryExecutor) o;
+    return Objects.equals(batchSize, that.batchSize)
+        && Objects.equals(allowDiskUse, that.allowDiskUse);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(batchSize, allowDiskUse);
+  }
+
+  @Override
+  public String toString() {
+    return "ReactiveODataQueryExecutor{"
+        + "batchSize="
+        + batchSize
+        + ", allowDiskUse="
+        + allowDiskUse
+        + '}';
+  }
+
+  public static class Builder {
+    private Integer batchSize;
+    private Boolean allowDiskUse;
+
+    /**
+     * Sets the number of documents in one batch of the cursor. By default the driver requests the
+     * batch size that matches the demand of the subscriber.
+     *
+     * @param batchSize the batch size, must be greater than zero
+     * @return the builder
+     */
+    public Builder withBatchSize(Integer batchSize) {
+      this.batchSize = batchSize;
+      return this;
+    }
+
+    /**
+     * Sets whether the aggregation stages can write temporary files. By default the server setting
+     * is used.
+     *
+     * @param allowDiskUse true if the stages can write temporary files
+     * @return the builder
+     */
+    public Builder withAllowDiskUse(Boolean allowDiskUse) {
+      this.allowDiskUse = allowDiskUse;
+      return this;
+    }
+
+    public ReactiveODataQueryExecutor build() {
+      if (batchSize != null && batchSize <= 0) {
+        throw new IllegalArgumentException("The batch size must be greater than zero");
+      }
+      return new ReactiveODataQueryExecutor(batchSize, allowDiskUse);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package com.github.starnowski.jamolingo.reactive;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Publisher that applies the transformation to each element of the source publisher, for example
+ * the {@code AggregatePublisher} returned by the MongoDB Reactive Streams driver. The demand and
+ * the cancellation of the subscriber are passed to the source without buffering, so one requested
+ * element is one element read from the cursor, and only the element being transformed is held in
+ * the memory.
+ *
+ * <p>The transformation is created for each subscriber by the factory, so a transformation that
+ * keeps the state, for example {@link
+ * com.github.starnowski.jamolingo.core.operators.expand.GraphLookUpToLookUpStrategyResultsTransformer#documentTransformer},
+ * is never shared between the streams. When the transformation throws an exception or returns null,
+ * the source subscription is cancelled and the subscriber receives the error.
+ *
+ * @param <T> type of the source elements
+ * @param <R> type of the transformed elements
+ */
+public final class TransformingPublisher<T, R> implements Publisher<R> {
+
+  private final Publisher<T> source;
+  private final Supplier<? extends Function<? super T, ? extends R>> transformationFactory;
+
+  /**
+   * Creates a new TransformingPublisher.
+   *
+   * @param source the source publisher
+   * @param transformationFactory the factory that creates the transformation for each subscriber
+   */
+  public TransformingPublisher(
+      Publisher<T> source,
+      Supplier<? extends Function<? super T, ? extends R>> transformationFactory) {
+    if (source == null) {
+      throw new IllegalArgumentException("The source publisher can not be null");
+    }
+    if (transformationFactory == null) {
+      throw new IllegalArgumentException("The transformation factory can not be null");
+    }
+    this.source = source;
+    this.transformationFactory = transformationFactory;
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super R> subscriber) {
+    if (subscriber == null) {
+      throw new NullPointerException("The subscriber can not be null");
+    }
+    source.subscribe(new TransformingSubscriber<>(subscriber, transformationFactory.get()));
+  }
+
+  private static final class TransformingSubscriber<T, R> implements Subscriber<T>, Subscription {
+
+    private final Subscriber<? super R> downstream;
+    private final Function<? super T, ? extends R> transformation;
+    private Subscription upstream;
+    private boolean done;
+
+    private TransformingSubscriber(
+        Subscriber<? super R> downstream, Function<? super T, ? extends R> transformation) {
+      this.downstream = downstream;
+      this.transformation = transformation;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      this.upstream = subscription;
+      downstream.onSubscribe(this);
+    }
+
+    @Override
+    public void onNext(T element) {
+      if (done) {
+        return;
+      }
+      R result;
+      try {
+        result = transformation.apply(element);
+        if (result == null) {
+          throw new NullPointerException("The transformation returned null");
+        }
+      } catch (Throwable e) {
+        upstream.cancel();
+        onError(e);
+        return;
+      }
+      downstream.onNext(result);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      if (done) {
+        return;
+      }
+      done = true;
+      downstream.onError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      if (done) {
+        return;
+      }
+      done = true;
+      downstream.onComplete();
+    }
+
+    @Override
+    public void request(long n) {
+      upstream.request(n);
+    }
+
+    @Override
+    public void cancel() {
+      upstream.cancel();
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package com.github.starnowski.jamolingo.reactive
+
+import com.github.starnowski.jamolingo.core.operators.expand.ExpandOperatorResult
+import com.mongodb.reactivestreams.client.AggregatePublisher
+import com.mongodb.reactivestreams.client.MongoCollection
+import org.bson.Document
+import spock.lang.Specification
+
+class ReactiveODataQueryExecutorTest extends Specification {
+
+    def "should return the driver publisher with the cursor options when there is no expand"() {
+        given:
+        def pipeline = [new Document("\$match", new Document("a", 1))]
+        AggregatePublisher<Document> publisher = Mock(AggregatePublisher)
+        MongoCollection<Document> collection = Mock(MongoCollection)
+        def tested = ReactiveODataQueryExecutor.builder().withBatchSize(100).withAllowDiskUse(true).build()
+
+        when:
+        def result = tested.execute(collection, pipeline)
+
+        then:
+        1 * collection.aggregate(pipeline) >> publisher
+        1 * publisher.batchSize(100) >> publisher
+        1 * publisher.allowDiskUse(true) >> publisher
+        result.is(publisher)
+    }
+
+    def "should wrap the driver publisher when the expand result is present"() {
+        given:
+        AggregatePublisher<Document> publisher = Mock(AggregatePublisher)
+        MongoCollection<Document> collection = Mock(MongoCollection) {
+            aggregate(_) >> publisher
+        }
+        ExpandOperatorResult expandOperatorResult = Mock(ExpandOperatorResult) {
+            getExpandElements() >> [:]
+        }
+
+        when:
+        def result = ReactiveODataQueryExecutor.builder().build().execute(collection, [], expandOperatorResult)
+
+        then:
+        result instanceof TransformingPublisher
+        0 * publisher.batchSize(_)
+    }
+
+    def "should throw exception when batch size is not positive"() {
+        when:
+        ReactiveODataQueryExecutor.builder().withBatchSize(0).build()
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
@@ -0,0 +1,149 @@
+package com.github.starnowski.jamolingo.reactive
+
+import org.reactivestreams.Publisher
+import org.reactivestreams.Subscriber
+import org.reactivestreams.Subscription
+import spock.lang.Specification
+
+import java.util.function.Function
+
+class TransformingPublisherTest extends Specification {
+
+    def "should pass the demand to the source and transform each requested element"() {
+        given:
+        def source = new ListPublisher([1, 2, 3, 4])
+        def tested = new TransformingPublisher<Integer, String>(source, { -> { Integer i -> "v" + i } as Function })
+        def subscriber = new RecordingSubscriber()
+        tested.subscribe(subscriber)
+
+        when:
+        subscriber.subscription.request(2)
+
+        then:
+        subscriber.values == ["v1", "v2"]
+        source.requested == 2
+        !subscriber.completed
+
+        when:
+        subscriber.subscription.request(5)
+
+        then:
+        subscriber.values == ["v1", "v2", "v3", "v4"]
+        subscriber.completed
+    }
+
+    def "should pass the cancellation to the source"() {
+        given:
+        def source = new ListPublisher([1, 2, 3])
+        def tested = new TransformingPublisher<Integer, Integer>(source, { -> { Integer i -> i } as Function })
+        def subscriber = new RecordingSubscriber()
+        tested.subscribe(subscriber)
+
+        when:
+        subscriber.subscription.request(1)
+        subscriber.subscription.cancel()
+        subscriber.subscription.request(1)
+
+        then:
+        source.cancelled
+        subscriber.values == [1]
+        !subscriber.completed
+    }
+
+    def "should cancel the source and signal the error when the transformation fails"() {
+        given:
+        def source = new ListPublisher([1, 2, 3])
+        def tested = new TransformingPublisher<Integer, Integer>(source, { -> { Integer i -> if (i == 2) throw new IllegalStateException("boom"); i } as Function })
+        def subscriber = new RecordingSubscriber()
+        tested.subscribe(subscriber)
+
+        when:
+        subscriber.subscription.request(3)
+
+        then:
+        source.cancelled
+        subscriber.values == [1]
+        subscriber.error instanceof IllegalStateException
+        !subscriber.completed
+    }
+
+    def "should create a new transformation for each subscriber"() {
+        given:
+        int created = 0
+        def tested = new TransformingPublisher<Integer, Integer>(new ListPublisher([1]), { -> created++; { Integer i -> i } as Function })
+
+        when:
+        tested.subscribe(new RecordingSubscriber())
+        tested.subscribe(new RecordingSubscriber())
+
+        then:
+        created == 2
+    }
+
+    def "should throw exception when the source publisher is null"() {
+        when:
+        new TransformingPublisher<Integer, Integer>(null, { -> { Integer i -> i } as Function })
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    static class ListPublisher implements Publisher<Integer> {
+        private final List<Integer> elements
+        long requested
+        boolean cancelled
+
+        ListPublisher(List<Integer> elements) {
+            this.elements = elements
+        }
+
+        @Override
+        void subscribe(Subscriber<? super Integer> subscriber) {
+            def iterator = elements.iterator()
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                void request(long n) {
+                    requested += n
+                    for (long i = 0; i < n && !cancelled && iterator.hasNext(); i++) {
+                        subscriber.onNext(iterator.next())
+                    }
+                    if (!cancelled && !iterator.hasNext()) {
+                        subscriber.onComplete()
+                    }
+                }
+
+                @Override
+                void cancel() {
+                    cancelled = true
+                }
+            })
+        }
+    }
+
+    static class RecordingSubscriber implements Subscriber<Object> {
+        Subscription subscription
+        List<Object> values = []
+        Throwable error
+        boolean completed
+
+        @Override
+        void onSubscribe(Subscription subscription) {
+            this.subscription = subscription
+        }
+
+        @Override
+        void onNext(Object value) {
+            values << value
+        }
+
+        @Override
+        void onError(Throwable throwable) {
+            error = throwable
+        }
+
+        @Override
+        void onComplete() {
+            completed = true
+        }
+    }
+}